@@ -0,0 +1,251 @@
+package com.floatingpanda.productlist;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Runs each Room migration against a database created from the schema exported for the version it
+ * migrates from (app/schemas), then validates the result against the schema exported for the
+ * version it migrates to. The databases are opened without AppDatabase's callbacks, so anything a
+ * migration is meant to create has to be created by the migration itself.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AppDatabaseMigrationTest {
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            AppDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrate1To2KeepsProductsAndCreatesProductIndices() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 2, true, AppDatabase.MIGRATION_1_2);
+
+        assertThat(count(db, "categories"), is(3));
+        assertThat(count(db, "products"), is(5));
+        assertThat(getIndexNames(db, "products"), hasItems(
+                "index_products_barcode",
+                "index_products_category_id",
+                "index_products_name",
+                "index_products_price"));
+    }
+
+    @Test
+    public void migrate2To3BuildsFullTextIndexForExistingProducts() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 2);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3);
+
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'pil*'"),
+                is(Collections.singletonList(6L)));
+        // Product 6's notes are "Flippledee", which are indexed as well
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'flip*'"),
+                is(Collections.singletonList(6L)));
+
+        // The index follows later changes to products
+        db.execSQL("UPDATE products SET name = 'Duvet' WHERE id = 6");
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'pil*'").size(), is(0));
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'duv*'"),
+                is(Collections.singletonList(6L)));
+    }
+
+    @Test
+    public void migrate3To4BuildsBarcodeTrigramsForExistingProducts() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 3);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 4, true, AppDatabase.MIGRATION_3_4);
+
+        // A 13 digit barcode has 11 trigrams, all distinct for product 7's barcode.
+        assertThat(queryLongs(db, "SELECT product_id FROM barcode_trigrams WHERE product_id = 7").size(), is(11));
+        assertThat(queryLongs(db, "SELECT product_id FROM barcode_trigrams WHERE trigram = '089'"),
+                is(Collections.singletonList(7L)));
+    }
+
+    @Test
+    public void migrate4To5CreatesEmptyStockTakeTables() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 4);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 5, true, AppDatabase.MIGRATION_4_5);
+
+        assertThat(count(db, "stock_takes"), is(0));
+        assertThat(count(db, "stock_take_counts"), is(0));
+        assertThat(count(db, "products"), is(5));
+    }
+
+    @Test
+    public void migrate5To6CreatesChangeLogTriggers() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 5);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 6, true, AppDatabase.MIGRATION_5_6);
+
+        assertChangeLogTriggers(db);
+        assertChangesAreLogged(db);
+    }
+
+    @Test
+    public void migrate6To7CollatesNamesByLocaleAndKeepsProductIndicesAndTriggers() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 6);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 7, true, AppDatabase.MIGRATION_6_7);
+
+        assertThat(count(db, "products"), is(5));
+        assertThat(getIndexNames(db, "products"), hasItems(
+                "index_products_barcode",
+                "index_products_category_id",
+                "index_products_name",
+                "index_products_price"));
+        assertChangeLogTriggers(db);
+
+        // BINARY would put a lower case name after every capitalised one
+        db.execSQL("INSERT INTO products (id, name, barcode, price, category_id, notes) "
+                + "VALUES (9, 'apple', NULL, 99, 0, NULL)");
+        assertThat(queryLongs(db, "SELECT id FROM products ORDER BY name, id"),
+                is(Arrays.asList(9L, 6L, 5L, 8L, 7L, 4L)));
+
+        // The full-text index still follows products
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'app*'"),
+                is(Collections.singletonList(9L)));
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'pil*'"),
+                is(Collections.singletonList(6L)));
+    }
+
+    @Test
+    public void migrateFromVersion1ToLatestKeepsCatalogueAndLogsChanges() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1);
+        insertCatalogue(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 7, true, AppDatabase.MIGRATIONS);
+
+        assertThat(count(db, "categories"), is(3));
+        assertThat(count(db, "products"), is(5));
+        assertThat(queryLongs(db, "SELECT docid FROM products_fts WHERE products_fts MATCH 'pil*'"),
+                is(Collections.singletonList(6L)));
+        assertThat(queryLongs(db, "SELECT product_id FROM barcode_trigrams WHERE trigram = '089'"),
+                is(Collections.singletonList(7L)));
+
+        assertChangeLogTriggers(db);
+        assertChangesAreLogged(db);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // The catalogue in TestData, as it would have been stored by any version of the app.
+    private void insertCatalogue(SupportSQLiteDatabase db) {
+        db.execSQL("INSERT INTO categories (id, name) VALUES (1, 'Bathroom'), (2, 'Bedding'), (3, 'Car')");
+        db.execSQL("INSERT INTO products (id, name, barcode, price, category_id, notes) VALUES "
+                + "(4, 'Taps', '1234567890123', 599, 1, 'None'), "
+                + "(5, 'Sink', '3210987654321', 1099, 1, 'Notesssss'), "
+                + "(6, 'Pillows', '1234509876109', 1899, 2, 'Flippledee'), "
+                + "(7, 'Sweets', '0897621453857', 9, 0, 'Floopledoo'), "
+                + "(8, 'Something', '3210987654321', 2095, 0, 'Amazing')");
+    }
+
+    // Checks the change log triggers are in the database, rather than left to AppDatabase's callback.
+    private void assertChangeLogTriggers(SupportSQLiteDatabase db) {
+        List<String> triggers = new ArrayList<>();
+        try (Cursor cursor = db.query("SELECT name FROM sqlite_master WHERE type = 'trigger' "
+                + "AND name LIKE '%change_log%'")) {
+            while (cursor.moveToNext()) {
+                triggers.add(cursor.getString(0));
+            }
+        }
+
+        assertThat(triggers, containsInAnyOrder(
+                "products_change_log_AFTER_INSERT",
+                "products_change_log_AFTER_UPDATE",
+                "products_change_log_AFTER_DELETE",
+                "categories_change_log_AFTER_INSERT",
+                "categories_change_log_AFTER_UPDATE",
+                "categories_change_log_AFTER_DELETE"));
+    }
+
+    private void assertChangesAreLogged(SupportSQLiteDatabase db) {
+        // Existing products aren't logged
+        assertThat(count(db, "product_changes"), is(0));
+        assertThat(count(db, "change_watermarks"), is(0));
+
+        db.execSQL("UPDATE products SET name = 'Duvet' WHERE id = 6");
+        db.execSQL("DELETE FROM categories WHERE id = 3");
+
+        try (Cursor cursor = db.query("SELECT table_name, row_id, operation FROM product_changes ORDER BY seq")) {
+            assertThat(cursor.getCount(), is(2));
+
+            cursor.moveToFirst();
+            assertThat(cursor.getString(0), is("products"));
+            assertThat(cursor.getLong(1), is(6L));
+            assertThat(cursor.getString(2), is("update"));
+
+            cursor.moveToNext();
+            assertThat(cursor.getString(0), is("categories"));
+            assertThat(cursor.getLong(1), is(3L));
+            assertThat(cursor.getString(2), is("delete"));
+        }
+    }
+
+    private int count(SupportSQLiteDatabase db, String table) {
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM " + table)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private List<Long> queryLongs(SupportSQLiteDatabase db, String sql) {
+        List<Long> values = new ArrayList<>();
+        try (Cursor cursor = db.query(sql)) {
+            while (cursor.moveToNext()) {
+                values.add(cursor.getLong(0));
+            }
+        }
+        return values;
+    }
+
+    private List<String> getIndexNames(SupportSQLiteDatabase db, String table) {
+        List<String> names = new ArrayList<>();
+
+        try (Cursor cursor = db.query("PRAGMA index_list(`" + table + "`)")) {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(nameIndex));
+            }
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,104 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares looking up many barcodes at once through ProductDao.getProductsWithCategoryByBarcodes()
+ * against looking them up one at a time. The timings are written to logcat under the "Benchmark"
+ * tag rather than asserted on, as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BarcodeLookupBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int PRODUCT_COUNT = 20000;
+    private static final int LOOKUP_COUNT = 5000;
+
+    private AppDatabase db;
+    private ProductDao productDao;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        productDao = db.productDao();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+
+        Product[] products = new Product[PRODUCT_COUNT];
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            products[i] = new Product(i + 1, "Product " + i, createBarcode(i), new Price(i % 50, i % 100),
+                    i % 4, null);
+        }
+        productDao.insertMultiple(products);
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void bulkLookupAgainstSingleLookups() {
+        // The first half of the barcodes are in the catalogue, the second half aren't
+        List<String> barcodes = new ArrayList<>();
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            barcodes.add(createBarcode(i * PRODUCT_COUNT * 2 / LOOKUP_COUNT));
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int singleLookupsFound = 0;
+        for (String barcode : barcodes) {
+            if (!productDao.queryProductsWithCategoryByExactBarcode(barcode).isEmpty()) {
+                singleLookupsFound++;
+            }
+        }
+        long singleLookupsNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        Map<String, List<ProductWithCategory>> productsByBarcode = productDao.getProductsWithCategoryByBarcodes(barcodes);
+        long bulkLookupNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertThat(productsByBarcode.size(), is(singleLookupsFound));
+        assertThat(productsByBarcode.size(), is(LOOKUP_COUNT / 2));
+
+        Log.i(TAG, String.format("%d barcode lookups: %.1fms one at a time, %.1fms in bulk (%.1fx)",
+                LOOKUP_COUNT, singleLookupsNanos / 1e6, bulkLookupNanos / 1e6,
+                (double) singleLookupsNanos / bulkLookupNanos));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private String createBarcode(int i) {
+        return String.format("50%011d", i);
+    }
+}
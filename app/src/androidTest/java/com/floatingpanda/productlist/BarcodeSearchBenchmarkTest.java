@@ -0,0 +1,141 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductRepository;
+import com.floatingpanda.productlist.repositories.SearchQueryTemplates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares searching for part of a barcode through the barcode trigram index against the plain
+ * LIKE scan it replaced, for catalogues of 10,000, 100,000 and 1,000,000 products. The timings are
+ * written to logcat under the "Benchmark" tag rather than asserted on, as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BarcodeSearchBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int INSERT_BATCH_SIZE = 10000;
+    private static final int SEARCH_COUNT = 20;
+
+    private AppDatabase db;
+    private ProductDao productDao;
+    private ProductRepository productRepository;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        productDao = db.productDao();
+        productRepository = new ProductRepository(db);
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void barcodeSearchTenThousandProducts() {
+        benchmark(10000);
+    }
+
+    @Test
+    public void barcodeSearchHundredThousandProducts() {
+        benchmark(100000);
+    }
+
+    @Test
+    public void barcodeSearchMillionProducts() {
+        benchmark(1000000);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void benchmark(int productCount) {
+        insertProducts(productCount);
+
+        String scanQuery = new SearchQueryTemplates().getTemplate(SearchQueryTemplates.BARCODE, OrderByEnum.NO_ORDER);
+
+        long trigramNanos = 0;
+        long scanNanos = 0;
+        for (int i = 0; i < SEARCH_COUNT; i++) {
+            // Six digits from the middle of a barcode in the catalogue, which only a few products share
+            String fragment = createBarcode(i * (productCount / SEARCH_COUNT)).substring(6, 12);
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            List<ProductWithCategory> trigramResults = productDao.queryProductsWithCategory(
+                    productRepository.createSQLQuery(fragment, null, 0, 0, 0));
+            trigramNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            Object[] scanArgs = {SearchQueryTemplates.escapeLikeWildcards(fragment)};
+            List<ProductWithCategory> scanResults = productDao.queryProductsWithCategory(
+                    new SimpleSQLiteQuery(scanQuery, scanArgs));
+            scanNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            assertThat(trigramResults.size(), is(scanResults.size()));
+        }
+
+        Log.i(TAG, String.format("%d barcode searches in %d products: %.1fms through trigrams, %.1fms scanning (%.1fx)",
+                SEARCH_COUNT, productCount, trigramNanos / 1e6, scanNanos / 1e6, (double) scanNanos / trigramNanos));
+    }
+
+    // Inserts the products without going through ProductDao.insertMultiple(), which writes each
+    // product's trigrams one by one, then fills in the trigrams in one statement as MIGRATION_3_4 does.
+    private void insertProducts(int productCount) {
+        db.runInTransaction(() -> {
+            Product[] products = new Product[INSERT_BATCH_SIZE];
+            for (int start = 0; start < productCount; start += INSERT_BATCH_SIZE) {
+                for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                    int n = start + i;
+                    products[i] = new Product(n + 1, "Product " + n, createBarcode(n), new Price(n % 50, n % 100),
+                            n % 4, null);
+                }
+                productDao.insertRows(products);
+            }
+
+            db.getOpenHelper().getWritableDatabase().execSQL("WITH RECURSIVE grams(product_id, barcode, position) AS ("
+                    + "SELECT id, upper(barcode), 1 FROM products WHERE barcode IS NOT NULL AND length(barcode) >= 3 "
+                    + "UNION ALL "
+                    + "SELECT product_id, barcode, position + 1 FROM grams WHERE position + 3 <= length(barcode)) "
+                    + "INSERT OR IGNORE INTO barcode_trigrams (trigram, product_id) "
+                    + "SELECT substr(barcode, position, 3), product_id FROM grams");
+        });
+    }
+
+    // Spreads the products' numbers over the barcode's digits, so that barcodes don't all share
+    // the same long runs of zeros.
+    private String createBarcode(int n) {
+        return String.format("50%011d", (n * 7919L) % 100000000000L);
+    }
+}
@@ -50,6 +50,7 @@ public class CategoryDaoTest {
     public void createDb() {
         Context context = ApplicationProvider.getApplicationContext();
         db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
                 .allowMainThreadQueries()
                 .build();
         categoryDao = db.categoryDao();
@@ -48,6 +48,7 @@ public class CategoryRepositoryTest {
     public void createDb() {
         Context context = ApplicationProvider.getApplicationContext();
         db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
                 .allowMainThreadQueries()
                 .build();
         categoryDao = db.categoryDao();
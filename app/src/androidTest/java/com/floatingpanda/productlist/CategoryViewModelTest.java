@@ -46,6 +46,7 @@ public class CategoryViewModelTest {
     public void createDb() {
         Context context = ApplicationProvider.getApplicationContext();
         db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
                 .allowMainThreadQueries()
                 .build();
         categoryDao = db.categoryDao();
@@ -0,0 +1,327 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.exportimport.BackupInfo;
+import com.floatingpanda.productlist.exportimport.DatabaseFileBackup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseFileBackupTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private Context context;
+    private AppDatabase db;
+    private File databaseFile;
+    private File backupFile;
+
+    @Before
+    public void createDb() {
+        context = ApplicationProvider.getApplicationContext();
+        databaseFile = new File(context.getCacheDir(), "backup_test.db");
+        backupFile = new File(context.getCacheDir(), "backup_test_copy.db");
+        context.deleteDatabase(databaseFile.getPath());
+        context.deleteDatabase(backupFile.getPath());
+
+        db = Room.databaseBuilder(context, AppDatabase.class, databaseFile.getPath())
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .allowMainThreadQueries()
+                .build();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+    }
+
+    @After
+    public void closeDb() {
+        db.close();
+        context.deleteDatabase(databaseFile.getPath());
+        context.deleteDatabase(backupFile.getPath());
+    }
+
+    @Test
+    public void backUpCopiesDatabaseWhileItIsOpen() throws IOException, InterruptedException {
+        BackupInfo backup;
+        try (FileChannel channel = new RandomAccessFile(backupFile, "rw").getChannel()) {
+            backup = new DatabaseFileBackup(db).backUp(channel);
+        }
+
+        assertThat(backup.getSizeBytes(), is(backupFile.length()));
+
+        // The database carries on working, and later writes aren't in the backup
+        db.productDao().insert(TestData.PRODUCT_TO_ADD_2);
+        assertThat(LiveDataTestUtil.getValue(db.productDao().getAll()).size(), is(TestData.PRODUCTS.size() + 1));
+
+        AppDatabase backupDb = Room.databaseBuilder(context, AppDatabase.class, backupFile.getPath())
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        try {
+            List<Category> categories = LiveDataTestUtil.getValue(backupDb.categoryDao().getAll());
+            assertThat(categories, is(TestData.CATEGORIES));
+
+            List<Product> products = LiveDataTestUtil.getValue(backupDb.productDao().getAll());
+            assertThat(products, is(TestData.PRODUCTS));
+        } finally {
+            backupDb.close();
+        }
+    }
+
+    @Test
+    public void writesCarryOnWhileTheFileIsCopiedAndAreLeftOutOfTheBackup() throws IOException, InterruptedException {
+        boolean[] written = new boolean[1];
+        BackupInfo backup;
+        try (FileChannel channel = new RandomAccessFile(backupFile, "rw").getChannel()) {
+            // Writes a product part way through the copy
+            FileChannel target = new DelegatingFileChannel(channel) {
+                @Override
+                public int write(ByteBuffer source) throws IOException {
+                    if (!written[0]) {
+                        written[0] = writeOnAnotherThread(() -> db.productDao().insert(TestData.PRODUCT_TO_ADD_1));
+                    }
+                    return super.write(source);
+                }
+            };
+            backup = new DatabaseFileBackup(db).backUp(target);
+        }
+
+        // The write didn't wait for the copy to finish
+        assertThat(written[0], is(true));
+        assertThat(backup.getSizeBytes(), is(backupFile.length()));
+        assertThat(LiveDataTestUtil.getValue(db.productDao().getAll()).size(), is(TestData.PRODUCTS.size() + 1));
+
+        // The backup is the database as it was when the copy started
+        assertBackupHoldsTestData(backupFile);
+    }
+
+    @Test
+    public void restoreReplacesTheDatabaseWithTheBackup() throws IOException, InterruptedException {
+        File originalFile = new File(context.getCacheDir(), "backup_test_original.db");
+        AppDatabase appDb = AppDatabase.getDatabase(context);
+
+        // The app's own database is replaced, so it's backed up first and put back afterwards.
+        try (FileChannel channel = new RandomAccessFile(originalFile, "rw").getChannel()) {
+            new DatabaseFileBackup(appDb).backUp(channel);
+        }
+        try {
+            try (FileChannel channel = new RandomAccessFile(backupFile, "rw").getChannel()) {
+                new DatabaseFileBackup(db).backUp(channel);
+            }
+            try (FileChannel channel = new RandomAccessFile(backupFile, "r").getChannel()) {
+                DatabaseFileBackup.restore(context, channel);
+            }
+
+            AppDatabase restoredDb = AppDatabase.getDatabase(context);
+            assertThat(appDb.isOpen(), is(false));
+            assertThat(restoredDb, is(not(sameInstance(appDb))));
+            assertThat(LiveDataTestUtil.getValue(restoredDb.categoryDao().getAll()), is(TestData.CATEGORIES));
+            assertThat(LiveDataTestUtil.getValue(restoredDb.productDao().getAll()), is(TestData.PRODUCTS));
+        } finally {
+            try (FileChannel channel = new RandomAccessFile(originalFile, "r").getChannel()) {
+                DatabaseFileBackup.restore(context, channel);
+            }
+            originalFile.delete();
+        }
+    }
+
+    @Test
+    public void corruptBackupIsNotRestored() throws IOException, InterruptedException {
+        try (FileOutputStream out = new FileOutputStream(backupFile)) {
+            byte[] page = new byte[4096];
+            Arrays.fill(page, (byte) 'x');
+            out.write(page);
+        }
+
+        assertRestoreFailsAndLeavesDatabase(backupFile);
+    }
+
+    @Test
+    public void backupFromNewerVersionIsNotRestored() throws IOException, InterruptedException {
+        try (FileChannel channel = new RandomAccessFile(backupFile, "rw").getChannel()) {
+            new DatabaseFileBackup(db).backUp(channel);
+        }
+        SQLiteDatabase backup = SQLiteDatabase.openDatabase(backupFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            backup.setVersion(backup.getVersion() + 1);
+        } finally {
+            backup.close();
+        }
+
+        assertRestoreFailsAndLeavesDatabase(backupFile);
+    }
+
+    @Test
+    public void inMemoryDatabaseIsNotBackedUp() throws IOException {
+        AppDatabase inMemoryDb = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+
+        try (FileChannel channel = new RandomAccessFile(backupFile, "rw").getChannel()) {
+            new DatabaseFileBackup(inMemoryDb).backUp(channel);
+            fail("Expected an IOException for an in-memory database.");
+        } catch (IOException expected) {
+        } finally {
+            inMemoryDb.close();
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void assertBackupHoldsTestData(File file) throws InterruptedException {
+        AppDatabase backupDb = Room.databaseBuilder(context, AppDatabase.class, file.getPath())
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        try {
+            assertThat(LiveDataTestUtil.getValue(backupDb.categoryDao().getAll()), is(TestData.CATEGORIES));
+            assertThat(LiveDataTestUtil.getValue(backupDb.productDao().getAll()), is(TestData.PRODUCTS));
+        } finally {
+            backupDb.close();
+        }
+    }
+
+    // Checks restoring the file fails, and the app's database is still open with the same products.
+    private void assertRestoreFailsAndLeavesDatabase(File file) throws IOException, InterruptedException {
+        AppDatabase appDb = AppDatabase.getDatabase(context);
+        List<Product> products = LiveDataTestUtil.getValue(appDb.productDao().getAll());
+
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            DatabaseFileBackup.restore(context, channel);
+            fail("Expected an IOException for a backup which can't be restored.");
+        } catch (IOException expected) {
+        }
+
+        assertThat(AppDatabase.getDatabase(context), is(sameInstance(appDb)));
+        assertThat(appDb.isOpen(), is(true));
+        assertThat(LiveDataTestUtil.getValue(appDb.productDao().getAll()), is(products));
+    }
+
+    // Runs the write on another thread and returns whether it finished within 5 seconds.
+    private boolean writeOnAnotherThread(Runnable write) {
+        Thread writer = new Thread(write);
+        writer.start();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !writer.isAlive();
+    }
+
+    // Passes everything on to another channel, so tests can step in part way through a copy.
+    private static class DelegatingFileChannel extends FileChannel {
+        private final FileChannel channel;
+
+        DelegatingFileChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException { return channel.read(dst); }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException { return channel.write(src); }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException { return channel.position(); }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException { return channel.size(); }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException { channel.force(metaData); }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException { return channel.read(dst, position); }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException { return channel.write(src, position); }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException { channel.close(); }
+    }
+}
@@ -0,0 +1,101 @@
+package com.floatingpanda.productlist;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.sorting.IncrementalSortedList;
+import com.floatingpanda.productlist.sorting.ProductComparators;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares keeping a 50,000 product list sorted through an IncrementalSortedList, as one product at
+ * a time is edited, against sorting the whole list again after every edit. The timings are written
+ * to logcat under the "Benchmark" tag rather than asserted on, as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IncrementalSortBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int PRODUCT_COUNT = 50000;
+    private static final int EDIT_COUNT = 100;
+    // As ProductSorter allows.
+    private static final int MAX_CHANGES = 64;
+
+    private static final Category CATEGORY = new Category(1, "Bathroom");
+
+    @Test
+    public void singleEditsAgainstFullSortsByPrice() {
+        benchmark(OrderByEnum.PRICE_ASC);
+    }
+
+    @Test
+    public void singleEditsAgainstFullSortsByBarcode() {
+        benchmark(OrderByEnum.BARCODE_DESC);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void benchmark(OrderByEnum orderBy) {
+        Comparator<ProductWithCategory> comparator = ProductComparators.forOrdering(orderBy);
+
+        // Room emits unsorted lists in id order.
+        List<ProductWithCategory> products = new ArrayList<>(PRODUCT_COUNT);
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            products.add(createProduct(i, i));
+        }
+
+        List<ProductWithCategory> sorted = new ArrayList<>(products);
+        sorted.sort(comparator);
+        IncrementalSortedList incrementalSortedList = new IncrementalSortedList(sorted, comparator);
+
+        long incrementalNanos = 0;
+        long fullSortNanos = 0;
+        for (int edit = 0; edit < EDIT_COUNT; edit++) {
+            // Moves a product from one end of the list towards the other.
+            int index = (int) ((edit * 7919L) % PRODUCT_COUNT);
+            products = new ArrayList<>(products);
+            products.set(index, createProduct(index, PRODUCT_COUNT - index + edit));
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            assertTrue(incrementalSortedList.applyChanges(products, MAX_CHANGES));
+            List<ProductWithCategory> incrementallySorted = incrementalSortedList.snapshot();
+            incrementalNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            List<ProductWithCategory> fullySorted = new ArrayList<>(products);
+            fullySorted.sort(comparator);
+            fullSortNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            assertThat(incrementallySorted, is(fullySorted));
+        }
+
+        Log.i(TAG, String.format("%d single product edits of %d products %s: %.1fms applied incrementally, "
+                        + "%.1fms fully re-sorted (%.1fx)",
+                EDIT_COUNT, PRODUCT_COUNT, orderBy, incrementalNanos / 1e6, fullSortNanos / 1e6,
+                (double) fullSortNanos / incrementalNanos));
+    }
+
+    // Spreads the values products are sorted by so they aren't in id order.
+    private ProductWithCategory createProduct(int index, int value) {
+        long spread = (value * 7919L) % PRODUCT_COUNT;
+        return new ProductWithCategory(new Product(index + 1, "Product " + index, String.format("50%011d", spread),
+                new Price((int) (spread / 100), (int) (spread % 100)), 1, "None"), CATEGORY);
+    }
+}
@@ -0,0 +1,106 @@
+package com.floatingpanda.productlist;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.sorting.NameSortKeyCache;
+import com.floatingpanda.productlist.sorting.ProductComparators;
+import com.floatingpanda.productlist.sorting.ProductSorter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares re-sorting a product list by name on the keys cached in a NameSortKeyCache against
+ * sorting it by comparing the names themselves every time, as the list is flipped between NAME_ASC
+ * and NAME_DESC. The timings are written to logcat under the "Benchmark" tag rather than asserted
+ * on, as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NameSortBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int PRODUCT_COUNT = 50000;
+    private static final int SORT_COUNT = 10;
+
+    private static final Executor DIRECT = Runnable::run;
+    private static final Category CATEGORY = new Category(1, "Bathroom");
+
+    @Test
+    public void cachedKeysAgainstNameComparisons() {
+        List<ProductWithCategory> products = createProducts();
+
+        long comparisonNanos = 0;
+        List<List<ProductWithCategory>> comparedSorts = new ArrayList<>();
+        for (int i = 0; i < SORT_COUNT; i++) {
+            Comparator<ProductWithCategory> comparator = ProductComparators.forOrdering(getOrdering(i));
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            List<ProductWithCategory> sorted = new ArrayList<>(products);
+            sorted.sort(comparator);
+            comparisonNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+            comparedSorts.add(sorted);
+        }
+
+        NameSortKeyCache cache = new NameSortKeyCache();
+        ProductSorter sorter = new ProductSorter(DIRECT, DIRECT, cache);
+        List<List<ProductWithCategory>> keyedSorts = new ArrayList<>();
+
+        // The first sort creates every key, later sorts reuse them.
+        long start = SystemClock.elapsedRealtimeNanos();
+        sorter.sort(products, getOrdering(0), keyedSorts::add);
+        long firstKeyedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 1; i < SORT_COUNT; i++) {
+            sorter.sort(products, getOrdering(i), keyedSorts::add);
+        }
+        long cachedKeyedNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertThat(keyedSorts, is(comparedSorts));
+        assertThat(cache.getMisses(), is((long) PRODUCT_COUNT));
+
+        long keyedNanos = firstKeyedNanos + cachedKeyedNanos;
+        Log.i(TAG, String.format("%d name sorts of %d products: %.1fms on cached keys (%.1fms creating them in the "
+                        + "first sort), %.1fms comparing names (%.1fx)",
+                SORT_COUNT, PRODUCT_COUNT, keyedNanos / 1e6, firstKeyedNanos / 1e6, comparisonNanos / 1e6,
+                (double) comparisonNanos / keyedNanos));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private OrderByEnum getOrdering(int sort) {
+        return sort % 2 == 0 ? OrderByEnum.NAME_ASC : OrderByEnum.NAME_DESC;
+    }
+
+    // Names share long prefixes, mix cases and repeat, as they do in a real catalogue.
+    private List<ProductWithCategory> createProducts() {
+        String[] prefixes = {"Bath ", "bath ", "Bathroom ", "Basin ", "Éclair ", "Sink ", "sink "};
+
+        List<ProductWithCategory> products = new ArrayList<>(PRODUCT_COUNT);
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            long spread = (i * 7919L) % PRODUCT_COUNT;
+            String name = prefixes[(int) (spread % prefixes.length)] + "product " + (spread / 3);
+            products.add(new ProductWithCategory(
+                    new Product(i + 1, name, String.format("50%011d", i), new Price(1, 0), 1, "None"), CATEGORY));
+        }
+
+        return products;
+    }
+}
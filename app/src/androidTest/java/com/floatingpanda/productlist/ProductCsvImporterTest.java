@@ -0,0 +1,153 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.exportimport.ImportProgress;
+import com.floatingpanda.productlist.exportimport.ProductCsvImporter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductCsvImporterTest {
+    private static final String CSV = "Name,Barcode,Price,Category,Notes,Supplier code\n"
+            + "Soap,5000000000001,1.99,bathroom,Lavender,S1\n"
+            + "Duvet,5000000000002,£25,Bedding,,S2\n"
+            + ",5000000000003,1.00,Car,,S3\n"
+            + "Wax,5000000000004,abc,Car,,S4\n"
+            + "Wiper,5000000000005,4.5,Garden,,S5\n"
+            + "Towel,5000000000006,,,\"Big, fluffy\",S6\n";
+
+    private AppDatabase db;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void importProductsSavesValidRowsInBatches() throws IOException {
+        List<ImportProgress> progressUpdates = new ArrayList<>();
+
+        ImportProgress progress = new ProductCsvImporter(db, 2)
+                .importProducts(createChannel(CSV), CSV.getBytes(StandardCharsets.UTF_8).length, progressUpdates::add);
+
+        assertThat(progress.getRowsRead(), is(6L));
+        assertThat(progress.getRowsImported(), is(4L));
+        assertThat(progress.getRowsSkipped(), is(2L));
+        assertThat(progress.isFinished(), is(true));
+        assertThat(progress.getFractionDone(), is(1.0));
+
+        // One update for each full batch, then one when finished
+        assertThat(progressUpdates.size(), is(3));
+        assertThat(progressUpdates.get(0).getRowsImported(), is(2L));
+        assertThat(progressUpdates.get(1).getRowsImported(), is(4L));
+        assertThat(progressUpdates.get(2).isFinished(), is(true));
+
+        Map<String, List<ProductWithCategory>> products = db.productDao().getProductsWithCategoryByBarcodes(
+                Arrays.asList("5000000000001", "5000000000002", "5000000000003", "5000000000004",
+                        "5000000000005", "5000000000006"));
+
+        assertThat(products.size(), is(4));
+
+        // Category names are matched ignoring case
+        ProductWithCategory soap = products.get("5000000000001").get(0);
+        assertThat(soap.getProduct().getName(), is("Soap"));
+        assertThat(soap.getProduct().getPrice(), is(new Price(1, 99)));
+        assertThat(soap.getProduct().getCategoryId(), is(TestData.CATEGORY_1.getId()));
+        assertThat(soap.getProduct().getNotes(), is("Lavender"));
+
+        assertThat(products.get("5000000000002").get(0).getProduct().getPrice(), is(new Price(25, 0)));
+
+        // Categories which don't exist yet are added
+        ProductWithCategory wiper = products.get("5000000000005").get(0);
+        assertThat(wiper.getCategory().getName(), is("Garden"));
+
+        ProductWithCategory towel = products.get("5000000000006").get(0);
+        assertThat(towel.getProduct().getPrice(), is(new Price(0, 0)));
+        assertThat(towel.getProduct().getCategoryId(), is(0L));
+        assertThat(towel.getProduct().getNotes(), is("Big, fluffy"));
+    }
+
+    @Test
+    public void failedBatchLeavesNoCategoriesBehind() throws IOException {
+        String csv = "Name,Barcode,Price,Category\n"
+                + "Rake,5000000000011,3.00,Garden\n"
+                + "Wiper,5000000000012,4.50,Garden\n";
+
+        // Makes the batch fail after its category has been added
+        db.getOpenHelper().getWritableDatabase().execSQL("CREATE TEMP TRIGGER fail_wiper BEFORE INSERT ON products "
+                + "WHEN NEW.name = 'Wiper' BEGIN SELECT RAISE(ABORT, 'Wiper'); END");
+
+        try {
+            new ProductCsvImporter(db).importProducts(createChannel(csv), -1, null);
+            fail("Expected the batch to fail.");
+        } catch (SQLiteException expected) {
+        }
+
+        assertThat(db.categoryDao().queryAll().size(), is(TestData.CATEGORIES.size()));
+        assertThat(db.productDao().getProductsWithCategoryByBarcodes(
+                Arrays.asList("5000000000011", "5000000000012")).isEmpty(), is(true));
+
+        db.getOpenHelper().getWritableDatabase().execSQL("DROP TRIGGER fail_wiper");
+        new ProductCsvImporter(db).importProducts(createChannel(csv), -1, null);
+
+        // Both products are given the one category the batch added
+        Map<String, List<ProductWithCategory>> products = db.productDao().getProductsWithCategoryByBarcodes(
+                Arrays.asList("5000000000011", "5000000000012"));
+
+        assertThat(db.categoryDao().queryAll().size(), is(TestData.CATEGORIES.size() + 1));
+        assertThat(products.get("5000000000011").get(0).getCategory().getName(), is("Garden"));
+        assertThat(products.get("5000000000012").get(0).getProduct().getCategoryId(),
+                is(products.get("5000000000011").get(0).getProduct().getCategoryId()));
+    }
+
+    @Test(expected = IOException.class)
+    public void importProductsWithoutNameColumnFails() throws IOException {
+        String csv = "Barcode,Price\n5000000000001,1.99\n";
+
+        new ProductCsvImporter(db).importProducts(createChannel(csv), -1, null);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private ReadableByteChannel createChannel(String csv) {
+        return Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -1,6 +1,7 @@
 package com.floatingpanda.productlist;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.util.Log;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
@@ -37,6 +38,7 @@ import org.junit.runner.RunWith;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
@@ -54,6 +56,7 @@ public class ProductDaoTest {
     public void createDb() {
         Context context = ApplicationProvider.getApplicationContext();
         db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
                 .allowMainThreadQueries()
                 .build();
         categoryDao = db.categoryDao();
@@ -322,6 +325,40 @@ public class ProductDaoTest {
         assertTrue(products.isEmpty());
     }
 
+    @Test
+    public void insertProductIndexesBarcodeTrigrams() {
+        productDao.insert(TestData.PRODUCT_4);
+
+        // Product 4's barcode has 11 distinct trigrams
+        assertThat(countBarcodeTrigrams(TestData.PRODUCT_4.getId()), is(11));
+    }
+
+    @Test
+    public void updateProductReindexesBarcodeTrigrams() {
+        productDao.insert(TestData.PRODUCT_4);
+
+        Product newProduct = new Product(TestData.PRODUCT_4.getId(), TestData.PRODUCT_4.getName(), "55555",
+                TestData.PRODUCT_4.getPrice(), TestData.PRODUCT_4.getCategoryId(), TestData.PRODUCT_4.getNotes());
+        productDao.update(newProduct);
+
+        // The new barcode only has 1 distinct trigram, 555
+        assertThat(countBarcodeTrigrams(TestData.PRODUCT_4.getId()), is(1));
+    }
+
+    @Test
+    public void deleteProductRemovesBarcodeTrigrams() {
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        productDao.delete(TestData.PRODUCT_4);
+
+        assertThat(countBarcodeTrigrams(TestData.PRODUCT_4.getId()), is(0));
+        assertThat(countBarcodeTrigrams(TestData.PRODUCT_1.getId()), is(not(0)));
+
+        productDao.deleteAll();
+
+        assertThat(countBarcodeTrigrams(TestData.PRODUCT_1.getId()), is(0));
+    }
+
     @Test
     public void getAllProductsWithCategory() throws InterruptedException {
         categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
@@ -426,6 +463,37 @@ public class ProductDaoTest {
         assertThat(productsWithCategories.size(), is(fullBarcodeListSize));
     }
 
+    @Test
+    public void getProductsWithCategoryByBarcodes() {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        // More barcodes than one query can take, with duplicates, a null and barcodes no product has
+        List<String> barcodes = new ArrayList<>();
+        for (int i = 0; i < ProductDao.MAX_QUERY_PARAMETERS * 2; i++) {
+            barcodes.add(String.format("50%011d", i));
+        }
+        barcodes.add(TestData.PRODUCT_1.getBarcode());
+        barcodes.add(TestData.PRODUCT_1.getBarcode());
+        barcodes.add(null);
+        barcodes.add(TestData.PRODUCT_2.getBarcode());
+
+        Map<String, List<ProductWithCategory>> productsByBarcode = productDao.getProductsWithCategoryByBarcodes(barcodes);
+
+        assertThat(productsByBarcode.size(), is(2));
+
+        List<ProductWithCategory> productsWithCategories = productsByBarcode.get(TestData.PRODUCT_1.getBarcode());
+        assertThat(productsWithCategories.size(), is(1));
+        assertThat(productsWithCategories.get(0), is(TestData.PRODUCT_1_WITH_CATEGORY));
+
+        // Products 2 and 5 share a barcode
+        productsWithCategories = productsByBarcode.get(TestData.PRODUCT_2.getBarcode());
+        assertThat(productsWithCategories.size(), is(2));
+        assertThat(productsWithCategories.get(0), is(TestData.PRODUCT_2_WITH_CATEGORY));
+        assertThat(productsWithCategories.get(1).getProduct(), is(TestData.PRODUCT_5));
+        assertNull(productsWithCategories.get(1).getCategory());
+    }
+
     // TESTS OF GENERAL PURPOSE SEARCH FUNCTION //
 
     @Test
@@ -897,8 +965,15 @@ public class ProductDaoTest {
 
     }
 
+    private int countBarcodeTrigrams(long productId) {
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM barcode_trigrams WHERE product_id = ?", new Object[] {productId})) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
     private SimpleSQLiteQuery createQuery(String name, String barcode, long categoryId, int lowerPrice, int higherPrice) {
-        String queryString = "SELECT * FROM products";
+        String queryString = ProductDao.PRODUCT_WITH_CATEGORY_QUERY;
 
         List<Object> args = new ArrayList<>();
 
@@ -906,7 +981,7 @@ public class ProductDaoTest {
         boolean whereStarted = false;
 
         if (name != null && !name.trim().isEmpty()) {
-            queryString += " WHERE Upper(name) LIKE '%' || Upper(?) || '%'";
+            queryString += " WHERE Upper(products.name) LIKE '%' || Upper(?) || '%'";
             whereStarted = true;
             args.add(name);
         }
@@ -919,7 +994,7 @@ public class ProductDaoTest {
                 queryString += " AND";
             }
 
-            queryString += " barcode LIKE '%' || ? || '%'";
+            queryString += " products.barcode LIKE '%' || ? || '%'";
             args.add(barcode);
         }
 
@@ -931,7 +1006,7 @@ public class ProductDaoTest {
                 queryString += " AND";
             }
 
-            queryString += " category_id LIKE ?";
+            queryString += " products.category_id = ?";
             args.add(categoryId);
         }
 
@@ -943,7 +1018,7 @@ public class ProductDaoTest {
                 queryString += " AND";
             }
 
-            queryString += " price >= ?";
+            queryString += " products.price >= ?";
 
             args.add(lowerPrice);
         }
@@ -956,7 +1031,7 @@ public class ProductDaoTest {
                 queryString += " AND";
             }
 
-            queryString += " price <= ?";
+            queryString += " products.price <= ?";
 
             args.add(higherPrice);
         }
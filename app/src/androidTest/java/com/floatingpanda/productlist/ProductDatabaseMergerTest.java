@@ -0,0 +1,228 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.exportimport.MergeInfo;
+import com.floatingpanda.productlist.exportimport.ProductDatabaseMerger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductDatabaseMergerTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private Context context;
+    private AppDatabase db;
+    private File databaseFile;
+    private File sourceFile;
+
+    @Before
+    public void createDb() {
+        context = ApplicationProvider.getApplicationContext();
+        // Merges run on a connection of their own, so the database has to be in a file.
+        databaseFile = new File(context.getCacheDir(), "merge_target_test.db");
+        context.deleteDatabase(databaseFile.getPath());
+        db = Room.databaseBuilder(context, AppDatabase.class, databaseFile.getPath())
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .allowMainThreadQueries()
+                .build();
+        sourceFile = new File(context.getCacheDir(), "merge_source_test.db");
+        context.deleteDatabase(sourceFile.getPath());
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+    }
+
+    @After
+    public void closeDb() {
+        db.close();
+        context.deleteDatabase(databaseFile.getPath());
+        context.deleteDatabase(sourceFile.getPath());
+    }
+
+    @Test
+    public void mergeAddsNewProductsAndUpdatesMatchingOnes() throws IOException, InterruptedException {
+        createSourceDatabase();
+
+        MergeInfo merge = new ProductDatabaseMerger(db).merge(sourceFile);
+
+        assertThat(merge.getCategoriesAdded(), is(1));
+        assertThat(merge.getProductsAdded(), is(2));
+        assertThat(merge.getProductsUpdated(), is(1));
+
+        List<Category> categories = LiveDataTestUtil.getValue(db.categoryDao().getAll());
+        assertThat(categories.size(), is(4));
+
+        // Matched by barcode and moved to the Garden category, which was added
+        List<ProductWithCategory> taps = db.productDao().queryProductsWithCategoryByExactBarcode(
+                TestData.PRODUCT_1.getBarcode());
+        assertThat(taps.size(), is(1));
+        assertThat(taps.get(0).getProduct().getId(), is(TestData.PRODUCT_1.getId()));
+        assertThat(taps.get(0).getProduct().getPrice(), is(new Price(6, 49)));
+        assertThat(taps.get(0).getCategory().getName(), is("Garden"));
+
+        // Added, in the existing Bathroom category even though its id and case differ
+        List<ProductWithCategory> soap = db.productDao().queryProductsWithCategoryByExactBarcode("5000000000017");
+        assertThat(soap.size(), is(1));
+        assertThat(soap.get(0).getCategory().getId(), is(TestData.CATEGORY_1.getId()));
+
+        // Added products can be found by part of their barcode, and in the barcode index
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM barcode_trigrams WHERE trigram = '017'", null)) {
+            cursor.moveToFirst();
+            assertThat(cursor.getInt(0), is(1));
+        }
+        assertThat(db.getBarcodeIndex().getProductIds("5000000000017").length, is(1));
+
+        List<Product> products = LiveDataTestUtil.getValue(db.productDao().getAll());
+        assertThat(products.size(), is(TestData.PRODUCTS.size() + 2));
+    }
+
+    @Test
+    public void mergingTheSameDatabaseAgainChangesNothing() throws IOException {
+        createSourceDatabase();
+        new ProductDatabaseMerger(db).merge(sourceFile);
+
+        int changes = db.changeLogDao().countChanges();
+        MergeInfo merge = new ProductDatabaseMerger(db).merge(sourceFile);
+
+        assertThat(merge.getCategoriesAdded(), is(0));
+        assertThat(merge.getProductsAdded(), is(0));
+        assertThat(merge.getProductsUpdated(), is(0));
+        assertThat(db.changeLogDao().countChanges(), is(changes));
+    }
+
+    @Test
+    public void mergeLetsRoomCarryOnReadingAndRefreshesItsQueries() throws IOException, InterruptedException {
+        createSourceDatabase();
+
+        List<List<Product>> observed = new ArrayList<>();
+        LiveData<List<Product>> products = db.productDao().getAll();
+        Observer<List<Product>> observer = observed::add;
+        products.observeForever(observer);
+
+        AtomicBoolean merging = new AtomicBoolean(true);
+        AtomicInteger reads = new AtomicInteger();
+        List<Throwable> readErrors = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            do {
+                try {
+                    db.productDao().queryProductsWithCategoryByExactBarcode(TestData.PRODUCT_3.getBarcode());
+                    reads.incrementAndGet();
+                } catch (RuntimeException e) {
+                    readErrors.add(e);
+                }
+            } while (merging.get());
+        });
+        reader.start();
+
+        try {
+            new ProductDatabaseMerger(db).merge(sourceFile);
+        } finally {
+            merging.set(false);
+            reader.join();
+            products.removeObserver(observer);
+        }
+
+        assertThat(readErrors.isEmpty(), is(true));
+        assertThat(reads.get() > 0, is(true));
+
+        // Room's connection keeps its write-ahead log
+        try (Cursor cursor = db.query("PRAGMA journal_mode", null)) {
+            cursor.moveToFirst();
+            assertThat(cursor.getString(0).toLowerCase(Locale.ROOT), is("wal"));
+        }
+
+        // The LiveData query saw the merged products
+        assertThat(observed.get(observed.size() - 1).size(), is(TestData.PRODUCTS.size() + 2));
+    }
+
+    @Test
+    public void mergeIntoInMemoryDatabaseFails() {
+        AppDatabase inMemoryDb = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        createSourceDatabase();
+
+        try {
+            new ProductDatabaseMerger(inMemoryDb).merge(sourceFile);
+            fail("Expected an IOException for an in-memory database.");
+        } catch (IOException expected) {
+        } finally {
+            inMemoryDb.close();
+        }
+    }
+
+    @Test
+    public void fileWhichIsNotADatabaseIsNotMerged() throws IOException, InterruptedException {
+        try (FileOutputStream out = new FileOutputStream(sourceFile)) {
+            out.write("name,barcode\nSoap,5000000000017\n".getBytes("UTF-8"));
+        }
+
+        try {
+            new ProductDatabaseMerger(db).merge(sourceFile);
+            fail("Expected an IOException for a file which isn't a database.");
+        } catch (IOException expected) {
+        }
+
+        // The catalogue is left as it was, and the database still works
+        List<Product> products = LiveDataTestUtil.getValue(db.productDao().getAll());
+        assertThat(products, is(TestData.PRODUCTS));
+        db.productDao().insert(TestData.PRODUCT_TO_ADD_2);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Creates a product database file with a new category, a category which differs only in case
+    // from one in db, an update to PRODUCT_1 and two new products, one without a barcode.
+    private void createSourceDatabase() {
+        AppDatabase sourceDb = Room.databaseBuilder(context, AppDatabase.class, sourceFile.getPath())
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+
+        long gardenId = sourceDb.categoryDao().insert(new Category("Garden"));
+        long bathroomId = sourceDb.categoryDao().insert(new Category("bathroom"));
+
+        sourceDb.productDao().insert(new Product(0, TestData.PRODUCT_1.getName(), TestData.PRODUCT_1.getBarcode(),
+                new Price(6, 49), gardenId, TestData.PRODUCT_1.getNotes()));
+        sourceDb.productDao().insert(new Product(0, "Soap", "5000000000017", new Price(1, 20), bathroomId, null));
+        sourceDb.productDao().insert(new Product(0, "Hose", null, new Price(15, 0), gardenId, null));
+
+        sourceDb.close();
+    }
+}
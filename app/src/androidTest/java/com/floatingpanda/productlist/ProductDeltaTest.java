@@ -0,0 +1,231 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.ChangeLogDao;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.exportimport.DeltaInfo;
+import com.floatingpanda.productlist.exportimport.ProductDeltaExporter;
+import com.floatingpanda.productlist.exportimport.ProductDeltaImporter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductDeltaTest {
+    private static final String TARGET = "test";
+
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private AppDatabase db;
+    private AppDatabase replicaDb;
+    private ChangeLogDao changeLogDao;
+    private ProductDeltaExporter exporter;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        replicaDb = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        changeLogDao = db.changeLogDao();
+        exporter = new ProductDeltaExporter(db);
+
+        // Both start with the same catalogue, as if the replica had been given a full export
+        for (AppDatabase database : Arrays.asList(db, replicaDb)) {
+            database.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+            database.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        }
+        exporter.resetWatermark(TARGET);
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+        replicaDb.close();
+    }
+
+    @Test
+    public void triggersLogEveryWrite() {
+        // Setting the watermark compacted the log, as every change had been exported
+        assertThat(changeLogDao.countChanges(), is(0));
+
+        db.productDao().update(new Product(TestData.PRODUCT_1.getId(), "Mixer taps", TestData.PRODUCT_1.getBarcode(),
+                TestData.PRODUCT_1_PRICE, 1, "None"));
+        db.productDao().delete(TestData.PRODUCT_2);
+        db.categoryDao().insert(new Category("Garden"));
+
+        assertThat(changeLogDao.countChanges(), is(3));
+    }
+
+    @Test
+    public void exportDeltaHoldsOnlyChangesSinceWatermark() throws IOException, InterruptedException {
+        makeChanges();
+
+        DeltaInfo exported = exportDelta(new ByteArrayOutputStream());
+
+        assertThat(exported.getCategoryCount(), is(2));
+        assertThat(exported.getProductCount(), is(3));
+        assertThat(exported.getDeletedCount(), is(2));
+
+        // The watermark moved, so the log was compacted and the next delta is empty
+        assertThat(changeLogDao.countChanges(), is(0));
+
+        DeltaInfo next = exportDelta(new ByteArrayOutputStream());
+
+        assertThat(next.getFromSeq(), is(exported.getToSeq()));
+        assertThat(next.getCategoryCount(), is(0));
+        assertThat(next.getProductCount(), is(0));
+    }
+
+    @Test
+    public void writesAreNotBlockedWhileDeltaIsWritten() throws IOException, InterruptedException {
+        // Enough products that the delta is written out before its products have all been read
+        Product[] products = new Product[2000];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product(100 + i, "Product " + i, String.format("50%011d", i), new Price(1, 0), 1,
+                    "Notes for product " + i);
+        }
+        db.productDao().insertMultiple(products);
+
+        boolean[] written = new boolean[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (size() == 0) {
+                    Thread writer = new Thread(() -> db.categoryDao().insert(new Category("Garden")));
+                    writer.start();
+                    try {
+                        writer.join(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written[0] = !writer.isAlive();
+                }
+                super.write(b, off, len);
+            }
+        };
+
+        DeltaInfo exported = exportDelta(out);
+
+        assertThat(written[0], is(true));
+        assertThat(exported.getProductCount(), is(products.length));
+
+        // The category was added after the delta's changes were read, so it's in the next delta
+        DeltaInfo next = exportDelta(new ByteArrayOutputStream());
+
+        assertThat(next.getCategoryCount(), is(1));
+    }
+
+    @Test
+    public void importDeltaReplaysChangesIdempotently() throws IOException, InterruptedException {
+        makeChanges();
+
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        exportDelta(delta);
+
+        ProductDeltaImporter importer = new ProductDeltaImporter(replicaDb);
+        importer.importDelta(new ByteArrayInputStream(delta.toByteArray()));
+
+        assertSameCatalogue();
+
+        // Replaying it again changes nothing
+        DeltaInfo replayed = importer.importDelta(new ByteArrayInputStream(delta.toByteArray()));
+
+        assertThat(replayed.getProductCount(), is(3));
+        assertSameCatalogue();
+    }
+
+    @Test
+    public void importMalformedDeltaLeavesCatalogueAsItWas() throws InterruptedException {
+        String delta = "{\"format\": \"productlist-delta\", \"version\": 1, \"products\": ["
+                + "{\"id\": 4, \"deleted\": true}, {\"id\": 5, \"name\": \"Sink\", \"price_pence\": \"lots\"}]}";
+        replicaDb.rebuildBarcodeIndex();
+
+        try {
+            new ProductDeltaImporter(replicaDb).importDelta(new ByteArrayInputStream(delta.getBytes(StandardCharsets.UTF_8)));
+            fail("Expected an IOException for the malformed delta.");
+        } catch (IOException expected) {
+        }
+
+        List<Product> products = LiveDataTestUtil.getValue(replicaDb.productDao().getAll());
+        assertThat(products, is(TestData.PRODUCTS));
+
+        // The deletion of product 4 was rolled back, so it never reached the barcode index.
+        assertThat(replicaDb.getBarcodeIndex().getProductIds(TestData.PRODUCT_1.getBarcode()),
+                is(new long[] {TestData.PRODUCT_1.getId()}));
+    }
+
+    @Test
+    public void compactKeepsOnlyLatestChangeToEachRow() {
+        for (int i = 0; i < 3; i++) {
+            db.productDao().update(new Product(TestData.PRODUCT_1.getId(), "Taps " + i, TestData.PRODUCT_1.getBarcode(),
+                    TestData.PRODUCT_1_PRICE, 1, "None"));
+        }
+        db.productDao().delete(TestData.PRODUCT_2);
+
+        assertThat(changeLogDao.countChanges(), is(4));
+        assertThat(changeLogDao.deleteSupersededChanges(), is(2));
+        assertThat(changeLogDao.countChanges(), is(2));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Updates product 1, deletes product 2, adds a product and a category and deletes category 3.
+    private void makeChanges() {
+        db.productDao().update(new Product(TestData.PRODUCT_1.getId(), "Mixer taps", TestData.PRODUCT_1.getBarcode(),
+                new Price(12, 50), 1, "Chrome"));
+        db.productDao().delete(TestData.PRODUCT_2);
+        long gardenId = db.categoryDao().insert(new Category("Garden"));
+        db.productDao().insert(new Product(20, "Hose", "5000000000020", new Price(9, 99), gardenId, null));
+        db.categoryDao().delete(TestData.CATEGORY_3);
+    }
+
+    private DeltaInfo exportDelta(ByteArrayOutputStream out) throws IOException {
+        return exporter.exportDelta(TARGET, out);
+    }
+
+    private void assertSameCatalogue() throws InterruptedException {
+        List<Category> categories = LiveDataTestUtil.getValue(db.categoryDao().getAll());
+        List<Category> replicaCategories = LiveDataTestUtil.getValue(replicaDb.categoryDao().getAll());
+        assertThat(replicaCategories, is(categories));
+
+        List<Product> products = LiveDataTestUtil.getValue(db.productDao().getAll());
+        List<Product> replicaProducts = LiveDataTestUtil.getValue(replicaDb.productDao().getAll());
+        assertThat(replicaProducts.size(), is(products.size()));
+        for (int i = 0; i < products.size(); i++) {
+            assertThat(replicaProducts.get(i).getId(), is(products.get(i).getId()));
+            assertThat(replicaProducts.get(i).getName(), is(products.get(i).getName()));
+            assertThat(replicaProducts.get(i).getPrice(), is(products.get(i).getPrice()));
+            assertThat(replicaProducts.get(i).getCategoryId(), is(products.get(i).getCategoryId()));
+        }
+    }
+}
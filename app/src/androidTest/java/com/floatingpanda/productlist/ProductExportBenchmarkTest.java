@@ -0,0 +1,96 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.exportimport.ExportFormat;
+import com.floatingpanda.productlist.exportimport.ExportProgress;
+import com.floatingpanda.productlist.exportimport.ProductExporter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Exports a catalogue of a million products in each format, to a file so the timings include real
+ * writes. The rows/s and MB/s are written to logcat under the "Benchmark" tag rather than asserted
+ * on, as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductExportBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int PRODUCT_COUNT = 1000000;
+    private static final int INSERT_BATCH_SIZE = 10000;
+
+    private AppDatabase db;
+    private File exportFile;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        exportFile = new File(context.getCacheDir(), "benchmark_export");
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+
+        // Only the products table is exported, so the barcode trigrams aren't written
+        db.runInTransaction(() -> {
+            Product[] products = new Product[INSERT_BATCH_SIZE];
+            for (int start = 0; start < PRODUCT_COUNT; start += INSERT_BATCH_SIZE) {
+                for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                    int n = start + i;
+                    products[i] = new Product(n + 1, "Product " + n, String.format("50%011d", n),
+                            new Price(n % 50, n % 100), n % 4, n % 10 == 0 ? "Notes, with a comma" : null);
+                }
+                db.productDao().insertRows(products);
+            }
+        });
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+        exportFile.delete();
+    }
+
+    @Test
+    public void exportMillionProducts() throws IOException {
+        export(ExportFormat.CSV, false);
+        export(ExportFormat.CSV, true);
+        export(ExportFormat.JSON, false);
+        export(ExportFormat.JSON, true);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void export(ExportFormat format, boolean gzip) throws IOException {
+        ExportProgress progress = new ProductExporter(db)
+                .exportProducts(new FileOutputStream(exportFile), format, gzip, null);
+
+        assertThat(progress.getRowsWritten(), is((long) PRODUCT_COUNT));
+
+        Log.i(TAG, String.format("Export to %s: %d rows in %.0fms, %.0f rows/s, %.1f MB/s, %.1f MB file",
+                format.getFileExtension(gzip), progress.getRowsWritten(), progress.getElapsedNanos() / 1e6,
+                progress.getRowsPerSecond(), progress.getMegabytesPerSecond(), exportFile.length() / 1e6));
+    }
+}
@@ -0,0 +1,146 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.exportimport.CsvReader;
+import com.floatingpanda.productlist.exportimport.ExportFormat;
+import com.floatingpanda.productlist.exportimport.ExportProgress;
+import com.floatingpanda.productlist.exportimport.ProductCsvFormat;
+import com.floatingpanda.productlist.exportimport.ProductExporter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductExporterTest {
+    private AppDatabase db;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void exportProductsToCsv() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportProgress progress = new ProductExporter(db).exportProducts(out, ExportFormat.CSV, false, null);
+
+        assertThat(progress.getRowsWritten(), is(5L));
+        assertThat(progress.getTotalRows(), is(5L));
+        assertThat(progress.getBytesWritten(), is((long) out.size()));
+        assertThat(progress.isFinished(), is(true));
+
+        CsvReader reader = new CsvReader(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+                StandardCharsets.UTF_8);
+        List<String> fields = new ArrayList<>();
+
+        reader.readRow(fields);
+        assertThat(fields, is(Arrays.asList(ProductCsvFormat.COLUMNS)));
+
+        // Products are exported in id order
+        reader.readRow(fields);
+        assertThat(fields, is(Arrays.asList("Taps", "1234567890123", "5.99", "Bathroom", "None")));
+
+        reader.readRow(fields);
+        reader.readRow(fields);
+        reader.readRow(fields);
+        // Products without a category have an empty category
+        assertThat(fields, is(Arrays.asList("Sweets", "0897621453857", "0.09", "", "Floopledoo")));
+
+        reader.readRow(fields);
+        assertThat(reader.readRow(fields), is(false));
+    }
+
+    @Test
+    public void exportProductsToGzippedJson() throws IOException, JSONException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new ProductExporter(db).exportProducts(out, ExportFormat.JSON, true, null);
+
+        JSONArray products = new JSONArray(gunzip(out.toByteArray()));
+
+        assertThat(products.length(), is(5));
+
+        JSONObject product = products.getJSONObject(2);
+        assertThat(product.getString(ProductCsvFormat.NAME), is(TestData.PRODUCT_3.getName()));
+        assertThat(product.getString(ProductCsvFormat.BARCODE), is(TestData.PRODUCT_3.getBarcode()));
+        assertThat(product.getDouble(ProductCsvFormat.PRICE), is(18.99));
+        assertThat(product.getString(ProductCsvFormat.CATEGORY), is(TestData.CATEGORY_2.getName()));
+        assertThat(product.getString(ProductCsvFormat.NOTES), is(TestData.PRODUCT_3.getNotes()));
+
+        assertThat(products.getJSONObject(3).isNull(ProductCsvFormat.CATEGORY), is(true));
+    }
+
+    @Test
+    public void exportReportsProgressForEachFullPage() throws IOException {
+        Product[] products = new Product[ProductExporter.PAGE_SIZE * 2];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product("Product " + i, TestData.PRODUCT_1_PRICE);
+        }
+        db.productDao().insertRows(products);
+
+        List<ExportProgress> progressUpdates = new ArrayList<>();
+        new ProductExporter(db).exportProducts(new ByteArrayOutputStream(), ExportFormat.CSV, false,
+                progressUpdates::add);
+
+        // Two full pages, then one with the rest, then one when finished
+        assertThat(progressUpdates.size(), is(3));
+        assertThat(progressUpdates.get(0).getRowsWritten(), is((long) ProductExporter.PAGE_SIZE));
+        assertThat(progressUpdates.get(1).getRowsWritten(), is(ProductExporter.PAGE_SIZE * 2L));
+        assertThat(progressUpdates.get(2).getRowsWritten(), is(ProductExporter.PAGE_SIZE * 2L + 5));
+        assertThat(progressUpdates.get(2).isFinished(), is(true));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private String gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
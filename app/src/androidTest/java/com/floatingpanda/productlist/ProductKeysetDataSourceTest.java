@@ -0,0 +1,189 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.paging.ItemKeyedDataSource;
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductKeysetDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductKeysetDataSourceTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    // Has no barcode, so barcode orderings have to page past a null.
+    private static final Product PRODUCT_WITHOUT_BARCODE = new Product(11, "Plunger", null, new Price(3, 50), 1, "None");
+
+    private AppDatabase db;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        db.productDao().insert(PRODUCT_WITHOUT_BARCODE);
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void pagingForwardsLoadsEveryProductOnceInOrderForEveryOrdering() {
+        for (OrderByEnum orderBy : OrderByEnum.values()) {
+            ProductKeysetDataSource dataSource = createDataSource(orderBy);
+
+            List<ProductWithCategory> loaded = new ArrayList<>(loadInitial(dataSource, null, 2));
+            List<ProductWithCategory> page = loaded;
+            while (!page.isEmpty()) {
+                page = loadAfter(dataSource, dataSource.getKey(page.get(page.size() - 1)), 2);
+                loaded.addAll(page);
+            }
+
+            assertThat(orderBy.name(), getIds(loaded), is(getIds(loadAllInOrder(orderBy))));
+        }
+    }
+
+    @Test
+    public void pagingBackwardsLoadsPreviousProductsInOrderForEveryOrdering() {
+        for (OrderByEnum orderBy : OrderByEnum.values()) {
+            ProductKeysetDataSource dataSource = createDataSource(orderBy);
+            List<ProductWithCategory> all = loadAllInOrder(orderBy);
+
+            // Two pages before the last product should be the four products before it.
+            ProductKeysetDataSource.Key lastKey = dataSource.getKey(all.get(all.size() - 1));
+            List<ProductWithCategory> loaded = new ArrayList<>(loadBefore(dataSource, lastKey, 2));
+            loaded.addAll(0, loadBefore(dataSource, dataSource.getKey(loaded.get(0)), 2));
+
+            assertThat(orderBy.name(), getIds(loaded), is(getIds(all.subList(all.size() - 5, all.size() - 1))));
+        }
+    }
+
+    @Test
+    public void loadInitialStartsFromRequestedKey() {
+        ProductKeysetDataSource dataSource = createDataSource(OrderByEnum.PRICE_DESC);
+        List<ProductWithCategory> all = loadAllInOrder(OrderByEnum.PRICE_DESC);
+
+        List<ProductWithCategory> loaded = loadInitial(dataSource, dataSource.getKey(all.get(2)), 3);
+
+        assertThat(getIds(loaded), is(getIds(all.subList(2, 5))));
+    }
+
+    @Test
+    public void dataSourceIsInvalidatedWhenProductsChange() {
+        ProductKeysetDataSource dataSource = createDataSource(OrderByEnum.NAME_ASC);
+        loadInitial(dataSource, null, 2);
+
+        assertFalse(dataSource.isInvalid());
+
+        // The instant task executor makes Room notify the data source before insert() returns.
+        db.productDao().insert(TestData.PRODUCT_TO_ADD_1);
+
+        assertTrue(dataSource.isInvalid());
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private ProductKeysetDataSource createDataSource(OrderByEnum orderBy) {
+        return new ProductKeysetDataSource(db, ProductDao.PRODUCT_WITH_CATEGORY_QUERY, new Object[0], orderBy);
+    }
+
+    // Loads every product in one query, ordered the way the data source should page through them.
+    private List<ProductWithCategory> loadAllInOrder(OrderByEnum orderBy) {
+        String[] orderByClauses = {
+                "products.id",
+                "products.name, products.id",
+                "products.name DESC, products.id DESC",
+                "products.barcode, products.id",
+                "products.barcode DESC, products.id DESC",
+                "products.price, products.id",
+                "products.price DESC, products.id DESC"
+        };
+
+        return db.productDao().queryProductsWithCategory(new SimpleSQLiteQuery(
+                ProductDao.PRODUCT_WITH_CATEGORY_QUERY + " ORDER BY " + orderByClauses[orderBy.ordinal()]));
+    }
+
+    private List<ProductWithCategory> loadInitial(ProductKeysetDataSource dataSource,
+                                                  ProductKeysetDataSource.Key key, int loadSize) {
+        List<ProductWithCategory> results = new ArrayList<>();
+        dataSource.loadInitial(new ItemKeyedDataSource.LoadInitialParams<>(key, loadSize, false),
+                new ItemKeyedDataSource.LoadInitialCallback<ProductWithCategory>() {
+                    @Override
+                    public void onResult(@NonNull List<ProductWithCategory> data, int position, int totalCount) {
+                        results.addAll(data);
+                    }
+
+                    @Override
+                    public void onResult(@NonNull List<ProductWithCategory> data) {
+                        results.addAll(data);
+                    }
+                });
+        return results;
+    }
+
+    private List<ProductWithCategory> loadAfter(ProductKeysetDataSource dataSource,
+                                                ProductKeysetDataSource.Key key, int loadSize) {
+        List<ProductWithCategory> results = new ArrayList<>();
+        dataSource.loadAfter(new ItemKeyedDataSource.LoadParams<>(key, loadSize), createLoadCallback(results));
+        return results;
+    }
+
+    private List<ProductWithCategory> loadBefore(ProductKeysetDataSource dataSource,
+                                                 ProductKeysetDataSource.Key key, int loadSize) {
+        List<ProductWithCategory> results = new ArrayList<>();
+        dataSource.loadBefore(new ItemKeyedDataSource.LoadParams<>(key, loadSize), createLoadCallback(results));
+        return results;
+    }
+
+    private ItemKeyedDataSource.LoadCallback<ProductWithCategory> createLoadCallback(List<ProductWithCategory> results) {
+        return new ItemKeyedDataSource.LoadCallback<ProductWithCategory>() {
+            @Override
+            public void onResult(@NonNull List<ProductWithCategory> data) {
+                results.addAll(data);
+            }
+        };
+    }
+
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
+}
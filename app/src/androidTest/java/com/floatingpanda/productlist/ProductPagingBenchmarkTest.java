@@ -0,0 +1,146 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductKeysetDataSource;
+import com.floatingpanda.productlist.repositories.SearchQueryTemplates;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares loading pages of products through ProductKeysetDataSource's keyset queries against the
+ * LIMIT/OFFSET queries they replaced, at the start, middle and end of a 100,000 product list. The
+ * timings are written to logcat under the "Benchmark" tag rather than asserted on, as they depend
+ * on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductPagingBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int PRODUCT_COUNT = 100000;
+    private static final int INSERT_BATCH_SIZE = 10000;
+    private static final int PAGE_SIZE = 50;
+    // How many pages are loaded at each depth, so each timing covers more than one query.
+    private static final int PAGES_PER_DEPTH = 10;
+    private static final double[] DEPTHS = {0.0, 0.5, 0.99};
+
+    private AppDatabase db;
+    private ProductDao productDao;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        productDao = db.productDao();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+
+        db.runInTransaction(() -> {
+            Product[] products = new Product[INSERT_BATCH_SIZE];
+            for (int start = 0; start < PRODUCT_COUNT; start += INSERT_BATCH_SIZE) {
+                for (int i = 0; i < INSERT_BATCH_SIZE; i++) {
+                    int n = start + i;
+                    // Spread the names and prices out so they aren't in id order.
+                    long spread = (n * 7919L) % PRODUCT_COUNT;
+                    products[i] = new Product(n + 1, "Product " + spread, String.format("50%011d", spread),
+                            new Price((int) (spread % 50), (int) (spread % 100)), n % 3 + 1, null);
+                }
+                productDao.insertRows(products);
+            }
+        });
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void keysetPagesAgainstOffsetPagesByName() {
+        benchmark(OrderByEnum.NAME_ASC);
+    }
+
+    @Test
+    public void keysetPagesAgainstOffsetPagesByBarcode() {
+        benchmark(OrderByEnum.BARCODE_DESC);
+    }
+
+    @Test
+    public void keysetPagesAgainstOffsetPagesByPrice() {
+        benchmark(OrderByEnum.PRICE_ASC);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void benchmark(OrderByEnum orderBy) {
+        ProductKeysetDataSource dataSource = new ProductKeysetDataSource(db, ProductDao.PRODUCT_WITH_CATEGORY_QUERY,
+                new Object[0], orderBy);
+        String offsetQuery = ProductDao.PRODUCT_WITH_CATEGORY_QUERY + SearchQueryTemplates.createOrderByString(orderBy)
+                + " LIMIT ? OFFSET ?";
+
+        for (double depth : DEPTHS) {
+            int firstPosition = (int) (depth * (PRODUCT_COUNT - PAGES_PER_DEPTH * PAGE_SIZE));
+
+            // The keyset pages start from the product before the first page, as a list scrolled
+            // to this depth would.
+            ProductKeysetDataSource.Key key = null;
+            if (firstPosition > 0) {
+                List<ProductWithCategory> previous = productDao.queryProductsWithCategory(
+                        new SimpleSQLiteQuery(offsetQuery, new Object[]{1, firstPosition - 1}));
+                key = dataSource.getKey(previous.get(0));
+            }
+
+            long offsetNanos = 0;
+            long keysetNanos = 0;
+            for (int page = 0; page < PAGES_PER_DEPTH; page++) {
+                int offset = firstPosition + page * PAGE_SIZE;
+
+                long start = SystemClock.elapsedRealtimeNanos();
+                List<ProductWithCategory> offsetPage = productDao.queryProductsWithCategory(
+                        new SimpleSQLiteQuery(offsetQuery, new Object[]{PAGE_SIZE, offset}));
+                offsetNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                start = SystemClock.elapsedRealtimeNanos();
+                List<ProductWithCategory> keysetPage = productDao.queryProductsWithCategory(
+                        dataSource.createPageQuery(key, true, false, PAGE_SIZE));
+                keysetNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                assertThat(keysetPage, is(offsetPage));
+                key = dataSource.getKey(keysetPage.get(keysetPage.size() - 1));
+            }
+
+            Log.i(TAG, String.format("%d pages of %d products %s from position %d of %d: %.1fms by keyset, "
+                            + "%.1fms by offset (%.1fx)",
+                    PAGES_PER_DEPTH, PAGE_SIZE, orderBy, firstPosition, PRODUCT_COUNT, keysetNanos / 1e6,
+                    offsetNanos / 1e6, (double) offsetNanos / keysetNanos));
+        }
+
+        dataSource.invalidate();
+    }
+}
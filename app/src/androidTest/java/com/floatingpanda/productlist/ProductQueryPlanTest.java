@@ -0,0 +1,567 @@
+package com.floatingpanda.productlist;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+import android.util.Pair;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.BarcodeTrigram;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductKeysetDataSource;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
+import com.floatingpanda.productlist.repositories.ProductRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the product queries and fails if any of them would scan the whole
+ * products table, or the whole barcode_trigrams table, rather than going through an index.
+ *
+ * The SQL checked is the SQL the app runs rather than a copy of it: the database is opened through
+ * an open helper which records every statement ProductDao's generated implementation runs, and the
+ * repository's queries are built by ProductRepository.createQuery() and ProductKeysetDataSource.
+ * Every ProductDao method is called, so a new DAO method fails the test until it's added here.
+ * Queries which are meant to read or delete every product (e.g. ProductDao.getAll()) necessarily
+ * scan the table and are only checked to be in READS_EVERY_PRODUCT.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductQueryPlanTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    // Matches a full scan of products or barcode_trigrams, e.g. "SCAN TABLE products" or
+    // "SCAN products", but not a scan through one of their indices, e.g.
+    // "SCAN TABLE products USING INDEX index_products_name".
+    private static final Pattern TABLE_SCAN =
+            Pattern.compile("^SCAN (TABLE )?(products|barcode_trigrams)\\b(?!.*\\bUSING\\b).*");
+
+    // The ProductDao methods which read or delete every product, so have to scan the table.
+    private static final Set<String> READS_EVERY_PRODUCT = new HashSet<>(Arrays.asList(
+            "getAll",
+            "getProductsWithCategory",
+            "getProductBarcodes",
+            "countBarcodes",
+            "countProducts",
+            "deleteAllRows",
+            "deleteAllBarcodeTrigrams"));
+
+    private AppDatabase db;
+    private ProductDao productDao;
+    private ProductRepository productRepository;
+    private final List<CapturedStatement> capturedStatements = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .openHelperFactory(new CapturingOpenHelperFactory(capturedStatements))
+                .allowMainThreadQueries()
+                .build();
+        productDao = db.productDao();
+        productRepository = new ProductRepository(db);
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+
+        // Inserted without productDao, as Room compiles each insert, update and delete statement once
+        // and reuses it, and it's only captured when it's compiled.
+        SupportSQLiteDatabase database = db.getOpenHelper().getWritableDatabase();
+        for (Product product : TestData.PRODUCTS) {
+            database.execSQL("INSERT INTO products (id, name, barcode, price, category_id, notes) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)", new Object[] {product.getId(), product.getName(),
+                    product.getBarcode(), PriceTypeConverter.toPriceInt(product.getPrice()),
+                    product.getCategoryId(), product.getNotes()});
+        }
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    // Calls every ProductDao method and checks the plan of each statement Room runs for it.
+    @Test
+    public void everyProductDaoQueryUsesIndexUnlessItReadsEveryProduct() throws InterruptedException {
+        Map<String, DaoCall> calls = createDaoCalls();
+
+        Set<String> uncalled = new TreeSet<>();
+        for (Method method : ProductDao.class.getDeclaredMethods()) {
+            if (!method.isDefault() && !method.isSynthetic() && !calls.containsKey(method.getName())) {
+                uncalled.add(method.getName());
+            }
+        }
+        assertThat("ProductDao methods missing from createDaoCalls()", uncalled, is(Collections.emptySet()));
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, DaoCall> call : calls.entrySet()) {
+            capturedStatements.clear();
+            call.getValue().call();
+
+            List<CapturedStatement> statements = getDaoStatements();
+            if (statements.isEmpty()) {
+                failures.add(call.getKey() + " -> no statement captured");
+            }
+
+            for (CapturedStatement statement : statements) {
+                String tableScan = findTableScan(statement.sql, statement.args);
+                if (tableScan != null && !READS_EVERY_PRODUCT.contains(call.getKey())) {
+                    failures.add(call.getKey() + ": " + statement.sql + " -> " + tableScan);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            fail("ProductDao queries scan a table:\n" + TextUtils.join("\n", failures));
+        }
+    }
+
+    // Checks the exact barcode and category queries built by ProductRepository in every ordering.
+    @Test
+    public void repositoryQueriesUseIndexForEveryOrdering() {
+        List<String> failures = new ArrayList<>();
+
+        for (OrderByEnum orderBy : OrderByEnum.values()) {
+            checkQuery(productRepository.createQuery(
+                    ProductQueryParameters.exactBarcode(TestData.PRODUCT_1.getBarcode(), orderBy)), failures);
+            checkQuery(productRepository.createQuery(
+                    ProductQueryParameters.category(TestData.CATEGORY_1.getId(), orderBy)), failures);
+        }
+
+        if (!failures.isEmpty()) {
+            fail("Repository queries scan a table:\n" + TextUtils.join("\n", failures));
+        }
+    }
+
+    // Checks every combination of search filters built by ProductRepository, in every ordering, apart
+    // from using no filters at all, which returns every product. Barcodes long enough to use the
+    // trigram index and too short to are both checked.
+    @Test
+    public void searchQueriesUseIndexForEveryFilterCombination() {
+        long categoryId = TestData.CATEGORY_1.getId();
+        int lowerPrice = 549;
+        int higherPrice = 2027;
+
+        List<String> failures = new ArrayList<>();
+
+        for (String barcode : new String[] {"12345", "12"}) {
+            for (int filters = 1; filters < 32; filters++) {
+                for (OrderByEnum orderBy : OrderByEnum.values()) {
+                    checkQuery(productRepository.createQuery(ProductQueryParameters.search(
+                            (filters & 1) != 0 ? barcode : null,
+                            (filters & 2) != 0 ? "pil" : null,
+                            (filters & 4) != 0 ? categoryId : 0,
+                            (filters & 8) != 0 ? lowerPrice : 0,
+                            (filters & 16) != 0 ? higherPrice : 0,
+                            orderBy)), failures);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            fail("Search queries scan a table:\n" + TextUtils.join("\n", failures));
+        }
+    }
+
+    // Checks ordered product lists are read from the sort column's index rather than sorted.
+    @Test
+    public void orderedProductListsDoNotSortProducts() {
+        List<String> failures = new ArrayList<>();
+
+        for (OrderByEnum orderBy : OrderByEnum.values()) {
+            SimpleSQLiteQuery query = productRepository.createQuery(ProductQueryParameters.all(orderBy));
+
+            for (String detail : explain(query.getSql(), getArgs(query))) {
+                if (detail.contains("TEMP B-TREE FOR ORDER BY")) {
+                    failures.add(query.getSql() + " -> " + detail);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            fail("Ordered queries sort products:\n" + TextUtils.join("\n", failures));
+        }
+    }
+
+    // Checks the pages after the first of every ordering of the paged product list start from an
+    // index rather than scanning products.
+    @Test
+    public void pagedProductQueriesUseIndexForEveryOrdering() {
+        List<String> failures = new ArrayList<>();
+
+        for (OrderByEnum orderBy : OrderByEnum.values()) {
+            ProductKeysetDataSource dataSource = new ProductKeysetDataSource(db,
+                    ProductDao.PRODUCT_WITH_CATEGORY_QUERY, new Object[0], orderBy);
+            ProductKeysetDataSource.Key key = dataSource.getKey(TestData.PRODUCT_3_WITH_CATEGORY);
+
+            for (boolean forwards : new boolean[] {true, false}) {
+                checkQuery(dataSource.createPageQuery(key, forwards, false, 20), failures);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            fail("Paged queries scan the products table:\n" + TextUtils.join("\n", failures));
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private interface DaoCall {
+        void call() throws InterruptedException;
+    }
+
+    // A call of each ProductDao method, keyed by its name. Deletes come last so the other calls
+    // have products to find.
+    private Map<String, DaoCall> createDaoCalls() {
+        long id = TestData.PRODUCT_1.getId();
+        String barcode = TestData.PRODUCT_1.getBarcode();
+        long categoryId = TestData.CATEGORY_1.getId();
+
+        Map<String, DaoCall> calls = new LinkedHashMap<>();
+        calls.put("getAll", () -> LiveDataTestUtil.getValue(productDao.getAll()));
+        calls.put("getProductById", () -> LiveDataTestUtil.getValue(productDao.getProductById(id)));
+        calls.put("getProductBarcodes", () -> productDao.getProductBarcodes().close());
+        calls.put("countBarcodes", () -> productDao.countBarcodes());
+        calls.put("getProductExportPage", () -> productDao.getProductExportPage(id, 10).close());
+        calls.put("countProducts", () -> productDao.countProducts());
+        calls.put("getProductSnapshotPage", () -> productDao.getProductSnapshotPage(id, 10).close());
+        calls.put("getProductsWithCategory", () -> LiveDataTestUtil.getValue(productDao.getProductsWithCategory()));
+        calls.put("getProductWithCategoryByProductId", () ->
+                LiveDataTestUtil.getValue(productDao.getProductWithCategoryByProductId(id)));
+        calls.put("getProductsWithCategoryByExactBarcode", () ->
+                LiveDataTestUtil.getValue(productDao.getProductsWithCategoryByExactBarcode(barcode)));
+        calls.put("getProductsWithCategoryByCategoryId", () ->
+                LiveDataTestUtil.getValue(productDao.getProductsWithCategoryByCategoryId(categoryId)));
+        calls.put("queryProductsWithCategoryByBarcodes", () -> productDao.queryProductsWithCategoryByBarcodes(
+                Arrays.asList(barcode, TestData.PRODUCT_2.getBarcode(), TestData.PRODUCT_3.getBarcode())));
+        calls.put("queryProductsWithCategoryByExactBarcode", () ->
+                productDao.queryProductsWithCategoryByExactBarcode(barcode));
+        calls.put("searchProductsWithCategory", () -> LiveDataTestUtil.getValue(productDao.searchProductsWithCategory(
+                productRepository.createQuery(ProductQueryParameters.exactBarcode(barcode, OrderByEnum.NO_ORDER)))));
+        calls.put("queryProductsWithCategory", () -> productDao.queryProductsWithCategory(
+                productRepository.createQuery(ProductQueryParameters.category(categoryId, OrderByEnum.NAME_ASC))));
+        calls.put("insertRow", () -> productDao.insertRow(TestData.PRODUCT_TO_ADD_1));
+        calls.put("insertRows", () -> productDao.insertRows(TestData.PRODUCT_TO_ADD_2));
+        calls.put("updateRows", () -> productDao.updateRows(TestData.PRODUCT_1));
+        calls.put("insertBarcodeTrigrams", () ->
+                productDao.insertBarcodeTrigrams(BarcodeTrigram.forProduct(id, "5012345678900")));
+        calls.put("deleteBarcodeTrigrams", () -> productDao.deleteBarcodeTrigrams(id));
+        calls.put("deleteRows", () -> productDao.deleteRows(TestData.PRODUCT_2));
+        calls.put("deleteRowById", () -> productDao.deleteRowById(TestData.PRODUCT_3.getId()));
+        calls.put("deleteAllBarcodeTrigrams", () -> productDao.deleteAllBarcodeTrigrams());
+        calls.put("deleteAllRows", () -> productDao.deleteAllRows());
+        return calls;
+    }
+
+    // The statements captured which read or write the product tables, leaving out those Room runs
+    // for itself, e.g. to track which tables have changed.
+    private List<CapturedStatement> getDaoStatements() {
+        List<CapturedStatement> statements = new ArrayList<>();
+        synchronized (capturedStatements) {
+            for (CapturedStatement statement : capturedStatements) {
+                String sql = statement.sql.toLowerCase(Locale.ROOT);
+                if (!sql.contains("room_table_modification_log") && (sql.contains("products")
+                        || sql.contains("barcode_trigrams"))) {
+                    statements.add(statement);
+                }
+            }
+        }
+
+        return statements;
+    }
+
+    private void checkQuery(SimpleSQLiteQuery query, List<String> failures) {
+        String tableScan = findTableScan(query.getSql(), getArgs(query));
+        if (tableScan != null) {
+            failures.add(query.getSql() + " -> " + tableScan);
+        }
+    }
+
+    /**
+     * Returns the line of the query plan for sql which scans products or barcode_trigrams, or null
+     * if the plan doesn't scan either.
+     */
+    private String findTableScan(String sql, Object[] args) {
+        for (String detail : explain(sql, args)) {
+            if (TABLE_SCAN.matcher(detail).matches()) {
+                return detail;
+            }
+        }
+
+        return null;
+    }
+
+    private List<String> explain(String sql, Object[] args) {
+        List<String> details = new ArrayList<>();
+        try (Cursor cursor = db.query("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailIndex));
+            }
+        }
+
+        return details;
+    }
+
+    private static Object[] getArgs(SupportSQLiteQuery query) {
+        Object[] args = new Object[query.getArgCount()];
+        ArgumentCapturingProgram program = new ArgumentCapturingProgram(args);
+        query.bindTo(program);
+        return args;
+    }
+
+    // A statement run through the database, with the arguments bound to it if they're known. Those
+    // compiled for later execution are captured with null arguments.
+    private static class CapturedStatement {
+        private final String sql;
+        private final Object[] args;
+
+        CapturedStatement(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+
+        static CapturedStatement compiled(String sql) {
+            int placeholders = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                if (sql.charAt(i) == '?') {
+                    placeholders++;
+                }
+            }
+
+            return new CapturedStatement(sql, new Object[placeholders]);
+        }
+    }
+
+    // Captures the arguments a query binds, so they can be bound to the EXPLAIN query.
+    private static class ArgumentCapturingProgram implements SupportSQLiteProgram {
+        private final Object[] args;
+
+        ArgumentCapturingProgram(Object[] args) {
+            this.args = args;
+        }
+
+        @Override
+        public void bindNull(int index) { args[index - 1] = null; }
+        @Override
+        public void bindLong(int index, long value) { args[index - 1] = value; }
+        @Override
+        public void bindDouble(int index, double value) { args[index - 1] = value; }
+        @Override
+        public void bindString(int index, String value) { args[index - 1] = value; }
+        @Override
+        public void bindBlob(int index, byte[] value) { args[index - 1] = value; }
+        @Override
+        public void clearBindings() { }
+        @Override
+        public void close() { }
+    }
+
+    // Opens databases through the framework, recording every statement run on them.
+    private static class CapturingOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+        private final List<CapturedStatement> statements;
+
+        CapturingOpenHelperFactory(List<CapturedStatement> statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+            SupportSQLiteOpenHelper helper = new FrameworkSQLiteOpenHelperFactory().create(configuration);
+
+            return new SupportSQLiteOpenHelper() {
+                @Override
+                public String getDatabaseName() { return helper.getDatabaseName(); }
+                @Override
+                public void setWriteAheadLoggingEnabled(boolean enabled) {
+                    helper.setWriteAheadLoggingEnabled(enabled);
+                }
+                @Override
+                public SupportSQLiteDatabase getWritableDatabase() {
+                    return new CapturingDatabase(helper.getWritableDatabase(), statements);
+                }
+                @Override
+                public SupportSQLiteDatabase getReadableDatabase() {
+                    return new CapturingDatabase(helper.getReadableDatabase(), statements);
+                }
+                @Override
+                public void close() { helper.close(); }
+            };
+        }
+    }
+
+    private static class CapturingDatabase implements SupportSQLiteDatabase {
+        private final SupportSQLiteDatabase database;
+        private final List<CapturedStatement> statements;
+
+        CapturingDatabase(SupportSQLiteDatabase database, List<CapturedStatement> statements) {
+            this.database = database;
+            this.statements = statements;
+        }
+
+        @Override
+        public SupportSQLiteStatement compileStatement(String sql) {
+            statements.add(CapturedStatement.compiled(sql));
+            return database.compileStatement(sql);
+        }
+
+        @Override
+        public Cursor query(String query) {
+            statements.add(new CapturedStatement(query, new Object[0]));
+            return database.query(query);
+        }
+
+        @Override
+        public Cursor query(String query, Object[] bindArgs) {
+            statements.add(new CapturedStatement(query, bindArgs == null ? new Object[0] : bindArgs.clone()));
+            return database.query(query, bindArgs);
+        }
+
+        // Room reuses its queries' argument arrays once they've run, so the arguments are copied now.
+        @Override
+        public Cursor query(SupportSQLiteQuery query) {
+            statements.add(new CapturedStatement(query.getSql(), getArgs(query)));
+            return database.query(query);
+        }
+
+        @Override
+        public Cursor query(SupportSQLiteQuery query, CancellationSignal cancellationSignal) {
+            statements.add(new CapturedStatement(query.getSql(), getArgs(query)));
+            return database.query(query, cancellationSignal);
+        }
+
+        @Override
+        public void execSQL(String sql) throws SQLException {
+            statements.add(new CapturedStatement(sql, new Object[0]));
+            database.execSQL(sql);
+        }
+
+        @Override
+        public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+            statements.add(new CapturedStatement(sql, bindArgs.clone()));
+            database.execSQL(sql, bindArgs);
+        }
+
+        @Override
+        public void beginTransaction() { database.beginTransaction(); }
+        @Override
+        public void beginTransactionNonExclusive() { database.beginTransactionNonExclusive(); }
+        @Override
+        public void beginTransactionWithListener(SQLiteTransactionListener listener) {
+            database.beginTransactionWithListener(listener);
+        }
+        @Override
+        public void beginTransactionWithListenerNonExclusive(SQLiteTransactionListener listener) {
+            database.beginTransactionWithListenerNonExclusive(listener);
+        }
+        @Override
+        public void endTransaction() { database.endTransaction(); }
+        @Override
+        public void setTransactionSuccessful() { database.setTransactionSuccessful(); }
+        @Override
+        public boolean inTransaction() { return database.inTransaction(); }
+        @Override
+        public boolean isDbLockedByCurrentThread() { return database.isDbLockedByCurrentThread(); }
+        @Override
+        public boolean yieldIfContendedSafely() { return database.yieldIfContendedSafely(); }
+        @Override
+        public boolean yieldIfContendedSafely(long sleepAfterYieldDelay) {
+            return database.yieldIfContendedSafely(sleepAfterYieldDelay);
+        }
+        @Override
+        public int getVersion() { return database.getVersion(); }
+        @Override
+        public void setVersion(int version) { database.setVersion(version); }
+        @Override
+        public long getMaximumSize() { return database.getMaximumSize(); }
+        @Override
+        public long setMaximumSize(long numBytes) { return database.setMaximumSize(numBytes); }
+        @Override
+        public long getPageSize() { return database.getPageSize(); }
+        @Override
+        public void setPageSize(long numBytes) { database.setPageSize(numBytes); }
+        @Override
+        public long insert(String table, int conflictAlgorithm, ContentValues values) throws SQLException {
+            return database.insert(table, conflictAlgorithm, values);
+        }
+        @Override
+        public int delete(String table, String whereClause, Object[] whereArgs) {
+            return database.delete(table, whereClause, whereArgs);
+        }
+        @Override
+        public int update(String table, int conflictAlgorithm, ContentValues values, String whereClause,
+                          Object[] whereArgs) {
+            return database.update(table, conflictAlgorithm, values, whereClause, whereArgs);
+        }
+        @Override
+        public boolean isReadOnly() { return database.isReadOnly(); }
+        @Override
+        public boolean isOpen() { return database.isOpen(); }
+        @Override
+        public boolean needUpgrade(int newVersion) { return database.needUpgrade(newVersion); }
+        @Override
+        public String getPath() { return database.getPath(); }
+        @Override
+        public void setLocale(Locale locale) { database.setLocale(locale); }
+        @Override
+        public void setMaxSqlCacheSize(int cacheSize) { database.setMaxSqlCacheSize(cacheSize); }
+        @Override
+        public void setForeignKeyConstraintsEnabled(boolean enable) {
+            database.setForeignKeyConstraintsEnabled(enable);
+        }
+        @Override
+        public boolean enableWriteAheadLogging() { return database.enableWriteAheadLogging(); }
+        @Override
+        public void disableWriteAheadLogging() { database.disableWriteAheadLogging(); }
+        @Override
+        public boolean isWriteAheadLoggingEnabled() { return database.isWriteAheadLoggingEnabled(); }
+        @Override
+        public List<Pair<String, String>> getAttachedDbs() { return database.getAttachedDbs(); }
+        @Override
+        public boolean isDatabaseIntegrityOk() { return database.isDatabaseIntegrityOk(); }
+        @Override
+        public void close() throws IOException { database.close(); }
+    }
+}
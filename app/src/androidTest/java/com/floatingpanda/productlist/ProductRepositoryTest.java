@@ -3,7 +3,9 @@ package com.floatingpanda.productlist;
 import android.content.Context;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.LiveData;
 import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
@@ -15,7 +17,10 @@ import com.floatingpanda.productlist.db.Product;
 import com.floatingpanda.productlist.db.ProductDao;
 import com.floatingpanda.productlist.db.ProductWithCategory;
 import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
 import com.floatingpanda.productlist.repositories.ProductRepository;
+import com.floatingpanda.productlist.repositories.ProductSearchPredicate;
+import com.floatingpanda.productlist.repositories.SearchQueryTemplates;
 
 import org.junit.runner.RunWith;
 
@@ -26,6 +31,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -34,8 +41,10 @@ import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class ProductRepositoryTest {
@@ -52,6 +61,7 @@ public class ProductRepositoryTest {
     public void createDb() {
         Context context = ApplicationProvider.getApplicationContext();
         db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
                 .allowMainThreadQueries()
                 .build();
         categoryDao = db.categoryDao();
@@ -81,6 +91,24 @@ public class ProductRepositoryTest {
         assertThat(productsWithCategories.size(), is(TestData.PRODUCTS.size()));
     }
 
+    @Test
+    public void getAllProductsWithCategoryOrderedByPriceDesc() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        List<ProductWithCategory> productsWithCategories =
+                LiveDataTestUtil.getValue(productRepository.getAllProductsWithCategory(OrderByEnum.PRICE_DESC));
+
+        assertThat(productsWithCategories.size(), is(TestData.PRODUCTS.size()));
+
+        for (int i = 1; i < productsWithCategories.size(); i++) {
+            Price currentPrice = productsWithCategories.get(i).getProduct().getPrice();
+            Price previousPrice = productsWithCategories.get(i - 1).getProduct().getPrice();
+
+            assertTrue(currentPrice.compareTo(previousPrice) <= 0);
+        }
+    }
+
     @Test
     public void getProductWithCategoryByProductId() throws InterruptedException {
         categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
@@ -437,27 +465,29 @@ public class ProductRepositoryTest {
         }
     }
 
-    // Search with partial name
+    // Search with partial name. Names are matched by the start of each word in them.
     // - Partial name at start of product
-    // - Partial name in mid of product
-    // - Partial name at end of product
+    // - Partial name at start of a later word in product
+    // - Partial name in mid of a word in product, which doesn't match
     @Test
     public void searchProductsWithCategoriesByPartialName() throws InterruptedException {
         categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
         productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        productDao.insert(TestData.PRODUCT_TO_ADD_3);
 
         Product product = LiveDataTestUtil.getValue(productDao.getProductById(TestData.PRODUCT_3.getId()));
         assertNotNull(product);
 
         String fullName = TestData.PRODUCT_3.getName();
-        // First 3 letters of product name
+        // First 2 letters of product name
         String startPartialName = fullName.substring(0, 2);
 
-        // Middle 3 letters of product name
+        // Middle 2 letters of product name
         String midPartialName = fullName.substring(2, 4);
 
-        // End 3 letters of product name
-        String endPartialName = fullName.substring(fullName.length() - 3, fullName.length() - 1);
+        // First 2 letters of the second word of a product's name
+        String secondWordName = TestData.PRODUCT_TO_ADD_3.getName();
+        String secondWordPartialName = secondWordName.substring(secondWordName.indexOf(' ') + 1, secondWordName.indexOf(' ') + 3);
 
         String barcode = null;
         // A categoryId of 0 doesn't filter search results by category id
@@ -466,7 +496,7 @@ public class ProductRepositoryTest {
         float lowerPrice = 0;
         float higherPrice = 0;
 
-        // Each search should return a single result
+        // Searches by the start of a word should return a single result
         int listSize = 1;
 
         // Search with the partial name from start of the product name
@@ -476,19 +506,18 @@ public class ProductRepositoryTest {
         assertThat(productsWithCategory.size(), is(listSize));
         assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_3));
 
-        // Search with the partial name from middle of the product name
+        // Search with the partial name from start of the second word of the product name
         productsWithCategory = LiveDataTestUtil.getValue(
-                productRepository.searchProductsWithCategory(barcode, midPartialName, categoryId, lowerPrice, higherPrice));
+                productRepository.searchProductsWithCategory(barcode, secondWordPartialName, categoryId, lowerPrice, higherPrice));
 
         assertThat(productsWithCategory.size(), is(listSize));
-        assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_3));
+        assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_TO_ADD_3));
 
-        // Search with the partial name from start of the product name
+        // Search with the partial name from middle of the product name
         productsWithCategory = LiveDataTestUtil.getValue(
-                productRepository.searchProductsWithCategory(barcode, endPartialName, categoryId, lowerPrice, higherPrice));
+                productRepository.searchProductsWithCategory(barcode, midPartialName, categoryId, lowerPrice, higherPrice));
 
-        assertThat(productsWithCategory.size(), is(listSize));
-        assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_3));
+        assertTrue(productsWithCategory.isEmpty());
     }
 
     // Search with exact name
@@ -850,4 +879,226 @@ public class ProductRepositoryTest {
         assertTrue(products.contains(TestData.PRODUCT_1));
         assertTrue(products.contains(TestData.PRODUCT_3));
     }
+
+    @Test
+    public void searchesWithTheSameFiltersUseTheSameQueryTemplate() {
+        SearchQueryTemplates templates = ProductRepository.getSearchQueryTemplates();
+
+        SimpleSQLiteQuery query = productRepository.createSQLQuery("12345", "pil", 0, 549, 0, OrderByEnum.NAME_ASC);
+        long hits = templates.getHits();
+        SimpleSQLiteQuery otherQuery = productRepository.createSQLQuery("98765", "cov", 0, 1000, 0, OrderByEnum.NAME_ASC);
+
+        assertSame(query.getSql(), otherQuery.getSql());
+        assertThat(templates.getHits(), is(hits + 1));
+        assertThat(otherQuery.getArgCount(), is(query.getArgCount()));
+    }
+
+    // Notes are searched along with names, but products matching by name come first
+    @Test
+    public void searchProductsWithCategoriesByNameMatchesNotesAfterNames() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        productDao.insert(TestData.PRODUCT_TO_ADD_3);
+
+        // Product 2 is called "Sink" and the added product's notes mention the sink
+        List<ProductWithCategory> productsWithCategory = LiveDataTestUtil.getValue(
+                productRepository.searchProductsWithCategory(null, "sin", 0, 0f, 0f));
+
+        assertThat(getProductIds(productsWithCategory), is(Arrays.asList(TestData.PRODUCT_2.getId(),
+                TestData.PRODUCT_TO_ADD_3.getId())));
+
+        // Product 3's notes are "Flippledee"
+        productsWithCategory = LiveDataTestUtil.getValue(
+                productRepository.searchProductsWithCategory(null, "flip", 0, 0f, 0f));
+
+        assertThat(getProductIds(productsWithCategory), is(Collections.singletonList(TestData.PRODUCT_3.getId())));
+    }
+
+    @Test
+    public void searchPredicateMatchesTheSameProductsInMemoryAsInTheDatabase() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        productDao.insert(TestData.PRODUCT_TO_ADD_3);
+
+        List<ProductWithCategory> allProductsWithCategory = LiveDataTestUtil.getValue(
+                productRepository.getAllProductsWithCategory(OrderByEnum.NAME_ASC));
+
+        List<ProductSearchPredicate> predicates = new ArrayList<>();
+        predicates.add(new ProductSearchPredicate("123", null, 0, 0, 0));
+        predicates.add(new ProductSearchPredicate("54321", null, 0, 0, 0));
+        predicates.add(new ProductSearchPredicate(null, "p", 0, 0, 0));
+        predicates.add(new ProductSearchPredicate(null, "BATH to", 0, 0, 0));
+        predicates.add(new ProductSearchPredicate(null, "sin", 0, 0, 0));
+        predicates.add(new ProductSearchPredicate(null, "flip", 0, 0, 0));
+        predicates.add(new ProductSearchPredicate(null, "s", 1, 0, 0));
+        predicates.add(new ProductSearchPredicate(null, null, 0, 599, 1899));
+        predicates.add(new ProductSearchPredicate("12345", "p", 0, 549, 2027));
+
+        for (ProductSearchPredicate predicate : predicates) {
+            List<ProductWithCategory> fromDatabase = LiveDataTestUtil.getValue(productDao.searchProductsWithCategory(
+                    productRepository.createSQLQuery(predicate, OrderByEnum.NAME_ASC)));
+
+            List<ProductWithCategory> inMemory = new ArrayList<>();
+            for (ProductWithCategory productWithCategory : allProductsWithCategory) {
+                if (predicate.test(productWithCategory)) {
+                    inMemory.add(productWithCategory);
+                }
+            }
+
+            assertThat(getProductIds(inMemory), is(getProductIds(fromDatabase)));
+        }
+    }
+
+    @Test
+    public void barcodeIndexKeepsInStepWithProductWrites() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        String barcode = TestData.PRODUCT_2.getBarcode();
+        assertNull(productRepository.findProductIdsByExactBarcode(barcode));
+
+        db.rebuildBarcodeIndex();
+
+        assertThat(findSortedProductIds(barcode), is(new long[] {TestData.PRODUCT_2.getId(), TestData.PRODUCT_5.getId()}));
+
+        productRepository.addProduct(TestData.PRODUCT_TO_ADD_1);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(findSortedProductIds(barcode), is(new long[] {TestData.PRODUCT_2.getId(), TestData.PRODUCT_5.getId(),
+                TestData.PRODUCT_TO_ADD_1.getId()}));
+
+        Product editedProduct = new Product(TestData.PRODUCT_2.getId(), TestData.PRODUCT_2.getName(), "5000000000001",
+                TestData.PRODUCT_2.getPrice(), TestData.PRODUCT_2.getCategoryId(), TestData.PRODUCT_2.getNotes());
+        productRepository.editProduct(editedProduct);
+        productRepository.deleteProduct(TestData.PRODUCT_5);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(findSortedProductIds(barcode), is(new long[] {TestData.PRODUCT_TO_ADD_1.getId()}));
+        assertThat(findSortedProductIds("5000000000001"), is(new long[] {TestData.PRODUCT_2.getId()}));
+    }
+
+    @Test
+    public void exactBarcodeQueryLoadsTheProductsTheBarcodeIndexFinds() {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        ProductQueryParameters parameters = ProductQueryParameters.exactBarcode(TestData.PRODUCT_2.getBarcode(),
+                OrderByEnum.NAME_ASC);
+
+        // Searches the barcodes while the index is being built.
+        List<ProductWithCategory> whileWarming = productRepository.queryProductsWithCategoryByExactBarcode(parameters);
+
+        db.rebuildBarcodeIndex();
+        List<ProductWithCategory> fromIndex = productRepository.queryProductsWithCategoryByExactBarcode(parameters);
+
+        // Sink then Something, in name order.
+        List<Long> expectedIds = Arrays.asList(TestData.PRODUCT_2.getId(), TestData.PRODUCT_5.getId());
+        assertThat(getProductIds(whileWarming), is(expectedIds));
+        assertThat(getProductIds(fromIndex), is(expectedIds));
+        assertTrue(productRepository.queryProductsWithCategoryByExactBarcode(
+                ProductQueryParameters.exactBarcode("5000000000001", OrderByEnum.NO_ORDER)).isEmpty());
+    }
+
+    @Test
+    public void barcodeIndexIsOnlyUpdatedWithCommittedWrites() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        db.rebuildBarcodeIndex();
+
+        Product product = TestData.PRODUCT_TO_ADD_1;
+        try {
+            db.writeProducts(() -> {
+                db.runInTransaction((Runnable) () -> {
+                    productDao.insert(product);
+                    throw new IllegalStateException("Rolled back");
+                });
+                return () -> db.getBarcodeIndex().put(product.getId(), product.getBarcode());
+            });
+            fail("Expected the write to throw.");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertThat(LiveDataTestUtil.getValue(productDao.getAll()).size(), is(TestData.PRODUCTS.size()));
+        assertThat(findSortedProductIds(product.getBarcode()), is(new long[] {TestData.PRODUCT_2.getId(),
+                TestData.PRODUCT_5.getId()}));
+
+        // Inside a transaction the write wouldn't have committed when the index was updated.
+        db.beginTransaction();
+        try {
+            db.writeProducts(() -> null);
+            fail("Expected products not to be written inside a transaction.");
+        } catch (IllegalStateException expected) {
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Test
+    public void exactBarcodeSearchForBarcodeTheFilterRulesOutIsEmpty() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        db.rebuildBarcodeFilter();
+
+        String missingBarcode = "5000000000001";
+        assertFalse(productRepository.getBarcodeFilter().mightContain(missingBarcode));
+
+        List<ProductWithCategory> productsWithCategories =
+                LiveDataTestUtil.getValue(productRepository.getProductsWithCategoryByExactBarcode(missingBarcode));
+
+        assertTrue(productsWithCategories.isEmpty());
+
+        productsWithCategories = LiveDataTestUtil.getValue(
+                productRepository.getProductsWithCategoryByExactBarcode(TestData.PRODUCT_2.getBarcode()));
+
+        assertThat(productsWithCategories.size(), is(2));
+        assertThat(productRepository.getBarcodeFilter().getObservedFalsePositiveRate(), is(0.0));
+
+        // The filter is updated when products are added
+        Product productToAdd = new Product(TestData.PRODUCT_TO_ADD_1.getId(), TestData.PRODUCT_TO_ADD_1.getName(),
+                missingBarcode, TestData.PRODUCT_TO_ADD_1.getPrice(), TestData.PRODUCT_TO_ADD_1.getCategoryId(),
+                TestData.PRODUCT_TO_ADD_1.getNotes());
+        productRepository.addProduct(productToAdd);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        productsWithCategories =
+                LiveDataTestUtil.getValue(productRepository.getProductsWithCategoryByExactBarcode(missingBarcode));
+
+        assertThat(productsWithCategories.size(), is(1));
+        assertThat(productsWithCategories.get(0).getProduct(), is(productToAdd));
+    }
+
+    @Test
+    public void exactBarcodeSearchIsRecordedWithTheFilterOncePerSearch() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        // The filter hasn't been built, so it says every barcode might be there.
+        LiveData<List<ProductWithCategory>> foundSearch =
+                productRepository.getProductsWithCategoryByExactBarcode(TestData.PRODUCT_2.getBarcode());
+        for (int i = 0; i < 3; i++) {
+            assertThat(LiveDataTestUtil.getValue(foundSearch).size(), is(2));
+        }
+
+        assertTrue(LiveDataTestUtil.getValue(
+                productRepository.getProductsWithCategoryByExactBarcode("5000000000001")).isEmpty());
+
+        // Each search is a positive, however many times it's refreshed.
+        assertThat(productRepository.getBarcodeFilter().getObservedFalsePositiveRate(), is(0.5));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private long[] findSortedProductIds(String barcode) {
+        long[] productIds = productRepository.findProductIdsByExactBarcode(barcode);
+        Arrays.sort(productIds);
+        return productIds;
+    }
+
+
+    private List<Long> getProductIds(List<ProductWithCategory> productsWithCategory) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategory) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
 }
@@ -0,0 +1,212 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.exportimport.ProductSnapshot;
+import com.floatingpanda.productlist.exportimport.SnapshotCodec;
+import com.floatingpanda.productlist.exportimport.SnapshotInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductSnapshotTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private static final String FILE_DB = "snapshot-test";
+
+    private AppDatabase db;
+    private AppDatabase restoredDb;
+    private File snapshotFile;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        restoredDb = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        snapshotFile = new File(context.getCacheDir(), "test_snapshot");
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+        restoredDb.close();
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void restoreReplacesCatalogueWithSnapshot() throws IOException, InterruptedException {
+        SnapshotInfo written = writeSnapshot();
+
+        assertThat(written.getCategoryCount(), is(3));
+        assertThat(written.getProductCount(), is(5));
+        assertThat(written.getSizeBytes(), is(snapshotFile.length()));
+
+        // Replaced by the restore
+        restoredDb.productDao().insert(TestData.PRODUCT_TO_ADD_2);
+
+        SnapshotInfo restored;
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "r").getChannel()) {
+            restored = new ProductSnapshot(restoredDb).restore(channel);
+        }
+
+        assertThat(restored.getProductCount(), is(5));
+
+        List<Category> categories = LiveDataTestUtil.getValue(restoredDb.categoryDao().getAll());
+        assertThat(categories, is(TestData.CATEGORIES));
+
+        List<Product> products = LiveDataTestUtil.getValue(restoredDb.productDao().getAll());
+        assertThat(products, is(TestData.PRODUCTS));
+        // Ids are kept
+        assertThat(products.get(0).getId(), is(TestData.PRODUCT_1.getId()));
+
+        // Barcodes can be looked up on the restored products
+        assertThat(restoredDb.productDao().getProductsWithCategoryByBarcodes(
+                Collections.singletonList(TestData.PRODUCT_3.getBarcode())).size(), is(1));
+    }
+
+    @Test
+    public void corruptSnapshotIsNotRestored() throws IOException, InterruptedException {
+        writeSnapshot();
+
+        // Flips a byte in the body
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.seek(ProductSnapshot.HEADER_SIZE + 10);
+            int b = file.read();
+            file.seek(ProductSnapshot.HEADER_SIZE + 10);
+            file.write(b ^ 0xFF);
+        }
+
+        restoredDb.productDao().insert(TestData.PRODUCT_TO_ADD_2);
+
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "r").getChannel()) {
+            new ProductSnapshot(restoredDb).restore(channel);
+            fail("Expected an IOException for the corrupt snapshot.");
+        } catch (IOException expected) {
+        }
+
+        // The catalogue is left as it was
+        List<Product> products = LiveDataTestUtil.getValue(restoredDb.productDao().getAll());
+        assertThat(products.size(), is(1));
+    }
+
+    @Test
+    public void snapshotOfDatabaseFileIsReadOnAConnectionOfItsOwn() throws IOException, InterruptedException {
+        Context context = ApplicationProvider.getApplicationContext();
+        AppDatabase fileDb = Room.databaseBuilder(context, AppDatabase.class, FILE_DB)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        try {
+            fileDb.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+            fileDb.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+            SnapshotInfo written;
+            try (FileChannel channel = new RandomAccessFile(snapshotFile, "rw").getChannel()) {
+                written = new ProductSnapshot(fileDb).write(channel);
+            }
+            // Writes aren't held up once the snapshot is written.
+            fileDb.productDao().insert(TestData.PRODUCT_TO_ADD_2);
+
+            assertThat(written.getProductCount(), is(5));
+        } finally {
+            fileDb.close();
+            context.deleteDatabase(FILE_DB);
+        }
+
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "r").getChannel()) {
+            new ProductSnapshot(restoredDb).restore(channel);
+        }
+
+        assertThat(LiveDataTestUtil.getValue(restoredDb.productDao().getAll()), is(TestData.PRODUCTS));
+    }
+
+    @Test
+    public void snapshotWithAPriceOutsideAnIntIsNotRestored() throws IOException, InterruptedException {
+        ByteBuffer body = ByteBuffer.allocate(64);
+        SnapshotCodec.putVarint(body, 1);
+        SnapshotCodec.putString(body, SnapshotCodec.encodeString("Taps"));
+        SnapshotCodec.putString(body, SnapshotCodec.encodeString(null));
+        SnapshotCodec.putVarint(body, Integer.MAX_VALUE + 1L);
+        SnapshotCodec.putVarint(body, 0);
+        SnapshotCodec.putString(body, SnapshotCodec.encodeString(null));
+        body.flip();
+        writeSnapshotFile(0, 1, body);
+
+        restoredDb.productDao().insert(TestData.PRODUCT_TO_ADD_2);
+
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "r").getChannel()) {
+            new ProductSnapshot(restoredDb).restore(channel);
+            fail("Expected an IOException for the price.");
+        } catch (IOException expected) {
+        }
+
+        // The catalogue is left as it was
+        assertThat(LiveDataTestUtil.getValue(restoredDb.productDao().getAll()).size(), is(1));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Writes a snapshot of the given body, with a header which matches it.
+    private void writeSnapshotFile(int categoryCount, int productCount, ByteBuffer body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, body.limit());
+
+        ByteBuffer header = ByteBuffer.allocate(ProductSnapshot.HEADER_SIZE);
+        header.putInt(ProductSnapshot.MAGIC)
+                .putInt(ProductSnapshot.FORMAT_VERSION)
+                .putInt(restoredDb.getOpenHelper().getReadableDatabase().getVersion())
+                .putInt(categoryCount)
+                .putInt(productCount)
+                .putLong(body.limit())
+                .putInt((int) crc.getValue())
+                .putInt(0);
+        header.flip();
+
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "rw").getChannel()) {
+            channel.truncate(0);
+            channel.write(header);
+            channel.write(body);
+        }
+    }
+
+    private SnapshotInfo writeSnapshot() throws IOException {
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "rw").getChannel()) {
+            return new ProductSnapshot(db).write(channel);
+        }
+    }
+}
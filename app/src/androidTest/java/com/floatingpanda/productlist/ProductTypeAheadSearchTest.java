@@ -0,0 +1,147 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
+import com.floatingpanda.productlist.repositories.ProductRepository;
+import com.floatingpanda.productlist.repositories.ProductTypeAheadSearch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ProductTypeAheadSearchTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private static final long DEBOUNCE_MILLIS = 50;
+
+    private AppDatabase db;
+    private ProductRepository productRepository;
+    private ExecutorService queryExecutor;
+    private ProductTypeAheadSearch productTypeAheadSearch;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        productRepository = new ProductRepository(db);
+        queryExecutor = Executors.newSingleThreadExecutor();
+        productTypeAheadSearch = new ProductTypeAheadSearch(productRepository, new Handler(Looper.getMainLooper()),
+                queryExecutor, DEBOUNCE_MILLIS);
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        queryExecutor.shutdownNow();
+        db.close();
+    }
+
+    @Test
+    public void burstOfSearchesOnlyDeliversTheLastSearchesResults() throws InterruptedException {
+        runOnMainSync(() -> {
+            productTypeAheadSearch.search(createNameSearch("p"));
+            productTypeAheadSearch.search(createNameSearch("pu"));
+            productTypeAheadSearch.search(createNameSearch("pil"));
+        });
+
+        List<ProductWithCategory> results = LiveDataTestUtil.getValue(productTypeAheadSearch.getResults());
+
+        assertThat(getIds(results), is(Arrays.asList(TestData.PRODUCT_3.getId())));
+    }
+
+    @Test
+    public void cancelDropsSearchWaitingToRun() throws InterruptedException {
+        runOnMainSync(() -> {
+            productTypeAheadSearch.search(createNameSearch("pil"));
+            productTypeAheadSearch.cancel();
+        });
+
+        Thread.sleep(DEBOUNCE_MILLIS * 4);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertNull(productTypeAheadSearch.getResults().getValue());
+    }
+
+    @Test
+    public void queryProductsWithCategoryReadsProductsAndCategories() {
+        List<ProductWithCategory> productsWithCategories = productRepository.queryProductsWithCategory(
+                ProductQueryParameters.all(OrderByEnum.PRICE_ASC), null);
+
+        // Product 4 has no category, so its category is null.
+        assertThat(getIds(productsWithCategories), is(Arrays.asList(TestData.PRODUCT_4.getId(),
+                TestData.PRODUCT_1.getId(), TestData.PRODUCT_2.getId(), TestData.PRODUCT_3.getId(),
+                TestData.PRODUCT_5.getId())));
+        assertNull(productsWithCategories.get(0).getCategory());
+        assertThat(productsWithCategories.get(0).getProduct(), is(TestData.PRODUCT_4));
+        assertThat(productsWithCategories.get(3), is(TestData.PRODUCT_3_WITH_CATEGORY));
+    }
+
+    @Test
+    public void queryProductsWithCategoryStopsWhenCancelled() {
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+
+        try {
+            productRepository.queryProductsWithCategory(createNameSearch("pil"), cancellationSignal);
+            fail("Expected an OperationCanceledException.");
+        } catch (OperationCanceledException e) {
+            // Expected
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private ProductQueryParameters createNameSearch(String name) {
+        return ProductQueryParameters.search(null, name, 0, 0, 0, OrderByEnum.NAME_ASC);
+    }
+
+    private void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
+}
@@ -4,6 +4,7 @@ import android.content.Context;
 
 import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
 import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
@@ -15,6 +16,8 @@ import com.floatingpanda.productlist.db.Product;
 import com.floatingpanda.productlist.db.ProductDao;
 import com.floatingpanda.productlist.db.ProductWithCategory;
 import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
+import com.floatingpanda.productlist.repositories.SearchQueryTemplates;
 import com.floatingpanda.productlist.ui.products.ProductViewModel;
 
 import org.junit.After;
@@ -44,6 +47,17 @@ public class ProductViewModelTest {
     @Rule
     public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
 
+    // Names differing only in case or accents, and names, barcodes and prices shared by more than one
+    // product, so the orderings depend on how text is compared and how ties are broken.
+    private static final Product[] MIXED_CASE_PRODUCTS = {
+            new Product(20, "apple", "5000000000002", new Price(1, 0), 1, "None"),
+            new Product(21, "Apple", null, new Price(1, 0), 2, "None"),
+            new Product(22, "Éclair", "5000000000001", new Price(2, 50), 1, "None"),
+            new Product(23, "eclair", "5000000000002", new Price(1, 0), 3, "None"),
+            new Product(24, "Zest", null, new Price(2, 50), 2, "None"),
+            new Product(25, "apple", "5000000000001", new Price(0, 99), 1, "None")
+    };
+
     private AppDatabase db;
 
     private CategoryDao categoryDao;
@@ -54,6 +68,7 @@ public class ProductViewModelTest {
     public void createDb() {
         Context context = ApplicationProvider.getApplicationContext();
         db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
                 .allowMainThreadQueries()
                 .build();
         categoryDao = db.categoryDao();
@@ -131,6 +146,68 @@ public class ProductViewModelTest {
         assertSame(naturalOrdering, currentOrdering);
     }
 
+    @Test
+    public void rapidSearchesOnlyShowTheLastSearchesResults() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        String barcode = TestData.PRODUCT_1.getBarcode();
+
+        productViewModel.searchProductsWithCategoryByBarcode(TestData.PRODUCT_2.getBarcode());
+        productViewModel.filterProductsWithCategoryByCategoryId(TestData.PRODUCT_2.getCategoryId());
+        productViewModel.searchProductsWithCategory(barcode, null, 0, 0f, 0f);
+
+        assertThat(productViewModel.getQueryParameters().getValue(),
+                is(ProductQueryParameters.search(barcode, null, 0, 0, 0, productViewModel.getNaturalOrdering())));
+
+        List<ProductWithCategory> productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertFalse(productsWithCategories.isEmpty());
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            assertTrue(productWithCategory.getProduct().getBarcode().contains(barcode));
+        }
+    }
+
+    @Test
+    public void repeatingTheSameSearchKeepsTheSameQueryParameters() {
+        productViewModel.searchProductsWithCategory("123", "pil", 0, 0f, 0f);
+        ProductQueryParameters queryParameters = productViewModel.getQueryParameters().getValue();
+
+        productViewModel.searchProductsWithCategory("123", "pil", 0, 0f, 0f);
+
+        assertSame(queryParameters, productViewModel.getQueryParameters().getValue());
+    }
+
+    @Test
+    public void narrowingSearchFiltersResultsWhichStayUpToDate() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        productDao.insert(TestData.PRODUCT_TO_ADD_2);
+
+        productViewModel.searchProductsWithCategory(null, "p", 0, 0f, 0f);
+        List<ProductWithCategory> productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+        assertThat(productsWithCategories.size(), is(2));
+
+        // Filtered from the results of "p" rather than searched for in the database
+        productViewModel.searchProductsWithCategory(null, "pil", 0, 0f, 0f);
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+        assertThat(productsWithCategories.size(), is(1));
+        assertThat(productsWithCategories.get(0).getProduct(), is(TestData.PRODUCT_3));
+
+        // Products added later still show up in the filtered results
+        Product newProduct = new Product(20, "Pillowcases", "5555555555555", new Price(4, 0), 2, "None");
+        productDao.insert(newProduct);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+        assertThat(productsWithCategories.size(), is(2));
+
+        // Widening the search goes back to the database
+        productViewModel.searchProductsWithCategory(null, "s", 0, 0f, 0f);
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+        assertThat(productsWithCategories.size(), is(3));
+    }
+
     @Test
     public void testNullGuardOnReorderWhenLiveDataIsNull() {
         try {
@@ -883,6 +960,91 @@ public class ProductViewModelTest {
         }
     }
 
+    @Test
+    public void reorderProductListAboveInMemorySortThresholdReordersThroughDatabase() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+
+        // Every list is now above the threshold, so reordering reruns the query in the new order.
+        productViewModel.setInMemorySortThreshold(0);
+
+        List<ProductWithCategory> productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertThat(productsWithCategories.size(), is(TestData.PRODUCTS.size()));
+
+        OrderByEnum newOrdering = OrderByEnum.PRICE_DESC;
+        productViewModel.reorderProductList(newOrdering);
+
+        assertSame(newOrdering, productViewModel.getCurrentOrdering());
+
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertThat(productsWithCategories.size(), is(TestData.PRODUCTS.size()));
+
+        for (int i = 1; i < productsWithCategories.size(); i++) {
+            Price currentPrice = productsWithCategories.get(i).getProduct().getPrice();
+            Price previousPrice = productsWithCategories.get(i - 1).getProduct().getPrice();
+
+            assertTrue(currentPrice.compareTo(previousPrice) <= 0);
+        }
+
+        // Changes to the products keep coming through in the database's order.
+        productViewModel.addProduct(TestData.PRODUCT_TO_ADD_1);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertThat(productsWithCategories.size(), is(TestData.PRODUCTS.size() + 1));
+
+        for (int i = 1; i < productsWithCategories.size(); i++) {
+            Price currentPrice = productsWithCategories.get(i).getProduct().getPrice();
+            Price previousPrice = productsWithCategories.get(i - 1).getProduct().getPrice();
+
+            assertTrue(currentPrice.compareTo(previousPrice) <= 0);
+        }
+    }
+
+    @Test
+    public void reorderingGivesTheSameOrderEitherSideOfTheInMemorySortThreshold() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(MIXED_CASE_PRODUCTS);
+
+        for (OrderByEnum orderBy : OrderByEnum.values()) {
+            if (orderBy == OrderByEnum.NO_ORDER) {
+                // Leaves the order up to the database, so there is no order to match.
+                continue;
+            }
+
+            List<Long> sortedInMemory = reorderFromNaturalOrdering(orderBy, Integer.MAX_VALUE);
+            List<Long> orderedByDatabase = reorderFromNaturalOrdering(orderBy, 0);
+
+            assertThat(orderBy.toString(), sortedInMemory, is(orderedByDatabase));
+            assertThat(orderBy.toString(), orderedByDatabase, is(queryIdsInOrder(orderBy)));
+        }
+    }
+
+    @Test
+    public void reorderingByNameInMemoryGivesTheDatabaseOrderForMixedCaseNames() throws InterruptedException {
+        categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        productDao.insertMultiple(MIXED_CASE_PRODUCTS);
+
+        List<ProductWithCategory> productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertThat(productsWithCategories.size(), is(MIXED_CASE_PRODUCTS.length));
+        assertThat(getIds(productsWithCategories), is(queryIdsInOrder(OrderByEnum.NAME_ASC)));
+
+        // Both lists are well under the threshold, so these are sorted in memory.
+        productViewModel.reorderProductList(OrderByEnum.NAME_DESC);
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertThat(getIds(productsWithCategories), is(queryIdsInOrder(OrderByEnum.NAME_DESC)));
+
+        productViewModel.reorderProductList(OrderByEnum.NAME_ASC);
+        productsWithCategories = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        assertThat(getIds(productsWithCategories), is(queryIdsInOrder(OrderByEnum.NAME_ASC)));
+    }
+
     @Test
     public void updateDatabaseProductListAndTestIfSortedListIsUpdatedAndReorderedCorrectly() throws InterruptedException {
         categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
@@ -1660,27 +1822,29 @@ public class ProductViewModelTest {
         }
     }
 
-    // Search with partial name
+    // Search with partial name. Names are matched by the start of each word in them.
     // - Partial name at start of product
-    // - Partial name in mid of product
-    // - Partial name at end of product
+    // - Partial name at start of a later word in product
+    // - Partial name in mid of a word in product, which doesn't match
     @Test
     public void searchProductsWithCategoriesByPartialName() throws InterruptedException {
         categoryDao.insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
         productDao.insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+        productDao.insert(TestData.PRODUCT_TO_ADD_3);
 
         Product product = LiveDataTestUtil.getValue(productDao.getProductById(TestData.PRODUCT_3.getId()));
         assertNotNull(product);
 
         String fullName = TestData.PRODUCT_3.getName();
-        // First 3 letters of product name
+        // First 2 letters of product name
         String startPartialName = fullName.substring(0, 2);
 
-        // Middle 3 letters of product name
+        // Middle 2 letters of product name
         String midPartialName = fullName.substring(2, 4);
 
-        // End 3 letters of product name
-        String endPartialName = fullName.substring(fullName.length() - 3, fullName.length() - 1);
+        // First 2 letters of the second word of a product's name
+        String secondWordName = TestData.PRODUCT_TO_ADD_3.getName();
+        String secondWordPartialName = secondWordName.substring(secondWordName.indexOf(' ') + 1, secondWordName.indexOf(' ') + 3);
 
         String barcode = null;
         // A categoryId of 0 doesn't filter search results by category id
@@ -1689,7 +1853,7 @@ public class ProductViewModelTest {
         float lowerPrice = 0;
         float higherPrice = 0;
 
-        // Each search should return a single result
+        // Searches by the start of a word should return a single result
         int listSize = 1;
 
         // Search with the partial name from start of the product name
@@ -1699,19 +1863,18 @@ public class ProductViewModelTest {
         assertThat(productsWithCategory.size(), is(listSize));
         assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_3));
 
-        // Search with the partial name from middle of the product name
-        productViewModel.searchProductsWithCategory(barcode, midPartialName, categoryId, lowerPrice, higherPrice);
+        // Search with the partial name from start of the second word of the product name
+        productViewModel.searchProductsWithCategory(barcode, secondWordPartialName, categoryId, lowerPrice, higherPrice);
         productsWithCategory = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
 
         assertThat(productsWithCategory.size(), is(listSize));
-        assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_3));
+        assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_TO_ADD_3));
 
-        // Search with the partial name from start of the product name
-        productViewModel.searchProductsWithCategory(barcode, endPartialName, categoryId, lowerPrice, higherPrice);
+        // Search with the partial name from middle of the product name
+        productViewModel.searchProductsWithCategory(barcode, midPartialName, categoryId, lowerPrice, higherPrice);
         productsWithCategory = LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
 
-        assertThat(productsWithCategory.size(), is(listSize));
-        assertThat(productsWithCategory.get(0).getProduct(), is(TestData.PRODUCT_3));
+        assertTrue(productsWithCategory.isEmpty());
     }
 
     // Search with exact name
@@ -2456,4 +2619,32 @@ public class ProductViewModelTest {
             assertTrue(currentPrice.compareTo(previousPrice) >= 0);
         }
     }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Returns the ids of every product in the order the database's ORDER BY for orderBy puts them.
+    private List<Long> queryIdsInOrder(OrderByEnum orderBy) {
+        return getIds(productDao.queryProductsWithCategory(new SimpleSQLiteQuery(
+                ProductDao.PRODUCT_WITH_CATEGORY_QUERY + SearchQueryTemplates.createOrderByString(orderBy))));
+    }
+
+    // Shows every product in the natural ordering, then reorders them by orderBy with the given in
+    // memory sort threshold and returns the ids of the reordered list.
+    private List<Long> reorderFromNaturalOrdering(OrderByEnum orderBy, int inMemorySortThreshold) throws InterruptedException {
+        productViewModel.populateListWithAllProductsWithCategories();
+        LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories());
+
+        productViewModel.setInMemorySortThreshold(inMemorySortThreshold);
+        productViewModel.reorderProductList(orderBy);
+
+        return getIds(LiveDataTestUtil.getValue(productViewModel.getProductsWithCategories()));
+    }
+
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
 }
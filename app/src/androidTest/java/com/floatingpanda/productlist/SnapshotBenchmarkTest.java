@@ -0,0 +1,120 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.exportimport.ExportFormat;
+import com.floatingpanda.productlist.exportimport.ImportProgress;
+import com.floatingpanda.productlist.exportimport.ProductCsvImporter;
+import com.floatingpanda.productlist.exportimport.ProductExporter;
+import com.floatingpanda.productlist.exportimport.ProductSnapshot;
+import com.floatingpanda.productlist.exportimport.SnapshotInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares backing up and restoring the catalogue through a binary snapshot against a CSV export
+ * and import. The timings are written to logcat under the "Benchmark" tag rather than asserted on,
+ * as they depend on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SnapshotBenchmarkTest {
+    private static final String TAG = "Benchmark";
+
+    private static final int PRODUCT_COUNT = 100000;
+
+    private AppDatabase db;
+    private AppDatabase restoredDb;
+    private File snapshotFile;
+    private File csvFile;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        restoredDb = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        snapshotFile = new File(context.getCacheDir(), "benchmark_snapshot");
+        csvFile = new File(context.getCacheDir(), "benchmark_csv");
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+
+        Product[] products = new Product[PRODUCT_COUNT];
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            products[i] = new Product(i + 1, "Product " + i, String.format("50%011d", i), new Price(i % 50, i % 100),
+                    i % 4, i % 10 == 0 ? "Notes, with a comma" : null);
+        }
+        db.runInTransaction(() -> db.productDao().insertMultiple(products));
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+        restoredDb.close();
+        snapshotFile.delete();
+        csvFile.delete();
+    }
+
+    @Test
+    public void snapshotRoundTripAgainstCsvRoundTrip() throws IOException {
+        SnapshotInfo written;
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "rw").getChannel()) {
+            written = new ProductSnapshot(db).write(channel);
+        }
+        SnapshotInfo restored;
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "r").getChannel()) {
+            restored = new ProductSnapshot(restoredDb).restore(channel);
+        }
+
+        assertThat(restored.getProductCount(), is(PRODUCT_COUNT));
+
+        restoredDb.runInTransaction(() -> {
+            restoredDb.productDao().deleteAll();
+            restoredDb.categoryDao().deleteAll();
+        });
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        new ProductExporter(db).exportProducts(new FileOutputStream(csvFile), ExportFormat.CSV, false, null);
+        long csvExportNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        ImportProgress imported = new ProductCsvImporter(restoredDb)
+                .importProducts(new FileInputStream(csvFile).getChannel(), csvFile.length(), null);
+        long csvImportNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        assertThat(imported.getRowsImported(), is((long) PRODUCT_COUNT));
+
+        Log.i(TAG, String.format("%d products: snapshot %.1fMB, written in %.0fms, restored in %.0fms; "
+                        + "CSV %.1fMB, exported in %.0fms, imported in %.0fms",
+                PRODUCT_COUNT, written.getSizeBytes() / 1e6, written.getElapsedNanos() / 1e6,
+                restored.getElapsedNanos() / 1e6, csvFile.length() / 1e6, csvExportNanos / 1e6,
+                csvImportNanos / 1e6));
+    }
+}
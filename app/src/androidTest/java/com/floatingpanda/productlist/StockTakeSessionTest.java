@@ -0,0 +1,208 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.StockTake;
+import com.floatingpanda.productlist.db.StockTakeCount;
+import com.floatingpanda.productlist.db.StockTakeDao;
+import com.floatingpanda.productlist.repositories.StockTakeSession;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class StockTakeSessionTest {
+    @Rule
+    public InstantTaskExecutorRule instantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private AppDatabase db;
+    private StockTakeDao stockTakeDao;
+
+    // The time the fake clock gives the session, in milliseconds.
+    private long now;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        stockTakeDao = db.stockTakeDao();
+
+        db.categoryDao().insertMultiple(TestData.CATEGORIES.toArray(new Category[TestData.CATEGORIES.size()]));
+        db.productDao().insertMultiple(TestData.PRODUCTS.toArray(new Product[TestData.PRODUCTS.size()]));
+    }
+
+    @After
+    public void closeDb() throws IOException {
+        db.close();
+    }
+
+    @Test
+    public void scansAreCountedInMemoryUntilFlushed() throws InterruptedException {
+        StockTakeSession session = createSession(100);
+
+        session.scan(TestData.PRODUCT_1.getBarcode());
+        session.scan(TestData.PRODUCT_1.getBarcode());
+
+        assertThat(session.getScanCount(), is(2));
+        assertThat(session.getStockTakeId(), is(0L));
+
+        session.flush();
+
+        List<StockTakeCount> counts = LiveDataTestUtil.getValue(stockTakeDao.getCounts(session.getStockTakeId()));
+
+        assertThat(counts.size(), is(1));
+        assertThat(counts.get(0).getBarcode(), is(TestData.PRODUCT_1.getBarcode()));
+        assertThat(counts.get(0).getProductId(), is(TestData.PRODUCT_1.getId()));
+        assertThat(counts.get(0).getQuantity(), is(2));
+    }
+
+    @Test
+    public void flushesAddToTheSavedCounts() throws InterruptedException {
+        // Flushes every 3 scans
+        StockTakeSession session = createSession(3);
+
+        session.scan(TestData.PRODUCT_3.getBarcode());
+        session.scan(TestData.PRODUCT_3.getBarcode());
+        session.scan("5000000000001");
+        session.scan(TestData.PRODUCT_3.getBarcode());
+        session.scan(" ");
+        session.flush();
+
+        List<StockTakeCount> counts = LiveDataTestUtil.getValue(stockTakeDao.getCounts(session.getStockTakeId()));
+
+        assertThat(counts.size(), is(2));
+        assertThat(counts.get(0).getBarcode(), is(TestData.PRODUCT_3.getBarcode()));
+        assertThat(counts.get(0).getQuantity(), is(3));
+        // Barcodes which aren't in the catalogue are counted without a product
+        assertThat(counts.get(1).getBarcode(), is("5000000000001"));
+        assertThat(counts.get(1).getProductId(), is(0L));
+        assertThat(counts.get(1).getQuantity(), is(1));
+
+        StockTake stockTake = LiveDataTestUtil.getValue(stockTakeDao.getStockTake(session.getStockTakeId()));
+
+        assertThat(stockTake.getScanCount(), is(4));
+    }
+
+    @Test
+    public void flushLooksUpMoreBarcodesThanOneQueryAllows() throws InterruptedException {
+        int unknownBarcodes = ProductDao.MAX_QUERY_PARAMETERS * 2;
+        StockTakeSession session = createSession(unknownBarcodes + 2);
+
+        for (int i = 0; i < unknownBarcodes; i++) {
+            session.scan(String.format("50%011d", i));
+        }
+        session.scan(TestData.PRODUCT_2.getBarcode());
+        session.scan(TestData.PRODUCT_4.getBarcode());
+
+        Map<String, Long> productIds = new HashMap<>();
+        for (StockTakeCount count : LiveDataTestUtil.getValue(stockTakeDao.getCounts(session.getStockTakeId()))) {
+            productIds.put(count.getBarcode(), count.getProductId());
+        }
+
+        assertThat(productIds.size(), is(unknownBarcodes + 2));
+        assertThat(productIds.get("5000000000000"), is(0L));
+        // Products 2 and 5 share a barcode, the lower id is used
+        assertThat(productIds.get(TestData.PRODUCT_2.getBarcode()), is(TestData.PRODUCT_2.getId()));
+        assertThat(productIds.get(TestData.PRODUCT_4.getBarcode()), is(TestData.PRODUCT_4.getId()));
+    }
+
+    @Test
+    public void flushesLookUpBarcodesAgainOnceTheCatalogueChanges() throws InterruptedException {
+        StockTakeSession session = createSession(100);
+        String newBarcode = "5000000000001";
+
+        session.scan(newBarcode);
+        session.scan(TestData.PRODUCT_1.getBarcode());
+        session.flush();
+
+        // A product is added with the barcode which wasn't found, and the product found is deleted.
+        db.productDao().insert(new Product(20, "Plug", newBarcode, new Price(1, 50), 1, "None"));
+        db.productDao().delete(TestData.PRODUCT_1);
+
+        session.scan(newBarcode);
+        session.scan(TestData.PRODUCT_1.getBarcode());
+        session.flush();
+
+        Map<String, StockTakeCount> counts = new HashMap<>();
+        for (StockTakeCount count : LiveDataTestUtil.getValue(stockTakeDao.getCounts(session.getStockTakeId()))) {
+            counts.put(count.getBarcode(), count);
+        }
+
+        assertThat(counts.get(newBarcode).getProductId(), is(20L));
+        assertThat(counts.get(newBarcode).getQuantity(), is(2));
+        assertThat(counts.get(TestData.PRODUCT_1.getBarcode()).getProductId(), is(0L));
+        assertThat(counts.get(TestData.PRODUCT_1.getBarcode()).getQuantity(), is(2));
+    }
+
+    @Test
+    public void failedFlushIsReportedAndItsScansAreSavedByTheNextFlush() throws InterruptedException {
+        StockTakeSession session = createSession(100);
+
+        session.scan(TestData.PRODUCT_1.getBarcode());
+        session.scan(TestData.PRODUCT_1.getBarcode());
+
+        // Hides the counts table so the flush fails
+        db.getOpenHelper().getWritableDatabase().execSQL("ALTER TABLE stock_take_counts RENAME TO hidden_counts");
+        session.flush();
+        db.getOpenHelper().getWritableDatabase().execSQL("ALTER TABLE hidden_counts RENAME TO stock_take_counts");
+
+        assertThat(LiveDataTestUtil.getValue(session.getFlushError()), is(notNullValue()));
+        assertThat(session.getStockTakeId(), is(0L));
+
+        session.scan(TestData.PRODUCT_1.getBarcode());
+        session.flush();
+
+        List<StockTakeCount> counts = LiveDataTestUtil.getValue(stockTakeDao.getCounts(session.getStockTakeId()));
+
+        assertThat(counts.size(), is(1));
+        assertThat(counts.get(0).getProductId(), is(TestData.PRODUCT_1.getId()));
+        assertThat(counts.get(0).getQuantity(), is(3));
+    }
+
+    @Test
+    public void scansPerSecondIsMeasuredFromTheFirstScan() {
+        StockTakeSession session = createSession(100);
+
+        assertThat(session.getScansPerSecond(), is(0.0));
+
+        for (int i = 0; i < 5; i++) {
+            session.scan(TestData.PRODUCT_1.getBarcode());
+            now += 250;
+        }
+
+        // 4 gaps of 250ms between 5 scans
+        assertThat(session.getScansPerSecond(), is(4.0));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Flushes on the calling thread, so flushed scans are saved straight away.
+    private StockTakeSession createSession(int flushScans) {
+        return new StockTakeSession(db, Runnable::run, () -> now, flushScans);
+    }
+}
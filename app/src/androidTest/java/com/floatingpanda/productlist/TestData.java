@@ -42,4 +42,8 @@ public class TestData {
 
     public static final Price PRODUCT_TO_ADD_PRICE_2 = new Price(8, 74);
     public static final Product PRODUCT_TO_ADD_2 = new Product(10, "Pepper", "1234576123009", PRODUCT_TO_ADD_PRICE_2, 1, "None");
+
+    // Not in PRODUCTS. Its name has a second word and its notes mention product 2's name.
+    public static final Price PRODUCT_TO_ADD_3_PRICE = new Price(12, 50);
+    public static final Product PRODUCT_TO_ADD_3 = new Product(11, "Bath towels", "5060000000017", PRODUCT_TO_ADD_3_PRICE, 1, "Hang by the sink");
 }
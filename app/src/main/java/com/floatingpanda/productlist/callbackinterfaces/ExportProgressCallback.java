@@ -0,0 +1,7 @@
+package com.floatingpanda.productlist.callbackinterfaces;
+
+import com.floatingpanda.productlist.exportimport.ExportProgress;
+
+public interface ExportProgressCallback {
+    void onProgress(ExportProgress progress);
+}
@@ -0,0 +1,7 @@
+package com.floatingpanda.productlist.callbackinterfaces;
+
+import com.floatingpanda.productlist.exportimport.ImportProgress;
+
+public interface ImportProgressCallback {
+    void onProgress(ImportProgress progress);
+}
@@ -1,53 +1,410 @@
 package com.floatingpanda.productlist.db;
 
 import android.content.Context;
+import android.database.Cursor;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.floatingpanda.productlist.repositories.BarcodeBloomFilter;
+import com.floatingpanda.productlist.repositories.BarcodeIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 //TODO look into the elements in this class, e.g. ExecutorService and threads.
-@Database(entities = {Category.class, Product.class}, version = 1, exportSchema = false)
+@Database(entities = {Category.class, Product.class, ProductFts.class, BarcodeTrigram.class, StockTake.class,
+        StockTakeCount.class, ProductChange.class, ChangeWatermark.class}, version = 7, exportSchema = true)
 @TypeConverters({PriceTypeConverter.class})
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract CategoryDao categoryDao();
     public abstract ProductDao productDao();
+    public abstract StockTakeDao stockTakeDao();
+    public abstract ChangeLogDao changeLogDao();
+
+    public static final String DATABASE_NAME = "product_database";
 
     private static volatile AppDatabase INSTANCE;
     private static final int NUMBER_OF_THREADS = 4;
     private static final ExecutorService databaseWriteExecutor =
             Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+    // How long replaceDatabaseFile() waits for the executor's tasks to finish.
+    private static final long EXECUTOR_PAUSE_TIMEOUT_SECONDS = 30;
+
+    // Shared by every repository using this database, see ProductRepository.
+    private final BarcodeIndex barcodeIndex = new BarcodeIndex();
+    private final BarcodeBloomFilter barcodeFilter = new BarcodeBloomFilter();
+
+    // Held by writeProducts() from the start of a write until the barcode index has been updated.
+    private final Object productWriteLock = new Object();
+
+    /**
+     * A write to products, which returns how to bring the barcode index up to date with what it
+     * wrote, see writeProducts().
+     */
+    public interface ProductWrite<E extends Exception> {
+        Runnable write() throws E;
+    }
 
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
-                            AppDatabase.class, "product_database")
-                            .fallbackToDestructiveMigration()
-                            .addCallback(sRoomDatabaseCallback)
+                            AppDatabase.class, DATABASE_NAME)
+                            .addMigrations(MIGRATIONS)
+                            .addCallback(CHANGE_LOG_CALLBACK)
                             .build();
+                    // Warms the barcode index and filter in the background, so that scans don't
+                    // have to wait for them.
+                    databaseWriteExecutor.execute(INSTANCE::rebuildBarcodeIndex);
+                    databaseWriteExecutor.execute(INSTANCE::rebuildBarcodeFilter);
                 }
             }
         }
         return INSTANCE;
     }
 
+    /**
+     * Replaces the database file with another, e.g. a backup, and reopens the database. The
+     * replacement must be in the same directory as the database file, so it can be renamed over it.
+     *
+     * The tasks already given to the database executor are left to finish, and it's held until the
+     * new database is open, so nothing is written to the database while it's replaced. Callers of
+     * getDatabase() wait until the new database is open too. Must not be called from the database
+     * executor.
+     *
+     * The current database is closed, so anything holding it has to get the database again. The
+     * view models and repositories hold it, so after replacing the database the app restarts its
+     * activity as a new task, which clears them. The process carries on, so the new database
+     * instance, the executors and anything else static are kept; the barcode index and filter belong
+     * to the database and are rebuilt for the new one.
+     *
+     * @param replacement the database file to use instead, which is moved rather than copied
+     * @return the reopened database
+     * @throws IOException if the file can't be moved, in which case the current file is reopened, or
+     *         the database executor doesn't finish its tasks in time
+     */
+    @WorkerThread
+    public static AppDatabase replaceDatabaseFile(final Context context, File replacement) throws IOException {
+        File databaseFile = context.getApplicationContext().getDatabasePath(DATABASE_NAME);
+        if (!databaseFile.getParentFile().equals(replacement.getParentFile())) {
+            throw new IOException(replacement + " isn't in the same directory as the database.");
+        }
+
+        synchronized (AppDatabase.class) {
+            CountDownLatch resume = pauseExecutor();
+            try {
+                AppDatabase database = INSTANCE;
+                INSTANCE = null;
+                if (database != null) {
+                    database.close();
+                }
+
+                // Closing the database checkpointed its log into the file, and a write-ahead log left
+                // over from the old file would be applied to the new one.
+                new File(databaseFile.getPath() + "-wal").delete();
+                new File(databaseFile.getPath() + "-shm").delete();
+                new File(databaseFile.getPath() + "-journal").delete();
+
+                // A rename within a directory is atomic, so the database file is always either the
+                // old file or the new one.
+                boolean replaced = replacement.renameTo(databaseFile);
+
+                // Reopened either way, so a failed replacement leaves the old database working.
+                AppDatabase reopened = getDatabase(context);
+                if (!replaced) {
+                    throw new IOException("Couldn't move " + replacement + " to " + databaseFile + ".");
+                }
+
+                return reopened;
+            } finally {
+                resume.countDown();
+            }
+        }
+    }
+
+    // Waits for the tasks already given to the database executor to finish, by giving each of its
+    // threads a task which waits until the returned latch is counted down.
+    private static CountDownLatch pauseExecutor() throws IOException {
+        CountDownLatch paused = new CountDownLatch(NUMBER_OF_THREADS);
+        CountDownLatch resume = new CountDownLatch(1);
+        for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+            databaseWriteExecutor.execute(() -> {
+                paused.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        try {
+            if (!paused.await(EXECUTOR_PAUSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                resume.countDown();
+                throw new IOException("The database is too busy to be replaced.");
+            }
+        } catch (InterruptedException e) {
+            resume.countDown();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the database to be free.");
+        }
+
+        return resume;
+    }
+
+    // Version 1 -> 2: adds the indices on the products table used by the product list, search and
+    // filter queries. The indices are built in place so the existing catalogue is kept.
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_barcode` ON `products` (`barcode`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_category_id` ON `products` (`category_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_name` ON `products` (`name`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_price` ON `products` (`price`)");
+        }
+    };
+
+    // Version 2 -> 3: adds the products_fts full-text table used for name searches, along with the
+    // triggers Room uses to keep it in sync with products, then builds the index from the existing
+    // products.
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `products_fts` USING FTS4("
+                    + "`name` TEXT, `notes` TEXT, tokenize=unicode61, content=`products`)");
+            createProductsFtsTriggers(database);
+            database.execSQL("INSERT INTO `products_fts`(`products_fts`) VALUES ('rebuild')");
+        }
+    };
+
+    // Version 3 -> 4: adds the barcode_trigrams table used for partial barcode searches and fills it
+    // with the trigrams of every existing barcode.
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `barcode_trigrams` (`trigram` TEXT NOT NULL, "
+                    + "`product_id` INTEGER NOT NULL, PRIMARY KEY(`trigram`, `product_id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_barcode_trigrams_product_id` "
+                    + "ON `barcode_trigrams` (`product_id`)");
+            database.execSQL("WITH RECURSIVE grams(product_id, barcode, position) AS ("
+                    + "SELECT id, upper(barcode), 1 FROM products "
+                    + "WHERE barcode IS NOT NULL AND length(barcode) >= 3 "
+                    + "UNION ALL "
+                    + "SELECT product_id, barcode, position + 1 FROM grams WHERE position + 3 <= length(barcode)) "
+                    + "INSERT OR IGNORE INTO barcode_trigrams (trigram, product_id) "
+                    + "SELECT substr(barcode, position, 3), product_id FROM grams");
+        }
+    };
+
+    // Version 4 -> 5: adds the stock_takes and stock_take_counts tables used by stock-take sessions.
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `stock_takes` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`started_at` INTEGER NOT NULL, `scan_count` INTEGER NOT NULL)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `stock_take_counts` (`stock_take_id` INTEGER NOT NULL, "
+                    + "`barcode` TEXT NOT NULL, `product_id` INTEGER NOT NULL, `quantity` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`stock_take_id`, `barcode`))");
+        }
+    };
+
+    // Version 5 -> 6: adds the product_changes change log, the triggers which fill it and the
+    // change_watermarks table used by delta exports. Existing products aren't logged, so a full export
+    // is needed before the first delta.
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `product_changes` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`table_name` TEXT NOT NULL, `row_id` INTEGER NOT NULL, `operation` TEXT NOT NULL, "
+                    + "`changed_at` INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_product_changes_table_name_row_id` "
+                    + "ON `product_changes` (`table_name`, `row_id`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `change_watermarks` (`name` TEXT NOT NULL, "
+                    + "`seq` INTEGER NOT NULL, PRIMARY KEY(`name`))");
+            createChangeLogTriggers(database);
+        }
+    };
+
+    // Version 6 -> 7: gives products.name the LOCALIZED collation, so names are ordered by the
+    // device's locale as they are when sorted in memory. A column's collation can't be altered, so
+    // products is copied into a new table which then replaces it. Dropping products drops its
+    // indices and triggers, which are created again. Product ids are kept, so products_fts, which
+    // indexes products by id, is still up to date.
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `products_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT NOT NULL COLLATE LOCALIZED, `barcode` TEXT, `price` INTEGER NOT NULL, "
+                    + "`category_id` INTEGER NOT NULL DEFAULT 0, `notes` TEXT)");
+            database.execSQL("INSERT INTO `products_new` (`id`, `name`, `barcode`, `price`, `category_id`, `notes`) "
+                    + "SELECT `id`, `name`, `barcode`, `price`, `category_id`, `notes` FROM `products`");
+            database.execSQL("DROP TABLE `products`");
+            database.execSQL("ALTER TABLE `products_new` RENAME TO `products`");
+
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_barcode` ON `products` (`barcode`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_category_id` ON `products` (`category_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_name` ON `products` (`name`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_products_price` ON `products` (`price`)");
+            createProductsFtsTriggers(database);
+            createChangeLogTriggers(database);
+        }
+    };
+
+    // Every migration, in version order. New migrations must be added here so that existing
+    // installs are upgraded rather than failing to open.
+    public static final Migration[] MIGRATIONS = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7
+    };
+
+    // Creates the triggers Room uses to keep products_fts in sync with products.
+    private static void createProductsFtsTriggers(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_BEFORE_UPDATE "
+                + "BEFORE UPDATE ON `products` BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_BEFORE_DELETE "
+                + "BEFORE DELETE ON `products` BEGIN DELETE FROM `products_fts` WHERE `docid`=OLD.`rowid`; END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_AFTER_UPDATE "
+                + "AFTER UPDATE ON `products` BEGIN INSERT INTO `products_fts`(`docid`, `name`, `notes`) "
+                + "VALUES (NEW.`rowid`, NEW.`name`, NEW.`notes`); END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_products_fts_AFTER_INSERT "
+                + "AFTER INSERT ON `products` BEGIN INSERT INTO `products_fts`(`docid`, `name`, `notes`) "
+                + "VALUES (NEW.`rowid`, NEW.`name`, NEW.`notes`); END");
+    }
+
+    /**
+     * Creates the triggers which log every insert, update and delete of products and categories to
+     * product_changes, if they don't exist yet. Room can't declare triggers, so they're created when
+     * the database is opened as well as by MIGRATION_5_6.
+     */
+    public static void createChangeLogTriggers(SupportSQLiteDatabase database) {
+        for (String table : new String[] {ProductChange.PRODUCTS, ProductChange.CATEGORIES}) {
+            database.execSQL(changeLogTrigger(table, "INSERT", "NEW"));
+            database.execSQL(changeLogTrigger(table, "UPDATE", "NEW"));
+            database.execSQL(changeLogTrigger(table, "DELETE", "OLD"));
+        }
+    }
+
+    private static String changeLogTrigger(String table, String operation, String row) {
+        return "CREATE TRIGGER IF NOT EXISTS `" + table + "_change_log_AFTER_" + operation + "` "
+                + "AFTER " + operation + " ON `" + table + "` BEGIN "
+                + "INSERT INTO `product_changes` (`table_name`, `row_id`, `operation`, `changed_at`) "
+                + "VALUES ('" + table + "', " + row + ".`id`, '" + operation.toLowerCase(Locale.ROOT) + "', "
+                + "CAST(strftime('%s', 'now') AS INTEGER) * 1000); END";
+    }
+
     public static ExecutorService getExecutorService() {
         return databaseWriteExecutor;
     }
 
-    private static Callback sRoomDatabaseCallback = new Callback() {
+    public BarcodeIndex getBarcodeIndex() {
+        return barcodeIndex;
+    }
+
+    public BarcodeBloomFilter getBarcodeFilter() {
+        return barcodeFilter;
+    }
+
+    /**
+     * Runs a write to products, then brings the barcode index up to date by running the Runnable
+     * the write returns. The write has committed by the time it returns, so a write which fails or
+     * is rolled back never reaches the index. A rebuild of the index can't miss a write either: a
+     * write committed before the rebuild reads the products is read by it, and one committed after
+     * is passed on to the index after the rebuild has started, so it's replayed on top of the
+     * rebuilt index. Writes made through here reach the index in the order they were committed, as
+     * each holds a lock until the index has been updated.
+     *
+     * Must not be called inside a transaction, as the write would then not have committed when the
+     * index is updated.
+     *
+     * @param write writes to products, in a transaction of its own if it makes more than one write,
+     *              and returns how to update the index, or null if it doesn't need updating
+     * @throws E if write throws
+     */
+    @WorkerThread
+    public <E extends Exception> void writeProducts(ProductWrite<E> write) throws E {
+        if (inTransaction()) {
+            throw new IllegalStateException("Products can't be written inside a transaction, as the barcode "
+                    + "index would be updated before they're committed.");
+        }
+
+        synchronized (productWriteLock) {
+            Runnable indexUpdate = write.write();
+            if (indexUpdate != null) {
+                indexUpdate.run();
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the products with exactly the barcode from the barcode index, or null if
+     * it hasn't been built yet. Waits for any write through writeProducts() in progress, so the ids
+     * aren't read between a write committing and the index being brought up to date with it, e.g.
+     * by a query refreshed because of the write. Mustn't be called on the main thread.
+     */
+    @WorkerThread
+    public long[] getProductIdsByBarcode(String barcode) {
+        synchronized (productWriteLock) {
+            return barcodeIndex.getProductIds(barcode);
+        }
+    }
+
+    /**
+     * Builds the barcode index from the products in the database. Writes made through
+     * writeProducts() while it's being built are applied to it after it's built, see
+     * BarcodeIndex.rebuild().
+     */
+    @WorkerThread
+    public void rebuildBarcodeIndex() {
+        barcodeIndex.rebuild(entries -> {
+            try (Cursor cursor = productDao().getProductBarcodes()) {
+                while (cursor.moveToNext()) {
+                    entries.accept(cursor.isNull(1) ? null : cursor.getString(1), cursor.getLong(0));
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the barcode filter from the products in the database, sized for their number.
+     */
+    @WorkerThread
+    public void rebuildBarcodeFilter() {
+        barcodeFilter.rebuild(productDao().countBarcodes(), barcodes -> {
+            try (Cursor cursor = productDao().getProductBarcodes()) {
+                while (cursor.moveToNext()) {
+                    barcodes.accept(cursor.isNull(1) ? null : cursor.getString(1));
+                }
+            }
+        });
+    }
+
+    // Creates the change log triggers whenever the database is opened. Every builder of an
+    // AppDatabase, including those for tests and in-memory databases, must add it with addCallback()
+    // so that changes are logged for delta exports.
+    public static final Callback CHANGE_LOG_CALLBACK = new Callback() {
         @Override
         public void onOpen(@NonNull SupportSQLiteDatabase db) {
             super.onOpen(db);
+            createChangeLogTriggers(db);
         }
     };
 }
@@ -0,0 +1,99 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One three character slice (trigram) of a product's barcode. Every product with a barcode has a
+ * row for each distinct trigram in it, which lets searches for part of a barcode find the products
+ * that could match without scanning every barcode. The rows are kept up to date by ProductDao.
+ *
+ * Trigrams are stored upper-cased, matching barcode searches which are case-insensitive. Only ASCII
+ * letters are upper-cased and trigrams are three characters (code points) long, as SQLite's upper()
+ * and substr() work, so the trigrams MIGRATION_3_4 and ProductDatabaseMerger create in SQL are the
+ * same as those created here. LIKE also only ignores the case of ASCII letters.
+ */
+@Entity(tableName = "barcode_trigrams",
+        primaryKeys = {"trigram", "product_id"},
+        indices = {@Index(value = "product_id")})
+public class BarcodeTrigram {
+    // The length of the slices barcodes are broken into.
+    public static final int TRIGRAM_LENGTH = 3;
+
+    @NonNull
+    private String trigram;
+
+    @ColumnInfo(name = "product_id")
+    private long productId;
+
+    public BarcodeTrigram(@NonNull String trigram, long productId) {
+        this.trigram = trigram;
+        this.productId = productId;
+    }
+
+    @NonNull
+    public String getTrigram() { return trigram; }
+    public long getProductId() { return productId; }
+
+    /**
+     * Returns the distinct trigrams in a barcode, in the order they first appear. Barcodes shorter
+     * than three characters, or null barcodes, have no trigrams.
+     *
+     * @param barcode a barcode, or part of one
+     * @return the distinct trigrams in barcode
+     */
+    public static Set<String> trigramsOf(String barcode) {
+        Set<String> trigrams = new LinkedHashSet<>();
+
+        if (barcode == null) {
+            return trigrams;
+        }
+
+        String normalisedBarcode = toUpperCaseAscii(barcode);
+        int length = normalisedBarcode.codePointCount(0, normalisedBarcode.length());
+        int start = 0;
+        for (int i = 0; i + TRIGRAM_LENGTH <= length; i++) {
+            int end = normalisedBarcode.offsetByCodePoints(start, TRIGRAM_LENGTH);
+            trigrams.add(normalisedBarcode.substring(start, end));
+            start = normalisedBarcode.offsetByCodePoints(start, 1);
+        }
+
+        return trigrams;
+    }
+
+    /**
+     * Creates the trigram rows for a product's barcode.
+     *
+     * @param productId the id of the product
+     * @param barcode the product's barcode, may be null
+     * @return a row for each distinct trigram in barcode
+     */
+    public static List<BarcodeTrigram> forProduct(long productId, String barcode) {
+        List<BarcodeTrigram> barcodeTrigrams = new ArrayList<>();
+
+        for (String trigram : trigramsOf(barcode)) {
+            barcodeTrigrams.add(new BarcodeTrigram(trigram, productId));
+        }
+
+        return barcodeTrigrams;
+    }
+
+    // Upper-cases ASCII letters only, as SQLite's upper() does.
+    private static String toUpperCaseAscii(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'a' && chars[i] <= 'z') {
+                chars[i] -= 'a' - 'A';
+            }
+        }
+
+        return new String(chars);
+    }
+}
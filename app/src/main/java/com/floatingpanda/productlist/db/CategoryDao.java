@@ -6,6 +6,7 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
 import java.util.List;
@@ -17,14 +18,29 @@ public interface CategoryDao {
     @Query("SELECT * FROM categories ORDER BY name")
     LiveData<List<Category>> getAll();
 
+    // Returns all categories, for work done off the main thread, e.g. importing products
+    @Query("SELECT * FROM categories")
+    List<Category> queryAll();
+
+    // Returns the id of the inserted category, or -1 if it wasn't inserted
     @Insert(onConflict = OnConflictStrategy.IGNORE)
-    void insert(Category category);
+    long insert(Category category);
 
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     void insertMultiple(Category... categories);
 
+    // Returns how many categories were updated, i.e. 0 if there's no category with its id
     @Update
-    void update(Category category);
+    int update(Category category);
+
+    // Inserts the category, or updates it if its id is taken, e.g. when replaying changes from
+    // another device.
+    @Transaction
+    default void upsert(Category category) {
+        if (update(category) == 0) {
+            insert(category);
+        }
+    }
 
     @Delete
     void delete(Category category);
@@ -32,6 +48,9 @@ public interface CategoryDao {
     @Delete
     void deleteMultiple(Category... categories);
 
+    @Query("DELETE FROM categories WHERE id = :id")
+    void deleteById(long id);
+
     @Query("DELETE from categories")
     void deleteAll();
 
@@ -0,0 +1,68 @@
+package com.floatingpanda.productlist.db;
+
+import android.database.Cursor;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+/**
+ * Reads and compacts the change log (see ProductChange) and keeps the delta export watermarks.
+ */
+@Dao
+public interface ChangeLogDao {
+    // The seq of the latest change, or 0 if the log is empty.
+    @Query("SELECT COALESCE(MAX(seq), 0) FROM product_changes")
+    long getLatestSeq();
+
+    @Query("SELECT COUNT(*) FROM product_changes")
+    int countChanges();
+
+    // Returns null if nothing has been exported to the target yet.
+    @Query("SELECT seq FROM change_watermarks WHERE name = :name")
+    Long getWatermark(String name);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void setWatermark(ChangeWatermark watermark);
+
+    // The categories changed in (afterSeq, upToSeq], each once, with their current name. present is
+    // 0 for categories which have since been deleted. The cursor must be closed once read.
+    @Query("SELECT changed.row_id AS id, categories.id IS NOT NULL AS present, categories.name AS name "
+            + "FROM (SELECT DISTINCT row_id FROM product_changes WHERE table_name = 'categories' "
+            + "AND seq > :afterSeq AND seq <= :upToSeq) AS changed "
+            + "LEFT JOIN categories ON categories.id = changed.row_id ORDER BY changed.row_id")
+    Cursor getChangedCategories(long afterSeq, long upToSeq);
+
+    // The products changed in (afterSeq, upToSeq], each once, with their current columns. present is
+    // 0 for products which have since been deleted. The cursor must be closed once read.
+    @Query("SELECT changed.row_id AS id, products.id IS NOT NULL AS present, products.name AS name, "
+            + "products.barcode AS barcode, products.price AS price, products.category_id AS category_id, "
+            + "products.notes AS notes "
+            + "FROM (SELECT DISTINCT row_id FROM product_changes WHERE table_name = 'products' "
+            + "AND seq > :afterSeq AND seq <= :upToSeq) AS changed "
+            + "LEFT JOIN products ON products.id = changed.row_id ORDER BY changed.row_id")
+    Cursor getChangedProducts(long afterSeq, long upToSeq);
+
+    /**
+     * Shrinks the change log without losing anything a delta export needs: only the latest change
+     * to each row is kept, as exports read the row's current state anyway, and changes every
+     * watermark has passed are dropped. Without any watermarks only the first step applies, so the
+     * log never holds more than one entry per product and category.
+     *
+     * @return how many changes were removed
+     */
+    @Transaction
+    default int compact() {
+        return deleteSupersededChanges() + deleteExportedChanges();
+    }
+
+    @Query("DELETE FROM product_changes WHERE seq NOT IN "
+            + "(SELECT MAX(seq) FROM product_changes GROUP BY table_name, row_id)")
+    int deleteSupersededChanges();
+
+    // Deletes nothing while there are no watermarks, as MIN() is then null.
+    @Query("DELETE FROM product_changes WHERE seq <= (SELECT MIN(seq) FROM change_watermarks)")
+    int deleteExportedChanges();
+}
@@ -0,0 +1,27 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * How far through the change log a delta export target has got: every change up to and including
+ * seq has been exported to it.
+ */
+@Entity(tableName = "change_watermarks")
+public class ChangeWatermark {
+    @PrimaryKey
+    @NonNull
+    private String name;
+
+    private long seq;
+
+    public ChangeWatermark(@NonNull String name, long seq) {
+        this.name = name;
+        this.seq = seq;
+    }
+
+    @NonNull
+    public String getName() { return name; }
+    public long getSeq() { return seq; }
+}
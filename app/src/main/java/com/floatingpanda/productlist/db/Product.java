@@ -6,18 +6,32 @@ import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
  * Represents a product in the store. A product may be without a barcode. A product may also have no
  * category it belongs to.
+ *
+ * Each column the product list is searched, filtered or ordered by has its own index so that those
+ * queries do not have to scan the whole table. Any change to these indices needs a matching
+ * migration in AppDatabase.
  */
-@Entity(tableName = "products")
+@Entity(tableName = "products",
+        indices = {
+                @Index(value = "barcode"),
+                @Index(value = "category_id"),
+                @Index(value = "name"),
+                @Index(value = "price")
+        })
 public class Product {
     @PrimaryKey(autoGenerate = true)
     private long id;
 
+    // Names are collated by the device's locale, so ORDER BY name and index_products_name put them
+    // in the order NameSortKeyCache sorts them in memory.
     @NonNull
+    @ColumnInfo(collate = ColumnInfo.LOCALIZED)
     private String name;
 
     @Nullable
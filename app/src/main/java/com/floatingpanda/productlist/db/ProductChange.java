@@ -0,0 +1,59 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * An entry in the change log: a product or category which was inserted, updated or deleted. The
+ * entries are written by triggers on the products and categories tables (see
+ * AppDatabase.createChangeLogTriggers()) rather than through a DAO, so every write is logged however
+ * it's made. Delta exports use the log to find what changed since the last export.
+ */
+@Entity(tableName = "product_changes",
+        indices = {
+                @Index(value = {"table_name", "row_id"})
+        })
+public class ProductChange {
+    public static final String PRODUCTS = "products";
+    public static final String CATEGORIES = "categories";
+
+    // Increases with every change and is never reused, so it orders the log and works as a watermark.
+    @PrimaryKey(autoGenerate = true)
+    private long seq;
+
+    // The table the change was made to, PRODUCTS or CATEGORIES.
+    @NonNull
+    @ColumnInfo(name = "table_name")
+    private String tableName;
+
+    // The id of the product or category changed.
+    @ColumnInfo(name = "row_id")
+    private long rowId;
+
+    // "insert", "update" or "delete".
+    @NonNull
+    private String operation;
+
+    // When the change was made, in milliseconds since the epoch.
+    @ColumnInfo(name = "changed_at")
+    private long changedAt;
+
+    public ProductChange(long seq, @NonNull String tableName, long rowId, @NonNull String operation, long changedAt) {
+        this.seq = seq;
+        this.tableName = tableName;
+        this.rowId = rowId;
+        this.operation = operation;
+        this.changedAt = changedAt;
+    }
+
+    public long getSeq() { return seq; }
+    @NonNull
+    public String getTableName() { return tableName; }
+    public long getRowId() { return rowId; }
+    @NonNull
+    public String getOperation() { return operation; }
+    public long getChangedAt() { return changedAt; }
+}
@@ -1,5 +1,7 @@
 package com.floatingpanda.productlist.db;
 
+import android.database.Cursor;
+
 import androidx.lifecycle.LiveData;
 import androidx.room.Dao;
 import androidx.room.Delete;
@@ -11,10 +13,32 @@ import androidx.room.Transaction;
 import androidx.room.Update;
 import androidx.sqlite.db.SupportSQLiteQuery;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 @Dao
 public interface ProductDao {
+    /**
+     * Selects products along with the columns of their categories, with the category columns
+     * prefixed by "cat_" to match ProductWithCategory. Products and their categories are loaded by a
+     * single query, products without a category get null category columns. WHERE and ORDER BY
+     * clauses can be appended to it.
+     */
+    String PRODUCT_WITH_CATEGORY_QUERY = "SELECT products.*, categories.id AS cat_id, categories.name AS cat_name"
+            + " FROM products LEFT JOIN categories ON categories.id = products.category_id";
+
+    // The query of getProductSnapshotPage(), which ProductSnapshot also runs on a connection of its
+    // own, binding afterId then limit.
+    String PRODUCT_SNAPSHOT_PAGE_QUERY = "SELECT id, name, barcode, price, category_id, notes FROM products "
+            + "WHERE id > :afterId ORDER BY id LIMIT :limit";
+
+    // The most parameters SQLite allows in one statement by default, which limits how many values
+    // can be looked up by one IN (...) query.
+    int MAX_QUERY_PARAMETERS = 999;
 
     @Query("SELECT * FROM products")
     LiveData<List<Product>> getAll();
@@ -22,44 +46,202 @@ public interface ProductDao {
     @Query("SELECT * FROM products WHERE id = :id")
     LiveData<Product> getProductById(long id);
 
-    @Insert(onConflict = OnConflictStrategy.IGNORE)
-    void insert(Product product);
+    // Products are written through the default methods below, which keep the barcode_trigrams
+    // index in step with the products table. The *Row methods only write to products and should not
+    // be called directly.
+
+    // Returns the product's id, or -1 if it wasn't inserted as its id is taken.
+    @Transaction
+    default long insert(Product product) {
+        long id = insertRow(product);
+        if (id != -1) {
+            insertBarcodeTrigrams(BarcodeTrigram.forProduct(id, product.getBarcode()));
+        }
+        return id;
+    }
+
+    // Returns the products' ids, in the same order, with -1 for those which weren't inserted.
+    @Transaction
+    default long[] insertMultiple(Product... products) {
+        long[] ids = insertRows(products);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != -1) {
+                insertBarcodeTrigrams(BarcodeTrigram.forProduct(ids[i], products[i].getBarcode()));
+            }
+        }
+        return ids;
+    }
+
+    @Transaction
+    default void update(Product product) {
+        if (updateRows(product) > 0) {
+            reindexBarcode(product);
+        }
+    }
+
+    @Transaction
+    default void updateMultiple(Product... products) {
+        updateRows(products);
+        for (Product product : products) {
+            reindexBarcode(product);
+        }
+    }
+
+    // Inserts the product, or updates it if its id is taken, e.g. when replaying changes from
+    // another device.
+    @Transaction
+    default void upsert(Product product) {
+        if (updateRows(product) > 0) {
+            reindexBarcode(product);
+        } else {
+            insert(product);
+        }
+    }
+
+    @Transaction
+    default void delete(Product product) {
+        deleteBarcodeTrigrams(product.getId());
+        deleteRows(product);
+    }
+
+    @Transaction
+    default void deleteMultiple(Product... products) {
+        for (Product product : products) {
+            deleteBarcodeTrigrams(product.getId());
+        }
+        deleteRows(products);
+    }
+
+    @Transaction
+    default void deleteById(long id) {
+        deleteBarcodeTrigrams(id);
+        deleteRowById(id);
+    }
+
+    @Transaction
+    default void deleteAll() {
+        deleteAllBarcodeTrigrams();
+        deleteAllRows();
+    }
+
+    default void reindexBarcode(Product product) {
+        deleteBarcodeTrigrams(product.getId());
+        insertBarcodeTrigrams(BarcodeTrigram.forProduct(product.getId(), product.getBarcode()));
+    }
 
     @Insert(onConflict = OnConflictStrategy.IGNORE)
-    void insertMultiple(Product... products);
+    long insertRow(Product product);
 
-    @Update
-    void update(Product product);
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long[] insertRows(Product... products);
 
     @Update
-    void updateMultiple(Product... products);
+    int updateRows(Product... products);
 
     @Delete
-    void delete(Product product);
+    void deleteRows(Product... products);
 
-    @Delete
-    void deleteMultiple(Product... products);
+    @Query("DELETE FROM products WHERE id = :id")
+    int deleteRowById(long id);
 
     @Query("DELETE FROM products")
-    void deleteAll();
+    void deleteAllRows();
 
-    @Transaction
-    @Query("SELECT * FROM products")
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertBarcodeTrigrams(List<BarcodeTrigram> barcodeTrigrams);
+
+    @Query("DELETE FROM barcode_trigrams WHERE product_id = :productId")
+    void deleteBarcodeTrigrams(long productId);
+
+    @Query("DELETE FROM barcode_trigrams")
+    void deleteAllBarcodeTrigrams();
+
+    // The id and barcode of every product, for building the in-memory barcode index. The cursor must
+    // be closed once read.
+    @Query("SELECT id, barcode FROM products")
+    Cursor getProductBarcodes();
+
+    @Query("SELECT COUNT(barcode) FROM products")
+    int countBarcodes();
+
+    // A page of products flattened with their category's name, for exporting. Pages are keyed by id
+    // rather than OFFSET so each page is a seek on the primary key, and are small enough to fit in one
+    // cursor window. The cursor must be closed once read.
+    @Query("SELECT products.id, products.name, products.barcode, products.price, categories.name AS category_name, "
+            + "products.notes FROM products LEFT JOIN categories ON categories.id = products.category_id "
+            + "WHERE products.id > :afterId ORDER BY products.id LIMIT :limit")
+    Cursor getProductExportPage(long afterId, int limit);
+
+    @Query("SELECT COUNT(*) FROM products")
+    int countProducts();
+
+    // A page of products' raw columns, for writing snapshots. Paged by id like getProductExportPage().
+    // The cursor must be closed once read.
+    @Query(PRODUCT_SNAPSHOT_PAGE_QUERY)
+    Cursor getProductSnapshotPage(long afterId, int limit);
+
+    @Query(PRODUCT_WITH_CATEGORY_QUERY)
     LiveData<List<ProductWithCategory>> getProductsWithCategory();
 
-    @Transaction
-    @Query("SELECT * FROM products WHERE id LIKE :id")
+    @Query(PRODUCT_WITH_CATEGORY_QUERY + " WHERE products.id = :id")
     LiveData<ProductWithCategory> getProductWithCategoryByProductId(long id);
 
-    @Transaction
-    @Query("SELECT * FROM products WHERE barcode LIKE :barcode")
+    @Query(PRODUCT_WITH_CATEGORY_QUERY + " WHERE products.barcode = :barcode")
     LiveData<List<ProductWithCategory>> getProductsWithCategoryByExactBarcode(String barcode);
 
-    @Transaction
-    @Query("SELECT * FROM products WHERE category_id LIKE :categoryId")
+    @Query(PRODUCT_WITH_CATEGORY_QUERY + " WHERE products.category_id = :categoryId")
     LiveData<List<ProductWithCategory>> getProductsWithCategoryByCategoryId(long categoryId);
 
-    @Transaction
+    /**
+     * Looks up many barcodes at once, e.g. for imports and stock-takes. The barcodes are looked up
+     * MAX_QUERY_PARAMETERS at a time by IN (...) queries. Runs on the calling thread.
+     *
+     * It isn't run in a transaction of its own, as Room's transactions are exclusive and would hold
+     * up every writer for the whole lookup. Each query sees the products as they are when it runs,
+     * so up to MAX_QUERY_PARAMETERS barcodes are always looked up in the same state of the
+     * catalogue. Callers which need more than that to be consistent, or to write what they find,
+     * call this in their own transaction, as StockTakeSession does.
+     *
+     * @param barcodes the barcodes to look up, duplicates and nulls are ignored
+     * @return the products with each barcode, in id order, keyed by barcode. Barcodes no product
+     *         has are left out.
+     */
+    default Map<String, List<ProductWithCategory>> getProductsWithCategoryByBarcodes(Collection<String> barcodes) {
+        List<String> distinctBarcodes = new ArrayList<>(new LinkedHashSet<>(barcodes));
+        distinctBarcodes.remove(null);
+
+        Map<String, List<ProductWithCategory>> productsByBarcode = new HashMap<>();
+        for (int start = 0; start < distinctBarcodes.size(); start += MAX_QUERY_PARAMETERS) {
+            List<String> chunk = distinctBarcodes.subList(start,
+                    Math.min(start + MAX_QUERY_PARAMETERS, distinctBarcodes.size()));
+
+            for (ProductWithCategory productWithCategory : queryProductsWithCategoryByBarcodes(chunk)) {
+                String barcode = productWithCategory.getProduct().getBarcode();
+                List<ProductWithCategory> products = productsByBarcode.get(barcode);
+                if (products == null) {
+                    products = new ArrayList<>(1);
+                    productsByBarcode.put(barcode, products);
+                }
+                products.add(productWithCategory);
+            }
+        }
+
+        return productsByBarcode;
+    }
+
+    // Takes at most MAX_QUERY_PARAMETERS barcodes, use getProductsWithCategoryByBarcodes() instead.
+    @Query(PRODUCT_WITH_CATEGORY_QUERY + " WHERE products.barcode IN (:barcodes) ORDER BY products.id")
+    List<ProductWithCategory> queryProductsWithCategoryByBarcodes(List<String> barcodes);
+
+    // Runs on the calling thread, for comparing against getProductsWithCategoryByBarcodes().
+    @Query(PRODUCT_WITH_CATEGORY_QUERY + " WHERE products.barcode = :barcode ORDER BY products.id")
+    List<ProductWithCategory> queryProductsWithCategoryByExactBarcode(String barcode);
+
+    // Raw queries should select from PRODUCT_WITH_CATEGORY_QUERY so they return the category columns.
     @RawQuery (observedEntities = {Product.class, Category.class})
     LiveData<List<ProductWithCategory>> searchProductsWithCategory(SupportSQLiteQuery query);
+
+    // Runs on the calling thread, for loading pages of products in the background.
+    @RawQuery
+    List<ProductWithCategory> queryProductsWithCategory(SupportSQLiteQuery query);
 }
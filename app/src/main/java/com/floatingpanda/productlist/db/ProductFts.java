@@ -0,0 +1,26 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the name and notes of every product. The table holds no data of its own, it
+ * uses the products table as its content and Room keeps the two in sync with triggers on products.
+ * A row's docid is the id of the product it indexes.
+ */
+@Fts4(contentEntity = Product.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "products_fts")
+public class ProductFts {
+    String name;
+
+    String notes;
+
+    public ProductFts(String name, String notes) {
+        this.name = name;
+        this.notes = notes;
+    }
+
+    public String getName() { return name; }
+    public String getNotes() { return notes; }
+}
@@ -2,15 +2,16 @@ package com.floatingpanda.productlist.db;
 
 import androidx.annotation.Nullable;
 import androidx.room.Embedded;
-import androidx.room.Relation;
 
+/**
+ * A product together with the category it belongs to, loaded in one go by joining products with
+ * categories (see ProductDao.PRODUCT_WITH_CATEGORY_QUERY). The category is null if the product has
+ * no category.
+ */
 public class ProductWithCategory {
     @Embedded
     public Product product;
-    @Relation(
-            parentColumn = "category_id",
-            entityColumn = "id"
-    )
+    @Embedded(prefix = "cat_")
     public Category category;
 
     public ProductWithCategory(Product product, Category category) {
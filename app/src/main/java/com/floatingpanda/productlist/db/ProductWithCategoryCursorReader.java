@@ -0,0 +1,69 @@
+package com.floatingpanda.productlist.db;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads products with categories from a cursor over a query built from
+ * ProductDao.PRODUCT_WITH_CATEGORY_QUERY, in the same way Room reads them for the DAO's queries. For
+ * queries run outside of the DAO, e.g. ones which can be cancelled part way through.
+ *
+ * The column indices are looked up once, when the reader is created.
+ */
+public class ProductWithCategoryCursorReader {
+    private final Cursor cursor;
+
+    private final int idIndex;
+    private final int nameIndex;
+    private final int barcodeIndex;
+    private final int priceIndex;
+    private final int categoryIdIndex;
+    private final int notesIndex;
+    private final int categoryColumnIdIndex;
+    private final int categoryNameIndex;
+
+    public ProductWithCategoryCursorReader(Cursor cursor) {
+        this.cursor = cursor;
+
+        idIndex = cursor.getColumnIndexOrThrow("id");
+        nameIndex = cursor.getColumnIndexOrThrow("name");
+        barcodeIndex = cursor.getColumnIndexOrThrow("barcode");
+        priceIndex = cursor.getColumnIndexOrThrow("price");
+        categoryIdIndex = cursor.getColumnIndexOrThrow("category_id");
+        notesIndex = cursor.getColumnIndexOrThrow("notes");
+        categoryColumnIdIndex = cursor.getColumnIndexOrThrow("cat_id");
+        categoryNameIndex = cursor.getColumnIndexOrThrow("cat_name");
+    }
+
+    /**
+     * Reads the product with category in the cursor's current row.
+     */
+    public ProductWithCategory read() {
+        Product product = new Product(cursor.getLong(idIndex), cursor.getString(nameIndex),
+                cursor.isNull(barcodeIndex) ? null : cursor.getString(barcodeIndex),
+                PriceTypeConverter.fromPriceInt(cursor.getInt(priceIndex)), cursor.getLong(categoryIdIndex),
+                cursor.isNull(notesIndex) ? null : cursor.getString(notesIndex));
+
+        // Products without a category have null category columns, which Room reads as no category.
+        Category category = null;
+        if (!cursor.isNull(categoryColumnIdIndex) || !cursor.isNull(categoryNameIndex)) {
+            category = new Category(cursor.getLong(categoryColumnIdIndex), cursor.getString(categoryNameIndex));
+        }
+
+        return new ProductWithCategory(product, category);
+    }
+
+    /**
+     * Reads every row left in the cursor.
+     */
+    public List<ProductWithCategory> readAll() {
+        List<ProductWithCategory> productsWithCategories = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            productsWithCategories.add(read());
+        }
+
+        return productsWithCategories;
+    }
+}
@@ -0,0 +1,39 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+/**
+ * A stock-take, in which the stock is counted by scanning every item's barcode. The count of each
+ * barcode is kept in a StockTakeCount.
+ */
+@Entity(tableName = "stock_takes")
+public class StockTake {
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    // When the stock-take started, in milliseconds since the epoch.
+    @ColumnInfo(name = "started_at")
+    private long startedAt;
+
+    // How many scans have been saved.
+    @ColumnInfo(name = "scan_count")
+    private int scanCount;
+
+    public StockTake(long id, long startedAt, int scanCount) {
+        this.id = id;
+        this.startedAt = startedAt;
+        this.scanCount = scanCount;
+    }
+
+    @Ignore
+    public StockTake(long startedAt) {
+        this(0, startedAt, 0);
+    }
+
+    public long getId() { return id; }
+    public long getStartedAt() { return startedAt; }
+    public int getScanCount() { return scanCount; }
+}
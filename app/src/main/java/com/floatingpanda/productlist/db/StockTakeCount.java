@@ -0,0 +1,38 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * How many times a barcode has been scanned in a stock-take, along with the product it belongs to.
+ * Barcodes which don't belong to any product are counted too, with a product id of 0, so that
+ * items missing from the catalogue show up.
+ */
+@Entity(tableName = "stock_take_counts",
+        primaryKeys = {"stock_take_id", "barcode"})
+public class StockTakeCount {
+    @ColumnInfo(name = "stock_take_id")
+    private long stockTakeId;
+
+    @NonNull
+    private String barcode;
+
+    @ColumnInfo(name = "product_id")
+    private long productId;
+
+    private int quantity;
+
+    public StockTakeCount(long stockTakeId, @NonNull String barcode, long productId, int quantity) {
+        this.stockTakeId = stockTakeId;
+        this.barcode = barcode;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public long getStockTakeId() { return stockTakeId; }
+    @NonNull
+    public String getBarcode() { return barcode; }
+    public long getProductId() { return productId; }
+    public int getQuantity() { return quantity; }
+}
@@ -0,0 +1,48 @@
+package com.floatingpanda.productlist.db;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+@Dao
+public interface StockTakeDao {
+    @Insert
+    long insertStockTake(StockTake stockTake);
+
+    @Query("SELECT * FROM stock_takes WHERE id = :id")
+    LiveData<StockTake> getStockTake(long id);
+
+    @Query("SELECT * FROM stock_take_counts WHERE stock_take_id = :stockTakeId ORDER BY barcode")
+    LiveData<List<StockTakeCount>> getCounts(long stockTakeId);
+
+    /**
+     * Adds the counts to those already saved for the stock-take, along with the number of scans
+     * they add up to, in one transaction.
+     */
+    @Transaction
+    default void addCounts(long stockTakeId, List<StockTakeCount> counts) {
+        int scans = 0;
+        for (StockTakeCount count : counts) {
+            if (addToCount(stockTakeId, count.getBarcode(), count.getProductId(), count.getQuantity()) == 0) {
+                insertCount(count);
+            }
+            scans += count.getQuantity();
+        }
+
+        addToScanCount(stockTakeId, scans);
+    }
+
+    @Query("UPDATE stock_take_counts SET quantity = quantity + :quantity, product_id = :productId "
+            + "WHERE stock_take_id = :stockTakeId AND barcode = :barcode")
+    int addToCount(long stockTakeId, String barcode, long productId, int quantity);
+
+    @Insert
+    void insertCount(StockTakeCount count);
+
+    @Query("UPDATE stock_takes SET scan_count = scan_count + :scans WHERE id = :stockTakeId")
+    void addToScanCount(long stockTakeId, int scans);
+}
@@ -0,0 +1,30 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * How big a database file backup is, and how long it took to write or restore.
+ */
+public class BackupInfo {
+    private final long sizeBytes;
+    private final long elapsedNanos;
+
+    /**
+     * @param sizeBytes the size of the database file
+     * @param elapsedNanos how long the backup took to write or restore
+     */
+    public BackupInfo(long sizeBytes, long elapsedNanos) {
+        this.sizeBytes = sizeBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getSizeBytes() { return sizeBytes; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : sizeBytes * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bytes in %.1f s, %.2f MB/s", sizeBytes, elapsedNanos / 1e9, getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,211 @@
+package com.floatingpanda.productlist.exportimport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+
+/**
+ * Reads CSV (RFC 4180) a row at a time from a channel, through fixed size byte and char buffers, so
+ * files of any size can be read in the same amount of memory. Fields may be quoted, in which case
+ * they can hold commas, line breaks and doubled quotes. Rows may end with \n or \r\n, blank lines
+ * are skipped and a leading byte order mark is ignored. Bytes which aren't valid in the charset are
+ * replaced rather than failing the whole file.
+ */
+public class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Limits on a single row, so a broken file (e.g. with an unclosed quote) can't use up the heap.
+    public static final int MAX_FIELD_LENGTH = 64 * 1024;
+    public static final int MAX_FIELDS = 1024;
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder field = new StringBuilder();
+
+    private boolean endOfInput;
+    private boolean decoderFlushed;
+    private boolean startOfInput = true;
+    private long bytesRead;
+    private long rowCount;
+
+    /**
+     * @param channel the channel to read from, which is closed by close()
+     * @param charset the charset the CSV is encoded in
+     */
+    public CsvReader(ReadableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        // Both buffers start off empty, ready to be read from.
+        bytes.flip();
+        chars.flip();
+    }
+
+    /**
+     * Returns how many bytes have been read from the channel so far.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns how many rows have been read so far.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads the next row into fields, replacing whatever they held.
+     *
+     * @param fields the list to read the row's fields into
+     * @return false if there are no more rows, in which case fields is left empty
+     * @throws IOException if the channel can't be read, or the row is malformed or too large
+     */
+    public boolean readRow(List<String> fields) throws IOException {
+        fields.clear();
+        field.setLength(0);
+
+        boolean inQuotes = false;
+        boolean rowStarted = false;
+
+        while (true) {
+            int c = nextChar();
+
+            if (c == -1) {
+                if (inQuotes) {
+                    throw new IOException("Row " + (rowCount + 1) + " has a quoted field which isn't closed.");
+                }
+                return rowStarted && endRow(fields);
+            }
+
+            if (inQuotes) {
+                if (c != '"') {
+                    append(c);
+                } else if (peekChar() == '"') {
+                    nextChar();
+                    append('"');
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                rowStarted = true;
+            } else if (c == ',') {
+                addField(fields);
+                rowStarted = true;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peekChar() == '\n') {
+                    nextChar();
+                }
+                if (rowStarted) {
+                    return endRow(fields);
+                }
+            } else {
+                append(c);
+                rowStarted = true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private boolean endRow(List<String> fields) throws IOException {
+        addField(fields);
+        rowCount++;
+        return true;
+    }
+
+    private void addField(List<String> fields) throws IOException {
+        if (fields.size() >= MAX_FIELDS) {
+            throw new IOException("Row " + (rowCount + 1) + " has more than " + MAX_FIELDS + " fields.");
+        }
+
+        fields.add(field.toString());
+        field.setLength(0);
+    }
+
+    private void append(int c) throws IOException {
+        if (field.length() >= MAX_FIELD_LENGTH) {
+            throw new IOException("Row " + (rowCount + 1) + " has a field longer than " + MAX_FIELD_LENGTH
+                    + " characters.");
+        }
+
+        field.append((char) c);
+    }
+
+    private int nextChar() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+
+        char c = chars.get();
+        if (startOfInput) {
+            startOfInput = false;
+            if (c == BYTE_ORDER_MARK) {
+                return nextChar();
+            }
+        }
+
+        return c;
+    }
+
+    private int peekChar() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return -1;
+        }
+
+        return chars.get(chars.position());
+    }
+
+    // Decodes more of the channel into chars, which must have been read to the end. Returns false
+    // once the channel has been read to the end as well.
+    private boolean fill() throws IOException {
+        chars.clear();
+
+        while (chars.position() == 0 && !decoderFlushed) {
+            if (!endOfInput) {
+                bytes.compact();
+                int read = channel.read(bytes);
+                bytes.flip();
+
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    bytesRead += read;
+                }
+            }
+
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            if (endOfInput) {
+                decoder.flush(chars);
+                decoderFlushed = true;
+            }
+        }
+
+        chars.flip();
+        return chars.hasRemaining();
+    }
+}
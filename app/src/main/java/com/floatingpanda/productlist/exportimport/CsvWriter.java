@@ -0,0 +1,93 @@
+package com.floatingpanda.productlist.exportimport;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes CSV (RFC 4180) a field at a time, in the form CsvReader reads. Fields are only quoted when
+ * they hold a comma, quote or line break. Rows end with \r\n.
+ */
+public class CsvWriter implements Closeable, Flushable {
+    private final Writer writer;
+    private boolean rowStarted;
+
+    /**
+     * @param writer the writer to write to, which should be buffered
+     */
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the next field in the row. A null field is written as an empty one.
+     */
+    public void writeField(String field) throws IOException {
+        if (rowStarted) {
+            writer.write(',');
+        }
+        rowStarted = true;
+
+        if (field == null) {
+            return;
+        }
+
+        if (!needsQuotes(field)) {
+            writer.write(field);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Writes a whole row.
+     */
+    public void writeRow(String... fields) throws IOException {
+        for (String field : fields) {
+            writeField(field);
+        }
+        endRow();
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public void endRow() throws IOException {
+        writer.write("\r\n");
+        rowStarted = false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+
+        // A leading byte order mark would be dropped when read back.
+        return field.length() > 0 && field.charAt(0) == '\uFEFF';
+    }
+}
@@ -0,0 +1,187 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+
+import androidx.annotation.WorkerThread;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Backs up the whole database file while the app carries on using it, and restores such a backup
+ * in place of the database. Unlike ProductSnapshot, everything in the database is kept, including
+ * stock-takes and the change log.
+ *
+ * A backup checkpoints the write-ahead log into the database file, then starts a read transaction
+ * on a connection of its own. While that transaction is open SQLite won't checkpoint into the
+ * database file, so the file stays as it was at the checkpoint and is copied with
+ * FileChannel.transferTo() while the app goes on reading and writing through the log. Writes only
+ * wait for the checkpoint itself. If the database isn't using write-ahead logging, writes wait until
+ * the copy is finished instead.
+ */
+public class DatabaseFileBackup {
+    // How many times a backup checkpoints before giving up, if a write keeps getting in between the
+    // checkpoint and the start of the read transaction.
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final AppDatabase database;
+
+    public DatabaseFileBackup(AppDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Copies the database file to the start of target, replacing what it held, and syncs it to
+     * storage.
+     *
+     * @param target a writable channel to the file to write the backup to
+     * @return the size of the backup and how long it took
+     * @throws IOException if the database isn't a file, is too busy to back up or target can't be written
+     */
+    @WorkerThread
+    public BackupInfo backUp(FileChannel target) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        String path = database.getOpenHelper().getWritableDatabase().getPath();
+        if (path == null || !new File(path).isFile()) {
+            throw new IOException("Only databases stored in a file can be backed up.");
+        }
+        File walFile = new File(path + "-wal");
+
+        SQLiteDatabase reader = SQLiteDatabase.openDatabase(path, null,
+                SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        try {
+            beginSnapshot(reader, walFile);
+            try (FileChannel source = new FileInputStream(path).getChannel()) {
+                target.truncate(0);
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target);
+                }
+                target.force(true);
+
+                return new BackupInfo(size, SystemClock.elapsedRealtimeNanos() - start);
+            } finally {
+                reader.execSQL("RELEASE backup");
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Replaces the database with a backup and reopens it, see AppDatabase.replaceDatabaseFile().
+     * The backup is copied next to the database file and checked before the database is touched, so
+     * if it can't be restored the database is left as it was. Backups from older versions of the app
+     * are migrated when the database is reopened.
+     *
+     * @param context the context of the app whose database is replaced
+     * @param source a readable channel to the backup
+     * @return the size of the backup and how long it took to restore
+     * @throws IOException if the backup can't be read, isn't a product database, is corrupt or is
+     *         from a newer version of the app
+     */
+    @WorkerThread
+    public static BackupInfo restore(Context context, FileChannel source) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        File databaseFile = context.getDatabasePath(AppDatabase.DATABASE_NAME);
+        File staged = new File(databaseFile.getParentFile(), AppDatabase.DATABASE_NAME + ".restore");
+        int currentVersion = AppDatabase.getDatabase(context).getOpenHelper().getReadableDatabase().getVersion();
+
+        try {
+            long size = source.size();
+            try (FileChannel out = new FileOutputStream(staged).getChannel()) {
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position, out);
+                }
+                out.force(true);
+            }
+
+            checkBackup(staged, currentVersion);
+            AppDatabase.replaceDatabaseFile(context, staged);
+
+            return new BackupInfo(size, SystemClock.elapsedRealtimeNanos() - start);
+        } finally {
+            // Only left behind if the restore failed.
+            staged.delete();
+            new File(staged.getPath() + "-journal").delete();
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Checkpoints the database and starts a read transaction on reader which sees exactly what's in
+    // the database file, keeping later checkpoints out of the file until it's released.
+    private void beginSnapshot(SQLiteDatabase reader, File walFile) throws IOException {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            // Copies the log into the database file and empties it. Writes wait while this runs.
+            try (Cursor cursor = database.query("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+                cursor.moveToFirst();
+            }
+
+            // A savepoint outside a transaction begins a deferred transaction, which Android has no
+            // other way of starting, and which doesn't stop the app writing.
+            reader.execSQL("SAVEPOINT backup");
+            // The read transaction starts with the first read.
+            DatabaseUtils.longForQuery(reader, "SELECT COUNT(*) FROM sqlite_master", null);
+
+            // An empty log means nothing was written since the checkpoint, so the transaction sees
+            // the database file as it is.
+            if (walFile.length() == 0) {
+                return;
+            }
+
+            reader.execSQL("RELEASE backup");
+        }
+
+        throw new IOException("The database is too busy to back up.");
+    }
+
+    // Checks a backup is a product database this version of the app can open.
+    private static void checkBackup(File file, int currentVersion) throws IOException {
+        SQLiteDatabase backup;
+        try {
+            // Opened without an error handler, as the default one deletes corrupt files, and with the
+            // localized collators, which the check needs for products.name's index.
+            backup = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE, db -> { });
+        } catch (SQLiteException e) {
+            throw new IOException("The file isn't a database.", e);
+        }
+
+        try {
+            String result = DatabaseUtils.stringForQuery(backup, "PRAGMA quick_check", null);
+            if (!"ok".equals(result)) {
+                throw new IOException("The backup is corrupt: " + result);
+            }
+
+            long tables = DatabaseUtils.longForQuery(backup, "SELECT COUNT(*) FROM sqlite_master "
+                    + "WHERE type = 'table' AND name IN ('products', 'categories')", null);
+            if (tables != 2) {
+                throw new IOException("The file isn't a product database.");
+            }
+
+            int version = backup.getVersion();
+            if (version > currentVersion) {
+                throw new IOException("The backup is from version " + version + " of the app but this is version "
+                        + currentVersion + ".");
+            }
+        } catch (SQLiteException e) {
+            throw new IOException("The file isn't a database.", e);
+        } finally {
+            backup.close();
+        }
+    }
+}
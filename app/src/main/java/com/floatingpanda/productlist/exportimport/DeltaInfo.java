@@ -0,0 +1,39 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * What a delta file holds.
+ */
+public class DeltaInfo {
+    private final long fromSeq;
+    private final long toSeq;
+    private final int categoryCount;
+    private final int productCount;
+    private final int deletedCount;
+
+    /**
+     * @param fromSeq the change log seq the delta starts after
+     * @param toSeq the change log seq the delta goes up to, inclusive
+     * @param categoryCount how many categories were changed, including those deleted
+     * @param productCount how many products were changed, including those deleted
+     * @param deletedCount how many of the categories and products were deleted
+     */
+    public DeltaInfo(long fromSeq, long toSeq, int categoryCount, int productCount, int deletedCount) {
+        this.fromSeq = fromSeq;
+        this.toSeq = toSeq;
+        this.categoryCount = categoryCount;
+        this.productCount = productCount;
+        this.deletedCount = deletedCount;
+    }
+
+    public long getFromSeq() { return fromSeq; }
+    public long getToSeq() { return toSeq; }
+    public int getCategoryCount() { return categoryCount; }
+    public int getProductCount() { return productCount; }
+    public int getDeletedCount() { return deletedCount; }
+
+    @Override
+    public String toString() {
+        return String.format("changes %d to %d: %d categories and %d products, %d deleted",
+                fromSeq + 1, toSeq, categoryCount, productCount, deletedCount);
+    }
+}
@@ -0,0 +1,30 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * The formats products can be exported in.
+ */
+public enum ExportFormat {
+    // In the ProductCsvFormat, so exports can be imported again.
+    CSV("csv", "text/csv"),
+    // An array of objects with the same fields as the CSV columns. Prices are numbers in pounds.
+    JSON("json", "application/json");
+
+    private final String fileExtension;
+    private final String mimeType;
+
+    ExportFormat(String fileExtension, String mimeType) {
+        this.fileExtension = fileExtension;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Returns the file extension for an export, e.g. "csv" or "csv.gz".
+     */
+    public String getFileExtension(boolean gzip) {
+        return gzip ? fileExtension + ".gz" : fileExtension;
+    }
+
+    public String getMimeType(boolean gzip) {
+        return gzip ? "application/gzip" : mimeType;
+    }
+}
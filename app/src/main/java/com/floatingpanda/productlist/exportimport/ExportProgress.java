@@ -0,0 +1,58 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * How far an export has got, and how fast it's going.
+ */
+public class ExportProgress {
+    private final long rowsWritten;
+    private final long totalRows;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+    private final boolean finished;
+
+    /**
+     * @param rowsWritten how many products have been written
+     * @param totalRows how many products there were when the export started
+     * @param bytesWritten how many bytes have been written, before any compression
+     * @param elapsedNanos how long the export has taken so far
+     * @param finished whether every product has been written
+     */
+    public ExportProgress(long rowsWritten, long totalRows, long bytesWritten, long elapsedNanos, boolean finished) {
+        this.rowsWritten = rowsWritten;
+        this.totalRows = totalRows;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    public long getRowsWritten() { return rowsWritten; }
+    public long getTotalRows() { return totalRows; }
+    public long getBytesWritten() { return bytesWritten; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public boolean isFinished() { return finished; }
+
+    /**
+     * Returns the fraction of the products written so far, between 0 and 1.
+     */
+    public double getFractionDone() {
+        if (totalRows <= 0) {
+            return finished ? 1 : 0;
+        }
+
+        return Math.min(1.0, (double) rowsWritten / totalRows);
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos <= 0 ? 0 : rowsWritten * 1e9 / elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : bytesWritten * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d of %d rows written, %.1f rows/s, %.2f MB/s",
+                rowsWritten, totalRows, getRowsPerSecond(), getMegabytesPerSecond());
+    }
+}
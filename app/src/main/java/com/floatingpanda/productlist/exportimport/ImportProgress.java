@@ -0,0 +1,68 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * How far an import has got, and how fast it's going.
+ */
+public class ImportProgress {
+    private final long rowsRead;
+    private final long rowsImported;
+    private final long rowsSkipped;
+    private final long bytesRead;
+    private final long totalBytes;
+    private final long elapsedNanos;
+    private final boolean finished;
+
+    /**
+     * @param rowsRead how many rows have been read, not counting the header
+     * @param rowsImported how many rows have been saved as products
+     * @param rowsSkipped how many rows were skipped as they weren't valid products
+     * @param bytesRead how many bytes of the file have been read
+     * @param totalBytes the size of the file, or -1 if it isn't known
+     * @param elapsedNanos how long the import has taken so far
+     * @param finished whether the whole file has been imported
+     */
+    public ImportProgress(long rowsRead, long rowsImported, long rowsSkipped, long bytesRead, long totalBytes,
+                          long elapsedNanos, boolean finished) {
+        this.rowsRead = rowsRead;
+        this.rowsImported = rowsImported;
+        this.rowsSkipped = rowsSkipped;
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.elapsedNanos = elapsedNanos;
+        this.finished = finished;
+    }
+
+    public long getRowsRead() { return rowsRead; }
+    public long getRowsImported() { return rowsImported; }
+    public long getRowsSkipped() { return rowsSkipped; }
+    public long getBytesRead() { return bytesRead; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public boolean isFinished() { return finished; }
+
+    /**
+     * Returns the fraction of the file read so far, between 0 and 1, or -1 if the size of the file
+     * isn't known.
+     */
+    public double getFractionDone() {
+        if (totalBytes <= 0) {
+            return finished ? 1 : -1;
+        }
+
+        return Math.min(1.0, (double) bytesRead / totalBytes);
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos <= 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : bytesRead * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows read (%d imported, %d skipped), %.1f rows/s, %.2f MB/s",
+                rowsRead, rowsImported, rowsSkipped, getRowsPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,35 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * What merging another product database changed, and how long it took.
+ */
+public class MergeInfo {
+    private final int categoriesAdded;
+    private final int productsAdded;
+    private final int productsUpdated;
+    private final long elapsedNanos;
+
+    /**
+     * @param categoriesAdded how many categories were added
+     * @param productsAdded how many products were added
+     * @param productsUpdated how many existing products were updated
+     * @param elapsedNanos how long the merge took
+     */
+    public MergeInfo(int categoriesAdded, int productsAdded, int productsUpdated, long elapsedNanos) {
+        this.categoriesAdded = categoriesAdded;
+        this.productsAdded = productsAdded;
+        this.productsUpdated = productsUpdated;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getCategoriesAdded() { return categoriesAdded; }
+    public int getProductsAdded() { return productsAdded; }
+    public int getProductsUpdated() { return productsUpdated; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("%d categories added, %d products added and %d updated in %.1f s",
+                categoriesAdded, productsAdded, productsUpdated, elapsedNanos / 1e9);
+    }
+}
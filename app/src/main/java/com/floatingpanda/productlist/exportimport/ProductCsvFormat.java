@@ -0,0 +1,79 @@
+package com.floatingpanda.productlist.exportimport;
+
+import java.util.Locale;
+
+/**
+ * The CSV format products are imported from and exported to. A file starts with a header row naming
+ * its columns, which may come in any order: name (required), barcode, price, category and notes.
+ * Other columns are ignored when importing. Prices are in pounds, e.g. 5.99, and categories are
+ * given by name.
+ */
+public final class ProductCsvFormat {
+    public static final String NAME = "name";
+    public static final String BARCODE = "barcode";
+    public static final String PRICE = "price";
+    public static final String CATEGORY = "category";
+    public static final String NOTES = "notes";
+
+    // The columns in the order they're exported.
+    public static final String[] COLUMNS = {NAME, BARCODE, PRICE, CATEGORY, NOTES};
+
+    // Keeps prices in pence within an int.
+    private static final int MAX_POUNDS = Integer.MAX_VALUE / 100 - 1;
+
+    private ProductCsvFormat() {}
+
+    /**
+     * Returns the column a header names, ignoring case and surrounding spaces.
+     */
+    public static String normaliseColumnName(String header) {
+        return header.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Parses a price in pounds, e.g. "5.99", "5.9", "5" or "£5.99", into pence.
+     *
+     * @return the price in pence, or -1 if text isn't a valid price
+     */
+    public static int parsePrice(String text) {
+        String price = text.trim();
+        if (price.startsWith("£")) {
+            price = price.substring(1);
+        }
+
+        int point = price.indexOf('.');
+        String pounds = point < 0 ? price : price.substring(0, point);
+        String pence = point < 0 ? "" : price.substring(point + 1);
+
+        if ((pounds.isEmpty() && pence.isEmpty()) || pounds.length() > 8 || pence.length() > 2
+                || !isDigits(pounds) || !isDigits(pence)) {
+            return -1;
+        }
+
+        int poundsValue = pounds.isEmpty() ? 0 : Integer.parseInt(pounds);
+        int penceValue = pence.isEmpty() ? 0 : Integer.parseInt(pence) * (pence.length() == 1 ? 10 : 1);
+
+        return poundsValue > MAX_POUNDS ? -1 : poundsValue * 100 + penceValue;
+    }
+
+    /**
+     * Formats a price in pence as pounds, e.g. 599 as "5.99".
+     */
+    public static String formatPrice(int pence) {
+        int remainder = pence % 100;
+        return (pence / 100) + (remainder < 10 ? ".0" : ".") + remainder;
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,286 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.os.SystemClock;
+
+import androidx.annotation.WorkerThread;
+
+import com.floatingpanda.productlist.callbackinterfaces.ImportProgressCallback;
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.CategoryDao;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.repositories.BarcodeBloomFilter;
+import com.floatingpanda.productlist.repositories.BarcodeIndex;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports products from a CSV file in the ProductCsvFormat, e.g. a supplier's catalogue. The file is
+ * read a row at a time (see CsvReader) and products are saved in batches, one transaction per
+ * batch, so the memory used depends on the batch size rather than the size of the file.
+ *
+ * Categories are given by name and looked up in a cache of the categories, which is loaded once at
+ * the start. Categories not in the database yet are added in the transaction of the batch which
+ * first uses them, so a batch which fails leaves no categories behind. Rows without a name or with
+ * an invalid price are skipped and counted.
+ */
+public class ProductCsvImporter {
+    // How many products are saved in each transaction, unless set otherwise.
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final AppDatabase database;
+    private final ProductDao productDao;
+    private final CategoryDao categoryDao;
+    private final BarcodeIndex barcodeIndex;
+    private final BarcodeBloomFilter barcodeFilter;
+    private final int batchSize;
+
+    public ProductCsvImporter(AppDatabase database) {
+        this(database, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param database the database to import the products into
+     * @param batchSize how many products are saved in each transaction
+     */
+    public ProductCsvImporter(AppDatabase database, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+
+        this.database = database;
+        this.productDao = database.productDao();
+        this.categoryDao = database.categoryDao();
+        this.barcodeIndex = database.getBarcodeIndex();
+        this.barcodeFilter = database.getBarcodeFilter();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports the products in a UTF-8 CSV file. The batches saved before an error stay saved.
+     *
+     * @param channel the file to read, which is closed once it's been read
+     * @param totalBytes the size of the file, or -1 if it isn't known
+     * @param callback told the progress after each batch and once the import is finished, may be null
+     * @return the progress once the import is finished
+     * @throws IOException if the file can't be read, has no name column or has a malformed row
+     */
+    @WorkerThread
+    public ImportProgress importProducts(ReadableByteChannel channel, long totalBytes,
+                                         ImportProgressCallback callback) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        try (CsvReader reader = new CsvReader(channel, StandardCharsets.UTF_8)) {
+            List<String> fields = new ArrayList<>();
+            if (!reader.readRow(fields)) {
+                throw new IOException("The file is empty.");
+            }
+
+            Columns columns = new Columns(fields);
+            Map<String, Long> categoryIds = loadCategoryIds();
+
+            Product[] batch = new Product[batchSize];
+            // The names of the categories to add for the products in the batch, null for products
+            // whose category is already in the database or which have none.
+            String[] newCategoryNames = new String[batchSize];
+            int batchCount = 0;
+            long rowsRead = 0;
+            long rowsImported = 0;
+            long rowsSkipped = 0;
+
+            while (reader.readRow(fields)) {
+                rowsRead++;
+
+                Product product = toProduct(fields, columns, categoryIds);
+                if (product == null) {
+                    rowsSkipped++;
+                    continue;
+                }
+
+                newCategoryNames[batchCount] = findNewCategoryName(fields, columns, categoryIds);
+                batch[batchCount++] = product;
+                if (batchCount == batchSize) {
+                    rowsImported += saveBatch(batch, newCategoryNames, batchCount, categoryIds);
+                    batchCount = 0;
+
+                    if (callback != null) {
+                        callback.onProgress(new ImportProgress(rowsRead, rowsImported, rowsSkipped,
+                                reader.getBytesRead(), totalBytes, SystemClock.elapsedRealtimeNanos() - start,
+                                false));
+                    }
+                }
+            }
+
+            if (batchCount > 0) {
+                rowsImported += saveBatch(batch, newCategoryNames, batchCount, categoryIds);
+            }
+
+            if (barcodeFilter.needsRebuild()) {
+                database.rebuildBarcodeFilter();
+            }
+
+            ImportProgress progress = new ImportProgress(rowsRead, rowsImported, rowsSkipped,
+                    reader.getBytesRead(), totalBytes, SystemClock.elapsedRealtimeNanos() - start, true);
+            if (callback != null) {
+                callback.onProgress(progress);
+            }
+
+            return progress;
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Returns the ids of the categories, by lower case name.
+    private Map<String, Long> loadCategoryIds() {
+        Map<String, Long> categoryIds = new HashMap<>();
+        for (Category category : categoryDao.queryAll()) {
+            categoryIds.put(category.getName().toLowerCase(Locale.ROOT), category.getId());
+        }
+
+        return categoryIds;
+    }
+
+    // Returns the product in the row, or null if it isn't a valid product. Products whose category
+    // isn't in the database yet are given no category until it's added, see saveBatch().
+    private Product toProduct(List<String> fields, Columns columns, Map<String, Long> categoryIds) {
+        String name = columns.get(fields, columns.name);
+        if (name.isEmpty()) {
+            return null;
+        }
+
+        String priceText = columns.get(fields, columns.price);
+        int price = priceText.isEmpty() ? 0 : ProductCsvFormat.parsePrice(priceText);
+        if (price < 0) {
+            return null;
+        }
+
+        String barcode = columns.get(fields, columns.barcode);
+        String notes = columns.get(fields, columns.notes);
+        long categoryId = findCategoryId(columns.get(fields, columns.category), categoryIds);
+
+        return new Product(name, barcode.isEmpty() ? null : barcode, PriceTypeConverter.fromPriceInt(price),
+                categoryId, notes.isEmpty() ? null : notes);
+    }
+
+    // Returns the id of the category with the name, or 0, i.e. no category, for a blank name or a
+    // category which isn't in the database yet.
+    private long findCategoryId(String categoryName, Map<String, Long> categoryIds) {
+        if (categoryName.isEmpty()) {
+            return 0;
+        }
+
+        Long categoryId = categoryIds.get(categoryName.toLowerCase(Locale.ROOT));
+        return categoryId == null ? 0 : categoryId;
+    }
+
+    // Returns the name of the row's category if it has to be added, or null if it's in the database
+    // already or the row has none.
+    private String findNewCategoryName(List<String> fields, Columns columns, Map<String, Long> categoryIds) {
+        String categoryName = columns.get(fields, columns.category);
+        if (categoryName.isEmpty() || categoryIds.containsKey(categoryName.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+
+        return categoryName;
+    }
+
+    // Saves the first count products in the batch in one transaction, along with the categories they
+    // need adding, and returns how many were saved. The barcode index and filter are given the
+    // products, and the category cache the categories, once the transaction has committed.
+    private int saveBatch(Product[] batch, String[] newCategoryNames, int count, Map<String, Long> categoryIds) {
+        Product[] products = count == batch.length ? batch : Arrays.copyOf(batch, count);
+        Map<String, Long> addedCategoryIds = new HashMap<>();
+
+        int[] saved = new int[1];
+        database.writeProducts(() -> {
+            long[] ids = database.runInTransaction(() -> {
+                for (int i = 0; i < count; i++) {
+                    if (newCategoryNames[i] != null) {
+                        products[i].setCategoryId(addCategory(newCategoryNames[i], addedCategoryIds));
+                    }
+                }
+
+                return productDao.insertMultiple(products);
+            });
+
+            return () -> {
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] != -1) {
+                        barcodeIndex.put(ids[i], products[i].getBarcode());
+                        barcodeFilter.put(products[i].getBarcode());
+                        saved[0]++;
+                    }
+                }
+            };
+        });
+
+        categoryIds.putAll(addedCategoryIds);
+
+        // Lets the products be garbage collected before the next batch is read.
+        Arrays.fill(batch, null);
+        Arrays.fill(newCategoryNames, null);
+
+        return saved[0];
+    }
+
+    // Adds the category with the name, unless this batch has added it already, and returns its id,
+    // or 0 if it couldn't be added.
+    private long addCategory(String categoryName, Map<String, Long> addedCategoryIds) {
+        String key = categoryName.toLowerCase(Locale.ROOT);
+        Long categoryId = addedCategoryIds.get(key);
+        if (categoryId == null) {
+            long insertedId = categoryDao.insert(new Category(categoryName));
+            categoryId = insertedId == -1 ? 0 : insertedId;
+            addedCategoryIds.put(key, categoryId);
+        }
+
+        return categoryId;
+    }
+
+    // Where each column is in the rows, from the header. -1 for columns the file doesn't have.
+    private static class Columns {
+        final int name;
+        final int barcode;
+        final int price;
+        final int category;
+        final int notes;
+
+        Columns(List<String> header) throws IOException {
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                indexes.put(ProductCsvFormat.normaliseColumnName(header.get(i)), i);
+            }
+
+            if (!indexes.containsKey(ProductCsvFormat.NAME)) {
+                throw new IOException("The file has no " + ProductCsvFormat.NAME + " column.");
+            }
+
+            name = indexes.get(ProductCsvFormat.NAME);
+            barcode = indexOf(indexes, ProductCsvFormat.BARCODE);
+            price = indexOf(indexes, ProductCsvFormat.PRICE);
+            category = indexOf(indexes, ProductCsvFormat.CATEGORY);
+            notes = indexOf(indexes, ProductCsvFormat.NOTES);
+        }
+
+        // Returns the trimmed field in the column, or "" if the row is too short or the column is missing.
+        String get(List<String> fields, int column) {
+            return column < 0 || column >= fields.size() ? "" : fields.get(column).trim();
+        }
+
+        private static int indexOf(Map<String, Integer> indexes, String column) {
+            Integer index = indexes.get(column);
+            return index == null ? -1 : index;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+import androidx.annotation.WorkerThread;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Merges the catalogue in another product database file, e.g. one copied from another device or
+ * store, into this one. The file is ATTACHed to the database and merged with a few set-based
+ * statements, so no rows are read into Java and large catalogues merge in seconds.
+ *
+ * Products are matched by barcode, or by name for products without one. Matched products are
+ * updated with the other database's name, price, category and notes, and the rest are added. Where
+ * the other database has more than one product with the same barcode, the one added last is used.
+ * Categories are matched by name, ignoring case, and those not in this database yet are added, so
+ * products keep their category even though ids differ between databases. Merging the same file
+ * again changes nothing.
+ *
+ * Android only allows ATTACH on a database with a single connection, so the merge runs on a
+ * connection of its own rather than on Room's, which keeps its write-ahead log and so carries on
+ * reading while the merge runs. The other database is first copied into temporary tables, which
+ * only the merge's connection sees, then merged in one short transaction, so a failed merge leaves
+ * the catalogue as it was and writes through Room only wait for the merge itself. Merged rows go
+ * through the usual triggers, so they're searchable and logged for delta exports, and Room is told
+ * the tables changed so LiveData queries see them.
+ */
+public class ProductDatabaseMerger {
+    private static final String SOURCE = "merge_source";
+
+    private final AppDatabase database;
+
+    public ProductDatabaseMerger(AppDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Merges the catalogue in the database file into this one.
+     *
+     * @param file a product database file, which is only read
+     * @return what the merge changed
+     * @throws IOException if this database isn't in a file, the file isn't a product database, is from
+     *         a newer version of the app or can't be read
+     */
+    @WorkerThread
+    public MergeInfo merge(File file) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        String path = database.getOpenHelper().getWritableDatabase().getPath();
+
+        if (path == null || path.equals(":memory:")) {
+            throw new IOException("Only a database in a file can be merged into.");
+        }
+        if (!file.isFile()) {
+            throw new IOException(file + " doesn't exist.");
+        }
+        if (new File(path).getCanonicalPath().equals(file.getCanonicalPath())) {
+            throw new IOException("A database can't be merged into itself.");
+        }
+
+        SQLiteDatabase db;
+        try {
+            // Opened with the localized collators, which products.name and its index are collated by.
+            db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READWRITE);
+            // ATTACH can't be run inside a transaction.
+            db.execSQL("ATTACH DATABASE ? AS " + SOURCE, new Object[] {file.getPath()});
+        } catch (SQLException | IllegalStateException e) {
+            throw new IOException("Couldn't open " + file + ".", e);
+        }
+
+        try {
+            checkSource(db);
+
+            int categoriesAdded;
+            int productsAdded;
+            int productsUpdated;
+
+            stageSource(db);
+
+            db.beginTransaction();
+            try {
+                categoriesAdded = mergeCategories(db);
+                productsUpdated = execute(db, UPDATE_PRODUCTS_BY_BARCODE) + execute(db, UPDATE_PRODUCTS_BY_NAME);
+
+                long lastId = DatabaseUtils.longForQuery(db, "SELECT COALESCE(MAX(id), 0) FROM main.products", null);
+                productsAdded = execute(db, INSERT_PRODUCTS_BY_BARCODE) + execute(db, INSERT_PRODUCTS_BY_NAME);
+                // Product ids only go up, so the added products are those after the last id.
+                db.execSQL(INSERT_BARCODE_TRIGRAMS, new Object[] {lastId});
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            notifyRoom(categoriesAdded > 0, productsAdded + productsUpdated > 0);
+
+            database.rebuildBarcodeIndex();
+            database.rebuildBarcodeFilter();
+
+            return new MergeInfo(categoriesAdded, productsAdded, productsUpdated,
+                    SystemClock.elapsedRealtimeNanos() - start);
+        } catch (SQLException | IllegalStateException e) {
+            throw new IOException("Couldn't merge " + file + ".", e);
+        } finally {
+            // Closing the connection drops the temporary tables and detaches the file.
+            db.close();
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Checks the attached file is a product database this version of the app can read.
+    private void checkSource(SQLiteDatabase db) throws IOException {
+        long tables;
+        try {
+            tables = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + SOURCE + ".sqlite_master "
+                    + "WHERE type = 'table' AND name IN ('products', 'categories')", null);
+        } catch (SQLException e) {
+            throw new IOException("The file isn't a database.", e);
+        }
+        if (tables != 2) {
+            throw new IOException("The file isn't a product database.");
+        }
+
+        long version = DatabaseUtils.longForQuery(db, "PRAGMA " + SOURCE + ".user_version", null);
+        if (version > db.getVersion()) {
+            throw new IOException("The database is from version " + version + " of the app but this is version "
+                    + db.getVersion() + ".");
+        }
+    }
+
+    // Copies the other database's categories, and its products with one product for each barcode,
+    // or name for products without a barcode, into temporary tables. Only this connection sees
+    // them, so nothing is locked while the other database is read.
+    private void stageSource(SQLiteDatabase db) {
+        db.execSQL("CREATE TEMP TABLE merge_categories (source_id INTEGER PRIMARY KEY, name TEXT, "
+                + "target_id INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("INSERT INTO temp.merge_categories (source_id, name) SELECT id, name FROM " + SOURCE + ".categories");
+
+        db.execSQL("CREATE TEMP TABLE merge_products (barcode TEXT, name TEXT NOT NULL, price INTEGER NOT NULL, "
+                + "source_category_id INTEGER NOT NULL, category_id INTEGER NOT NULL DEFAULT 0, notes TEXT)");
+        db.execSQL("INSERT INTO temp.merge_products (barcode, name, price, source_category_id, notes) "
+                + "SELECT p.barcode, p.name, p.price, p.category_id, p.notes "
+                + "FROM " + SOURCE + ".products p "
+                + "WHERE p.id IN ("
+                + "SELECT MAX(id) FROM " + SOURCE + ".products WHERE barcode IS NOT NULL GROUP BY barcode "
+                + "UNION ALL "
+                + "SELECT MAX(id) FROM " + SOURCE + ".products WHERE barcode IS NULL GROUP BY name)");
+        db.execSQL("CREATE INDEX temp.merge_products_barcode ON merge_products (barcode)");
+        db.execSQL("CREATE INDEX temp.merge_products_name ON merge_products (name)");
+    }
+
+    // Adds the categories which aren't in this database yet, then maps the staged products'
+    // categories to this database's id for the same name. Returns how many categories were added.
+    private int mergeCategories(SQLiteDatabase db) {
+        int added = execute(db, "INSERT INTO main.categories (name) "
+                + "SELECT MIN(s.name) FROM temp.merge_categories s "
+                + "WHERE s.name IS NOT NULL "
+                + "AND NOT EXISTS (SELECT 1 FROM main.categories c WHERE c.name = s.name COLLATE NOCASE) "
+                + "GROUP BY s.name COLLATE NOCASE");
+
+        db.execSQL("UPDATE temp.merge_categories SET target_id = COALESCE((SELECT MIN(c.id) FROM main.categories c "
+                + "WHERE c.name = merge_categories.name COLLATE NOCASE), 0)");
+        db.execSQL("UPDATE temp.merge_products SET category_id = COALESCE((SELECT m.target_id "
+                + "FROM temp.merge_categories m WHERE m.source_id = merge_products.source_category_id), 0)");
+
+        return added;
+    }
+
+    // Room only notices changes made through its own connection, so the merged tables are touched
+    // through it for its LiveData queries to be refreshed. The touched row is logged for delta
+    // exports like any other write, which does no harm as exports send a row's current state.
+    private void notifyRoom(boolean categoriesChanged, boolean productsChanged) {
+        if (!categoriesChanged && !productsChanged) {
+            return;
+        }
+
+        SupportSQLiteDatabase roomDb = database.getOpenHelper().getWritableDatabase();
+        database.runInTransaction(() -> {
+            if (categoriesChanged) {
+                roomDb.execSQL("UPDATE categories SET id = id WHERE id = (SELECT MAX(id) FROM categories)");
+            }
+            if (productsChanged) {
+                roomDb.execSQL("UPDATE products SET id = id WHERE id = (SELECT MAX(id) FROM products)");
+            }
+        });
+    }
+
+    // Runs an insert, update or delete and returns how many rows it changed.
+    private static int execute(SQLiteDatabase db, String sql) {
+        try (SQLiteStatement statement = db.compileStatement(sql)) {
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    // Updates the products with a barcode in the other database, where anything but the barcode
+    // differs. SQLite on older Android versions has no UPDATE ... FROM, hence the subqueries.
+    private static final String UPDATE_PRODUCTS_BY_BARCODE = "UPDATE main.products SET "
+            + "name = (SELECT m.name FROM temp.merge_products m WHERE m.barcode = products.barcode), "
+            + "price = (SELECT m.price FROM temp.merge_products m WHERE m.barcode = products.barcode), "
+            + "category_id = (SELECT m.category_id FROM temp.merge_products m WHERE m.barcode = products.barcode), "
+            + "notes = (SELECT m.notes FROM temp.merge_products m WHERE m.barcode = products.barcode) "
+            + "WHERE barcode IS NOT NULL AND EXISTS (SELECT 1 FROM temp.merge_products m "
+            + "WHERE m.barcode = products.barcode AND (m.name IS NOT products.name OR m.price IS NOT products.price "
+            + "OR m.category_id IS NOT products.category_id OR m.notes IS NOT products.notes))";
+
+    // Updates the products without a barcode whose name is in the other database without a barcode.
+    private static final String UPDATE_PRODUCTS_BY_NAME = "UPDATE main.products SET "
+            + "price = (SELECT m.price FROM temp.merge_products m WHERE m.barcode IS NULL AND m.name = products.name), "
+            + "category_id = (SELECT m.category_id FROM temp.merge_products m "
+            + "WHERE m.barcode IS NULL AND m.name = products.name), "
+            + "notes = (SELECT m.notes FROM temp.merge_products m WHERE m.barcode IS NULL AND m.name = products.name) "
+            + "WHERE barcode IS NULL AND EXISTS (SELECT 1 FROM temp.merge_products m "
+            + "WHERE m.barcode IS NULL AND m.name = products.name AND (m.price IS NOT products.price "
+            + "OR m.category_id IS NOT products.category_id OR m.notes IS NOT products.notes))";
+
+    private static final String INSERT_PRODUCTS_BY_BARCODE = "INSERT INTO main.products "
+            + "(name, barcode, price, category_id, notes) "
+            + "SELECT m.name, m.barcode, m.price, m.category_id, m.notes FROM temp.merge_products m "
+            + "WHERE m.barcode IS NOT NULL "
+            + "AND NOT EXISTS (SELECT 1 FROM main.products p WHERE p.barcode = m.barcode)";
+
+    // Names are compared exactly, not by products.name's case insensitive LOCALIZED collation, as
+    // UPDATE_PRODUCTS_BY_NAME compares them.
+    private static final String INSERT_PRODUCTS_BY_NAME = "INSERT INTO main.products "
+            + "(name, barcode, price, category_id, notes) "
+            + "SELECT m.name, NULL, m.price, m.category_id, m.notes FROM temp.merge_products m "
+            + "WHERE m.barcode IS NULL "
+            + "AND NOT EXISTS (SELECT 1 FROM main.products p WHERE p.barcode IS NULL AND p.name = m.name COLLATE BINARY)";
+
+    // Fills in the barcode trigrams of the products after the given id, as MIGRATION_3_4 does for
+    // every product.
+    private static final String INSERT_BARCODE_TRIGRAMS = "WITH RECURSIVE grams(product_id, barcode, position) AS ("
+            + "SELECT id, upper(barcode), 1 FROM main.products "
+            + "WHERE id > ? AND barcode IS NOT NULL AND length(barcode) >= 3 "
+            + "UNION ALL "
+            + "SELECT product_id, barcode, position + 1 FROM grams WHERE position + 3 <= length(barcode)) "
+            + "INSERT OR IGNORE INTO main.barcode_trigrams (trigram, product_id) "
+            + "SELECT substr(barcode, position, 3), product_id FROM grams";
+}
@@ -0,0 +1,134 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.database.Cursor;
+import android.util.JsonWriter;
+
+import androidx.annotation.WorkerThread;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.ChangeLogDao;
+import com.floatingpanda.productlist.db.ChangeWatermark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports only the categories and products changed since the last export, in the
+ * ProductDeltaFormat. Each export target, e.g. a nightly sync, has a named watermark holding how far
+ * through the change log it has got. The watermark only moves once a delta has been written in full,
+ * so a failed export is simply repeated next time.
+ *
+ * The change log only covers changes made since it was added, so a target should start from a full
+ * export (e.g. a ProductSnapshot) followed by resetWatermark().
+ */
+public class ProductDeltaExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AppDatabase database;
+    private final ChangeLogDao changeLogDao;
+
+    public ProductDeltaExporter(AppDatabase database) {
+        this.database = database;
+        this.changeLogDao = database.changeLogDao();
+    }
+
+    /**
+     * Writes the changes since the target's watermark to out, closes it, then moves the watermark
+     * up to the last change written and compacts the change log.
+     *
+     * @param target the name of the export target
+     * @param out the stream to write the delta to
+     * @return what the delta holds
+     * @throws IOException if out can't be written, in which case the watermark is left where it was
+     */
+    @WorkerThread
+    public DeltaInfo exportDelta(String target, OutputStream out) throws IOException {
+        long fromSeq;
+        long toSeq;
+        int categoryCount = 0;
+        int productCount = 0;
+        int deletedCount = 0;
+
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            // Not read in a transaction, which would lock out writes for as long as the delta takes to
+            // write. Only changes up to toSeq are read, and each row is read as it is when its query
+            // runs, so a row changed again while the delta is written goes out in its latest state
+            // now and once more in the next delta. Importing a row twice changes nothing.
+            Long watermark = changeLogDao.getWatermark(target);
+            fromSeq = watermark == null ? 0 : watermark;
+            // The latest change can be below the watermark if compaction removed the changes it covered.
+            toSeq = Math.max(fromSeq, changeLogDao.getLatestSeq());
+
+            writer.beginObject();
+            writer.name(ProductDeltaFormat.FORMAT).value(ProductDeltaFormat.FORMAT_NAME);
+            writer.name(ProductDeltaFormat.FORMAT_VERSION).value(ProductDeltaFormat.VERSION);
+            writer.name(ProductDeltaFormat.FROM_SEQ).value(fromSeq);
+            writer.name(ProductDeltaFormat.TO_SEQ).value(toSeq);
+
+            writer.name(ProductDeltaFormat.CATEGORIES).beginArray();
+            try (Cursor cursor = changeLogDao.getChangedCategories(fromSeq, toSeq)) {
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name(ProductDeltaFormat.ID).value(cursor.getLong(0));
+                    if (cursor.getInt(1) == 0) {
+                        writer.name(ProductDeltaFormat.DELETED).value(true);
+                        deletedCount++;
+                    } else {
+                        writer.name(ProductDeltaFormat.NAME).value(cursor.getString(2));
+                    }
+                    writer.endObject();
+                    categoryCount++;
+                }
+            }
+            writer.endArray();
+
+            writer.name(ProductDeltaFormat.PRODUCTS).beginArray();
+            try (Cursor cursor = changeLogDao.getChangedProducts(fromSeq, toSeq)) {
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name(ProductDeltaFormat.ID).value(cursor.getLong(0));
+                    if (cursor.getInt(1) == 0) {
+                        writer.name(ProductDeltaFormat.DELETED).value(true);
+                        deletedCount++;
+                    } else {
+                        writer.name(ProductDeltaFormat.NAME).value(cursor.getString(2));
+                        writer.name(ProductDeltaFormat.BARCODE).value(cursor.isNull(3) ? null : cursor.getString(3));
+                        writer.name(ProductDeltaFormat.PRICE_PENCE).value(cursor.getInt(4));
+                        writer.name(ProductDeltaFormat.CATEGORY_ID).value(cursor.getLong(5));
+                        writer.name(ProductDeltaFormat.NOTES).value(cursor.isNull(6) ? null : cursor.getString(6));
+                    }
+                    writer.endObject();
+                    productCount++;
+                }
+            }
+            writer.endArray();
+
+            writer.endObject();
+        }
+
+        // Moved and compacted together, so the log is never compacted against a watermark which
+        // didn't get saved.
+        database.runInTransaction(() -> {
+            changeLogDao.setWatermark(new ChangeWatermark(target, toSeq));
+            changeLogDao.compact();
+        });
+
+        return new DeltaInfo(fromSeq, toSeq, categoryCount, productCount, deletedCount);
+    }
+
+    /**
+     * Moves the target's watermark up to the latest change, e.g. after a full export, so its next
+     * delta only holds changes made after now.
+     */
+    @WorkerThread
+    public void resetWatermark(String target) {
+        database.runInTransaction(() -> {
+            changeLogDao.setWatermark(new ChangeWatermark(target, changeLogDao.getLatestSeq()));
+            changeLogDao.compact();
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * The JSON format of delta files, which hold the categories and products changed between two points
+ * in the change log (see ProductChange):
+ *
+ * {"format": "productlist-delta", "version": 1, "from_seq": 120, "to_seq": 164,
+ *  "categories": [{"id": 1, "name": "Bathroom"}, {"id": 3, "deleted": true}],
+ *  "products": [{"id": 4, "name": "Taps", "barcode": "1234567890123", "price_pence": 599,
+ *                "category_id": 1, "notes": "None"}, {"id": 9, "deleted": true}]}
+ *
+ * Each row holds its state when the delta was exported, rather than the changes made to it, so
+ * replaying a delta any number of times leaves the same result. Categories come before products.
+ */
+public final class ProductDeltaFormat {
+    public static final String FORMAT_NAME = "productlist-delta";
+    public static final int VERSION = 1;
+
+    public static final String FORMAT = "format";
+    public static final String FORMAT_VERSION = "version";
+    public static final String FROM_SEQ = "from_seq";
+    public static final String TO_SEQ = "to_seq";
+    public static final String CATEGORIES = "categories";
+    public static final String PRODUCTS = "products";
+
+    public static final String ID = "id";
+    public static final String DELETED = "deleted";
+    public static final String NAME = "name";
+    public static final String BARCODE = "barcode";
+    public static final String PRICE_PENCE = "price_pence";
+    public static final String CATEGORY_ID = "category_id";
+    public static final String NOTES = "notes";
+
+    private ProductDeltaFormat() {}
+}
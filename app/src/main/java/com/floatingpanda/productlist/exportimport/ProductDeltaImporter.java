@@ -0,0 +1,270 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.WorkerThread;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.CategoryDao;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.repositories.BarcodeBloomFilter;
+import com.floatingpanda.productlist.repositories.BarcodeIndex;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a delta file from ProductDeltaExporter: changed categories and products are inserted or
+ * updated by id and deleted ones are deleted. As a delta holds each row's state rather than the
+ * changes made to it, replaying the same delta more than once leaves the same result.
+ *
+ * The file is read as a stream and replayed in one transaction, so a delta which can't be read
+ * leaves the catalogue as it was. The barcode index and filter are only given the replayed products
+ * once the transaction has committed. Replayed changes are logged in this database's change log too.
+ */
+public class ProductDeltaImporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AppDatabase database;
+    private final ProductDao productDao;
+    private final CategoryDao categoryDao;
+    private final BarcodeIndex barcodeIndex;
+    private final BarcodeBloomFilter barcodeFilter;
+
+    public ProductDeltaImporter(AppDatabase database) {
+        this.database = database;
+        this.productDao = database.productDao();
+        this.categoryDao = database.categoryDao();
+        this.barcodeIndex = database.getBarcodeIndex();
+        this.barcodeFilter = database.getBarcodeFilter();
+    }
+
+    /**
+     * Replays the delta in `in`, then closes it.
+     *
+     * @return what the delta held
+     * @throws IOException if the delta can't be read or isn't in the ProductDeltaFormat
+     */
+    @WorkerThread
+    public DeltaInfo importDelta(InputStream in) throws IOException {
+        Counts counts = new Counts();
+
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            database.writeProducts(() -> {
+                // The changes to the barcode index and filter, made once the delta has been
+                // replayed and committed.
+                List<Runnable> indexUpdates = new ArrayList<>();
+
+                database.beginTransaction();
+                try {
+                    readDelta(reader, counts, indexUpdates);
+                    database.setTransactionSuccessful();
+                } catch (IllegalStateException | NumberFormatException e) {
+                    // Thrown by JsonReader for values of the wrong type.
+                    throw new IOException("The delta is malformed.", e);
+                } finally {
+                    database.endTransaction();
+                }
+
+                return () -> {
+                    for (Runnable indexUpdate : indexUpdates) {
+                        indexUpdate.run();
+                    }
+                };
+            });
+        }
+
+        if (barcodeFilter.needsRebuild()) {
+            database.rebuildBarcodeFilter();
+        }
+
+        return new DeltaInfo(counts.fromSeq, counts.toSeq, counts.categories, counts.products, counts.deleted);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void readDelta(JsonReader reader, Counts counts, List<Runnable> indexUpdates) throws IOException {
+        boolean formatChecked = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case ProductDeltaFormat.FORMAT:
+                    if (!ProductDeltaFormat.FORMAT_NAME.equals(reader.nextString())) {
+                        throw new IOException("The file isn't a product delta.");
+                    }
+                    break;
+                case ProductDeltaFormat.FORMAT_VERSION:
+                    int version = reader.nextInt();
+                    if (version != ProductDeltaFormat.VERSION) {
+                        throw new IOException("The delta is in format version " + version + ", which isn't supported.");
+                    }
+                    formatChecked = true;
+                    break;
+                case ProductDeltaFormat.FROM_SEQ:
+                    counts.fromSeq = reader.nextLong();
+                    break;
+                case ProductDeltaFormat.TO_SEQ:
+                    counts.toSeq = reader.nextLong();
+                    break;
+                case ProductDeltaFormat.CATEGORIES:
+                    checkFormat(formatChecked);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        replayCategory(reader, counts);
+                    }
+                    reader.endArray();
+                    break;
+                case ProductDeltaFormat.PRODUCTS:
+                    checkFormat(formatChecked);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        replayProduct(reader, counts, indexUpdates);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        checkFormat(formatChecked);
+    }
+
+    // The format and version come first, so nothing is replayed from a file which isn't a delta.
+    private void checkFormat(boolean formatChecked) throws IOException {
+        if (!formatChecked) {
+            throw new IOException("The file isn't a product delta.");
+        }
+    }
+
+    private void replayCategory(JsonReader reader, Counts counts) throws IOException {
+        long id = -1;
+        boolean deleted = false;
+        String name = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case ProductDeltaFormat.ID:
+                    id = reader.nextLong();
+                    break;
+                case ProductDeltaFormat.DELETED:
+                    deleted = reader.nextBoolean();
+                    break;
+                case ProductDeltaFormat.NAME:
+                    name = nextNullableString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id < 1) {
+            throw new IOException("A category in the delta has no id.");
+        }
+
+        if (deleted) {
+            categoryDao.deleteById(id);
+            counts.deleted++;
+        } else {
+            categoryDao.upsert(new Category(id, name));
+        }
+        counts.categories++;
+    }
+
+    private void replayProduct(JsonReader reader, Counts counts, List<Runnable> indexUpdates) throws IOException {
+        long id = -1;
+        boolean deleted = false;
+        String name = null;
+        String barcode = null;
+        int pricePence = 0;
+        long categoryId = 0;
+        String notes = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case ProductDeltaFormat.ID:
+                    id = reader.nextLong();
+                    break;
+                case ProductDeltaFormat.DELETED:
+                    deleted = reader.nextBoolean();
+                    break;
+                case ProductDeltaFormat.NAME:
+                    name = nextNullableString(reader);
+                    break;
+                case ProductDeltaFormat.BARCODE:
+                    barcode = nextNullableString(reader);
+                    break;
+                case ProductDeltaFormat.PRICE_PENCE:
+                    pricePence = reader.nextInt();
+                    break;
+                case ProductDeltaFormat.CATEGORY_ID:
+                    categoryId = reader.nextLong();
+                    break;
+                case ProductDeltaFormat.NOTES:
+                    notes = nextNullableString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id < 1) {
+            throw new IOException("A product in the delta has no id.");
+        }
+
+        if (deleted) {
+            productDao.deleteById(id);
+            long deletedId = id;
+            indexUpdates.add(() -> barcodeIndex.remove(deletedId));
+            counts.deleted++;
+        } else {
+            if (name == null || pricePence < 0) {
+                throw new IOException("Product " + id + " in the delta has no name or an invalid price.");
+            }
+
+            productDao.upsert(new Product(id, name, barcode, PriceTypeConverter.fromPriceInt(pricePence),
+                    categoryId, notes));
+            long upsertedId = id;
+            String upsertedBarcode = barcode;
+            indexUpdates.add(() -> {
+                barcodeIndex.put(upsertedId, upsertedBarcode);
+                barcodeFilter.put(upsertedBarcode);
+            });
+        }
+        counts.products++;
+    }
+
+    private String nextNullableString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        return reader.nextString();
+    }
+
+    private static class Counts {
+        long fromSeq;
+        long toSeq;
+        int categories;
+        int products;
+        int deleted;
+    }
+}
@@ -0,0 +1,207 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.JsonWriter;
+
+import androidx.annotation.WorkerThread;
+
+import com.floatingpanda.productlist.callbackinterfaces.ExportProgressCallback;
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.ProductDao;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports every product, with its category's name, as CSV or JSON. Products are read straight from
+ * a cursor over a flat join (see ProductDao.getProductExportPage()) a page at a time and written to
+ * a buffered stream as they're read, so no Product or Price objects are made and the memory used
+ * doesn't depend on the number of products.
+ *
+ * Each page is read in its own query, so products written to while an export is running may or may
+ * not be in it.
+ */
+public class ProductExporter {
+    // How many products are read in each query. Small enough for a page to fit in one cursor window.
+    public static final int PAGE_SIZE = 5000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ProductDao productDao;
+
+    public ProductExporter(AppDatabase database) {
+        this.productDao = database.productDao();
+    }
+
+    /**
+     * Writes every product to out, then closes it.
+     *
+     * @param out the stream to write to
+     * @param format the format to write the products in
+     * @param gzip whether to gzip what's written
+     * @param callback told the progress after each page and once the export is finished, may be null
+     * @return the progress once the export is finished
+     * @throws IOException if out can't be written to
+     */
+    @WorkerThread
+    public ExportProgress exportProducts(OutputStream out, ExportFormat format, boolean gzip,
+                                         ExportProgressCallback callback) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        long totalRows = productDao.countProducts();
+
+        OutputStream stream = new BufferedOutputStream(out, BUFFER_SIZE);
+        if (gzip) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        CountingOutputStream countingStream = new CountingOutputStream(stream);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(countingStream, StandardCharsets.UTF_8),
+                BUFFER_SIZE)) {
+            RowWriter rowWriter = format == ExportFormat.JSON ? new JsonRowWriter(writer) : new CsvRowWriter(writer);
+            rowWriter.start();
+
+            long rowsWritten = 0;
+            long afterId = 0;
+            int pageRows;
+            do {
+                pageRows = 0;
+                try (Cursor cursor = productDao.getProductExportPage(afterId, PAGE_SIZE)) {
+                    int idColumn = cursor.getColumnIndexOrThrow("id");
+                    int nameColumn = cursor.getColumnIndexOrThrow("name");
+                    int barcodeColumn = cursor.getColumnIndexOrThrow("barcode");
+                    int priceColumn = cursor.getColumnIndexOrThrow("price");
+                    int categoryColumn = cursor.getColumnIndexOrThrow("category_name");
+                    int notesColumn = cursor.getColumnIndexOrThrow("notes");
+
+                    while (cursor.moveToNext()) {
+                        rowWriter.writeRow(cursor.getString(nameColumn),
+                                cursor.isNull(barcodeColumn) ? null : cursor.getString(barcodeColumn),
+                                cursor.getInt(priceColumn),
+                                cursor.isNull(categoryColumn) ? null : cursor.getString(categoryColumn),
+                                cursor.isNull(notesColumn) ? null : cursor.getString(notesColumn));
+                        afterId = cursor.getLong(idColumn);
+                        pageRows++;
+                    }
+                }
+
+                rowsWritten += pageRows;
+                if (callback != null && pageRows == PAGE_SIZE) {
+                    callback.onProgress(new ExportProgress(rowsWritten, totalRows, countingStream.getCount(),
+                            SystemClock.elapsedRealtimeNanos() - start, false));
+                }
+            } while (pageRows == PAGE_SIZE);
+
+            rowWriter.finish();
+            writer.flush();
+
+            ExportProgress progress = new ExportProgress(rowsWritten, totalRows, countingStream.getCount(),
+                    SystemClock.elapsedRealtimeNanos() - start, true);
+            if (callback != null) {
+                callback.onProgress(progress);
+            }
+
+            return progress;
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Writes products in one of the ExportFormats.
+    private interface RowWriter {
+        void start() throws IOException;
+        void writeRow(String name, String barcode, int price, String category, String notes) throws IOException;
+        void finish() throws IOException;
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final CsvWriter csvWriter;
+
+        CsvRowWriter(Writer writer) {
+            csvWriter = new CsvWriter(writer);
+        }
+
+        @Override
+        public void start() throws IOException {
+            csvWriter.writeRow(ProductCsvFormat.COLUMNS);
+        }
+
+        @Override
+        public void writeRow(String name, String barcode, int price, String category, String notes) throws IOException {
+            csvWriter.writeField(name);
+            csvWriter.writeField(barcode);
+            csvWriter.writeField(ProductCsvFormat.formatPrice(price));
+            csvWriter.writeField(category);
+            csvWriter.writeField(notes);
+            csvWriter.endRow();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            csvWriter.flush();
+        }
+    }
+
+    private static class JsonRowWriter implements RowWriter {
+        private final JsonWriter jsonWriter;
+
+        JsonRowWriter(Writer writer) {
+            jsonWriter = new JsonWriter(writer);
+        }
+
+        @Override
+        public void start() throws IOException {
+            jsonWriter.beginArray();
+        }
+
+        @Override
+        public void writeRow(String name, String barcode, int price, String category, String notes) throws IOException {
+            jsonWriter.beginObject();
+            jsonWriter.name(ProductCsvFormat.NAME).value(name);
+            jsonWriter.name(ProductCsvFormat.BARCODE).value(barcode);
+            jsonWriter.name(ProductCsvFormat.PRICE).value(BigDecimal.valueOf(price, 2));
+            jsonWriter.name(ProductCsvFormat.CATEGORY).value(category);
+            jsonWriter.name(ProductCsvFormat.NOTES).value(notes);
+            jsonWriter.endObject();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            jsonWriter.endArray();
+            jsonWriter.flush();
+        }
+    }
+
+    // Counts the bytes written through it.
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
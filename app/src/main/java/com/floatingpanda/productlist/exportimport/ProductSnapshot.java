@@ -0,0 +1,350 @@
+package com.floatingpanda.productlist.exportimport;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import androidx.annotation.WorkerThread;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.CategoryDao;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Backs up and restores the categories and products in a compact binary snapshot, which is much
+ * quicker to write and read than CSV. Ids are kept, so a restored catalogue is the same as the one
+ * backed up.
+ *
+ * A snapshot starts with a fixed size header (big-endian): the magic number, the format version,
+ * the database schema version, the category and product counts, the body length and a CRC32 of
+ * the body. The body holds each category (id, name) then each product (id, name, barcode, price in
+ * pence, category id, notes), encoded by SnapshotCodec.
+ *
+ * Snapshots are written through a FileChannel and restored from a MappedByteBuffer over the file.
+ * Only snapshots of the same schema version can be restored.
+ *
+ * The database is read for a snapshot in a read transaction on a connection of its own, as
+ * DatabaseFileBackup does, so the app can carry on writing while the snapshot is written. If the
+ * database isn't using write-ahead logging, writes wait until it has been read instead.
+ */
+public class ProductSnapshot {
+    public static final int MAGIC = 0x504C5331; // "PLS1"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 36;
+
+    // How many products are read in each query when writing, and inserted in each statement batch
+    // when restoring.
+    public static final int PAGE_SIZE = 5000;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final String CATEGORIES_QUERY = "SELECT id, name FROM categories";
+
+    // Runs a query for write(), on whichever connection it reads from.
+    private interface Reader {
+        Cursor query(String sql, String[] args);
+    }
+
+    private final AppDatabase database;
+    private final ProductDao productDao;
+    private final CategoryDao categoryDao;
+
+    public ProductSnapshot(AppDatabase database) {
+        this.database = database;
+        this.productDao = database.productDao();
+        this.categoryDao = database.categoryDao();
+    }
+
+    /**
+     * Writes a snapshot of the categories and products to the start of channel, replacing what it
+     * held. The database is read in one read transaction, so the snapshot is consistent, and the
+     * file is synced to storage before returning.
+     *
+     * @param channel a writable channel to the file to write the snapshot to
+     * @return what the snapshot holds
+     * @throws IOException if the file can't be written
+     */
+    @WorkerThread
+    public SnapshotInfo write(FileChannel channel) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+        int schemaVersion = getSchemaVersion();
+
+        channel.truncate(0);
+        channel.position(HEADER_SIZE);
+        BodyWriter body = new BodyWriter(channel);
+
+        int[] counts;
+        String path = database.getOpenHelper().getWritableDatabase().getPath();
+        if (path != null && new File(path).isFile()) {
+            // Opened with the localized collators, which products.name is collated by.
+            SQLiteDatabase reader = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+            try {
+                // A savepoint outside a transaction begins a deferred transaction, which starts
+                // reading with the first query and sees the same database for every later one,
+                // without stopping the app writing.
+                reader.execSQL("SAVEPOINT snapshot");
+                try {
+                    counts = writeBody(reader::rawQuery, body);
+                } finally {
+                    reader.execSQL("RELEASE snapshot");
+                }
+            } finally {
+                reader.close();
+            }
+        } else {
+            // A database which isn't in a file can only be read through its own connections, and
+            // Room only has exclusive transactions, so writes wait for the snapshot.
+            database.beginTransaction();
+            try {
+                counts = writeBody(database::query, body);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+        int categoryCount = counts[0];
+        int productCount = counts[1];
+
+        body.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(schemaVersion)
+                .putInt(categoryCount)
+                .putInt(productCount)
+                .putLong(body.getLength())
+                .putInt((int) body.getChecksum());
+        header.putInt(0); // Reserved
+        header.flip();
+
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        channel.force(true);
+
+        return new SnapshotInfo(schemaVersion, categoryCount, productCount, HEADER_SIZE + body.getLength(),
+                SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    /**
+     * Replaces the categories and products with those in a snapshot. The snapshot is checked before
+     * anything is changed, and restored in one transaction, so if it can't be restored the
+     * catalogue is left as it was. Stock-takes are kept.
+     *
+     * @param channel a readable channel to the snapshot file
+     * @return what the snapshot held
+     * @throws IOException if the file can't be read, isn't a snapshot, is corrupt or is from another
+     *         schema version
+     */
+    @WorkerThread
+    public SnapshotInfo restore(FileChannel channel) throws IOException {
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            throw new IOException("The file is too small to be a product snapshot.");
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("The file isn't a product snapshot.");
+        }
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("The snapshot is in format version " + formatVersion + ", which isn't supported.");
+        }
+        int schemaVersion = buffer.getInt();
+        if (schemaVersion != getSchemaVersion()) {
+            throw new IOException("The snapshot was taken from database version " + schemaVersion
+                    + " but this is version " + getSchemaVersion() + ".");
+        }
+        int categoryCount = buffer.getInt();
+        int productCount = buffer.getInt();
+        long bodyLength = buffer.getLong();
+        int checksum = buffer.getInt();
+        buffer.position(HEADER_SIZE);
+
+        if (bodyLength != size - HEADER_SIZE || categoryCount < 0 || productCount < 0) {
+            throw new IOException("The snapshot is truncated.");
+        }
+        if ((int) checksum(buffer.duplicate()) != checksum) {
+            throw new IOException("The snapshot is corrupt.");
+        }
+
+        try {
+            database.runInTransaction(() -> {
+                productDao.deleteAll();
+                categoryDao.deleteAll();
+
+                Category[] categories = new Category[categoryCount];
+                for (int i = 0; i < categoryCount; i++) {
+                    categories[i] = new Category(SnapshotCodec.getVarint(buffer), SnapshotCodec.getString(buffer));
+                }
+                categoryDao.insertMultiple(categories);
+
+                Product[] batch = new Product[Math.min(PAGE_SIZE, productCount)];
+                int batchCount = 0;
+                for (int i = 0; i < productCount; i++) {
+                    long id = SnapshotCodec.getVarint(buffer);
+                    String name = SnapshotCodec.getString(buffer);
+                    String barcode = SnapshotCodec.getString(buffer);
+                    long price = SnapshotCodec.getVarint(buffer);
+                    // Prices are stored as ints, so anything else didn't come from a snapshot.
+                    if (price < 0 || price > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Product " + id + " has a price of " + price + " pence.");
+                    }
+                    batch[batchCount++] = new Product(id, name, barcode, PriceTypeConverter.fromPriceInt((int) price),
+                            SnapshotCodec.getVarint(buffer), SnapshotCodec.getString(buffer));
+
+                    if (batchCount == batch.length) {
+                        productDao.insertMultiple(batch);
+                        batchCount = 0;
+                    }
+                }
+                if (batchCount > 0) {
+                    productDao.insertMultiple(Arrays.copyOf(batch, batchCount));
+                }
+
+                if (buffer.hasRemaining()) {
+                    throw new IllegalArgumentException("The snapshot has " + buffer.remaining()
+                            + " bytes after its last product.");
+                }
+            });
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("The snapshot is corrupt.", e);
+        }
+
+        database.rebuildBarcodeIndex();
+        database.rebuildBarcodeFilter();
+
+        return new SnapshotInfo(schemaVersion, categoryCount, productCount, size,
+                SystemClock.elapsedRealtimeNanos() - start);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Writes every category then every product read through reader to body, and returns how many
+    // categories and products there were.
+    private static int[] writeBody(Reader reader, BodyWriter body) throws IOException {
+        int categoryCount = 0;
+        try (Cursor cursor = reader.query(CATEGORIES_QUERY, null)) {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                byte[] name = SnapshotCodec.encodeString(cursor.getString(1));
+                ByteBuffer buffer = body.reserve(SnapshotCodec.varintSize(id) + SnapshotCodec.stringSize(name));
+                SnapshotCodec.putVarint(buffer, id);
+                SnapshotCodec.putString(buffer, name);
+                categoryCount++;
+            }
+        }
+
+        int productCount = 0;
+        long afterId = 0;
+        int pageRows;
+        do {
+            pageRows = 0;
+            try (Cursor cursor = reader.query(ProductDao.PRODUCT_SNAPSHOT_PAGE_QUERY,
+                    new String[] {Long.toString(afterId), Integer.toString(PAGE_SIZE)})) {
+                while (cursor.moveToNext()) {
+                    afterId = cursor.getLong(0);
+                    byte[] name = SnapshotCodec.encodeString(cursor.getString(1));
+                    byte[] barcode = SnapshotCodec.encodeString(cursor.isNull(2) ? null : cursor.getString(2));
+                    int price = cursor.getInt(3);
+                    long categoryId = cursor.getLong(4);
+                    byte[] notes = SnapshotCodec.encodeString(cursor.isNull(5) ? null : cursor.getString(5));
+
+                    ByteBuffer buffer = body.reserve(SnapshotCodec.varintSize(afterId)
+                            + SnapshotCodec.stringSize(name) + SnapshotCodec.stringSize(barcode)
+                            + SnapshotCodec.varintSize(price) + SnapshotCodec.varintSize(categoryId)
+                            + SnapshotCodec.stringSize(notes));
+                    SnapshotCodec.putVarint(buffer, afterId);
+                    SnapshotCodec.putString(buffer, name);
+                    SnapshotCodec.putString(buffer, barcode);
+                    SnapshotCodec.putVarint(buffer, price);
+                    SnapshotCodec.putVarint(buffer, categoryId);
+                    SnapshotCodec.putString(buffer, notes);
+                    pageRows++;
+                }
+            }
+            productCount += pageRows;
+        } while (pageRows == PAGE_SIZE);
+
+        return new int[] {categoryCount, productCount};
+    }
+
+    private int getSchemaVersion() {
+        return database.getOpenHelper().getReadableDatabase().getVersion();
+    }
+
+    // Returns the CRC32 of the rest of buffer.
+    private static long checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[BUFFER_SIZE];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+
+        return crc.getValue();
+    }
+
+    // Buffers the body of a snapshot on its way to the channel, keeping its length and checksum.
+    private static class BodyWriter {
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        // A heap buffer, as CRC32 can only read from arrays on older Android versions.
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long length;
+
+        BodyWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // Returns the buffer, with room for at least size more bytes.
+        ByteBuffer reserve(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocate(size);
+                }
+            }
+
+            return buffer;
+        }
+
+        void flush() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            length += buffer.position();
+
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getChecksum() {
+            return crc.getValue();
+        }
+    }
+}
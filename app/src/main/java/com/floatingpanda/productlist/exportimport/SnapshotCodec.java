@@ -0,0 +1,110 @@
+package com.floatingpanda.productlist.exportimport;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the values in a product snapshot (see ProductSnapshot). Whole numbers are unsigned
+ * varints: 7 bits per byte, least significant first, with the top bit set on every byte but the
+ * last, so small ids and prices take one or two bytes. Strings are UTF-8, prefixed by their length
+ * plus one as a varint, with 0 meaning null.
+ */
+public final class SnapshotCodec {
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private SnapshotCodec() {}
+
+    /**
+     * Returns how many bytes putVarint() writes for value.
+     */
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+
+    /**
+     * Writes a value which mustn't be negative.
+     */
+    public static void putVarint(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Varints can't be negative: " + value);
+        }
+
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a value written by putVarint().
+     *
+     * @throws IllegalArgumentException if the varint is longer than any putVarint() writes
+     */
+    public static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int i = 0; i < MAX_VARINT_SIZE; i++) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint at " + buffer.position() + ".");
+    }
+
+    /**
+     * Returns the UTF-8 bytes of a string, or null for null, for sizing with stringSize() before
+     * writing with putString().
+     */
+    public static byte[] encodeString(String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns how many bytes putString() writes for bytes from encodeString().
+     */
+    public static int stringSize(byte[] bytes) {
+        return bytes == null ? 1 : varintSize(bytes.length + 1L) + bytes.length;
+    }
+
+    /**
+     * Writes the bytes of a string from encodeString().
+     */
+    public static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            putVarint(buffer, 0);
+            return;
+        }
+
+        putVarint(buffer, bytes.length + 1L);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string written by putString().
+     */
+    public static String getString(ByteBuffer buffer) {
+        long length = getVarint(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        // Checked before allocating, so a corrupt length can't ask for more memory than the buffer holds.
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,47 @@
+package com.floatingpanda.productlist.exportimport;
+
+/**
+ * What a product snapshot holds, and how long it took to write or restore.
+ */
+public class SnapshotInfo {
+    private final int schemaVersion;
+    private final int categoryCount;
+    private final int productCount;
+    private final long sizeBytes;
+    private final long elapsedNanos;
+
+    /**
+     * @param schemaVersion the version of the database the snapshot was taken from
+     * @param categoryCount how many categories the snapshot holds
+     * @param productCount how many products the snapshot holds
+     * @param sizeBytes the size of the snapshot, including its header
+     * @param elapsedNanos how long the snapshot took to write or restore
+     */
+    public SnapshotInfo(int schemaVersion, int categoryCount, int productCount, long sizeBytes, long elapsedNanos) {
+        this.schemaVersion = schemaVersion;
+        this.categoryCount = categoryCount;
+        this.productCount = productCount;
+        this.sizeBytes = sizeBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getSchemaVersion() { return schemaVersion; }
+    public int getCategoryCount() { return categoryCount; }
+    public int getProductCount() { return productCount; }
+    public long getSizeBytes() { return sizeBytes; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos <= 0 ? 0 : (categoryCount + (double) productCount) * 1e9 / elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos <= 0 ? 0 : sizeBytes * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d categories and %d products, %d bytes, %.0f rows/s, %.2f MB/s",
+                categoryCount, productCount, sizeBytes, getRowsPerSecond(), getMegabytesPerSecond());
+    }
+}
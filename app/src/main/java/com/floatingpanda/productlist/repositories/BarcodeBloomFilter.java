@@ -0,0 +1,220 @@
+package com.floatingpanda.productlist.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A Bloom filter over the barcodes of every product, so a scan of a barcode which isn't in the
+ * catalogue can be answered without going to the database. mightContain() never returns false for a
+ * barcode a product has, but returns true for a small share of barcodes no product has.
+ *
+ * Barcodes can't be taken out of a Bloom filter, so the barcodes of deleted and edited products are
+ * left in it and it fills up as products are written. Once it's full enough that its false positive
+ * rate is twice the rate it was sized for, needsRebuild() returns true and it should be rebuilt from
+ * the database with rebuild(), sized for the products there then.
+ *
+ * Until the filter is first built it can't rule any barcode out. Barcodes put while it's being
+ * rebuilt are put into the rebuilt filter too. The filter is thread safe.
+ */
+public class BarcodeBloomFilter {
+    // The false positive rate the filter is sized for.
+    public static final double TARGET_FALSE_POSITIVE_RATE = 0.01;
+
+    // The filter is sized for this many times the barcodes it's built with, leaving room for inserts.
+    private static final int HEADROOM = 2;
+    private static final int MIN_BITS = 1024;
+
+    private long[] bits = new long[0];
+    private int bitCount;
+    private int hashCount;
+    private int setBitCount;
+    private boolean ready;
+
+    // The barcodes put while the filter is being rebuilt, or null if it isn't being rebuilt.
+    private List<String> putsDuringRebuild;
+
+    // For the observed false positive rate, see recordPositive().
+    private long positives;
+    private long falsePositives;
+
+    /**
+     * Returns whether the filter has been built, and so can rule barcodes out.
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns false if no product has the barcode, or true if a product might have it.
+     */
+    public synchronized boolean mightContain(String barcode) {
+        if (!ready) {
+            return true;
+        }
+
+        if (barcode == null) {
+            return false;
+        }
+
+        long hash = hash(barcode);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hash1 + i * hash2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds the barcode of a product which has been inserted or edited.
+     */
+    public synchronized void put(String barcode) {
+        if (barcode == null) {
+            return;
+        }
+
+        if (putsDuringRebuild != null) {
+            putsDuringRebuild.add(barcode);
+        }
+        setBitCount += setBits(bits, bitCount, hashCount, barcode);
+    }
+
+    /**
+     * Records whether a barcode the filter said might be there was found in the database, for
+     * getObservedFalsePositiveRate().
+     */
+    public synchronized void recordPositive(boolean found) {
+        positives++;
+        if (!found) {
+            falsePositives++;
+        }
+    }
+
+    /**
+     * Returns the share of the filter's bits which are set.
+     */
+    public synchronized double getFillRatio() {
+        return bitCount == 0 ? 0 : (double) setBitCount / bitCount;
+    }
+
+    /**
+     * Returns the false positive rate expected from how full the filter is, i.e. the chance of
+     * every bit a missing barcode hashes to being set.
+     */
+    public synchronized double getFalsePositiveRate() {
+        return Math.pow(getFillRatio(), hashCount);
+    }
+
+    /**
+     * Returns the share of the barcodes the filter said might be there which weren't found in the
+     * database, as recorded by recordPositive(), or 0 if none have been recorded.
+     */
+    public synchronized double getObservedFalsePositiveRate() {
+        return positives == 0 ? 0 : (double) falsePositives / positives;
+    }
+
+    /**
+     * Returns whether the filter has filled up enough that it should be rebuilt, because its false
+     * positive rate is twice the rate it was sized for. Returns false while it's being rebuilt.
+     */
+    public synchronized boolean needsRebuild() {
+        return ready && putsDuringRebuild == null
+                && getFalsePositiveRate() > 2 * TARGET_FALSE_POSITIVE_RATE;
+    }
+
+    /**
+     * Builds the filter from scratch from the barcodes of every product in the database, sized for
+     * their number, then makes it ready. Runs on the calling thread, which shouldn't be the main
+     * thread. The old filter carries on being used until the new one is built.
+     *
+     * @param barcodeCount how many barcodes the loader is expected to pass on
+     * @param loader passes the barcode of every product in the database to the consumer it's given
+     */
+    public void rebuild(int barcodeCount, Consumer<Consumer<String>> loader) {
+        synchronized (this) {
+            putsDuringRebuild = new ArrayList<>();
+        }
+
+        int expectedBarcodes = Math.max(barcodeCount, 1) * HEADROOM;
+        int optimalBitCount = (int) Math.ceil(
+                -expectedBarcodes * Math.log(TARGET_FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        int newBitCount = (Math.max(MIN_BITS, optimalBitCount) + 63) & ~63;
+        int newHashCount = Math.max(1, (int) Math.round((double) newBitCount / expectedBarcodes * Math.log(2)));
+        long[] newBits = new long[newBitCount / 64];
+
+        int[] newSetBitCount = new int[1];
+        try {
+            loader.accept(barcode -> {
+                if (barcode != null) {
+                    newSetBitCount[0] += setBits(newBits, newBitCount, newHashCount, barcode);
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                putsDuringRebuild = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            for (String barcode : putsDuringRebuild) {
+                newSetBitCount[0] += setBits(newBits, newBitCount, newHashCount, barcode);
+            }
+
+            putsDuringRebuild = null;
+            bits = newBits;
+            bitCount = newBitCount;
+            hashCount = newHashCount;
+            setBitCount = newSetBitCount[0];
+            ready = true;
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Sets the barcode's bits and returns how many of them weren't already set.
+    private static int setBits(long[] bits, int bitCount, int hashCount, String barcode) {
+        if (bitCount == 0) {
+            return 0;
+        }
+
+        long hash = hash(barcode);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+
+        int newlySet = 0;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hash1 + i * hash2, bitCount);
+            long mask = 1L << bit;
+            if ((bits[bit >>> 6] & mask) == 0) {
+                bits[bit >>> 6] |= mask;
+                newlySet++;
+            }
+        }
+
+        return newlySet;
+    }
+
+    private static int bitIndex(int combinedHash, int bitCount) {
+        return (combinedHash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    // A 64 bit FNV-1a hash with a final mix, split into two 32 bit hashes for double hashing.
+    private static long hash(String barcode) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < barcode.length(); i++) {
+            hash ^= barcode.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
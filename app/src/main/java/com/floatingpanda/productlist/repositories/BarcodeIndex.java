@@ -0,0 +1,227 @@
+package com.floatingpanda.productlist.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * An in-memory index from barcodes to the ids of the products with them, so exact barcode scans can
+ * be resolved without going to the database. Barcodes are matched exactly, as the exact barcode
+ * queries match them.
+ *
+ * Barcodes made up of up to 17 digits, which covers EAN, UPC and ITF codes, are packed into a long
+ * along with their length, so leading zeros are kept and looking them up doesn't allocate anything
+ * besides the returned ids. Any other barcodes are given a number while products have them, which
+ * is given to another barcode once no product has it.
+ *
+ * The index isn't ready until it has been built by rebuild(), which is meant to be run in the
+ * background. Writes made while it's being built are replayed on top of it once it's built, so it
+ * may be built while products are being written. Every write to products must be passed on to the
+ * index once it has committed to keep it in step, see AppDatabase.writeProducts().
+ *
+ * The index is thread safe.
+ */
+public class BarcodeIndex {
+    private static final long[] NO_IDS = new long[0];
+
+    // Digit barcodes up to this long fit into the low 57 bits of a key, with their length above.
+    private static final int MAX_PACKED_DIGITS = 17;
+    private static final int LENGTH_SHIFT = 57;
+
+    // Stored for products without a barcode, so updates know the product is in the index.
+    private static final long NO_BARCODE_KEY = Long.MIN_VALUE + 1;
+
+    private Table table = new Table();
+    private boolean ready;
+
+    // The writes made while the index is being rebuilt, or null if it isn't being rebuilt.
+    private List<Consumer<Table>> writesDuringRebuild;
+
+    /**
+     * Returns whether the index has been built, and so can be used for lookups.
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the number of products in the index.
+     */
+    public synchronized int size() {
+        return table.keysById.size();
+    }
+
+    /**
+     * Returns the ids of the products with exactly the barcode, in no particular order, or null if
+     * the index isn't ready yet and the database has to be asked instead.
+     */
+    public synchronized long[] getProductIds(String barcode) {
+        if (!ready) {
+            return null;
+        }
+
+        if (barcode == null) {
+            return NO_IDS;
+        }
+
+        long key = table.findKey(barcode);
+        return key == NO_BARCODE_KEY ? NO_IDS : table.idsByKey.get(key);
+    }
+
+    /**
+     * Indexes a product which has been inserted, or replaces the barcode of one already indexed.
+     *
+     * @param productId the product's id
+     * @param barcode the product's barcode, or null if it doesn't have one
+     */
+    public synchronized void put(long productId, String barcode) {
+        write(table -> table.put(productId, barcode));
+    }
+
+    /**
+     * Replaces the barcode of a product which has been updated. Products which aren't in the index,
+     * because the update didn't find them in the database, are left out of it.
+     *
+     * @param productId the product's id
+     * @param barcode the product's barcode, or null if it doesn't have one
+     */
+    public synchronized void update(long productId, String barcode) {
+        write(table -> {
+            if (table.keysById.containsKey(productId)) {
+                table.put(productId, barcode);
+            }
+        });
+    }
+
+    /**
+     * Removes a product which has been deleted.
+     */
+    public synchronized void remove(long productId) {
+        write(table -> table.remove(productId));
+    }
+
+    /**
+     * Removes every product, after they have all been deleted.
+     */
+    public synchronized void clear() {
+        write(Table::clear);
+    }
+
+    /**
+     * Builds the index from scratch from every product in the database, then makes it ready. Runs
+     * on the calling thread, which shouldn't be the main thread. Lookups carry on using the old index
+     * until the new one is built.
+     *
+     * @param loader passes the id and barcode (null if it has none) of every product in the
+     *               database to the consumer it's given
+     */
+    public void rebuild(Consumer<ObjLongConsumer<String>> loader) {
+        synchronized (this) {
+            writesDuringRebuild = new ArrayList<>();
+        }
+
+        Table rebuilt = new Table();
+        try {
+            loader.accept((barcode, productId) -> rebuilt.put(productId, barcode));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                writesDuringRebuild = null;
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            // The loader may have read the products before or after any of these writes, but
+            // writes give the same result however many times they're made.
+            for (Consumer<Table> write : writesDuringRebuild) {
+                write.accept(rebuilt);
+            }
+
+            writesDuringRebuild = null;
+            table = rebuilt;
+            ready = true;
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Must be called while holding the lock.
+    private void write(Consumer<Table> write) {
+        write.accept(table);
+        if (writesDuringRebuild != null) {
+            writesDuringRebuild.add(write);
+        }
+    }
+
+    // Returns the key a barcode of up to 17 digits is packed into, or -1 if it isn't one.
+    private static long packDigits(String barcode) {
+        int length = barcode.length();
+        if (length == 0 || length > MAX_PACKED_DIGITS) {
+            return -1;
+        }
+
+        long digits = 0;
+        for (int i = 0; i < length; i++) {
+            char c = barcode.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            digits = digits * 10 + (c - '0');
+        }
+
+        return ((long) length << LENGTH_SHIFT) | digits;
+    }
+
+    private static class Table {
+        final LongLongMultimap idsByKey = new LongLongMultimap();
+        // Every product's key, or NO_BARCODE_KEY.
+        final LongLongMultimap keysById = new LongLongMultimap();
+
+        // Barcodes which can't be packed are keyed by -1 - their number.
+        final StringNumbering otherBarcodeNumbers = new StringNumbering();
+
+        void put(long productId, String barcode) {
+            remove(productId);
+
+            long key = barcode == null ? NO_BARCODE_KEY : createKey(barcode);
+            keysById.put(productId, key);
+            if (key != NO_BARCODE_KEY) {
+                idsByKey.put(key, productId);
+            }
+        }
+
+        void remove(long productId) {
+            long key = keysById.getFirst(productId, NO_BARCODE_KEY);
+            if (keysById.remove(productId, key) && key != NO_BARCODE_KEY) {
+                idsByKey.remove(key, productId);
+                if (key < 0 && !idsByKey.containsKey(key)) {
+                    otherBarcodeNumbers.remove((int) (-1 - key));
+                }
+            }
+        }
+
+        void clear() {
+            idsByKey.clear();
+            keysById.clear();
+            otherBarcodeNumbers.clear();
+        }
+
+        // Returns the barcode's key, or NO_BARCODE_KEY if it isn't a packed barcode and hasn't been
+        // seen.
+        long findKey(String barcode) {
+            long key = packDigits(barcode);
+            if (key >= 0) {
+                return key;
+            }
+
+            int number = otherBarcodeNumbers.get(barcode);
+            return number < 0 ? NO_BARCODE_KEY : -1 - number;
+        }
+
+        long createKey(String barcode) {
+            long key = packDigits(barcode);
+            return key >= 0 ? key : -1 - otherBarcodeNumbers.add(barcode);
+        }
+    }
+}
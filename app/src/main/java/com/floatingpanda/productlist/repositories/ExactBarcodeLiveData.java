@@ -0,0 +1,112 @@
+package com.floatingpanda.productlist.repositories;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import com.floatingpanda.productlist.db.ProductWithCategory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The products with an exact barcode, which only goes to the database while the barcode Bloom filter
+ * says a product might have the barcode. A barcode the filter rules out is shown as not found
+ * straight away. Like Room's LiveData queries, it is refreshed whenever products or categories
+ * change, so a product inserted with the barcode later on still shows up.
+ */
+class ExactBarcodeLiveData extends LiveData<List<ProductWithCategory>> {
+    private final RoomDatabase database;
+    private final Executor queryExecutor;
+    private final BarcodeBloomFilter barcodeFilter;
+    private final String barcode;
+    private final Supplier<List<ProductWithCategory>> query;
+
+    private final InvalidationTracker.Observer observer = new InvalidationTracker.Observer("products", "categories") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            queryExecutor.execute(ExactBarcodeLiveData.this::refresh);
+        }
+    };
+
+    // Only the latest refresh posts its results, in case refreshes finish out of order.
+    private final AtomicInteger refreshCount = new AtomicInteger();
+
+    // Only the first query is recorded with the filter, so a lookup counts once towards its observed
+    // false positive rate however often it's refreshed.
+    private final AtomicBoolean positiveRecorded = new AtomicBoolean();
+
+    // Guarded by this.
+    private boolean observing;
+
+    /**
+     * @param database the database to watch for changes to products
+     * @param barcodeFilter the filter to check the barcode against
+     * @param barcode the barcode being searched for
+     * @param query runs the search on the calling thread
+     */
+    ExactBarcodeLiveData(RoomDatabase database, BarcodeBloomFilter barcodeFilter, String barcode,
+                         Supplier<List<ProductWithCategory>> query) {
+        this.database = database;
+        this.queryExecutor = database.getQueryExecutor();
+        this.barcodeFilter = barcodeFilter;
+        this.barcode = barcode;
+        this.query = query;
+    }
+
+    @Override
+    protected void onActive() {
+        if (getValue() == null && !barcodeFilter.mightContain(barcode)) {
+            setValue(Collections.emptyList());
+        }
+
+        queryExecutor.execute(() -> {
+            updateObserver();
+            refresh();
+        });
+    }
+
+    @Override
+    protected void onInactive() {
+        queryExecutor.execute(this::updateObserver);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Watches for changes while there are active observers. Run on the query executor as adding and
+    // removing observers can touch the database.
+    private synchronized void updateObserver() {
+        boolean active = hasActiveObservers();
+        if (active && !observing) {
+            database.getInvalidationTracker().addObserver(observer);
+            observing = true;
+        } else if (!active && observing) {
+            database.getInvalidationTracker().removeObserver(observer);
+            observing = false;
+        }
+    }
+
+    private void refresh() {
+        int refresh = refreshCount.incrementAndGet();
+
+        List<ProductWithCategory> productsWithCategories;
+        if (barcodeFilter.mightContain(barcode)) {
+            productsWithCategories = Collections.unmodifiableList(query.get());
+            if (positiveRecorded.compareAndSet(false, true)) {
+                barcodeFilter.recordPositive(!productsWithCategories.isEmpty());
+            }
+        } else {
+            productsWithCategories = Collections.emptyList();
+        }
+
+        if (refresh == refreshCount.get()) {
+            postValue(productsWithCategories);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.floatingpanda.productlist.repositories;
+
+import java.util.Arrays;
+
+/**
+ * A hash multimap from long keys to long values, kept in two parallel arrays with open addressing
+ * and linear probing, so neither keys nor values are boxed. A key can be mapped to several values,
+ * each (key, value) pair is stored once. Long.MIN_VALUE marks empty slots and can't be used as a key.
+ *
+ * Not thread safe.
+ */
+class LongLongMultimap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    LongLongMultimap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of pairs expected, so the arrays don't need to grow to hold them
+     */
+    LongLongMultimap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds the pair, unless it's already in the map.
+     *
+     * @return true if the pair was added
+     */
+    boolean put(long key, long value) {
+        if (findSlot(key, value) >= 0) {
+            return false;
+        }
+
+        // Keeps the table at most half full, so probe sequences stay short.
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        insert(key, value);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the pair, if it's in the map.
+     *
+     * @return true if the pair was removed
+     */
+    boolean remove(long key, long value) {
+        int slot = findSlot(key, value);
+        if (slot < 0) {
+            return false;
+        }
+
+        deleteSlot(slot);
+        size--;
+        return true;
+    }
+
+    boolean containsKey(long key) {
+        for (int slot = slotFor(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the first value found for the key, or missingValue if the key isn't in the map. Meant
+     * for keys which are only ever mapped to one value.
+     */
+    long getFirst(long key, long missingValue) {
+        for (int slot = slotFor(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+
+        return missingValue;
+    }
+
+    /**
+     * Returns every value the key is mapped to, in no particular order, or an empty array if there
+     * aren't any.
+     */
+    long[] get(long key) {
+        int count = 0;
+        int start = slotFor(key);
+        for (int slot = start; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                count++;
+            }
+        }
+
+        long[] found = new long[count];
+        int i = 0;
+        for (int slot = start; i < count; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                found[i++] = values[slot];
+            }
+        }
+
+        return found;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Spreads the key's bits (Fibonacci hashing) as barcode keys share their high bits.
+    private int slotFor(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int findSlot(long key, long value) {
+        for (int slot = slotFor(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key && values[slot] == value) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(long key, long value) {
+        int slot = slotFor(key);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    // Empties the slot and moves later pairs of the probe sequence back into the gap, so that no
+    // pair is left behind an empty slot where lookups would stop before reaching it.
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (keys[next] != EMPTY) {
+            int home = slotFor(keys[next]);
+
+            // The pair at next can fill the gap unless its home slot lies after the gap, cyclically.
+            boolean homeAfterGap = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+            if (!homeAfterGap) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        keys[gap] = EMPTY;
+    }
+}
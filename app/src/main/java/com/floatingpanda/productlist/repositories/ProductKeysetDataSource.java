@@ -0,0 +1,286 @@
+package com.floatingpanda.productlist.repositories;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.paging.DataSource;
+import androidx.paging.ItemKeyedDataSource;
+import androidx.room.InvalidationTracker;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Loads pages of products with categories from the results of a query, ordered by orderBy.
+ *
+ * Pages are found with keyset pagination rather than OFFSET: each page starts from the (sort key,
+ * id) of the last product loaded, e.g. "name > 'Sink' OR (name = 'Sink' AND id > 5)", which an
+ * index on the sort column can jump straight to. Loading a page costs the same however far down
+ * the list it is, and only the pages the list has reached are held in memory. The product id
+ * breaks ties between products with the same sort key, so no product is skipped or repeated.
+ *
+ * The data source is invalidated whenever the products or categories tables change, and the
+ * PagedList it backs then reloads from a new data source created by the Factory.
+ */
+public class ProductKeysetDataSource extends ItemKeyedDataSource<ProductKeysetDataSource.Key, ProductWithCategory> {
+    private final AppDatabase database;
+    private final ProductDao productDao;
+    private final String baseQuery;
+    private final Object[] baseArgs;
+    private final OrderByEnum orderBy;
+    private final InvalidationTracker.Observer observer;
+
+    /**
+     * @param database the database to load products from
+     * @param baseQuery a query selecting products with categories, built from
+     *                  ProductDao.PRODUCT_WITH_CATEGORY_QUERY and without an ORDER BY clause
+     * @param baseArgs the arguments bound to baseQuery
+     * @param orderBy the order to load products in
+     */
+    public ProductKeysetDataSource(AppDatabase database, String baseQuery, Object[] baseArgs, OrderByEnum orderBy) {
+        this.database = database;
+        this.productDao = database.productDao();
+        this.baseQuery = baseQuery;
+        this.baseArgs = baseArgs;
+        this.orderBy = orderBy;
+
+        observer = new InvalidationTracker.Observer("products", "categories") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        };
+        database.getInvalidationTracker().addObserver(observer);
+        addInvalidatedCallback(() -> database.getInvalidationTracker().removeObserver(observer));
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams<Key> params, @NonNull LoadInitialCallback<ProductWithCategory> callback) {
+        // When the list is reloaded it asks to start from the first product it was showing, so that
+        // product is included in the page.
+        callback.onResult(loadPage(params.requestedInitialKey, true, true, params.requestedLoadSize));
+    }
+
+    @Override
+    public void loadAfter(@NonNull LoadParams<Key> params, @NonNull LoadCallback<ProductWithCategory> callback) {
+        callback.onResult(loadPage(params.key, true, false, params.requestedLoadSize));
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<Key> params, @NonNull LoadCallback<ProductWithCategory> callback) {
+        List<ProductWithCategory> page = loadPage(params.key, false, false, params.requestedLoadSize);
+        // Products before the key are loaded walking backwards from it, so put them back in order.
+        Collections.reverse(page);
+        callback.onResult(page);
+    }
+
+    @NonNull
+    @Override
+    public Key getKey(@NonNull ProductWithCategory item) {
+        return new Key(getSortValue(item.getProduct()), item.getProduct().getId());
+    }
+
+    /**
+     * Returns the query for a page of products, exposed so tests can check the pages are found
+     * through an index.
+     *
+     * @param key the key to load the page from, or null to load from the start of the list
+     * @param forwards whether to load products after key, rather than before it
+     * @param inclusive whether to include the product with key in the page
+     * @param limit the most products to load
+     */
+    @VisibleForTesting
+    public SimpleSQLiteQuery createPageQuery(Key key, boolean forwards, boolean inclusive, int limit) {
+        List<Object> args = new ArrayList<>(Arrays.asList(baseArgs));
+
+        // Loading backwards walks the list in the opposite order.
+        boolean ascending = isAscending() == forwards;
+
+        // SQLite flattens the subquery into the outer query, so the keyset and ORDER BY still use
+        // the indices on products.
+        String queryString = "SELECT * FROM (" + baseQuery + ")";
+
+        if (key != null) {
+            queryString += " WHERE " + createKeysetCondition(key, ascending, inclusive, args);
+        }
+
+        String direction = ascending ? " ASC" : " DESC";
+        String sortColumn = getSortColumn();
+        queryString += " ORDER BY ";
+        if (sortColumn != null) {
+            queryString += sortColumn + direction + ", ";
+        }
+        queryString += "id" + direction + " LIMIT ?";
+        args.add(limit);
+
+        return new SimpleSQLiteQuery(queryString, args.toArray());
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private List<ProductWithCategory> loadPage(Key key, boolean forwards, boolean inclusive, int limit) {
+        return productDao.queryProductsWithCategory(createPageQuery(key, forwards, inclusive, limit));
+    }
+
+    /**
+     * Creates the condition selecting products which come after key when walking the list in the
+     * given direction. The sort column is bounded on its own (col >= ?) as well as in the tie-break
+     * so SQLite can use it for an index range.
+     *
+     * Barcodes can be null, and SQLite puts nulls first in ascending order and last in descending
+     * order, so a null barcode key and rows with null barcodes need handling separately.
+     */
+    private String createKeysetCondition(Key key, boolean ascending, boolean inclusive, List<Object> args) {
+        String idComparison = ascending ? (inclusive ? " >= ?" : " > ?") : (inclusive ? " <= ?" : " < ?");
+        String sortColumn = getSortColumn();
+
+        if (sortColumn == null) {
+            args.add(key.getId());
+            return "id" + idComparison;
+        }
+
+        if (key.getSortValue() == null) {
+            args.add(key.getId());
+            String nullsAfterKey = "(" + sortColumn + " IS NULL AND id" + idComparison + ")";
+            // In ascending order every non-null value comes after the nulls.
+            return ascending ? "(" + nullsAfterKey + " OR " + sortColumn + " IS NOT NULL)" : nullsAfterKey;
+        }
+
+        String strictComparison = ascending ? " > ?" : " < ?";
+        String boundComparison = ascending ? " >= ?" : " <= ?";
+        args.add(key.getSortValue());
+        args.add(key.getSortValue());
+        args.add(key.getId());
+        String condition = "(" + sortColumn + boundComparison + " AND (" + sortColumn + strictComparison
+                + " OR id" + idComparison + "))";
+
+        if (!ascending && isSortColumnNullable()) {
+            // In descending order the nulls come after every non-null value.
+            condition = "(" + condition + " OR " + sortColumn + " IS NULL)";
+        }
+
+        return condition;
+    }
+
+    private boolean isAscending() {
+        switch (orderBy) {
+            case NO_ORDER:
+            case NAME_ASC:
+            case BARCODE_ASC:
+            case PRICE_ASC:
+                return true;
+            case NAME_DESC:
+            case BARCODE_DESC:
+            case PRICE_DESC:
+                return false;
+            default:
+                throw new IllegalStateException("Invalid ENUM was entered.");
+        }
+    }
+
+    // Returns the column of the base query the products are ordered by, or null if they are only
+    // ordered by id.
+    private String getSortColumn() {
+        switch (orderBy) {
+            case NO_ORDER:
+                return null;
+            case NAME_ASC:
+            case NAME_DESC:
+                return "name";
+            case BARCODE_ASC:
+            case BARCODE_DESC:
+                return "barcode";
+            case PRICE_ASC:
+            case PRICE_DESC:
+                return "price";
+            default:
+                throw new IllegalStateException("Invalid ENUM was entered.");
+        }
+    }
+
+    private boolean isSortColumnNullable() {
+        return orderBy == OrderByEnum.BARCODE_ASC || orderBy == OrderByEnum.BARCODE_DESC;
+    }
+
+    // Returns the value of product's sort column as it is stored in the database.
+    private Object getSortValue(Product product) {
+        switch (orderBy) {
+            case NO_ORDER:
+                return null;
+            case NAME_ASC:
+            case NAME_DESC:
+                return product.getName();
+            case BARCODE_ASC:
+            case BARCODE_DESC:
+                return product.getBarcode();
+            case PRICE_ASC:
+            case PRICE_DESC:
+                return PriceTypeConverter.toPriceInt(product.getPrice());
+            default:
+                throw new IllegalStateException("Invalid ENUM was entered.");
+        }
+    }
+
+    /**
+     * The position of a product in the list: the value it is sorted by and its id.
+     */
+    public static class Key {
+        private final Object sortValue;
+        private final long id;
+
+        public Key(Object sortValue, long id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+
+        public Object getSortValue() { return sortValue; }
+        public long getId() { return id; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return id == key.id && Objects.equals(sortValue, key.sortValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sortValue, id);
+        }
+    }
+
+    /**
+     * Creates a new data source for the same query each time the previous one is invalidated.
+     */
+    public static class Factory extends DataSource.Factory<Key, ProductWithCategory> {
+        private final AppDatabase database;
+        private final String baseQuery;
+        private final Object[] baseArgs;
+        private final OrderByEnum orderBy;
+
+        public Factory(AppDatabase database, String baseQuery, Object[] baseArgs, OrderByEnum orderBy) {
+            this.database = database;
+            this.baseQuery = baseQuery;
+            this.baseArgs = baseArgs;
+            this.orderBy = orderBy;
+        }
+
+        @NonNull
+        @Override
+        public DataSource<Key, ProductWithCategory> create() {
+            return new ProductKeysetDataSource(database, baseQuery, baseArgs, orderBy);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.floatingpanda.productlist.repositories;
+
+import com.floatingpanda.productlist.other.OrderByEnum;
+
+import java.util.Objects;
+
+/**
+ * Describes a query for products with categories: which products to load and the order to load them
+ * in. Parameters are immutable and compare equal when they describe the same query, so a list driven
+ * by them can skip rerunning a query it is already showing.
+ *
+ * Prices are in pence, as stored in the database.
+ */
+public class ProductQueryParameters {
+    public enum Type {
+        ALL,
+        EXACT_BARCODE,
+        CATEGORY,
+        SEARCH
+    }
+
+    private final Type type;
+    private final String barcode;
+    private final String name;
+    private final long categoryId;
+    private final int lowerPrice;
+    private final int higherPrice;
+    private final OrderByEnum orderBy;
+
+    private ProductQueryParameters(Type type, String barcode, String name, long categoryId, int lowerPrice,
+                                   int higherPrice, OrderByEnum orderBy) {
+        this.type = type;
+        this.barcode = barcode;
+        this.name = name;
+        this.categoryId = categoryId;
+        this.lowerPrice = lowerPrice;
+        this.higherPrice = higherPrice;
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Every product.
+     */
+    public static ProductQueryParameters all(OrderByEnum orderBy) {
+        return new ProductQueryParameters(Type.ALL, null, null, 0, 0, 0, orderBy);
+    }
+
+    /**
+     * Products with exactly the barcode given.
+     */
+    public static ProductQueryParameters exactBarcode(String barcode, OrderByEnum orderBy) {
+        return new ProductQueryParameters(Type.EXACT_BARCODE, barcode, null, 0, 0, 0, orderBy);
+    }
+
+    /**
+     * Products in the category given.
+     */
+    public static ProductQueryParameters category(long categoryId, OrderByEnum orderBy) {
+        return new ProductQueryParameters(Type.CATEGORY, null, null, categoryId, 0, 0, orderBy);
+    }
+
+    /**
+     * Products matching a search, see ProductRepository.createSQLQuery() for what each filter does
+     * and the values that turn them off.
+     */
+    public static ProductQueryParameters search(String barcode, String name, long categoryId, int lowerPrice,
+                                                int higherPrice, OrderByEnum orderBy) {
+        return new ProductQueryParameters(Type.SEARCH, barcode, name, categoryId, lowerPrice, higherPrice, orderBy);
+    }
+
+    /**
+     * Returns parameters for the same products in a different order.
+     */
+    public ProductQueryParameters withOrderBy(OrderByEnum orderBy) {
+        if (orderBy == this.orderBy) {
+            return this;
+        }
+
+        return new ProductQueryParameters(type, barcode, name, categoryId, lowerPrice, higherPrice, orderBy);
+    }
+
+    public Type getType() { return type; }
+    public String getBarcode() { return barcode; }
+    public String getName() { return name; }
+    public long getCategoryId() { return categoryId; }
+    public int getLowerPrice() { return lowerPrice; }
+    public int getHigherPrice() { return higherPrice; }
+    public OrderByEnum getOrderBy() { return orderBy; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProductQueryParameters that = (ProductQueryParameters) o;
+        return categoryId == that.categoryId
+                && lowerPrice == that.lowerPrice
+                && higherPrice == that.higherPrice
+                && type == that.type
+                && Objects.equals(barcode, that.barcode)
+                && Objects.equals(name, that.name)
+                && orderBy == that.orderBy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, barcode, name, categoryId, lowerPrice, higherPrice, orderBy);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductQueryParameters{type=" + type + ", barcode=" + barcode + ", name=" + name
+                + ", categoryId=" + categoryId + ", lowerPrice=" + lowerPrice + ", higherPrice=" + higherPrice
+                + ", orderBy=" + orderBy + "}";
+    }
+}
@@ -1,31 +1,82 @@
 package com.floatingpanda.productlist.repositories;
 
 import android.app.Application;
+import android.database.Cursor;
+import android.os.CancellationSignal;
 
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import androidx.lifecycle.LiveData;
+import androidx.paging.LivePagedListBuilder;
+import androidx.paging.PagedList;
 import androidx.sqlite.db.SimpleSQLiteQuery;
 
 import com.floatingpanda.productlist.other.OrderByEnum;
 import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
 import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.BarcodeTrigram;
 import com.floatingpanda.productlist.db.Product;
 import com.floatingpanda.productlist.db.ProductDao;
 import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.db.ProductWithCategoryCursorReader;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class ProductRepository {
+    // The most trigrams a partial barcode search looks up in the trigram index.
+    private static final int MAX_QUERY_TRIGRAMS = 3;
+
+    // Shared by every repository, so searches anywhere in the app reuse the same templates.
+    private static final SearchQueryTemplates SEARCH_QUERY_TEMPLATES = new SearchQueryTemplates();
+
+    private AppDatabase database;
     private ProductDao productDao;
+    private BarcodeIndex barcodeIndex;
+    private BarcodeBloomFilter barcodeFilter;
 
     public ProductRepository(Application application) {
-        AppDatabase db = AppDatabase.getDatabase(application);
-        productDao = db.productDao();
+        database = AppDatabase.getDatabase(application);
+        productDao = database.productDao();
+        barcodeIndex = database.getBarcodeIndex();
+        barcodeFilter = database.getBarcodeFilter();
     }
 
     // Used for tests
     public ProductRepository(AppDatabase appDatabase) {
+        database = appDatabase;
         productDao = appDatabase.productDao();
+        barcodeIndex = appDatabase.getBarcodeIndex();
+        barcodeFilter = appDatabase.getBarcodeFilter();
+    }
+
+    /**
+     * Returns the search query templates, e.g. for checking their hit rate.
+     */
+    public static SearchQueryTemplates getSearchQueryTemplates() {
+        return SEARCH_QUERY_TEMPLATES;
+    }
+
+    /**
+     * Creates the paging configuration for the paged product lists. Only a single page is loaded
+     * for the first paint, and the next page is loaded once the list comes within prefetchDistance
+     * products of the end of what has been loaded. Placeholders are disabled as keyset paging
+     * doesn't count the products ahead of it.
+     *
+     * @param pageSize the number of products loaded at a time
+     * @param prefetchDistance how close to the end of the loaded products the list can get before
+     *                         the next page is loaded
+     */
+    public static PagedList.Config createPagingConfig(int pageSize, int prefetchDistance) {
+        return new PagedList.Config.Builder()
+                .setPageSize(pageSize)
+                .setInitialLoadSizeHint(pageSize)
+                .setPrefetchDistance(prefetchDistance)
+                .setEnablePlaceholders(false)
+                .build();
     }
 
     //TODO Removed commented out section
@@ -33,6 +84,14 @@ public class ProductRepository {
         return productDao.getProductsWithCategory();
     }
 
+    /**
+     * Returns every product with its category, ordered by the database using the indices on
+     * products rather than sorted after loading.
+     */
+    public LiveData<List<ProductWithCategory>> getAllProductsWithCategory(OrderByEnum orderBy) {
+        return getProductsWithCategory(ProductQueryParameters.all(orderBy));
+    }
+
     /*
     public LiveData<List<ProductWithCategory>> getAllProductsWithCategoryOrderedByNameDesc() {
         return productDao.getProductsWithCategoryOrderedByNameDesc();
@@ -55,49 +114,141 @@ public class ProductRepository {
     }
      */
 
+    /**
+     * Returns every product with its category, loaded a page at a time in the order given.
+     */
+    public LiveData<PagedList<ProductWithCategory>> getPagedProductsWithCategory(OrderByEnum orderBy,
+            PagedList.Config config) {
+        ProductKeysetDataSource.Factory factory = new ProductKeysetDataSource.Factory(database,
+                ProductDao.PRODUCT_WITH_CATEGORY_QUERY, new Object[0], orderBy);
+        return new LivePagedListBuilder<>(factory, config).build();
+    }
+
     public LiveData<ProductWithCategory> getProductWithCategoryByProductId(long productId) {
         return productDao.getProductWithCategoryByProductId(productId);
     }
 
+    // Products are written through AppDatabase.writeProducts(), which passes the changes on to the
+    // barcode index once they've committed, in the order the database committed them. Barcodes are
+    // put into the barcode filter at the same time, and the filter is rebuilt once it fills up.
+
     public void addProduct(Product product) {
         AppDatabase.getExecutorService().execute(() -> {
-            productDao.insert(product);
+            database.writeProducts(() -> {
+                long id = productDao.insert(product);
+                return () -> {
+                    if (id != -1) {
+                        barcodeIndex.put(id, product.getBarcode());
+                        barcodeFilter.put(product.getBarcode());
+                    }
+                };
+            });
+            rebuildBarcodeFilterIfNeeded();
         });
     }
 
     public void addProducts(Product... products) {
         AppDatabase.getExecutorService().execute(() -> {
-            productDao.insertMultiple(products);
+            database.writeProducts(() -> {
+                long[] ids = productDao.insertMultiple(products);
+                return () -> {
+                    for (int i = 0; i < ids.length; i++) {
+                        if (ids[i] != -1) {
+                            barcodeIndex.put(ids[i], products[i].getBarcode());
+                            barcodeFilter.put(products[i].getBarcode());
+                        }
+                    }
+                };
+            });
+            rebuildBarcodeFilterIfNeeded();
         });
     }
 
     public void editProduct(Product product) {
         AppDatabase.getExecutorService().execute(() -> {
-            productDao.update(product);
+            database.writeProducts(() -> {
+                productDao.update(product);
+                return () -> {
+                    barcodeIndex.update(product.getId(), product.getBarcode());
+                    barcodeFilter.put(product.getBarcode());
+                };
+            });
+            rebuildBarcodeFilterIfNeeded();
         });
     }
 
     public void deleteProduct(Product product) {
-        AppDatabase.getExecutorService().execute(() -> {
+        AppDatabase.getExecutorService().execute(() -> database.writeProducts(() -> {
             productDao.delete(product);
-        });
+            return () -> barcodeIndex.remove(product.getId());
+        }));
     }
 
     public void deleteProducts(Product... products) {
-        AppDatabase.getExecutorService().execute(() -> {
+        AppDatabase.getExecutorService().execute(() -> database.writeProducts(() -> {
             productDao.deleteMultiple(products);
-        });
+            return () -> {
+                for (Product product : products) {
+                    barcodeIndex.remove(product.getId());
+                }
+            };
+        }));
     }
 
     public void deleteAllProducts() {
-        AppDatabase.getExecutorService().execute(() -> {
+        AppDatabase.getExecutorService().execute(() -> database.writeProducts(() -> {
             productDao.deleteAll();
-        });
+            return barcodeIndex::clear;
+        }));
+    }
+
+    @WorkerThread
+    private void rebuildBarcodeFilterIfNeeded() {
+        if (barcodeFilter.needsRebuild()) {
+            database.rebuildBarcodeFilter();
+        }
+    }
+
+    /**
+     * Returns the ids of the products with exactly the barcode from the in-memory barcode index,
+     * without going to the database, so it can be called on the main thread. Returns null if the
+     * index is still being built, in which case the database has to be searched instead.
+     */
+    public long[] findProductIdsByExactBarcode(String barcode) {
+        return barcodeIndex.getProductIds(barcode);
+    }
+
+    /**
+     * Looks up the products with each of the barcodes at once, see
+     * ProductDao.getProductsWithCategoryByBarcodes().
+     */
+    @WorkerThread
+    public Map<String, List<ProductWithCategory>> getProductsWithCategoryByBarcodes(Collection<String> barcodes) {
+        return productDao.getProductsWithCategoryByBarcodes(barcodes);
+    }
+
+    /**
+     * Starts a stock-take, which saves its scans in the background.
+     */
+    public StockTakeSession startStockTake() {
+        return new StockTakeSession(database, AppDatabase.getExecutorService());
+    }
+
+    /**
+     * Returns the Bloom filter over every product's barcode, e.g. for checking its false positive
+     * rate.
+     */
+    public BarcodeBloomFilter getBarcodeFilter() {
+        return barcodeFilter;
     }
 
     //TODO remove commented out sections
     public LiveData<List<ProductWithCategory>> getProductsWithCategoryByExactBarcode(String barcode) {
-        return productDao.getProductsWithCategoryByExactBarcode(barcode);
+        return getProductsWithCategory(ProductQueryParameters.exactBarcode(barcode, OrderByEnum.NO_ORDER));
+    }
+
+    public LiveData<List<ProductWithCategory>> getProductsWithCategoryByExactBarcode(String barcode, OrderByEnum orderBy) {
+        return getProductsWithCategory(ProductQueryParameters.exactBarcode(barcode, orderBy));
     }
 
     /*
@@ -118,6 +269,10 @@ public class ProductRepository {
         return productDao.getProductsWithCategoryByCategoryId(categoryId);
     }
 
+    public LiveData<List<ProductWithCategory>> getProductsWithCategoryByCategoryId(long categoryId, OrderByEnum orderBy) {
+        return getProductsWithCategory(ProductQueryParameters.category(categoryId, orderBy));
+    }
+
     /*
     public LiveData<List<ProductWithCategory>> getProductsWithCategoryByCategoryIdOrderedByNameDesc(long categoryId) {
         return productDao.getProductsWithCategoryByCategoryIdOrderedByNameDesc(categoryId);
@@ -159,11 +314,154 @@ public class ProductRepository {
         return productDao.searchProductsWithCategory(query);
     }
 
+    public LiveData<List<ProductWithCategory>> searchProductsWithCategory(String barcode, String name,
+            long categoryId, float lowerPrice, float higherPrice, OrderByEnum orderBy) {
+        SimpleSQLiteQuery query = createSQLQuery(barcode, name, categoryId, Math.round(lowerPrice * 100),
+                Math.round(higherPrice * 100), orderBy);
+        return productDao.searchProductsWithCategory(query);
+    }
+
+    public LiveData<List<ProductWithCategory>> searchProductsWithCategory(String barcode, String name,
+            long categoryId, Price lowerPrice, Price higherPrice, OrderByEnum orderBy) {
+        SimpleSQLiteQuery query = createSQLQuery(barcode, name, categoryId, PriceTypeConverter.toPriceInt(lowerPrice),
+                PriceTypeConverter.toPriceInt(higherPrice), orderBy);
+        return productDao.searchProductsWithCategory(query);
+    }
+
+    /**
+     * Runs the query the parameters describe. Exact barcode queries for barcodes which the barcode
+     * filter rules out don't go to the database, and give an empty list straight away. Other exact
+     * barcode queries find the products' ids in the barcode index and only load those rows, see
+     * queryProductsWithCategoryByExactBarcode().
+     */
+    public LiveData<List<ProductWithCategory>> getProductsWithCategory(ProductQueryParameters parameters) {
+        if (parameters.getType() == ProductQueryParameters.Type.EXACT_BARCODE) {
+            return new ExactBarcodeLiveData(database, barcodeFilter, parameters.getBarcode(),
+                    () -> queryProductsWithCategoryByExactBarcode(parameters));
+        }
+
+        return productDao.searchProductsWithCategory(createQuery(parameters));
+    }
+
+    /**
+     * Runs the query the parameters describe on the calling thread, which mustn't be the main
+     * thread. If cancellationSignal is cancelled while the query is running, SQLite stops part way
+     * through and an OperationCanceledException is thrown.
+     *
+     * @param parameters the query to run
+     * @param cancellationSignal cancels the query, or null if it can't be cancelled
+     * @return the products with categories found
+     */
+    @WorkerThread
+    public List<ProductWithCategory> queryProductsWithCategory(ProductQueryParameters parameters,
+                                                               CancellationSignal cancellationSignal) {
+        try (Cursor cursor = database.query(createQuery(parameters), cancellationSignal)) {
+            return new ProductWithCategoryCursorReader(cursor).readAll();
+        }
+    }
+
+    /**
+     * Runs an exact barcode query on the calling thread, which mustn't be the main thread. The ids
+     * of the products with the barcode come from the barcode index, so SQLite only loads those rows
+     * by id rather than searching the barcodes. While the index is still being built at startup the
+     * barcodes are searched as before.
+     *
+     * @param parameters an exact barcode query
+     * @return the products with categories found
+     */
+    @WorkerThread
+    public List<ProductWithCategory> queryProductsWithCategoryByExactBarcode(ProductQueryParameters parameters) {
+        long[] ids = database.getProductIdsByBarcode(parameters.getBarcode());
+        if (ids == null || ids.length > ProductDao.MAX_QUERY_PARAMETERS) {
+            return queryProductsWithCategory(parameters, null);
+        }
+
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+
+        StringBuilder queryString = new StringBuilder(ProductDao.PRODUCT_WITH_CATEGORY_QUERY)
+                .append(" WHERE products.id IN (?");
+        for (int i = 1; i < ids.length; i++) {
+            queryString.append(", ?");
+        }
+        queryString.append(")").append(createOrderByString(parameters.getOrderBy()));
+
+        Object[] args = new Object[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            args[i] = ids[i];
+        }
+
+        try (Cursor cursor = database.query(new SimpleSQLiteQuery(queryString.toString(), args))) {
+            return new ProductWithCategoryCursorReader(cursor).readAll();
+        }
+    }
+
+    /**
+     * Creates the query the parameters describe.
+     */
+    @VisibleForTesting
+    public SimpleSQLiteQuery createQuery(ProductQueryParameters parameters) {
+        OrderByEnum orderBy = parameters.getOrderBy();
+        switch (parameters.getType()) {
+            case ALL:
+                return new SimpleSQLiteQuery(ProductDao.PRODUCT_WITH_CATEGORY_QUERY + createOrderByString(orderBy));
+            case EXACT_BARCODE:
+                return new SimpleSQLiteQuery(ProductDao.PRODUCT_WITH_CATEGORY_QUERY
+                        + " WHERE products.barcode = ?" + createOrderByString(orderBy),
+                        new Object[] {parameters.getBarcode()});
+            case CATEGORY:
+                return new SimpleSQLiteQuery(ProductDao.PRODUCT_WITH_CATEGORY_QUERY
+                        + " WHERE products.category_id = ?" + createOrderByString(orderBy),
+                        new Object[] {parameters.getCategoryId()});
+            case SEARCH:
+                return createSQLQuery(parameters.getBarcode(), parameters.getName(), parameters.getCategoryId(),
+                        parameters.getLowerPrice(), parameters.getHigherPrice(), orderBy);
+            default:
+                throw new IllegalStateException("Invalid query type was entered.");
+        }
+    }
+
+    /**
+     * Searches products the same way as createSQLQuery() but loads the results a page at a time in
+     * the order given, rather than ranking them by name.
+     */
+    public LiveData<PagedList<ProductWithCategory>> searchPagedProductsWithCategory(String barcode,
+            String name, long categoryId, int lowerPrice, int higherPrice, OrderByEnum orderBy,
+            PagedList.Config config) {
+        List<Object> args = new ArrayList<>();
+        int shape = bindSearchArgs(new ProductSearchPredicate(barcode, name, categoryId, lowerPrice, higherPrice),
+                false, args);
+
+        ProductKeysetDataSource.Factory factory = new ProductKeysetDataSource.Factory(database,
+                SEARCH_QUERY_TEMPLATES.getUnorderedTemplate(shape), args.toArray(), orderBy);
+        return new LivePagedListBuilder<>(factory, config).build();
+    }
+
+    public LiveData<PagedList<ProductWithCategory>> searchPagedProductsWithCategory(String barcode,
+            String name, long categoryId, float lowerPrice, float higherPrice, OrderByEnum orderBy,
+            PagedList.Config config) {
+        return searchPagedProductsWithCategory(barcode, name, categoryId, Math.round(lowerPrice * 100),
+                Math.round(higherPrice * 100), orderBy, config);
+    }
+
     /**
      * Searches the database and returns a list of products with categories, filtered by name,
      * barcode, category id and price, or any combination of these. Partial names and partial
      * barcodes can be used. The orderBy enum dictates how the list will be ordered: alphabetically
-     * by name, numerically by barcode, based on value in prices.
+     * by name, numerically by barcode, based on value in prices. The ordering is done by the
+     * database through the indices on products. If orderBy is NO_ORDER and a name is searched for,
+     * results are ranked by how well their names match instead.
+     *
+     * Names are searched through the products_fts full-text table, which indexes product notes as
+     * well as names. Every word in the name is treated as the start of a word in the product's name
+     * or notes, so "pil cov" finds "Pillow covers" but "llow" finds nothing. When searching by name
+     * the results are ranked, with products whose names start with the first word searched for
+     * coming first, then those with a later word in their names starting with it, then those only
+     * matching through their notes, and shorter names first within each.
+     *
+     * The query's SQL comes from SEARCH_QUERY_TEMPLATES, so every search with the same filters used
+     * and the same ordering runs the same SQL, only with different arguments bound.
      *
      * If barcode is set to null, products won't be filtered by barcodes.
      * If name is set to null, products won't be filtered by names.
@@ -183,107 +481,144 @@ public class ProductRepository {
      * @param categoryId
      * @param lowerPrice
      * @param higherPrice
+     * @param orderBy
      * @return
      */
-    private SimpleSQLiteQuery createSQLQuery(String barcode, String name, long categoryId,
-                                             int lowerPrice, int higherPrice) {
-        String queryString = "SELECT * FROM products";
+    @VisibleForTesting
+    public SimpleSQLiteQuery createSQLQuery(String barcode, String name, long categoryId,
+                                            int lowerPrice, int higherPrice, OrderByEnum orderBy) {
+        return createSQLQuery(new ProductSearchPredicate(barcode, name, categoryId, lowerPrice, higherPrice), orderBy);
+    }
 
+    /**
+     * Creates the query for the search predicate describes, in the same way as createSQLQuery()
+     * above, so the database finds exactly the products which pass predicate.
+     */
+    @VisibleForTesting
+    public SimpleSQLiteQuery createSQLQuery(ProductSearchPredicate predicate, OrderByEnum orderBy) {
         List<Object> args = new ArrayList<>();
+        int shape = bindSearchArgs(predicate, orderBy == OrderByEnum.NO_ORDER, args);
 
-        // Tracks whether already using a WHERE clause in the query
-        boolean whereStarted = false;
+        return new SimpleSQLiteQuery(SEARCH_QUERY_TEMPLATES.getTemplate(shape, orderBy), args.toArray());
+    }
 
-        if (barcode != null && !barcode.trim().isEmpty()) {
-            queryString += " WHERE barcode LIKE '%' || ? || '%'";
-            args.add(barcode);
-            whereStarted = true;
-        }
+    @VisibleForTesting
+    public SimpleSQLiteQuery createSQLQuery(String barcode, String name, long categoryId,
+                                            int lowerPrice, int higherPrice) {
+        return createSQLQuery(barcode, name, categoryId, lowerPrice, higherPrice, OrderByEnum.NO_ORDER);
+    }
 
-        if (name != null && !name.trim().isEmpty()) {
-            if (!whereStarted) {
-                queryString += " WHERE";
-                whereStarted = true;
-            } else {
-                queryString += " AND";
+    /**
+     * Adds the arguments a search binds to args, in the order the search query's template binds
+     * them, and returns the search's shape for picking that template from SEARCH_QUERY_TEMPLATES. If
+     * rankByName is false the first word of the name isn't bound for ranking, so the query can be
+     * ordered by something else, e.g. by ProductKeysetDataSource.
+     */
+    private int bindSearchArgs(ProductSearchPredicate predicate, boolean rankByName, List<Object> args) {
+        int shape = 0;
+
+        String barcode = predicate.getBarcode();
+        List<String> nameTokens = predicate.getNameTokens();
+
+        if (barcode != null) {
+            shape |= SearchQueryTemplates.BARCODE;
+
+            List<String> queryTrigrams = pickQueryTrigrams(barcode);
+            if (!queryTrigrams.isEmpty()) {
+                shape |= SearchQueryTemplates.BARCODE_TRIGRAMS;
+                for (int i = 0; i < MAX_QUERY_TRIGRAMS; i++) {
+                    // Repeat the first trigram when there are fewer, so the query string stays the same
+                    args.add(queryTrigrams.get(i < queryTrigrams.size() ? i : 0));
+                }
+                args.add(queryTrigrams.size());
             }
 
-            queryString += " Upper(name) LIKE '%' || Upper(?) || '%'";
-            args.add(name);
+            args.add(SearchQueryTemplates.escapeLikeWildcards(barcode));
         }
 
-        if (categoryId > 0) {
-            if (!whereStarted) {
-                queryString += " WHERE";
-                whereStarted = true;
-            } else {
-                queryString += " AND";
-            }
+        if (!nameTokens.isEmpty()) {
+            shape |= SearchQueryTemplates.NAME;
+            args.add(createNameMatchString(nameTokens));
+        }
 
-            queryString += " category_id LIKE ?";
-            args.add(categoryId);
+        if (predicate.getCategoryId() > 0) {
+            shape |= SearchQueryTemplates.CATEGORY;
+            args.add(predicate.getCategoryId());
         }
 
-        if (lowerPrice > 0) {
-            if (!whereStarted) {
-                queryString += " WHERE";
-                whereStarted = true;
-            } else {
-                queryString += " AND";
-            }
+        if (predicate.getLowerPrice() > 0) {
+            shape |= SearchQueryTemplates.LOWER_PRICE;
+            args.add(predicate.getLowerPrice());
+        }
 
-            queryString += " price >= ?";
+        if (predicate.getHigherPrice() > 0) {
+            shape |= SearchQueryTemplates.HIGHER_PRICE;
+            args.add(predicate.getHigherPrice());
+        }
 
-            args.add(lowerPrice);
+        if (rankByName && !nameTokens.isEmpty()) {
+            // Once for names starting with the word, then for names with a later word starting with it
+            args.add(nameTokens.get(0));
+            args.add(nameTokens.get(0));
         }
 
-        if (higherPrice > 0) {
-            if (!whereStarted) {
-                queryString += " WHERE";
-                whereStarted = true;
-            } else {
-                queryString += " AND";
-            }
+        return shape;
+    }
 
-            queryString += " price <= ?";
+    /**
+     * Picks up to MAX_QUERY_TRIGRAMS distinct trigrams from a searched barcode, spread from its start
+     * to its end, for narrowing a barcode search down through the trigram index. Products matching
+     * all of them are then checked against the full barcode, so a few trigrams are enough to make
+     * that check cheap. Returns an empty list if the barcode is too short to have any trigrams.
+     *
+     * @param barcode the (partial) barcode being searched for
+     * @return the trigrams to look up
+     */
+    private List<String> pickQueryTrigrams(String barcode) {
+        List<String> trigrams = new ArrayList<>(BarcodeTrigram.trigramsOf(barcode));
 
-            args.add(higherPrice);
+        if (trigrams.size() <= MAX_QUERY_TRIGRAMS) {
+            return trigrams;
         }
 
-        return new SimpleSQLiteQuery(queryString, args.toArray());
-    }
-
-    private String createOrderByString(OrderByEnum orderBy) {
-        String queryString = "";
-        switch (orderBy) {
-            case NO_ORDER:
-                break;
-            case BARCODE_ASC:
-                queryString += " ORDER BY barcode";
-                break;
-            case BARCODE_DESC:
-                queryString += " ORDER BY barcode DESC";
-                break;
-            case PRICE_ASC:
-                queryString += " ORDER BY price";
-                break;
-            case PRICE_DESC:
-                queryString += " ORDER BY price DESC";
-                break;
-            case NAME_DESC:
-                queryString += " ORDER BY name DESC";
-                break;
-            case NAME_ASC:
-                queryString += " ORDER BY name";
-                break;
-            default:
-                // Exception is used in default instead of ordering by name to improve maintainability
-                // for the future. Now if someone adds an ENUM but doesn't add it to the switch, they
-                // will find out quickly through this exception.
-                throw new IllegalStateException("Invalid ENUM was entered.");
+        List<String> queryTrigrams = new ArrayList<>();
+        queryTrigrams.add(trigrams.get(0));
+        queryTrigrams.add(trigrams.get(trigrams.size() / 2));
+        queryTrigrams.add(trigrams.get(trigrams.size() - 1));
+
+        return queryTrigrams;
+    }
+
+    /**
+     * Creates a MATCH expression for products_fts which matches products whose name or notes contain
+     * words starting with every one of the tokens.
+     *
+     * @param nameTokens the tokens from ProductSearchPredicate.tokeniseName()
+     * @return a MATCH expression, e.g. "pil* cov*"
+     */
+    private String createNameMatchString(List<String> nameTokens) {
+        StringBuilder matchString = new StringBuilder();
+
+        for (String token : nameTokens) {
+            if (matchString.length() > 0) {
+                matchString.append(' ');
+            }
+            matchString.append(token).append('*');
         }
 
-        return queryString;
+        return matchString.toString();
+    }
+
+    /**
+     * Creates the ORDER BY clause for orderBy, to be appended to a query built from
+     * ProductDao.PRODUCT_WITH_CATEGORY_QUERY. See SearchQueryTemplates.createOrderByString().
+     *
+     * @param orderBy the order to put products in
+     * @return the ORDER BY clause, or an empty string for NO_ORDER
+     */
+    @VisibleForTesting
+    public String createOrderByString(OrderByEnum orderBy) {
+        return SearchQueryTemplates.createOrderByString(orderBy);
     }
 
     private SimpleSQLiteQuery createSQLQuery(String barcode, String name, long categoryId,
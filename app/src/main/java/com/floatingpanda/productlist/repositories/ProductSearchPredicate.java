@@ -0,0 +1,227 @@
+package com.floatingpanda.productlist.repositories;
+
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * The filters of a product search: barcode, name, category, lower price and higher price. The same
+ * predicate is used to build the search's SQL (see ProductRepository.createSQLQuery()) and to test
+ * products in memory, so a search which only narrows an earlier one can filter the earlier
+ * search's results rather than querying the database again.
+ *
+ * In memory, products are matched the way the database matches them: barcodes contain the searched
+ * barcode, ignoring the case of ASCII letters as LIKE does, and every word searched for starts a
+ * word in the product's name or notes, ignoring case and accents as the unicode61 full-text tokenizer
+ * does.
+ *
+ * Filters which aren't used are null (barcode), empty (name) or 0 (category and prices), in the same
+ * way as for createSQLQuery(). Prices are in pence. LIKE's wildcards (% and _) are escaped in the
+ * database's search, so they match themselves in barcodes there as they do here.
+ */
+public class ProductSearchPredicate implements Predicate<ProductWithCategory> {
+    private final String barcode;
+    private final List<String> nameTokens;
+    private final long categoryId;
+    private final int lowerPrice;
+    private final int higherPrice;
+
+    // The name tokens with their accents removed, for matching names in memory.
+    private final List<String> foldedNameTokens;
+
+    /**
+     * @param barcode the (partial) barcode to search for, or null or blank not to filter by barcode
+     * @param name the (partial) words of the name to search for, or null not to filter by name
+     * @param categoryId the category to search in, or 0 not to filter by category
+     * @param lowerPrice the lowest price to search for in pence, or 0 for no lowest price
+     * @param higherPrice the highest price to search for in pence, or 0 for no highest price
+     */
+    public ProductSearchPredicate(String barcode, String name, long categoryId, int lowerPrice, int higherPrice) {
+        this.barcode = barcode != null && !barcode.trim().isEmpty() ? barcode : null;
+        this.nameTokens = Collections.unmodifiableList(tokeniseName(name));
+        this.categoryId = categoryId;
+        this.lowerPrice = lowerPrice;
+        this.higherPrice = higherPrice;
+
+        List<String> folded = new ArrayList<>();
+        for (String token : nameTokens) {
+            folded.add(fold(token));
+        }
+        this.foldedNameTokens = folded;
+    }
+
+    /**
+     * Returns the predicate for the search the parameters describe, or null if they describe a
+     * query other than a search. Every product is treated as a search without any filters.
+     */
+    public static ProductSearchPredicate forParameters(ProductQueryParameters parameters) {
+        switch (parameters.getType()) {
+            case ALL:
+                return new ProductSearchPredicate(null, null, 0, 0, 0);
+            case SEARCH:
+                return new ProductSearchPredicate(parameters.getBarcode(), parameters.getName(),
+                        parameters.getCategoryId(), parameters.getLowerPrice(), parameters.getHigherPrice());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns whether the results of the search narrower describes are exactly the results of the
+     * search base describes which pass narrower's predicate, in the same order. This is the case when
+     * narrower only adds to or tightens base's filters and orders its results in the same way.
+     */
+    public static boolean canFilterResults(ProductQueryParameters base, ProductQueryParameters narrower) {
+        ProductSearchPredicate basePredicate = forParameters(base);
+        ProductSearchPredicate narrowerPredicate = forParameters(narrower);
+
+        if (basePredicate == null || narrowerPredicate == null || base.getOrderBy() != narrower.getOrderBy()
+                || !narrowerPredicate.isNarrowingOf(basePredicate)) {
+            return false;
+        }
+
+        // Unordered searches are ranked by the first word of the name, so filtering keeps them in the
+        // right order only when that word stays the same.
+        if (narrower.getOrderBy() != OrderByEnum.NO_ORDER) {
+            return true;
+        }
+
+        List<String> baseTokens = basePredicate.nameTokens;
+        List<String> narrowerTokens = narrowerPredicate.nameTokens;
+        return baseTokens.isEmpty() ? narrowerTokens.isEmpty()
+                : !narrowerTokens.isEmpty() && baseTokens.get(0).equals(narrowerTokens.get(0));
+    }
+
+    public String getBarcode() { return barcode; }
+    public List<String> getNameTokens() { return nameTokens; }
+    public long getCategoryId() { return categoryId; }
+    public int getLowerPrice() { return lowerPrice; }
+    public int getHigherPrice() { return higherPrice; }
+
+    /**
+     * Returns whether the product with category passes every filter.
+     */
+    @Override
+    public boolean test(ProductWithCategory productWithCategory) {
+        Product product = productWithCategory.getProduct();
+
+        if (barcode != null && (product.getBarcode() == null
+                || !toLowerCaseAscii(product.getBarcode()).contains(toLowerCaseAscii(barcode)))) {
+            return false;
+        }
+
+        if (categoryId > 0 && product.getCategoryId() != categoryId) {
+            return false;
+        }
+
+        int price = PriceTypeConverter.toPriceInt(product.getPrice());
+        if ((lowerPrice > 0 && price < lowerPrice) || (higherPrice > 0 && price > higherPrice)) {
+            return false;
+        }
+
+        if (!foldedNameTokens.isEmpty()) {
+            // The full-text index holds notes as well as names, and a word can match in either.
+            List<String> nameWords = tokeniseName(fold(product.getName()));
+            if (product.getNotes() != null) {
+                nameWords.addAll(tokeniseName(fold(product.getNotes())));
+            }
+            for (String token : foldedNameTokens) {
+                if (!startsAnyWord(token, nameWords)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether every product passing this predicate also passes other, i.e. this predicate
+     * keeps all of other's filters and only adds to or tightens them.
+     */
+    public boolean isNarrowingOf(ProductSearchPredicate other) {
+        if (other.barcode != null && (barcode == null
+                || !toLowerCaseAscii(barcode).contains(toLowerCaseAscii(other.barcode)))) {
+            return false;
+        }
+
+        // Every word other searches for must be the start of a word this searches for.
+        for (String otherToken : other.foldedNameTokens) {
+            if (!startsAnyWord(otherToken, foldedNameTokens)) {
+                return false;
+            }
+        }
+
+        if (other.categoryId > 0 && categoryId != other.categoryId) {
+            return false;
+        }
+
+        if (other.lowerPrice > 0 && lowerPrice < other.lowerPrice) {
+            return false;
+        }
+
+        return other.higherPrice <= 0 || (higherPrice > 0 && higherPrice <= other.higherPrice);
+    }
+
+    /**
+     * Splits a searched name into the words the full-text index would split it into, lower-cased.
+     * Anything that isn't a letter or digit separates words, so the words can be put into a MATCH
+     * expression without escaping. Returns an empty list if name is null or has no words in it.
+     *
+     * @param name the name being searched for
+     * @return the words in name, in order
+     */
+    public static List<String> tokeniseName(String name) {
+        List<String> tokens = new ArrayList<>();
+
+        if (name == null) {
+            return tokens;
+        }
+
+        for (String token : name.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+
+        return tokens;
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private static boolean startsAnyWord(String prefix, List<String> words) {
+        for (String word : words) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Lower-cases and removes accents, as the unicode61 tokenizer does.
+    private static String fold(String text) {
+        return Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{Mn}+", "");
+    }
+
+    // LIKE only ignores the case of ASCII letters.
+    private static String toLowerCaseAscii(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') {
+                chars[i] += 'a' - 'A';
+            }
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,141 @@
+package com.floatingpanda.productlist.repositories;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.floatingpanda.productlist.db.ProductWithCategory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches products as the user types. Each search waits for a short debounce delay before it runs,
+ * and is dropped if another search is started in that time, so a burst of keystrokes only runs the
+ * last search. Starting a new search also cancels the search being run through its
+ * CancellationSignal, which stops SQLite part way through its scan, and searches queued up behind it
+ * are skipped without running. Only the results of the latest search are delivered.
+ *
+ * Unlike ProductRepository's LiveData queries, the results are not updated when products change,
+ * they are the results at the time of the search.
+ *
+ * search() and cancel() must be called on the handler's thread, normally the main thread, which
+ * the results are also delivered on.
+ */
+public class ProductTypeAheadSearch {
+    // How long a search waits for more input before it runs, unless set otherwise.
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+
+    private final ProductRepository productRepository;
+    private final Handler handler;
+    private final Executor queryExecutor;
+    private final long debounceMillis;
+
+    private final MutableLiveData<List<ProductWithCategory>> results = new MutableLiveData<>();
+
+    // Incremented for every new search and cancellation. A search is stale once this has moved on
+    // from the generation it started with.
+    private final AtomicLong generation = new AtomicLong();
+
+    // The search waiting out the debounce delay and the signal cancelling the search being run.
+    // Only touched on the handler's thread.
+    private Runnable pendingSearch;
+    private CancellationSignal runningSearchSignal;
+
+    /**
+     * @param productRepository the repository to search
+     * @param handler the handler to wait out the debounce delay and deliver results on
+     * @param queryExecutor the executor to run searches on
+     * @param debounceMillis how long a search waits for more input before it runs
+     */
+    public ProductTypeAheadSearch(ProductRepository productRepository, Handler handler, Executor queryExecutor,
+                                  long debounceMillis) {
+        this.productRepository = productRepository;
+        this.handler = handler;
+        this.queryExecutor = queryExecutor;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Returns the results of the latest search. The lists it holds can't be modified.
+     */
+    public LiveData<List<ProductWithCategory>> getResults() {
+        return results;
+    }
+
+    /**
+     * Searches for the products the parameters describe once the debounce delay has passed,
+     * replacing any earlier search.
+     */
+    public void search(ProductQueryParameters parameters) {
+        long searchGeneration = stopSearches();
+
+        pendingSearch = () -> runSearch(parameters, searchGeneration);
+        handler.postDelayed(pendingSearch, debounceMillis);
+    }
+
+    /**
+     * Drops any search waiting to run, cancels the search being run and drops any results not yet
+     * delivered.
+     */
+    public void cancel() {
+        stopSearches();
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Stops every search started so far and returns the generation for the next one.
+    private long stopSearches() {
+        long nextGeneration = generation.incrementAndGet();
+
+        if (pendingSearch != null) {
+            handler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+
+        if (runningSearchSignal != null) {
+            runningSearchSignal.cancel();
+            runningSearchSignal = null;
+        }
+
+        return nextGeneration;
+    }
+
+    private void runSearch(ProductQueryParameters parameters, long searchGeneration) {
+        pendingSearch = null;
+
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        runningSearchSignal = cancellationSignal;
+
+        queryExecutor.execute(() -> {
+            // Skips searches which were replaced while queued behind another one.
+            if (isStale(searchGeneration)) {
+                return;
+            }
+
+            List<ProductWithCategory> productsWithCategories;
+            try {
+                productsWithCategories = productRepository.queryProductsWithCategory(parameters, cancellationSignal);
+            } catch (OperationCanceledException e) {
+                return;
+            }
+
+            handler.post(() -> {
+                // Checked again here as a newer search may have started while this one was handed over.
+                if (!isStale(searchGeneration)) {
+                    runningSearchSignal = null;
+                    results.setValue(Collections.unmodifiableList(productsWithCategories));
+                }
+            });
+        });
+    }
+
+    private boolean isStale(long searchGeneration) {
+        return generation.get() != searchGeneration;
+    }
+}
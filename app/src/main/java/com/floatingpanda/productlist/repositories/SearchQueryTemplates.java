@@ -0,0 +1,226 @@
+package com.floatingpanda.productlist.repositories;
+
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.other.OrderByEnum;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the SQL for product searches, one template per filter shape and ordering. A search's shape
+ * is which of its filters are used (barcode, name, category, lower price and higher price), and as
+ * the filters' values are always bound as arguments, every search with the same shape and ordering
+ * runs exactly the same SQL. Each template is built once on first use and then handed back as the
+ * same string, so searches only bind arguments and SQLite's prepared statement cache, which is keyed
+ * by SQL, can reuse the statement it compiled for that shape.
+ *
+ * Hits and misses are counted so the hit rate can be checked.
+ *
+ * Thread safe.
+ */
+public class SearchQueryTemplates {
+    // Shape flags, one for each filter a search uses.
+    public static final int BARCODE = 1;
+    // Set alongside BARCODE when the searched barcode is long enough to look up in the trigram index.
+    public static final int BARCODE_TRIGRAMS = 1 << 1;
+    public static final int NAME = 1 << 2;
+    public static final int CATEGORY = 1 << 3;
+    public static final int LOWER_PRICE = 1 << 4;
+    public static final int HIGHER_PRICE = 1 << 5;
+
+    private static final int SHAPE_COUNT = 1 << 6;
+
+    // There's a template for every ordering, plus one left unordered so it can be ordered by
+    // something else, e.g. ProductKeysetDataSource.
+    private static final int UNORDERED_VARIANT = OrderByEnum.values().length;
+    private static final int VARIANT_COUNT = UNORDERED_VARIANT + 1;
+
+    private final AtomicReferenceArray<String> templates = new AtomicReferenceArray<>(SHAPE_COUNT * VARIANT_COUNT);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the search query for shape ordered by orderBy. If orderBy is NO_ORDER and shape
+     * includes NAME, the results are ranked by how well their names match instead, which binds the
+     * first word searched for as the final two arguments.
+     *
+     * @param shape the filters used, a combination of the shape flags
+     * @param orderBy the order to put the results in
+     */
+    public String getTemplate(int shape, OrderByEnum orderBy) {
+        return get(shape, orderBy.ordinal());
+    }
+
+    /**
+     * Returns the search query for shape without any ORDER BY clause.
+     *
+     * @param shape the filters used, a combination of the shape flags
+     */
+    public String getUnorderedTemplate(int shape) {
+        return get(shape, UNORDERED_VARIANT);
+    }
+
+    /**
+     * Escapes LIKE's wildcards (% and _) and its escape character in a searched barcode, for
+     * binding to the barcode condition of a template, which then matches them literally.
+     *
+     * @param barcode the (partial) barcode being searched for
+     * @return barcode with \, % and _ escaped
+     */
+    public static String escapeLikeWildcards(String barcode) {
+        StringBuilder escaped = new StringBuilder(barcode.length());
+        for (int i = 0; i < barcode.length(); i++) {
+            char c = barcode.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+
+        return escaped.toString();
+    }
+
+    public long getHits() { return hits.get(); }
+
+    public long getMisses() { return misses.get(); }
+
+    /**
+     * Returns the fraction of templates asked for which were already built, or 0 if none have been
+     * asked for.
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Creates the ORDER BY clause for orderBy, to be appended to a query built from
+     * ProductDao.PRODUCT_WITH_CATEGORY_QUERY. Products with the same sort value are ordered by id,
+     * which every index on products already ends with, so the database can read products in order
+     * straight from the sort column's index rather than sorting them.
+     *
+     * @param orderBy the order to put products in
+     * @return the ORDER BY clause, or an empty string for NO_ORDER
+     */
+    public static String createOrderByString(OrderByEnum orderBy) {
+        String queryString = "";
+        switch (orderBy) {
+            case NO_ORDER:
+                break;
+            case BARCODE_ASC:
+                queryString += " ORDER BY products.barcode, products.id";
+                break;
+            case BARCODE_DESC:
+                queryString += " ORDER BY products.barcode DESC, products.id DESC";
+                break;
+            case PRICE_ASC:
+                queryString += " ORDER BY products.price, products.id";
+                break;
+            case PRICE_DESC:
+                queryString += " ORDER BY products.price DESC, products.id DESC";
+                break;
+            case NAME_DESC:
+                queryString += " ORDER BY products.name DESC, products.id DESC";
+                break;
+            case NAME_ASC:
+                queryString += " ORDER BY products.name, products.id";
+                break;
+            default:
+                // Exception is used in default instead of ordering by name to improve maintainability
+                // for the future. Now if someone adds an ENUM but doesn't add it to the switch, they
+                // will find out quickly through this exception.
+                throw new IllegalStateException("Invalid ENUM was entered.");
+        }
+
+        return queryString;
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private String get(int shape, int variant) {
+        if (shape < 0 || shape >= SHAPE_COUNT
+                || ((shape & BARCODE_TRIGRAMS) != 0 && (shape & BARCODE) == 0)) {
+            throw new IllegalArgumentException("Invalid search shape: " + shape);
+        }
+
+        int index = shape * VARIANT_COUNT + variant;
+        String template = templates.get(index);
+        if (template != null) {
+            hits.incrementAndGet();
+            return template;
+        }
+
+        misses.incrementAndGet();
+        template = createTemplate(shape, variant);
+        // Another thread may have built the same template meanwhile, in which case keep theirs so the
+        // same string is always handed back.
+        if (!templates.compareAndSet(index, null, template)) {
+            template = templates.get(index);
+        }
+
+        return template;
+    }
+
+    private static String createTemplate(int shape, int variant) {
+        StringBuilder queryString = new StringBuilder(ProductDao.PRODUCT_WITH_CATEGORY_QUERY);
+
+        // Name searches are answered by the full-text index rather than scanning every name
+        if ((shape & NAME) != 0) {
+            queryString.append(" JOIN products_fts ON products.id = products_fts.docid");
+        }
+
+        // Tracks whether already using a WHERE clause in the query
+        boolean whereStarted = false;
+
+        if ((shape & BARCODE) != 0) {
+            queryString.append(" WHERE");
+
+            if ((shape & BARCODE_TRIGRAMS) != 0) {
+                // Only products whose barcodes contain the searched barcode's trigrams can match, so
+                // narrow the search down to them through the trigram index before checking barcodes.
+                queryString.append(" products.id IN (SELECT product_id FROM barcode_trigrams")
+                        .append(" WHERE trigram IN (?, ?, ?) GROUP BY product_id HAVING COUNT(*) = ?) AND");
+            }
+
+            // The searched barcode is bound escaped (see escapeLikeWildcards()), so % and _ in it
+            // are matched as themselves, as they are in memory and by the trigram index.
+            queryString.append(" products.barcode LIKE '%' || ? || '%' ESCAPE '\\'");
+            whereStarted = true;
+        }
+
+        if ((shape & NAME) != 0) {
+            whereStarted = appendCondition(queryString, " products_fts MATCH ?", whereStarted);
+        }
+
+        if ((shape & CATEGORY) != 0) {
+            whereStarted = appendCondition(queryString, " products.category_id = ?", whereStarted);
+        }
+
+        if ((shape & LOWER_PRICE) != 0) {
+            whereStarted = appendCondition(queryString, " products.price >= ?", whereStarted);
+        }
+
+        if ((shape & HIGHER_PRICE) != 0) {
+            appendCondition(queryString, " products.price <= ?", whereStarted);
+        }
+
+        if (variant == OrderByEnum.NO_ORDER.ordinal() && (shape & NAME) != 0) {
+            // Rank names starting with the first word searched for above those that only contain
+            // it further in, and both above products only matching through their notes, then
+            // shorter (closer) names above longer ones.
+            queryString.append(" ORDER BY CASE WHEN products.name LIKE ? || '%' THEN 0")
+                    .append(" WHEN ' ' || products.name LIKE '% ' || ? || '%' THEN 1 ELSE 2 END,")
+                    .append(" length(products.name)");
+        } else if (variant != UNORDERED_VARIANT) {
+            queryString.append(createOrderByString(OrderByEnum.values()[variant]));
+        }
+
+        return queryString.toString();
+    }
+
+    private static boolean appendCondition(StringBuilder queryString, String condition, boolean whereStarted) {
+        queryString.append(whereStarted ? " AND" : " WHERE").append(condition);
+        return true;
+    }
+}
@@ -0,0 +1,243 @@
+package com.floatingpanda.productlist.repositories;
+
+import android.os.SystemClock;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.db.ChangeLogDao;
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.db.StockTake;
+import com.floatingpanda.productlist.db.StockTakeCount;
+import com.floatingpanda.productlist.db.StockTakeDao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * A stock-take in progress. Scanned barcodes are counted in memory, so a scan costs a map update
+ * rather than a database write. Every so many scans the counts are flushed: in one transaction,
+ * the barcodes not seen before are looked up in the catalogue in batches (see
+ * ProductDao.getProductsWithCategoryByBarcodes()) and the counts are added to the saved stock-take.
+ *
+ * The products found are remembered for later flushes until the catalogue changes, which the flush
+ * spots by the change log (see ProductChange) having moved on. Barcodes which weren't found are
+ * looked up again every flush, so a product added part way through the stock-take is counted.
+ *
+ * The stock-take is saved to the database on the first flush. scan() and flush() can be called from
+ * any thread, flushes run on the executor one at a time. A flush which fails is posted to
+ * getFlushError() and its scans are counted in memory again, so they're saved by the next flush.
+ */
+public class StockTakeSession {
+    // How many scans are counted in memory before they're flushed, unless set otherwise.
+    public static final int DEFAULT_FLUSH_SCANS = 100;
+
+    private final AppDatabase database;
+    private final StockTakeDao stockTakeDao;
+    private final ProductDao productDao;
+    private final ChangeLogDao changeLogDao;
+    private final Executor flushExecutor;
+    private final LongSupplier clock;
+    private final int flushScans;
+    private final long startedAt;
+
+    // The scans not yet flushed, counted by barcode. Guarded by this.
+    private Map<String, int[]> pendingCounts = new HashMap<>();
+    private int pendingScans;
+
+    // For the scan rate, guarded by this.
+    private int scanCount;
+    private long firstScanMillis;
+    private long lastScanMillis;
+
+    private final MutableLiveData<Exception> flushError = new MutableLiveData<>();
+
+    // Guards the rest, which are only touched while flushing.
+    private final Object flushLock = new Object();
+    private volatile long stockTakeId;
+    // The product ids of barcodes found in the catalogue as it was at catalogueSeq, the change log's
+    // latest seq.
+    private final Map<String, Long> productIdsByBarcode = new HashMap<>();
+    private long catalogueSeq = -1;
+
+    public StockTakeSession(AppDatabase database, Executor flushExecutor) {
+        this(database, flushExecutor, SystemClock::elapsedRealtime, DEFAULT_FLUSH_SCANS);
+    }
+
+    /**
+     * @param database the database to save the stock-take to
+     * @param flushExecutor the executor to flush scans on
+     * @param clock gives the time in milliseconds, for the scan rate
+     * @param flushScans how many scans are counted in memory before they're flushed
+     */
+    public StockTakeSession(AppDatabase database, Executor flushExecutor, LongSupplier clock, int flushScans) {
+        this.database = database;
+        this.stockTakeDao = database.stockTakeDao();
+        this.productDao = database.productDao();
+        this.changeLogDao = database.changeLogDao();
+        this.flushExecutor = flushExecutor;
+        this.clock = clock;
+        this.flushScans = flushScans;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the id of the saved stock-take, or 0 if nothing has been flushed yet.
+     */
+    public long getStockTakeId() {
+        return stockTakeId;
+    }
+
+    /**
+     * Returns the error the latest failed flush failed with, or null if no flush has failed.
+     */
+    public LiveData<Exception> getFlushError() {
+        return flushError;
+    }
+
+    /**
+     * Counts a scan of the barcode, flushing the counts if enough scans have built up. Blank
+     * barcodes are ignored.
+     */
+    public synchronized void scan(String barcode) {
+        if (barcode == null || barcode.trim().isEmpty()) {
+            return;
+        }
+
+        long now = clock.getAsLong();
+        if (scanCount == 0) {
+            firstScanMillis = now;
+        }
+        lastScanMillis = now;
+        scanCount++;
+
+        addPendingCount(barcode, 1);
+
+        if (pendingScans >= flushScans) {
+            flush();
+        }
+    }
+
+    /**
+     * Saves the scans counted so far in the background, e.g. when the stock-take is finished.
+     */
+    public synchronized void flush() {
+        if (pendingScans == 0) {
+            return;
+        }
+
+        Map<String, int[]> counts = pendingCounts;
+        pendingCounts = new HashMap<>();
+        pendingScans = 0;
+
+        flushExecutor.execute(() -> save(counts));
+    }
+
+    /**
+     * Returns how many barcodes have been scanned, including scans not yet flushed.
+     */
+    public synchronized int getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     * Returns how many scans have been made per second, between the first scan and the latest one,
+     * or 0 until there have been two scans at different times.
+     */
+    public synchronized double getScansPerSecond() {
+        long elapsedMillis = lastScanMillis - firstScanMillis;
+        return scanCount < 2 || elapsedMillis <= 0 ? 0 : (scanCount - 1) * 1000.0 / elapsedMillis;
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Guarded by this.
+    private void addPendingCount(String barcode, int quantity) {
+        int[] count = pendingCounts.get(barcode);
+        if (count == null) {
+            pendingCounts.put(barcode, new int[] {quantity});
+        } else {
+            count[0] += quantity;
+        }
+
+        pendingScans += quantity;
+    }
+
+    private void save(Map<String, int[]> counts) {
+        try {
+            synchronized (flushLock) {
+                saveCounts(counts);
+            }
+        } catch (RuntimeException e) {
+            // Counted again so they're saved by the next flush, rather than lost with this one.
+            synchronized (this) {
+                for (Map.Entry<String, int[]> count : counts.entrySet()) {
+                    addPendingCount(count.getKey(), count.getValue()[0]);
+                }
+            }
+
+            flushError.postValue(e);
+        }
+    }
+
+    // Guarded by flushLock.
+    private void saveCounts(Map<String, int[]> counts) {
+        Map<String, Long> found = new HashMap<>();
+
+        stockTakeId = database.runInTransaction(() -> {
+            // Looked up in the transaction, so the counts are saved against the catalogue as it is
+            // when they're committed. Products found before are forgotten if any have changed since,
+            // as they may have been deleted or given other barcodes.
+            long latestSeq = changeLogDao.getLatestSeq();
+            if (latestSeq != catalogueSeq) {
+                productIdsByBarcode.clear();
+                catalogueSeq = latestSeq;
+            }
+
+            List<String> barcodesToLookUp = new ArrayList<>();
+            for (String barcode : counts.keySet()) {
+                if (!productIdsByBarcode.containsKey(barcode)) {
+                    barcodesToLookUp.add(barcode);
+                }
+            }
+
+            if (!barcodesToLookUp.isEmpty()) {
+                Map<String, List<ProductWithCategory>> products =
+                        productDao.getProductsWithCategoryByBarcodes(barcodesToLookUp);
+                for (String barcode : barcodesToLookUp) {
+                    // A barcode shared by several products is counted against the one with the
+                    // lowest id, which comes first.
+                    List<ProductWithCategory> withBarcode = products.get(barcode);
+                    if (withBarcode != null) {
+                        found.put(barcode, withBarcode.get(0).getProduct().getId());
+                    }
+                }
+            }
+
+            long id = stockTakeId != 0 ? stockTakeId : stockTakeDao.insertStockTake(new StockTake(startedAt));
+
+            List<StockTakeCount> stockTakeCounts = new ArrayList<>();
+            for (Map.Entry<String, int[]> count : counts.entrySet()) {
+                Long productId = found.get(count.getKey());
+                if (productId == null) {
+                    productId = productIdsByBarcode.get(count.getKey());
+                }
+                // Barcodes not in the catalogue are counted without a product.
+                stockTakeCounts.add(new StockTakeCount(id, count.getKey(),
+                        productId != null ? productId : 0, count.getValue()[0]));
+            }
+            stockTakeDao.addCounts(id, stockTakeCounts);
+
+            return id;
+        });
+
+        // Only kept once the counts they were looked up for have been saved.
+        productIdsByBarcode.putAll(found);
+    }
+}
@@ -0,0 +1,176 @@
+package com.floatingpanda.productlist.repositories;
+
+import java.util.Arrays;
+
+/**
+ * Gives each string in it a number, for BarcodeIndex to key the barcodes it can't pack into a long
+ * by. Numbers start at 0, and the numbers of strings which are removed are given to strings added
+ * later, so numbers stay below the most strings held at once rather than growing with every string
+ * ever added.
+ *
+ * Strings are kept by number, with a hash table of numbers (open addressing and linear probing over
+ * int arrays) to find them by, so looking a string up boxes nothing.
+ *
+ * Not thread safe.
+ */
+class StringNumbering {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    // The number in each slot of the hash table, or EMPTY, and the hash of its string.
+    private int[] slots;
+    private int[] hashes;
+    private int mask;
+
+    // The string with each number, or null for numbers which aren't in use.
+    private String[] strings;
+    // Numbers below nextNumber which aren't in use, to give out again.
+    private int[] freeNumbers;
+    private int freeCount;
+    private int nextNumber;
+    private int size;
+
+    StringNumbering() {
+        allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the string's number, or -1 if it isn't in the table.
+     */
+    int get(String string) {
+        int slot = findSlot(string, string.hashCode());
+        return slot < 0 ? -1 : slots[slot];
+    }
+
+    /**
+     * Returns the string's number, adding it to the table with a number if it isn't in it yet.
+     */
+    int add(String string) {
+        int hash = string.hashCode();
+        int slot = findSlot(string, hash);
+        if (slot >= 0) {
+            return slots[slot];
+        }
+
+        // Keeps the table at most half full, so probe sequences stay short.
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+
+        int number = freeCount > 0 ? freeNumbers[--freeCount] : nextNumber++;
+        if (number == strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+            freeNumbers = Arrays.copyOf(freeNumbers, strings.length);
+        }
+
+        strings[number] = string;
+        insert(number, hash);
+        size++;
+        return number;
+    }
+
+    /**
+     * Removes the string with the number, if there is one, so the number can be given to another.
+     */
+    void remove(int number) {
+        if (number < 0 || number >= nextNumber || strings[number] == null) {
+            return;
+        }
+
+        deleteSlot(findSlot(strings[number], strings[number].hashCode()));
+        strings[number] = null;
+        freeNumbers[freeCount++] = number;
+        size--;
+    }
+
+    /**
+     * Removes every string, and shrinks the table back down.
+     */
+    void clear() {
+        allocate(MIN_CAPACITY);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+
+        strings = new String[capacity / 2];
+        freeNumbers = new int[capacity / 2];
+        freeCount = 0;
+        nextNumber = 0;
+        size = 0;
+    }
+
+    // Only the hash table grows here; strings is grown as numbers are given out.
+    private void rehash(int capacity) {
+        int[] oldSlots = slots;
+        int[] oldHashes = hashes;
+
+        slots = new int[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(slots, EMPTY);
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != EMPTY) {
+                insert(oldSlots[i], oldHashes[i]);
+            }
+        }
+    }
+
+    // Spreads the hash's bits, as string hashes of similar barcodes differ mostly in their low bits.
+    private int slotFor(int hash) {
+        int spread = hash * 0x9E3779B9;
+        return (spread ^ (spread >>> 16)) & mask;
+    }
+
+    private int findSlot(String string, int hash) {
+        for (int slot = slotFor(hash); slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && strings[slots[slot]].equals(string)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(int number, int hash) {
+        int slot = slotFor(hash);
+        while (slots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        slots[slot] = number;
+        hashes[slot] = hash;
+    }
+
+    // Empties the slot and moves later numbers of the probe sequence back into the gap, so that no
+    // number is left behind an empty slot where lookups would stop before reaching it.
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (slots[next] != EMPTY) {
+            int home = slotFor(hashes[next]);
+
+            // The number at next can fill the gap unless its home slot lies after the gap, cyclically.
+            boolean homeAfterGap = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+            if (!homeAfterGap) {
+                slots[gap] = slots[next];
+                hashes[gap] = hashes[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        slots[gap] = EMPTY;
+    }
+}
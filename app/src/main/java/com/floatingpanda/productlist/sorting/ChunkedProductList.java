@@ -0,0 +1,205 @@
+package com.floatingpanda.productlist.sorting;
+
+import com.floatingpanda.productlist.db.ProductWithCategory;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list of products with categories split into chunks of at most CHUNK_CAPACITY, for
+ * IncrementalSortedList. Inserting or removing a product only moves along the rest of its chunk,
+ * rather than the rest of the list.
+ *
+ * snapshot() returns an unmodifiable view of the list as it is, which later changes don't show up
+ * in. Snapshots share chunks with the list rather than copying them, and a chunk is copied only
+ * when it's next changed (copy on write), so taking a snapshot after a few changes costs copying
+ * the chunks changed and the array of chunks, not the whole list.
+ *
+ * Positions are given as a chunk and a position within it. Not thread safe, but snapshots can be
+ * read from any thread.
+ */
+class ChunkedProductList {
+    private static final int CHUNK_CAPACITY = 512;
+
+    private ProductWithCategory[][] chunks;
+    private int[] chunkSizes;
+    private int chunkCount;
+    private int size;
+
+    // Whether the arrays above, and each chunk, are this list's own or shared with a snapshot.
+    private boolean ownsChunkArrays;
+    private boolean[] ownsChunk;
+
+    /**
+     * @param productsWithCategories the products to fill the list with, in order, which are copied
+     */
+    ChunkedProductList(List<ProductWithCategory> productsWithCategories) {
+        size = productsWithCategories.size();
+        // Chunks start half full so there's room to insert without splitting straight away.
+        int fill = CHUNK_CAPACITY / 2;
+        chunkCount = Math.max(1, (size + fill - 1) / fill);
+        chunks = new ProductWithCategory[chunkCount][];
+        chunkSizes = new int[chunkCount];
+        ownsChunk = new boolean[chunkCount];
+        ownsChunkArrays = true;
+
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int from = chunk * fill;
+            int to = Math.min(size, from + fill);
+            chunks[chunk] = new ProductWithCategory[CHUNK_CAPACITY];
+            for (int i = from; i < to; i++) {
+                chunks[chunk][i - from] = productsWithCategories.get(i);
+            }
+            chunkSizes[chunk] = to - from;
+            ownsChunk[chunk] = true;
+        }
+    }
+
+    int size() { return size; }
+
+    int chunkCount() { return chunkCount; }
+
+    int chunkSize(int chunk) { return chunkSizes[chunk]; }
+
+    ProductWithCategory get(int chunk, int index) { return chunks[chunk][index]; }
+
+    /**
+     * Inserts productWithCategory at index in chunk, which may be the chunk's size to add it to
+     * the end. Full chunks are split in two.
+     */
+    void insert(int chunk, int index, ProductWithCategory productWithCategory) {
+        if (chunkSizes[chunk] == CHUNK_CAPACITY) {
+            splitChunk(chunk);
+            int firstHalf = chunkSizes[chunk];
+            if (index > firstHalf) {
+                chunk++;
+                index -= firstHalf;
+            }
+        }
+
+        ProductWithCategory[] products = ownChunk(chunk);
+        System.arraycopy(products, index, products, index + 1, chunkSizes[chunk] - index);
+        products[index] = productWithCategory;
+        chunkSizes[chunk]++;
+        size++;
+    }
+
+    /**
+     * Removes the product at index in chunk. A chunk left empty is dropped, unless it is the only
+     * one.
+     */
+    void remove(int chunk, int index) {
+        ProductWithCategory[] products = ownChunk(chunk);
+        int chunkSize = --chunkSizes[chunk];
+        System.arraycopy(products, index + 1, products, index, chunkSize - index);
+        products[chunkSize] = null;
+        size--;
+
+        if (chunkSize == 0 && chunkCount > 1) {
+            ownChunkArrays();
+            removeFromArrays(chunk);
+        }
+    }
+
+    /**
+     * Returns an unmodifiable view of the list as it is now, which doesn't change as the list does.
+     */
+    List<ProductWithCategory> snapshot() {
+        ownsChunkArrays = false;
+        Arrays.fill(ownsChunk, 0, chunkCount, false);
+        return new Snapshot(chunks, chunkSizes, chunkCount, size);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private ProductWithCategory[] ownChunk(int chunk) {
+        ownChunkArrays();
+        if (!ownsChunk[chunk]) {
+            chunks[chunk] = chunks[chunk].clone();
+            ownsChunk[chunk] = true;
+        }
+
+        return chunks[chunk];
+    }
+
+    private void ownChunkArrays() {
+        if (!ownsChunkArrays) {
+            chunks = chunks.clone();
+            chunkSizes = chunkSizes.clone();
+            ownsChunkArrays = true;
+        }
+    }
+
+    // Moves the second half of a full chunk into a new chunk after it.
+    private void splitChunk(int chunk) {
+        ProductWithCategory[] products = ownChunk(chunk);
+        int firstHalf = CHUNK_CAPACITY / 2;
+
+        ProductWithCategory[] secondHalf = new ProductWithCategory[CHUNK_CAPACITY];
+        System.arraycopy(products, firstHalf, secondHalf, 0, CHUNK_CAPACITY - firstHalf);
+        Arrays.fill(products, firstHalf, CHUNK_CAPACITY, null);
+        chunkSizes[chunk] = firstHalf;
+
+        if (chunkCount == chunks.length) {
+            int capacity = chunks.length * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            chunkSizes = Arrays.copyOf(chunkSizes, capacity);
+            ownsChunk = Arrays.copyOf(ownsChunk, capacity);
+        }
+
+        int after = chunkCount - chunk - 1;
+        System.arraycopy(chunks, chunk + 1, chunks, chunk + 2, after);
+        System.arraycopy(chunkSizes, chunk + 1, chunkSizes, chunk + 2, after);
+        System.arraycopy(ownsChunk, chunk + 1, ownsChunk, chunk + 2, after);
+        chunks[chunk + 1] = secondHalf;
+        chunkSizes[chunk + 1] = CHUNK_CAPACITY - firstHalf;
+        ownsChunk[chunk + 1] = true;
+        chunkCount++;
+    }
+
+    private void removeFromArrays(int chunk) {
+        int after = chunkCount - chunk - 1;
+        System.arraycopy(chunks, chunk + 1, chunks, chunk, after);
+        System.arraycopy(chunkSizes, chunk + 1, chunkSizes, chunk, after);
+        System.arraycopy(ownsChunk, chunk + 1, ownsChunk, chunk, after);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+
+    private static class Snapshot extends AbstractList<ProductWithCategory> implements RandomAccess {
+        private final ProductWithCategory[][] chunks;
+        // The position in the list of the first product of each chunk.
+        private final int[] chunkStarts;
+        private final int size;
+
+        Snapshot(ProductWithCategory[][] chunks, int[] chunkSizes, int chunkCount, int size) {
+            this.chunks = chunks;
+            this.size = size;
+            this.chunkStarts = new int[chunkCount];
+            for (int chunk = 1; chunk < chunkCount; chunk++) {
+                chunkStarts[chunk] = chunkStarts[chunk - 1] + chunkSizes[chunk - 1];
+            }
+        }
+
+        @Override
+        public ProductWithCategory get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+
+            // The last chunk starting at or before index. Only an empty list has an empty chunk, so
+            // the starts are all different.
+            int chunk = Arrays.binarySearch(chunkStarts, index);
+            if (chunk < 0) {
+                chunk = -chunk - 2;
+            }
+
+            return chunks[chunk][index - chunkStarts[chunk]];
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+}
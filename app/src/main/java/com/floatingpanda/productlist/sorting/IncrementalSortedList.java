@@ -0,0 +1,326 @@
+package com.floatingpanda.productlist.sorting;
+
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A sorted list of products with categories which is kept sorted as new versions of the unsorted
+ * list come in by applying only what changed, rather than sorting the whole list again.
+ *
+ * When Room emits a new list after a product is added, edited or deleted, applyChanges() finds the
+ * products added, removed or changed since the last version by id, removes the old versions with a
+ * binary search and inserts the new ones at the position found by another binary search. Finding
+ * the changes is a single pass over the list looking each id up in a hash table of primitive ids,
+ * which boxes and allocates nothing for the products that haven't changed. Only the changed
+ * products are then looked for and moved in the sorted list, which is kept in chunks so each one
+ * only moves along part of a chunk. A single edit costs O(n) lookups plus O(log n + k) comparisons,
+ * where k is the number of products with the same sort value as the one changed, instead of a full
+ * O(n log n) sort.
+ *
+ * snapshot() hands out the sorted list without copying it, as chunks are only copied when they're
+ * next changed.
+ *
+ * Products comparing equal can end up in a different order to a full sort, which is fine as any
+ * order of equal products is sorted.
+ *
+ * Not thread safe.
+ */
+public class IncrementalSortedList {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final Comparator<ProductWithCategory> comparator;
+    private final ChunkedProductList sorted;
+
+    // The products in the list by id. Open addressing with linear probing over parallel arrays,
+    // with EMPTY marking empty slots in ids. seenPasses holds the last applyChanges() pass each
+    // product was found in, so deleted products are the ones not seen in the latest pass.
+    private long[] ids;
+    private ProductWithCategory[] products;
+    private int[] seenPasses;
+    private int mask;
+    private int productCount;
+    private int pass;
+
+    /**
+     * @param sortedProductsWithCategories products already sorted by comparator, which are copied
+     * @param comparator the order the list is kept in
+     */
+    public IncrementalSortedList(List<ProductWithCategory> sortedProductsWithCategories,
+                                 Comparator<ProductWithCategory> comparator) {
+        this.comparator = comparator;
+        this.sorted = new ChunkedProductList(sortedProductsWithCategories);
+
+        int capacity = 16;
+        while (capacity < sortedProductsWithCategories.size() * 2) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+        for (ProductWithCategory productWithCategory : sortedProductsWithCategories) {
+            put(productWithCategory);
+        }
+    }
+
+    /**
+     * Brings the list up to date with a new version of the (unsorted) products, unless more than
+     * maxChanges products were added, removed or changed, in which case the list is left as it was
+     * and false is returned, as sorting everything again is then cheaper.
+     *
+     * @param productsWithCategories the new version of the products, in any order
+     * @param maxChanges the most changes to apply one at a time
+     * @return whether the list was brought up to date
+     */
+    public boolean applyChanges(List<ProductWithCategory> productsWithCategories, int maxChanges) {
+        List<ProductWithCategory> added = new ArrayList<>();
+        List<ProductWithCategory> removed = new ArrayList<>();
+        pass++;
+
+        int unchangedOrEdited = 0;
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            int slot = findSlot(productWithCategory.getProduct().getId());
+
+            if (slot < 0) {
+                added.add(productWithCategory);
+            } else {
+                seenPasses[slot] = pass;
+                unchangedOrEdited++;
+                if (!isSameProductWithCategory(products[slot], productWithCategory)) {
+                    // An edit is applied as removing the old version and adding the new one
+                    removed.add(products[slot]);
+                    added.add(productWithCategory);
+                }
+            }
+
+            if (added.size() > maxChanges) {
+                return false;
+            }
+        }
+
+        int deletedCount = productCount - unchangedOrEdited;
+        if (added.size() + deletedCount > maxChanges) {
+            return false;
+        }
+
+        if (deletedCount > 0) {
+            for (int slot = 0; slot < ids.length; slot++) {
+                if (ids[slot] != EMPTY && seenPasses[slot] != pass) {
+                    removed.add(products[slot]);
+                }
+            }
+        }
+
+        for (ProductWithCategory productWithCategory : removed) {
+            remove(productWithCategory);
+            deleteSlot(findSlot(productWithCategory.getProduct().getId()));
+        }
+
+        for (ProductWithCategory productWithCategory : added) {
+            insert(productWithCategory);
+            put(productWithCategory);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns an unmodifiable view of the sorted list as it is now, which later changes don't show
+     * up in.
+     */
+    public List<ProductWithCategory> snapshot() {
+        return sorted.snapshot();
+    }
+
+    public int size() { return sorted.size(); }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Inserts after every product comparing less than or equal to productWithCategory.
+    private void insert(ProductWithCategory productWithCategory) {
+        int chunk = firstChunkEndingAfter(productWithCategory, true);
+        if (chunk == sorted.chunkCount()) {
+            chunk--;
+            sorted.insert(chunk, sorted.chunkSize(chunk), productWithCategory);
+            return;
+        }
+
+        int low = 0;
+        int high = sorted.chunkSize(chunk);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(sorted.get(chunk, middle), productWithCategory) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        sorted.insert(chunk, low, productWithCategory);
+    }
+
+    // Removes the product with the same id as productWithCategory, searching the products comparing
+    // equal to it, which may run on into later chunks.
+    private void remove(ProductWithCategory productWithCategory) {
+        long id = productWithCategory.getProduct().getId();
+
+        for (int chunk = firstChunkEndingAfter(productWithCategory, false); chunk < sorted.chunkCount(); chunk++) {
+            int low = 0;
+            int high = sorted.chunkSize(chunk);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(sorted.get(chunk, middle), productWithCategory) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            for (int i = low; i < sorted.chunkSize(chunk); i++) {
+                ProductWithCategory candidate = sorted.get(chunk, i);
+                if (comparator.compare(candidate, productWithCategory) != 0) {
+                    throw new IllegalStateException("Product " + id + " is not in the sorted list.");
+                }
+                if (candidate.getProduct().getId() == id) {
+                    sorted.remove(chunk, i);
+                    return;
+                }
+            }
+        }
+
+        throw new IllegalStateException("Product " + id + " is not in the sorted list.");
+    }
+
+    // Returns the first chunk whose last product compares greater than productWithCategory, or
+    // greater than or equal to it if orEqual is false, or the chunk count if there's none.
+    private int firstChunkEndingAfter(ProductWithCategory productWithCategory, boolean orEqual) {
+        int low = 0;
+        int high = sorted.chunkCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int chunkSize = sorted.chunkSize(middle);
+            int comparison = chunkSize == 0
+                    ? -1
+                    : comparator.compare(sorted.get(middle, chunkSize - 1), productWithCategory);
+            if (orEqual ? comparison <= 0 : comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        products = new ProductWithCategory[capacity];
+        seenPasses = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(ids, EMPTY);
+    }
+
+    private void put(ProductWithCategory productWithCategory) {
+        // Keeps the table at most half full, so probe sequences stay short.
+        if ((productCount + 1) * 2 > ids.length) {
+            long[] oldIds = ids;
+            ProductWithCategory[] oldProducts = products;
+            int[] oldSeenPasses = seenPasses;
+
+            allocate(ids.length * 2);
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != EMPTY) {
+                    int slot = insertSlot(oldIds[i]);
+                    products[slot] = oldProducts[i];
+                    seenPasses[slot] = oldSeenPasses[i];
+                }
+            }
+        }
+
+        int slot = insertSlot(productWithCategory.getProduct().getId());
+        products[slot] = productWithCategory;
+        seenPasses[slot] = pass;
+        productCount++;
+    }
+
+    // Spreads the id's bits (Fibonacci hashing) as ids are mostly consecutive.
+    private int slotFor(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int findSlot(long id) {
+        for (int slot = slotFor(id); ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private int insertSlot(long id) {
+        int slot = slotFor(id);
+        while (ids[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        ids[slot] = id;
+        return slot;
+    }
+
+    // Empties the slot and moves later entries of the probe sequence back into the gap, so that no
+    // entry is left behind an empty slot where lookups would stop before reaching it.
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (ids[next] != EMPTY) {
+            int home = slotFor(ids[next]);
+
+            // The entry at next can fill the gap unless its home slot lies after the gap, cyclically.
+            boolean homeAfterGap = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+            if (!homeAfterGap) {
+                ids[gap] = ids[next];
+                products[gap] = products[next];
+                seenPasses[gap] = seenPasses[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        ids[gap] = EMPTY;
+        products[gap] = null;
+        productCount--;
+    }
+
+    // Compares every field, as ProductWithCategory.equals() doesn't handle null barcodes or categories.
+    private static boolean isSameProductWithCategory(ProductWithCategory productWithCategory1,
+                                                     ProductWithCategory productWithCategory2) {
+        Product product1 = productWithCategory1.getProduct();
+        Product product2 = productWithCategory2.getProduct();
+
+        if (product1.getId() != product2.getId()
+                || product1.getCategoryId() != product2.getCategoryId()
+                || !Objects.equals(product1.getName(), product2.getName())
+                || !Objects.equals(product1.getBarcode(), product2.getBarcode())
+                || !Objects.equals(product1.getPrice(), product2.getPrice())
+                || !Objects.equals(product1.getNotes(), product2.getNotes())) {
+            return false;
+        }
+
+        Category category1 = productWithCategory1.getCategory();
+        Category category2 = productWithCategory2.getCategory();
+
+        if (category1 == null || category2 == null) {
+            return category1 == category2;
+        }
+
+        return category1.getId() == category2.getId() && Objects.equals(category1.getName(), category2.getName());
+    }
+}
@@ -0,0 +1,216 @@
+package com.floatingpanda.productlist.sorting;
+
+import com.floatingpanda.productlist.db.Product;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Caches a collation key for the name of each product, by product id, so that sorting by name
+ * compares precomputed keys rather than collating the names again on every comparison and every
+ * re-sort. Keys follow the collation rules of the locale the cache was created for, so names sort
+ * the way the user expects (e.g. accented letters next to unaccented ones) rather than by char
+ * value.
+ *
+ * The products table stores names with Android's LOCALIZED collation, which collates by the
+ * device's locale at primary strength, ignoring case and accents, and the database breaks ties by
+ * id. Keys are made by a Collator for the same locale at the same strength, so a list comes out in
+ * the same order whether memory or the database sorts it.
+ *
+ * Each key is stored with the name it was created from, and the name's hash, and is recreated if
+ * the product's name has a different hash, so a key is checked without comparing the names
+ * themselves. Calling invalidate() when a product is edited or deleted frees its key straight away,
+ * and makes sure it's recreated even if the new name happens to have the same hash.
+ *
+ * Keys are kept in a hash table keyed by primitive product ids, so looking one up boxes nothing.
+ * The cache can be used from several threads at once.
+ */
+public class NameSortKeyCache {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Collator collator;
+
+    // Open addressing with linear probing over parallel arrays, guarded by this. EMPTY marks empty
+    // slots in ids.
+    private long[] ids;
+    private String[] names;
+    private int[] nameHashes;
+    private byte[][] keys;
+    private int mask;
+    private int size;
+
+    private long hits;
+    private long misses;
+
+    public NameSortKeyCache() {
+        this(Locale.getDefault());
+    }
+
+    public NameSortKeyCache(Locale locale) {
+        collator = createCollator(locale);
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a Collator which collates as Android's LOCALIZED collation does for locale.
+     */
+    public static Collator createCollator(Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        collator.setStrength(Collator.PRIMARY);
+        return collator;
+    }
+
+    /**
+     * Returns the collation key for product's name, creating and caching it if there is no key
+     * for the product or its name has changed. Keys must not be modified.
+     */
+    public synchronized byte[] getKey(Product product) {
+        long id = product.getId();
+        String name = product.getName();
+        // Strings cache their hash, so this only reads the name the first time it's looked up.
+        int nameHash = name.hashCode();
+
+        int slot = findSlot(id);
+        if (slot >= 0 && (names[slot] == name || nameHashes[slot] == nameHash)) {
+            hits++;
+            return keys[slot];
+        }
+
+        misses++;
+        byte[] key = collator.getCollationKey(name).toByteArray();
+        if (slot < 0) {
+            // Keeps the table at most half full, so probe sequences stay short.
+            if ((size + 1) * 2 > ids.length) {
+                rehash(ids.length * 2);
+            }
+            slot = insertSlot(id);
+            size++;
+        }
+
+        names[slot] = name;
+        nameHashes[slot] = nameHash;
+        keys[slot] = key;
+
+        return key;
+    }
+
+    /**
+     * Removes the key for a product, e.g. after it has been edited or deleted.
+     */
+    public synchronized void invalidate(long productId) {
+        int slot = findSlot(productId);
+        if (slot >= 0) {
+            deleteSlot(slot);
+            size--;
+        }
+    }
+
+    public synchronized void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    public synchronized int size() { return size; }
+
+    // Number of keys returned from the cache and number created, for seeing how well it's working.
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * Compares two keys, byte by byte as unsigned values, which orders them as their names collate.
+     */
+    public static int compareKeys(byte[] key1, byte[] key2) {
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (key1[i] & 0xff) - (key2[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return key1.length - key2.length;
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        names = new String[capacity];
+        nameHashes = new int[capacity];
+        keys = new byte[capacity][];
+        mask = capacity - 1;
+        Arrays.fill(ids, EMPTY);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldIds = ids;
+        String[] oldNames = names;
+        int[] oldNameHashes = nameHashes;
+        byte[][] oldKeys = keys;
+
+        allocate(capacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = insertSlot(oldIds[i]);
+                names[slot] = oldNames[i];
+                nameHashes[slot] = oldNameHashes[i];
+                keys[slot] = oldKeys[i];
+            }
+        }
+    }
+
+    // Spreads the id's bits (Fibonacci hashing) as ids are mostly consecutive.
+    private int slotFor(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int findSlot(long id) {
+        for (int slot = slotFor(id); ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private int insertSlot(long id) {
+        int slot = slotFor(id);
+        while (ids[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        ids[slot] = id;
+        return slot;
+    }
+
+    // Empties the slot and moves later entries of the probe sequence back into the gap, so that no
+    // entry is left behind an empty slot where lookups would stop before reaching it.
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while (ids[next] != EMPTY) {
+            int home = slotFor(ids[next]);
+
+            // The entry at next can fill the gap unless its home slot lies after the gap, cyclically.
+            boolean homeAfterGap = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+            if (!homeAfterGap) {
+                ids[gap] = ids[next];
+                names[gap] = names[next];
+                nameHashes[gap] = nameHashes[next];
+                keys[gap] = keys[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        ids[gap] = EMPTY;
+        names[gap] = null;
+        keys[gap] = null;
+    }
+}
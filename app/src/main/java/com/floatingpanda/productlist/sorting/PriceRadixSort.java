@@ -0,0 +1,148 @@
+package com.floatingpanda.productlist.sorting;
+
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorts products by price without comparing Price objects. Each product's price is pulled out as
+ * its int value in pence (as stored in the database), the pences are put in order with a least
+ * significant digit radix sort a byte at a time, and the products are then moved into that order
+ * in a single pass. This is O(n) rather than O(n log n) comparisons of boxed prices.
+ *
+ * Products with the same price are put in id order, reversed for descending sorts, as the
+ * database's ORDER BY products.price, products.id puts them. The ids get radix passes of their own
+ * before the prices', so ties are broken within the sort rather than by sorting the products by id
+ * first.
+ */
+public class PriceRadixSort {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int MASK = RADIX - 1;
+
+    private PriceRadixSort() {}
+
+    /**
+     * Returns a new list of the products sorted by price, then id. productsWithCategories is not
+     * modified.
+     *
+     * @param productsWithCategories the products to sort
+     * @param descending whether to put the highest prices, and then the highest ids, first
+     */
+    public static List<ProductWithCategory> sort(List<ProductWithCategory> productsWithCategories, boolean descending) {
+        int[] pences = new int[productsWithCategories.size()];
+        long[] ids = new long[pences.length];
+        for (int i = 0; i < pences.length; i++) {
+            Product product = productsWithCategories.get(i).getProduct();
+            pences[i] = PriceTypeConverter.toPriceInt(product.getPrice());
+            ids[i] = product.getId();
+        }
+
+        int[] order = sortedOrder(pences, ids, descending);
+
+        List<ProductWithCategory> sorted = new ArrayList<>(order.length);
+        for (int index : order) {
+            sorted.add(productsWithCategories.get(index));
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Returns the indices of keys in the order that sorts keys, keeping equal keys in index order.
+     *
+     * @param keys the values to sort by, which are not modified
+     * @param descending whether to put the largest keys first
+     */
+    public static int[] sortedOrder(int[] keys, boolean descending) {
+        return radixSort(toSortKeys(keys, descending), Integer.SIZE, identityOrder(keys.length));
+    }
+
+    /**
+     * Returns the indices of keys in the order that sorts keys, breaking ties by ids. Descending
+     * sorts put the largest keys first and break ties by the largest ids first.
+     *
+     * @param keys the values to sort by, which are not modified
+     * @param ids the values to break ties by, the same length as keys, which are not modified
+     * @param descending whether to put the largest keys and ids first
+     */
+    public static int[] sortedOrder(int[] keys, long[] ids, boolean descending) {
+        long[] idSortKeys = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            long sortKey = ids[i] ^ Long.MIN_VALUE;
+            idSortKeys[i] = descending ? ~sortKey : sortKey;
+        }
+
+        // Least significant first: the id passes order each price's products, and the stable price
+        // passes after them keep that order.
+        int[] order = radixSort(idSortKeys, Long.SIZE, identityOrder(ids.length));
+        return radixSort(toSortKeys(keys, descending), Integer.SIZE, order);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Flipping the sign bit makes negative keys sort before positive ones when the bits are treated
+    // as unsigned. Inverting every bit as well reverses the order for descending sorts, while the
+    // sort itself stays the same (and stable). The result is held in the low 32 bits.
+    private static long[] toSortKeys(int[] keys, boolean descending) {
+        long[] sortKeys = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            int sortKey = keys[i] ^ Integer.MIN_VALUE;
+            sortKeys[i] = (descending ? ~sortKey : sortKey) & 0xFFFFFFFFL;
+        }
+
+        return sortKeys;
+    }
+
+    private static int[] identityOrder(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        return order;
+    }
+
+    // Stably sorts order, a permutation of sortKeys' indices, by the low bits of sortKeys treated
+    // as unsigned, and returns the sorted permutation.
+    private static int[] radixSort(long[] sortKeys, int bits, int[] order) {
+        int size = order.length;
+        int[] buffer = new int[size];
+        int[] counts = new int[RADIX];
+
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int index : order) {
+                counts[(int) (sortKeys[index] >>> shift) & MASK]++;
+            }
+
+            // Prices and ids rarely use the high bytes, and a byte every key shares can't reorder
+            // anything.
+            if (size == 0 || counts[(int) (sortKeys[order[0]] >>> shift) & MASK] == size) {
+                continue;
+            }
+
+            // Turn the counts into the position each digit's keys start at.
+            int position = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int count = counts[digit];
+                counts[digit] = position;
+                position += count;
+            }
+
+            for (int index : order) {
+                buffer[counts[(int) (sortKeys[index] >>> shift) & MASK]++] = index;
+            }
+
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+
+        return order;
+    }
+}
@@ -0,0 +1,96 @@
+package com.floatingpanda.productlist.sorting;
+
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Comparators putting products with categories in each OrderByEnum ordering, matching the order
+ * SearchQueryTemplates.createOrderByString() has the database put them in: names are collated as
+ * the name column's LOCALIZED collation collates them (see NameSortKeyCache), barcodes are compared
+ * as SQLite's BINARY collation compares them, products with the same name, barcode or price are put
+ * in id order (reverse id order when descending), and products without a barcode come first when
+ * ordering by barcode ascending and last when descending.
+ */
+public class ProductComparators {
+    // Collators aren't thread safe, so each thread gets its own.
+    private static final ThreadLocal<Collator> NAME_COLLATOR =
+            ThreadLocal.withInitial(() -> NameSortKeyCache.createCollator(Locale.getDefault()));
+
+    private static final Comparator<ProductWithCategory> BY_NAME =
+            Comparator.comparing((ProductWithCategory productWithCategory) -> productWithCategory.getProduct().getName(),
+                    ProductComparators::compareNames)
+                    .thenComparingLong(productWithCategory -> productWithCategory.getProduct().getId());
+    private static final Comparator<ProductWithCategory> BY_BARCODE =
+            Comparator.comparing((ProductWithCategory productWithCategory) -> productWithCategory.getProduct().getBarcode(),
+                    Comparator.nullsFirst(ProductComparators::compareText))
+                    .thenComparingLong(productWithCategory -> productWithCategory.getProduct().getId());
+    private static final Comparator<ProductWithCategory> BY_PRICE =
+            Comparator.comparing((ProductWithCategory productWithCategory) -> productWithCategory.getProduct().getPrice())
+                    .thenComparingLong(productWithCategory -> productWithCategory.getProduct().getId());
+
+    private ProductComparators() {}
+
+    /**
+     * Returns the comparator for orderBy, or null for NO_ORDER.
+     */
+    public static Comparator<ProductWithCategory> forOrdering(OrderByEnum orderBy) {
+        switch (orderBy) {
+            case NO_ORDER:
+                return null;
+            case NAME_ASC:
+                return BY_NAME;
+            case NAME_DESC:
+                return BY_NAME.reversed();
+            case BARCODE_ASC:
+                return BY_BARCODE;
+            case BARCODE_DESC:
+                return BY_BARCODE.reversed();
+            case PRICE_ASC:
+                return BY_PRICE;
+            case PRICE_DESC:
+                return BY_PRICE.reversed();
+            default:
+                throw new IllegalArgumentException("Not a recognised enum.");
+        }
+    }
+
+    /**
+     * Compares names as the products table's LOCALIZED collation does for the default locale.
+     */
+    public static int compareNames(String name1, String name2) {
+        return NAME_COLLATOR.get().compare(name1, name2);
+    }
+
+    /**
+     * Compares text as SQLite's BINARY collation does. SQLite compares the UTF-8 bytes of text,
+     * which puts it in code point order, whereas String.compareTo() compares UTF-16 chars and so
+     * puts characters outside the Basic Multilingual Plane, such as emoji, before U+E000 to U+FFFF.
+     */
+    public static int compareText(String text1, String text2) {
+        int length = Math.min(text1.length(), text2.length());
+        for (int i = 0; i < length; i++) {
+            char char1 = text1.charAt(i);
+            char char2 = text2.charAt(i);
+            if (char1 != char2) {
+                // Surrogates (U+D800 to U+DFFF) only appear in characters above U+FFFF, so moving
+                // them above U+E000 to U+FFFF gives code point order.
+                if (char1 >= 0xd800 && char2 >= 0xd800) {
+                    return toCodePointOrder(char1) - toCodePointOrder(char2);
+                }
+                return char1 - char2;
+            }
+        }
+
+        return text1.length() - text2.length();
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private static int toCodePointOrder(char c) {
+        return c >= 0xe000 ? c - 0x800 : c + 0x2000;
+    }
+}
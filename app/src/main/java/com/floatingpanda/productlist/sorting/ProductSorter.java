@@ -0,0 +1,261 @@
+package com.floatingpanda.productlist.sorting;
+
+import com.floatingpanda.productlist.db.PriceTypeConverter;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorts lists of products with categories on a background executor and hands back sorted
+ * snapshots on a delivery executor, normally the main thread.
+ *
+ * The list given to sort() is never modified, it is copied and the copy is sorted, and the sorted
+ * list delivered can't be modified either, so lists can be shared between threads safely. Only the
+ * latest sort is delivered: starting a new sort or calling cancel() stops any sort still running,
+ * part way through if need be, and drops any sorted list not yet delivered.
+ *
+ * Sorting by name compares collation keys from a NameSortKeyCache, so each product's name is
+ * collated once rather than on every comparison of every sort, and names are put in the same order
+ * as the database's ORDER BY products.name. Sorting by price is done with a PriceRadixSort on the prices'
+ * int values and the ids.
+ *
+ * update() is for new versions of a list already sorted, e.g. when Room emits the list again after
+ * a product changes. If only a few products changed since the last list sorted in the same order,
+ * just those changes are applied to the last sorted list through an IncrementalSortedList.
+ *
+ * The sort executor must run one task at a time, as the last sorted list is only used on it.
+ */
+public class ProductSorter {
+    // Every ordering breaks ties by id, as SearchQueryTemplates.createOrderByString() does, so a list
+    // sorted here is in the same order as the database would load it in.
+    private static final Comparator<ProductWithCategory> BY_ID =
+            Comparator.comparingLong(productWithCategory -> productWithCategory.getProduct().getId());
+
+    private final Executor sortExecutor;
+    private final Executor deliveryExecutor;
+    private final NameSortKeyCache nameSortKeyCache;
+
+    // The most added, removed or edited products update() applies one by one. Each change moves
+    // part of the list along, so beyond this a full sort is cheaper.
+    private static final int MAX_INCREMENTAL_CHANGES = 64;
+
+    // The last list sorted and the order it was sorted in, used by update(). Only touched on the
+    // sort executor.
+    private IncrementalSortedList lastSortedList;
+    private OrderByEnum lastSortedListOrdering;
+
+    // Incremented for every new sort and cancellation. A sort is stale once this has moved on from
+    // the generation it started with.
+    private final AtomicLong generation = new AtomicLong();
+
+    public interface Callback {
+        void onSorted(List<ProductWithCategory> sortedProductsWithCategories);
+    }
+
+    /**
+     * @param sortExecutor the executor to sort on
+     * @param deliveryExecutor the executor to deliver sorted lists on
+     */
+    public ProductSorter(Executor sortExecutor, Executor deliveryExecutor) {
+        this(sortExecutor, deliveryExecutor, new NameSortKeyCache());
+    }
+
+    /**
+     * @param sortExecutor the executor to sort on
+     * @param deliveryExecutor the executor to deliver sorted lists on
+     * @param nameSortKeyCache the cache of name sort keys to sort by name with
+     */
+    public ProductSorter(Executor sortExecutor, Executor deliveryExecutor, NameSortKeyCache nameSortKeyCache) {
+        this.sortExecutor = sortExecutor;
+        this.deliveryExecutor = deliveryExecutor;
+        this.nameSortKeyCache = nameSortKeyCache;
+    }
+
+    public NameSortKeyCache getNameSortKeyCache() { return nameSortKeyCache; }
+
+    /**
+     * Sorts a copy of productsWithCategories in orderBy order and delivers it to callback, unless
+     * another sort is started or cancel() is called first.
+     *
+     * @param productsWithCategories the products to sort, which are not modified
+     * @param orderBy the order to sort the products in
+     * @param callback receives the sorted, unmodifiable list on the delivery executor
+     */
+    public void sort(List<ProductWithCategory> productsWithCategories, OrderByEnum orderBy, Callback callback) {
+        submit(productsWithCategories, orderBy, false, callback);
+    }
+
+    /**
+     * Sorts a new version of the last list sorted, in the same way as sort(). If the last list was
+     * sorted in the same order and only a few products have been added, removed or changed since,
+     * only those changes are applied rather than sorting everything again.
+     *
+     * @param productsWithCategories the new version of the products, which are not modified
+     * @param orderBy the order to sort the products in
+     * @param callback receives the sorted, unmodifiable list on the delivery executor
+     */
+    public void update(List<ProductWithCategory> productsWithCategories, OrderByEnum orderBy, Callback callback) {
+        submit(productsWithCategories, orderBy, true, callback);
+    }
+
+    /**
+     * Stops any sort in progress and drops any sorted list which hasn't been delivered yet.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void submit(List<ProductWithCategory> productsWithCategories, OrderByEnum orderBy, boolean incremental,
+                        Callback callback) {
+        long sortGeneration = generation.incrementAndGet();
+
+        sortExecutor.execute(() -> {
+            if (isStale(sortGeneration)) {
+                return;
+            }
+
+            List<ProductWithCategory> snapshot;
+            try {
+                snapshot = sortOrUpdate(productsWithCategories, orderBy, incremental, sortGeneration);
+            } catch (CancellationException e) {
+                return;
+            }
+
+            deliveryExecutor.execute(() -> {
+                // Checked again here as a newer sort may have started while this one was handed over.
+                if (!isStale(sortGeneration)) {
+                    callback.onSorted(snapshot);
+                }
+            });
+        });
+    }
+
+    private List<ProductWithCategory> sortOrUpdate(List<ProductWithCategory> productsWithCategories,
+                                                   OrderByEnum orderBy, boolean incremental, long sortGeneration) {
+        if (incremental && lastSortedList != null && lastSortedListOrdering == orderBy
+                && lastSortedList.applyChanges(productsWithCategories, MAX_INCREMENTAL_CHANGES)) {
+            return lastSortedList.snapshot();
+        }
+
+        List<ProductWithCategory> sorted;
+        if (orderBy == OrderByEnum.NAME_ASC || orderBy == OrderByEnum.NAME_DESC) {
+            sorted = sortByName(productsWithCategories, orderBy == OrderByEnum.NAME_DESC, sortGeneration);
+        } else if (orderBy == OrderByEnum.PRICE_ASC || orderBy == OrderByEnum.PRICE_DESC) {
+            // Breaks ties by id itself, and is linear time, so it isn't worth checking for
+            // cancellation part way through.
+            sorted = PriceRadixSort.sort(productsWithCategories, orderBy == OrderByEnum.PRICE_DESC);
+        } else {
+            sorted = new ArrayList<>(productsWithCategories);
+            Comparator<ProductWithCategory> comparator = ProductComparators.forOrdering(orderBy);
+            if (comparator != null) {
+                sorted.sort(createCancellableComparator(comparator, sortGeneration));
+            }
+        }
+
+        if (orderBy == OrderByEnum.NO_ORDER) {
+            lastSortedList = null;
+        } else {
+            lastSortedList = new IncrementalSortedList(sorted, createOrderingComparator(orderBy));
+        }
+        lastSortedListOrdering = orderBy;
+
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Returns a comparator giving the same order as the sorts done for orderBy, for keeping an
+     * IncrementalSortedList in that order.
+     */
+    private Comparator<ProductWithCategory> createOrderingComparator(OrderByEnum orderBy) {
+        switch (orderBy) {
+            case NAME_ASC:
+            case NAME_DESC:
+                Comparator<ProductWithCategory> byNameKey = ((Comparator<ProductWithCategory>)
+                        (productWithCategory1, productWithCategory2) -> NameSortKeyCache.compareKeys(
+                                nameSortKeyCache.getKey(productWithCategory1.getProduct()),
+                                nameSortKeyCache.getKey(productWithCategory2.getProduct())))
+                        .thenComparing(BY_ID);
+                return orderBy == OrderByEnum.NAME_DESC ? byNameKey.reversed() : byNameKey;
+            case PRICE_ASC:
+            case PRICE_DESC:
+                Comparator<ProductWithCategory> byPence = Comparator.comparingInt((ProductWithCategory productWithCategory) ->
+                        PriceTypeConverter.toPriceInt(productWithCategory.getProduct().getPrice()))
+                        .thenComparing(BY_ID);
+                return orderBy == OrderByEnum.PRICE_DESC ? byPence.reversed() : byPence;
+            default:
+                return ProductComparators.forOrdering(orderBy);
+        }
+    }
+
+    private boolean isStale(long sortGeneration) {
+        return generation.get() != sortGeneration;
+    }
+
+    /**
+     * Sorts products by their names' collation keys, then by id as the database breaks ties. Each product
+     * is paired with its key before sorting, so the cache is looked up once per product rather than
+     * once per comparison.
+     */
+    private List<ProductWithCategory> sortByName(List<ProductWithCategory> productsWithCategories,
+                                                 boolean descending, long sortGeneration) {
+        KeyedProduct[] keyedProducts = new KeyedProduct[productsWithCategories.size()];
+        for (int i = 0; i < keyedProducts.length; i++) {
+            ProductWithCategory productWithCategory = productsWithCategories.get(i);
+            keyedProducts[i] = new KeyedProduct(nameSortKeyCache.getKey(productWithCategory.getProduct()),
+                    productWithCategory);
+        }
+
+        Arrays.sort(keyedProducts, (keyedProduct1, keyedProduct2) -> {
+            if (isStale(sortGeneration)) {
+                throw new CancellationException();
+            }
+
+            int comparison = NameSortKeyCache.compareKeys(keyedProduct1.key, keyedProduct2.key);
+            if (comparison == 0) {
+                comparison = Long.compare(keyedProduct1.productWithCategory.getProduct().getId(),
+                        keyedProduct2.productWithCategory.getProduct().getId());
+            }
+
+            return descending ? -comparison : comparison;
+        });
+
+        List<ProductWithCategory> sorted = new ArrayList<>(keyedProducts.length);
+        for (KeyedProduct keyedProduct : keyedProducts) {
+            sorted.add(keyedProduct.productWithCategory);
+        }
+
+        return sorted;
+    }
+
+    // Wraps comparator so that a sort made stale part way through is abandoned rather than finished.
+    private Comparator<ProductWithCategory> createCancellableComparator(Comparator<ProductWithCategory> comparator,
+                                                                        long sortGeneration) {
+        return (productWithCategory1, productWithCategory2) -> {
+            if (isStale(sortGeneration)) {
+                throw new CancellationException();
+            }
+
+            return comparator.compare(productWithCategory1, productWithCategory2);
+        };
+    }
+
+    private static class KeyedProduct {
+        private final byte[] key;
+        private final ProductWithCategory productWithCategory;
+
+        private KeyedProduct(byte[] key, ProductWithCategory productWithCategory) {
+            this.key = key;
+            this.productWithCategory = productWithCategory;
+        }
+    }
+}
@@ -1,24 +1,239 @@
 package com.floatingpanda.productlist.ui.export_import;
 
+import android.app.Activity;
+import android.content.Intent;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 
+import com.floatingpanda.productlist.MainActivity;
 import com.floatingpanda.productlist.R;
+import com.floatingpanda.productlist.exportimport.ExportFormat;
+import com.floatingpanda.productlist.exportimport.ExportProgress;
+import com.floatingpanda.productlist.exportimport.ImportProgress;
 import com.floatingpanda.productlist.ui.base.BaseFragment;
 
+import java.util.Locale;
+
 public class ExportImportFragment extends BaseFragment {
+    private static final int PICK_IMPORT_CSV_REQUEST = 1;
+    private static final int CREATE_EXPORT_CSV_REQUEST = 2;
+    private static final int CREATE_EXPORT_JSON_REQUEST = 3;
+    private static final int CREATE_SNAPSHOT_REQUEST = 4;
+    private static final int PICK_SNAPSHOT_REQUEST = 5;
+    private static final int CREATE_DELTA_REQUEST = 6;
+    private static final int PICK_DELTA_REQUEST = 7;
+    private static final int PICK_DATABASE_REQUEST = 8;
+    private static final int CREATE_DATABASE_BACKUP_REQUEST = 9;
+    private static final int PICK_DATABASE_BACKUP_REQUEST = 10;
+
+    private ExportImportViewModel exportImportViewModel;
+    private TextView progressTextView;
+    private CheckBox gzipCheckBox;
 
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View root = inflater.inflate(R.layout.fragment_export_import, container, false);
 
+        exportImportViewModel = new ViewModelProvider(requireActivity()).get(ExportImportViewModel.class);
+        super.setViewModel(exportImportViewModel);
+
+        progressTextView = root.findViewById(R.id.export_import_progress_textview);
+
+        Button importCsvButton = root.findViewById(R.id.export_import_import_csv_button);
+        importCsvButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("text/*");
+            startActivityForResult(intent, PICK_IMPORT_CSV_REQUEST);
+        });
+
+        gzipCheckBox = root.findViewById(R.id.export_import_gzip_checkbox);
+
+        Button exportCsvButton = root.findViewById(R.id.export_import_export_csv_button);
+        exportCsvButton.setOnClickListener(v -> createExportFile(ExportFormat.CSV, CREATE_EXPORT_CSV_REQUEST));
+
+        Button exportJsonButton = root.findViewById(R.id.export_import_export_json_button);
+        exportJsonButton.setOnClickListener(v -> createExportFile(ExportFormat.JSON, CREATE_EXPORT_JSON_REQUEST));
+
+        Button backUpButton = root.findViewById(R.id.export_import_back_up_snapshot_button);
+        backUpButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/octet-stream");
+            intent.putExtra(Intent.EXTRA_TITLE, "products.snapshot");
+            startActivityForResult(intent, CREATE_SNAPSHOT_REQUEST);
+        });
+
+        Button restoreButton = root.findViewById(R.id.export_import_restore_snapshot_button);
+        restoreButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            startActivityForResult(intent, PICK_SNAPSHOT_REQUEST);
+        });
+
+        Button exportDeltaButton = root.findViewById(R.id.export_import_export_delta_button);
+        exportDeltaButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/json");
+            intent.putExtra(Intent.EXTRA_TITLE, "product_changes.json");
+            startActivityForResult(intent, CREATE_DELTA_REQUEST);
+        });
+
+        Button importDeltaButton = root.findViewById(R.id.export_import_import_delta_button);
+        importDeltaButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/json");
+            startActivityForResult(intent, PICK_DELTA_REQUEST);
+        });
+
+        Button mergeButton = root.findViewById(R.id.export_import_merge_database_button);
+        mergeButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            startActivityForResult(intent, PICK_DATABASE_REQUEST);
+        });
+
+        Button backUpDatabaseButton = root.findViewById(R.id.export_import_back_up_database_button);
+        backUpDatabaseButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/octet-stream");
+            intent.putExtra(Intent.EXTRA_TITLE, "product_database.db");
+            startActivityForResult(intent, CREATE_DATABASE_BACKUP_REQUEST);
+        });
+
+        Button restoreDatabaseButton = root.findViewById(R.id.export_import_restore_database_button);
+        restoreDatabaseButton.setOnClickListener(v -> {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            startActivityForResult(intent, PICK_DATABASE_BACKUP_REQUEST);
+        });
+
+        exportImportViewModel.getImportProgress().observe(getViewLifecycleOwner(), this::showImportProgress);
+        exportImportViewModel.getImportError().observe(getViewLifecycleOwner(), error -> {
+            if (error != null) {
+                progressTextView.setText("Import failed: " + error);
+            }
+        });
+        exportImportViewModel.getExportProgress().observe(getViewLifecycleOwner(), this::showExportProgress);
+        exportImportViewModel.getExportError().observe(getViewLifecycleOwner(), error -> {
+            if (error != null) {
+                progressTextView.setText("Export failed: " + error);
+            }
+        });
+
+        exportImportViewModel.getSnapshotStatus().observe(getViewLifecycleOwner(), status -> {
+            if (status != null) {
+                progressTextView.setText(status);
+            }
+        });
+        exportImportViewModel.getDeltaStatus().observe(getViewLifecycleOwner(), status -> {
+            if (status != null) {
+                progressTextView.setText(status);
+            }
+        });
+        exportImportViewModel.getDatabaseReplaced().observe(getViewLifecycleOwner(), replaced -> {
+            if (replaced) {
+                // Starts the app afresh, so the view models and repositories get the restored database.
+                // The process and its static state carry on, see AppDatabase.replaceDatabaseFile().
+                Intent intent = new Intent(requireContext(), MainActivity.class);
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                startActivity(intent);
+            }
+        });
+
         return root;
     }
+
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (resultCode != Activity.RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+
+        if (requestCode == PICK_IMPORT_CSV_REQUEST) {
+            progressTextView.setText("Importing...");
+            exportImportViewModel.importProductsFromCsv(data.getData());
+        } else if (requestCode == CREATE_EXPORT_CSV_REQUEST || requestCode == CREATE_EXPORT_JSON_REQUEST) {
+            progressTextView.setText("Exporting...");
+            ExportFormat format = requestCode == CREATE_EXPORT_CSV_REQUEST ? ExportFormat.CSV : ExportFormat.JSON;
+            exportImportViewModel.exportProducts(data.getData(), format, gzipCheckBox.isChecked());
+        } else if (requestCode == CREATE_SNAPSHOT_REQUEST) {
+            progressTextView.setText("Backing up...");
+            exportImportViewModel.backUpToSnapshot(data.getData());
+        } else if (requestCode == PICK_SNAPSHOT_REQUEST) {
+            progressTextView.setText("Restoring...");
+            exportImportViewModel.restoreFromSnapshot(data.getData());
+        } else if (requestCode == CREATE_DELTA_REQUEST) {
+            progressTextView.setText("Exporting changes...");
+            exportImportViewModel.exportDelta(data.getData());
+        } else if (requestCode == PICK_DELTA_REQUEST) {
+            progressTextView.setText("Importing changes...");
+            exportImportViewModel.importDelta(data.getData());
+        } else if (requestCode == PICK_DATABASE_REQUEST) {
+            progressTextView.setText("Merging...");
+            exportImportViewModel.mergeDatabase(data.getData());
+        } else if (requestCode == CREATE_DATABASE_BACKUP_REQUEST) {
+            progressTextView.setText("Backing up database...");
+            exportImportViewModel.backUpDatabase(data.getData());
+        } else if (requestCode == PICK_DATABASE_BACKUP_REQUEST) {
+            progressTextView.setText("Restoring database...");
+            exportImportViewModel.restoreDatabase(data.getData());
+        }
+    }
+
+    private void createExportFile(ExportFormat format, int requestCode) {
+        boolean gzip = gzipCheckBox.isChecked();
+
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(format.getMimeType(gzip));
+        intent.putExtra(Intent.EXTRA_TITLE, "products." + format.getFileExtension(gzip));
+        startActivityForResult(intent, requestCode);
+    }
+
+    private void showImportProgress(ImportProgress progress) {
+        if (progress == null) {
+            return;
+        }
+
+        String status = progress.isFinished() ? "Imported" : "Importing";
+        double fractionDone = progress.getFractionDone();
+        String percent = fractionDone < 0 ? "" : String.format(Locale.getDefault(), " (%.0f%%)", fractionDone * 100);
+
+        progressTextView.setText(String.format(Locale.getDefault(),
+                "%s %d products%s\n%d rows skipped\n%.0f rows/s, %.2f MB/s",
+                status, progress.getRowsImported(), percent, progress.getRowsSkipped(),
+                progress.getRowsPerSecond(), progress.getMegabytesPerSecond()));
+    }
+
+    private void showExportProgress(ExportProgress progress) {
+        if (progress == null) {
+            return;
+        }
+
+        String status = progress.isFinished() ? "Exported" : "Exporting";
+
+        progressTextView.setText(String.format(Locale.getDefault(),
+                "%s %d of %d products (%.0f%%)\n%.0f rows/s, %.2f MB/s",
+                status, progress.getRowsWritten(), progress.getTotalRows(), progress.getFractionDone() * 100,
+                progress.getRowsPerSecond(), progress.getMegabytesPerSecond()));
+    }
 }
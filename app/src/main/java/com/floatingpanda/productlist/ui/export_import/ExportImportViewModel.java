@@ -0,0 +1,300 @@
+package com.floatingpanda.productlist.ui.export_import;
+
+import android.app.Application;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+import com.floatingpanda.productlist.exportimport.BackupInfo;
+import com.floatingpanda.productlist.exportimport.DatabaseFileBackup;
+import com.floatingpanda.productlist.exportimport.DeltaInfo;
+import com.floatingpanda.productlist.exportimport.ExportFormat;
+import com.floatingpanda.productlist.exportimport.ExportProgress;
+import com.floatingpanda.productlist.exportimport.ImportProgress;
+import com.floatingpanda.productlist.exportimport.MergeInfo;
+import com.floatingpanda.productlist.exportimport.ProductDatabaseMerger;
+import com.floatingpanda.productlist.exportimport.ProductDeltaExporter;
+import com.floatingpanda.productlist.exportimport.ProductDeltaImporter;
+import com.floatingpanda.productlist.exportimport.ProductExporter;
+import com.floatingpanda.productlist.exportimport.ProductSnapshot;
+import com.floatingpanda.productlist.exportimport.SnapshotInfo;
+import com.floatingpanda.productlist.exportimport.ProductCsvImporter;
+import com.floatingpanda.productlist.ui.base.BaseViewModel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ExportImportViewModel extends BaseViewModel {
+    private static final String TAG = "ExportImportViewModel";
+
+    // The watermark used for deltas exported from this screen.
+    private static final String DELTA_TARGET = "export_import";
+
+    // Database file backups copy the whole file, so they run on their own thread rather than holding
+    // up one of the database executor's.
+    private static final ExecutorService backupExecutor = Executors.newSingleThreadExecutor();
+
+    private AppDatabase database;
+    private MutableLiveData<ImportProgress> importProgress;
+    private MutableLiveData<String> importError;
+    private MutableLiveData<ExportProgress> exportProgress;
+    private MutableLiveData<String> exportError;
+    private MutableLiveData<String> snapshotStatus;
+    private MutableLiveData<String> deltaStatus;
+    private MutableLiveData<Boolean> databaseReplaced;
+
+    public ExportImportViewModel(Application application) {
+        this(application, AppDatabase.getDatabase(application));
+    }
+
+    // Used for testing purposes.
+    public ExportImportViewModel(Application application, AppDatabase database) {
+        super(application);
+        this.database = database;
+        importProgress = new MutableLiveData<>();
+        importError = new MutableLiveData<>();
+        exportProgress = new MutableLiveData<>();
+        exportError = new MutableLiveData<>();
+        snapshotStatus = new MutableLiveData<>();
+        deltaStatus = new MutableLiveData<>();
+        databaseReplaced = new MutableLiveData<>(false);
+    }
+
+    public LiveData<ImportProgress> getImportProgress() { return importProgress; }
+
+    // Holds why the last import failed, or null if it didn't.
+    public LiveData<String> getImportError() { return importError; }
+
+    public LiveData<ExportProgress> getExportProgress() { return exportProgress; }
+
+    // Holds why the last export failed, or null if it didn't.
+    public LiveData<String> getExportError() { return exportError; }
+
+    // Holds how the last snapshot or database file backup or restore, or database merge, went.
+    public LiveData<String> getSnapshotStatus() { return snapshotStatus; }
+
+    // Holds how the last delta export or import went.
+    public LiveData<String> getDeltaStatus() { return deltaStatus; }
+
+    // Becomes true once a database file backup has been restored, after which the database this and
+    // every other view model holds is closed, so the app has to be restarted.
+    public LiveData<Boolean> getDatabaseReplaced() { return databaseReplaced; }
+
+    /**
+     * Imports the products in a CSV file in the background, posting the progress to
+     * getImportProgress() as it goes.
+     */
+    public void importProductsFromCsv(Uri uri) {
+        importError.setValue(null);
+
+        AppDatabase.getExecutorService().execute(() -> {
+            try (ParcelFileDescriptor descriptor = getApplication().getContentResolver().openFileDescriptor(uri, "r")) {
+                if (descriptor == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+                ImportProgress progress = new ProductCsvImporter(database)
+                        .importProducts(channel, descriptor.getStatSize(), importProgress::postValue);
+                Log.i(TAG, "Imported " + uri + ": " + progress);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to import " + uri, e);
+                importError.postValue(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Exports every product to a file in the background, posting the progress to
+     * getExportProgress() as it goes.
+     */
+    public void exportProducts(Uri uri, ExportFormat format, boolean gzip) {
+        exportError.setValue(null);
+
+        AppDatabase.getExecutorService().execute(() -> {
+            try (OutputStream out = getApplication().getContentResolver().openOutputStream(uri, "wt")) {
+                if (out == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                ExportProgress progress = new ProductExporter(database)
+                        .exportProducts(out, format, gzip, exportProgress::postValue);
+                Log.i(TAG, "Exported to " + uri + ": " + progress);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to export to " + uri, e);
+                exportError.postValue(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Backs up the catalogue to a snapshot file in the background, see ProductSnapshot.
+     */
+    public void backUpToSnapshot(Uri uri) {
+        AppDatabase.getExecutorService().execute(() -> {
+            try (ParcelFileDescriptor descriptor = getApplication().getContentResolver().openFileDescriptor(uri, "rwt")) {
+                if (descriptor == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                FileChannel channel = new FileOutputStream(descriptor.getFileDescriptor()).getChannel();
+                SnapshotInfo snapshot = new ProductSnapshot(database).write(channel);
+                Log.i(TAG, "Backed up to " + uri + ": " + snapshot);
+                snapshotStatus.postValue("Backed up " + snapshot);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to back up to " + uri, e);
+                snapshotStatus.postValue("Backup failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Replaces the catalogue with the one in a snapshot file in the background, see ProductSnapshot.
+     */
+    public void restoreFromSnapshot(Uri uri) {
+        AppDatabase.getExecutorService().execute(() -> {
+            try (ParcelFileDescriptor descriptor = getApplication().getContentResolver().openFileDescriptor(uri, "r")) {
+                if (descriptor == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+                SnapshotInfo snapshot = new ProductSnapshot(database).restore(channel);
+                Log.i(TAG, "Restored " + uri + ": " + snapshot);
+                snapshotStatus.postValue("Restored " + snapshot);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to restore " + uri, e);
+                snapshotStatus.postValue("Restore failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Exports the changes made since the last delta export to a file in the background, see
+     * ProductDeltaExporter.
+     */
+    public void exportDelta(Uri uri) {
+        AppDatabase.getExecutorService().execute(() -> {
+            try (OutputStream out = getApplication().getContentResolver().openOutputStream(uri, "wt")) {
+                if (out == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                DeltaInfo delta = new ProductDeltaExporter(database).exportDelta(DELTA_TARGET, out);
+                Log.i(TAG, "Exported delta to " + uri + ": " + delta);
+                deltaStatus.postValue("Exported " + delta);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to export delta to " + uri, e);
+                deltaStatus.postValue("Export failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Replays the changes in a delta file in the background, see ProductDeltaImporter.
+     */
+    public void importDelta(Uri uri) {
+        AppDatabase.getExecutorService().execute(() -> {
+            try (InputStream in = getApplication().getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                DeltaInfo delta = new ProductDeltaImporter(database).importDelta(in);
+                Log.i(TAG, "Imported delta " + uri + ": " + delta);
+                deltaStatus.postValue("Imported " + delta);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to import delta " + uri, e);
+                deltaStatus.postValue("Import failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Merges the catalogue in another product database file in the background, see
+     * ProductDatabaseMerger. The file is copied to the cache first, as SQLite can only attach files
+     * by path.
+     */
+    public void mergeDatabase(Uri uri) {
+        AppDatabase.getExecutorService().execute(() -> {
+            File copy = new File(getApplication().getCacheDir(), "merge_source.db");
+            try (ParcelFileDescriptor descriptor = getApplication().getContentResolver().openFileDescriptor(uri, "r")) {
+                if (descriptor == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                try (FileChannel in = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+                     FileChannel out = new FileOutputStream(copy).getChannel()) {
+                    long size = in.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += out.transferFrom(in, position, size - position);
+                    }
+                }
+
+                MergeInfo merge = new ProductDatabaseMerger(database).merge(copy);
+                Log.i(TAG, "Merged " + uri + ": " + merge);
+                snapshotStatus.postValue("Merged: " + merge);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to merge " + uri, e);
+                snapshotStatus.postValue("Merge failed: " + e.getMessage());
+            } finally {
+                copy.delete();
+            }
+        });
+    }
+
+    /**
+     * Backs up the whole database file in the background while the app carries on using it, see
+     * DatabaseFileBackup.
+     */
+    public void backUpDatabase(Uri uri) {
+        backupExecutor.execute(() -> {
+            try (ParcelFileDescriptor descriptor = getApplication().getContentResolver().openFileDescriptor(uri, "rwt")) {
+                if (descriptor == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                FileChannel channel = new FileOutputStream(descriptor.getFileDescriptor()).getChannel();
+                BackupInfo backup = new DatabaseFileBackup(database).backUp(channel);
+                Log.i(TAG, "Backed up database to " + uri + ": " + backup);
+                snapshotStatus.postValue("Backed up database, " + backup);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to back up database to " + uri, e);
+                snapshotStatus.postValue("Backup failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Replaces the database with a database file backup in the background, see DatabaseFileBackup.
+     */
+    public void restoreDatabase(Uri uri) {
+        backupExecutor.execute(() -> {
+            try (ParcelFileDescriptor descriptor = getApplication().getContentResolver().openFileDescriptor(uri, "r")) {
+                if (descriptor == null) {
+                    throw new IOException("Couldn't open " + uri + ".");
+                }
+
+                FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+                BackupInfo backup = DatabaseFileBackup.restore(getApplication(), channel);
+                Log.i(TAG, "Restored database from " + uri + ": " + backup);
+                databaseReplaced.postValue(true);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to restore database from " + uri, e);
+                snapshotStatus.postValue("Restore failed: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -1,79 +1,193 @@
 package com.floatingpanda.productlist.ui.products;
 
 import android.app.Application;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
-import androidx.lifecycle.Observer;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.PagedList;
 
 import com.floatingpanda.productlist.other.OrderByEnum;
 import com.floatingpanda.productlist.db.AppDatabase;
 import com.floatingpanda.productlist.db.Price;
 import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.PriceTypeConverter;
 import com.floatingpanda.productlist.db.ProductWithCategory;
 import com.floatingpanda.productlist.repositories.CategoryRepository;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
 import com.floatingpanda.productlist.repositories.ProductRepository;
+import com.floatingpanda.productlist.repositories.ProductSearchPredicate;
+import com.floatingpanda.productlist.repositories.ProductTypeAheadSearch;
+import com.floatingpanda.productlist.repositories.StockTakeSession;
+import com.floatingpanda.productlist.sorting.ProductSorter;
 import com.floatingpanda.productlist.ui.base.BaseViewModel;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ProductViewModel extends BaseViewModel {
+    // Paging sizes used for the paged product lists unless set otherwise with setPagingConfig().
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_PREFETCH_DISTANCE = 25;
+
+    // Lists with up to this many products are re-sorted in memory when reordered, larger lists are
+    // reloaded from the database already in the new order.
+    public static final int DEFAULT_IN_MEMORY_SORT_THRESHOLD = 500;
+
+    // Searches narrowing the last search run by the database filter its results in memory if it
+    // found up to this many products, rather than querying the database again.
+    public static final int DEFAULT_IN_MEMORY_REFINE_THRESHOLD = 5000;
+
     private ProductRepository productRepository;
     private CategoryRepository categoryRepository;
 
     private LiveData<List<ProductWithCategory>> unsortedProductsWithCategories;
-    // Used to sort the list of products in place, rather than querying database with different
-    // ORDER BY values repeatedly
+    // Used to sort small lists of products in place, rather than querying database with different
+    // ORDER BY values repeatedly. Larger lists are ordered by the database instead.
     private MediatorLiveData<List<ProductWithCategory>> sortedProductsWithCategories;
 
+    // The query the product list shows the results of. Both lists follow it through a switchMap, so
+    // setting new parameters drops the previous query's LiveData, along with its invalidation
+    // tracker observer and any results it hasn't delivered yet, rather than piling up sources.
+    private final MutableLiveData<ProductQueryParameters> queryParameters = new MutableLiveData<>();
+
+    // The last query run by the database and its results, which stay up to date as products change.
+    // Searches narrowing it are answered by filtering these results.
+    private ProductQueryParameters databaseQueryParameters;
+    private LiveData<List<ProductWithCategory>> databaseQueryResults;
+    private int inMemoryRefineThreshold = DEFAULT_IN_MEMORY_REFINE_THRESHOLD;
+
+    private int inMemorySortThreshold = DEFAULT_IN_MEMORY_SORT_THRESHOLD;
+
+    // Sorts lists in memory off the main thread. The executor is only kept to be shut down when the
+    // view model is cleared, and is null if it was passed in rather than created here.
+    private ProductSorter productSorter;
+    private ExecutorService sortExecutor;
+
+    // The stock-take in progress, or null if there isn't one.
+    private StockTakeSession stockTakeSession;
+
     // The sorted list should normally be ordered alphabetically and will be reset to this natural
     // ordering in certain circumstances, such as when repopulated.
     private final OrderByEnum naturalOrdering = OrderByEnum.NAME_ASC;
     private OrderByEnum currentOrdering;
 
+    // Searches as the user types on the search screens, on its own executor so a slow search can't
+    // hold up anything else.
+    private ProductTypeAheadSearch productTypeAheadSearch;
+    private ExecutorService typeAheadExecutor;
+
+    private PagedList.Config pagingConfig =
+            ProductRepository.createPagingConfig(DEFAULT_PAGE_SIZE, DEFAULT_PREFETCH_DISTANCE);
+
     public ProductViewModel(Application application) {
         super(application);
         productRepository = new ProductRepository(application);
         categoryRepository = new CategoryRepository(application);
 
-        unsortedProductsWithCategories = productRepository.getAllProductsWithCategory();
+        sortExecutor = Executors.newSingleThreadExecutor();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        productSorter = new ProductSorter(sortExecutor, mainHandler::post);
 
-        // Ordering always starts off alphabetically by name.
-        currentOrdering = naturalOrdering;
+        setUpProductLists();
+        setUpTypeAheadSearch();
+    }
 
-        sortedProductsWithCategories = new MediatorLiveData<>();
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(productRepository.getAllProductsWithCategory());
+    // Used for testing purposes. Lists are sorted on the calling thread.
+    public ProductViewModel(Application application, AppDatabase database) {
+        this(application, database, Runnable::run, Runnable::run);
     }
 
     // Used for testing purposes.
-    public ProductViewModel(Application application, AppDatabase database) {
+    public ProductViewModel(Application application, AppDatabase database, Executor sortExecutor,
+                            Executor sortDeliveryExecutor) {
         super(application);
         productRepository = new ProductRepository(database);
         categoryRepository = new CategoryRepository(database);
-        unsortedProductsWithCategories = productRepository.getAllProductsWithCategory();
 
-        // Ordering always starts off alphabetically by name.
-        currentOrdering = naturalOrdering;
+        productSorter = new ProductSorter(sortExecutor, sortDeliveryExecutor);
 
-        sortedProductsWithCategories = new MediatorLiveData<>();
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(productRepository.getAllProductsWithCategory());
+        setUpProductLists();
+        setUpTypeAheadSearch();
     }
 
     public OrderByEnum getNaturalOrdering() { return naturalOrdering; }
 
     public OrderByEnum getCurrentOrdering() { return currentOrdering; }
 
+    public int getInMemorySortThreshold() { return inMemorySortThreshold; }
+
+    /**
+     * Sets the largest number of products reorderProductList() will sort in memory. Larger lists
+     * are reloaded from the database in the new order, which is done through the indices on
+     * products rather than by copying and sorting every product in memory.
+     *
+     * @param inMemorySortThreshold the largest list size to sort in memory, 0 to always reload
+     */
+    public void setInMemorySortThreshold(int inMemorySortThreshold) {
+        this.inMemorySortThreshold = inMemorySortThreshold;
+    }
+
+    public int getInMemoryRefineThreshold() { return inMemoryRefineThreshold; }
+
+    /**
+     * Sets the most products the last database search can have found for narrower searches to
+     * filter its results in memory rather than query the database.
+     *
+     * @param inMemoryRefineThreshold the most products to filter in memory, -1 to always query
+     */
+    public void setInMemoryRefineThreshold(int inMemoryRefineThreshold) {
+        this.inMemoryRefineThreshold = inMemoryRefineThreshold;
+    }
+
     public LiveData<List<ProductWithCategory>> getUnsortedProductsWithCategories() {
         return unsortedProductsWithCategories;
     }
 
+    /**
+     * Returns the products with categories in the current ordering. The lists it holds can't be
+     * modified.
+     */
     public LiveData<List<ProductWithCategory>> getProductsWithCategories() {
         return sortedProductsWithCategories;
     }
 
+    /**
+     * Sets the page size and prefetch distance used by paged product lists requested after this.
+     *
+     * @param pageSize the number of products loaded at a time
+     * @param prefetchDistance how close to the end of the loaded products the list can get before
+     *                         the next page is loaded
+     */
+    public void setPagingConfig(int pageSize, int prefetchDistance) {
+        pagingConfig = ProductRepository.createPagingConfig(pageSize, prefetchDistance);
+    }
+
+    /**
+     * Returns every product with its category, loaded a page at a time as the list is scrolled
+     * rather than all at once, ordered by orderBy. The list reloads itself when products change.
+     */
+    public LiveData<PagedList<ProductWithCategory>> getPagedProductsWithCategories(OrderByEnum orderBy) {
+        return productRepository.getPagedProductsWithCategory(orderBy, pagingConfig);
+    }
+
+    /**
+     * Searches products like searchProductsWithCategory(), but loads the results a page at a time,
+     * ordered by orderBy.
+     */
+    public LiveData<PagedList<ProductWithCategory>> searchPagedProductsWithCategory(String barcode, String name,
+            long categoryId, float lowerPrice, float higherPrice, OrderByEnum orderBy) {
+        return productRepository.searchPagedProductsWithCategory(barcode, name, categoryId, lowerPrice,
+                higherPrice, orderBy, pagingConfig);
+    }
+
     public void addProductFromProductWithCategory(ProductWithCategory productWithCategory) {
         addProduct(productWithCategory.getProduct());
     }
@@ -87,6 +201,8 @@ public class ProductViewModel extends BaseViewModel {
     }
 
     public void editProduct(Product product) {
+        // The product's name may have changed, so drop its name sort key
+        productSorter.getNameSortKeyCache().invalidate(product.getId());
         productRepository.editProduct(product);
     }
 
@@ -95,6 +211,7 @@ public class ProductViewModel extends BaseViewModel {
     }
 
     public void deleteProduct(Product product) {
+        productSorter.getNameSortKeyCache().invalidate(product.getId());
         productRepository.deleteProduct(product);
     }
 
@@ -118,6 +235,9 @@ public class ProductViewModel extends BaseViewModel {
     }
 
     public void deleteMultipleProducts(Product... products) {
+        for (Product product : products) {
+            productSorter.getNameSortKeyCache().invalidate(product.getId());
+        }
         productRepository.deleteProducts(products);
     }
 
@@ -125,6 +245,41 @@ public class ProductViewModel extends BaseViewModel {
         deleteMultipleProducts(products.toArray(new Product[products.size()]));
     }
 
+    /**
+     * Returns the results of the latest search made with searchProductsWithCategoryAsYouType(), in
+     * the natural ordering. The lists it holds can't be modified.
+     */
+    public LiveData<List<ProductWithCategory>> getTypeAheadResults() {
+        return productTypeAheadSearch.getResults();
+    }
+
+    /**
+     * Searches products like searchProductsWithCategory(), for searching as the user types. The
+     * search waits until typing pauses before it runs and replaces any earlier search, cancelling it
+     * if it is already running, so only the latest input is searched for and its results are the only
+     * ones delivered to getTypeAheadResults(). Must be called on the main thread.
+     */
+    public void searchProductsWithCategoryAsYouType(String barcode, String name, long categoryId,
+                                                    float lowerPrice, float higherPrice) {
+        productTypeAheadSearch.search(ProductQueryParameters.search(barcode, name, categoryId,
+                Math.round(lowerPrice * 100), Math.round(higherPrice * 100), naturalOrdering));
+    }
+
+    /**
+     * Stops any search started with searchProductsWithCategoryAsYouType(), e.g. when leaving the
+     * search screen.
+     */
+    public void cancelSearchAsYouType() {
+        productTypeAheadSearch.cancel();
+    }
+
+    /**
+     * Returns the parameters of the query the product list shows the results of.
+     */
+    public LiveData<ProductQueryParameters> getQueryParameters() {
+        return queryParameters;
+    }
+
     public void reorderProductList(OrderByEnum orderBy) throws NullPointerException {
         currentOrdering = orderBy;
         List<ProductWithCategory> productsWithCategories = sortedProductsWithCategories.getValue();
@@ -136,16 +291,19 @@ public class ProductViewModel extends BaseViewModel {
             //      sortedProductsWithCategories.wait(30000). (30 second timeout)
         }
 
-        Log.w("ProductViewModel", "Sorted Products value before sorting: " + sortedProductsWithCategories.getValue());
-        sortedProductsWithCategories.setValue(sortProducts(productsWithCategories));
+        if (productsWithCategories.size() <= inMemorySortThreshold) {
+            // Sorted in the background, replacing any earlier sort still running. The current list
+            // stays up until the sorted list arrives.
+            productSorter.sort(productsWithCategories, orderBy, sortedProductsWithCategories::setValue);
+        } else {
+            // Too many products to sort here, so have the database load them in the new order. The
+            // current list stays up until the reordered list arrives.
+            setQueryParameters(queryParameters.getValue().withOrderBy(orderBy));
+        }
     }
 
     public void populateListWithAllProductsWithCategories() {
-        // Remove the old unsorted list from the sorted list mediator
-        removeUnsortedProductsWithCategoriesFromSortedProductsMediator();
-
-        // Add the new unsorted list to the sorted list mediator
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(productRepository.getAllProductsWithCategory());
+        showQueryResults(ProductQueryParameters.all(naturalOrdering));
     }
 
     /**
@@ -153,113 +311,169 @@ public class ProductViewModel extends BaseViewModel {
      * list to the search results.
      *
      * This is mainly for use with a barcode scanner where the exact barcode for a product can be
-     * read by the device.
+     * read by the device. The barcode is looked up in the in-memory barcode index, and only the
+     * products it finds are loaded from the database, see
+     * ProductRepository.queryProductsWithCategoryByExactBarcode().
      * @param barcode a product's barcode in string form
      */
     public void searchProductsWithCategoryByBarcode(String barcode) {
-        // Remove the old unsorted list from the sorted list mediator
-        removeUnsortedProductsWithCategoriesFromSortedProductsMediator();
+        showQueryResults(ProductQueryParameters.exactBarcode(barcode, naturalOrdering));
+    }
+
+    /**
+     * Starts a stock-take, finishing any stock-take already in progress. Scans are counted with
+     * scanStockTakeBarcode() and saved in batches in the background.
+     * @return the new stock-take session, e.g. for checking its scan rate
+     */
+    public StockTakeSession startStockTake() {
+        finishStockTake();
+        stockTakeSession = productRepository.startStockTake();
+        return stockTakeSession;
+    }
 
-        LiveData<List<ProductWithCategory>> searchedProducts = productRepository.getProductsWithCategoryByExactBarcode(barcode);
+    /**
+     * Counts a scan of the barcode in the stock-take in progress.
+     * @param barcode the scanned barcode
+     * @throws IllegalStateException if no stock-take has been started
+     */
+    public void scanStockTakeBarcode(String barcode) {
+        if (stockTakeSession == null) {
+            throw new IllegalStateException("A stock-take must be started before barcodes can be scanned.");
+        }
 
-        // Add the new unsorted list to the sorted list mediator
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(searchedProducts);
+        stockTakeSession.scan(barcode);
     }
 
-    public void filterProductsWithCategoryByCategoryId(long categoryId) {
-        // Remove the old unsorted list from the sorted list mediator
-        removeUnsortedProductsWithCategoriesFromSortedProductsMediator();
+    /**
+     * Saves the rest of the stock-take in progress, if there is one, and ends it.
+     */
+    public void finishStockTake() {
+        if (stockTakeSession != null) {
+            stockTakeSession.flush();
+            stockTakeSession = null;
+        }
+    }
 
-        LiveData<List<ProductWithCategory>> filteredProducts = productRepository.getProductsWithCategoryByCategoryId(categoryId);
+    public StockTakeSession getStockTakeSession() { return stockTakeSession; }
 
-        // Add the new unsorted list to the sorted list mediator
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(filteredProducts);
+    public void filterProductsWithCategoryByCategoryId(long categoryId) {
+        showQueryResults(ProductQueryParameters.category(categoryId, naturalOrdering));
     }
 
     public void searchProductsWithCategory(String barcode, String name, long categoryId, float lowerPrice, float higherPrice) {
-        // Remove the old unsorted list from the sorted list mediator
-        removeUnsortedProductsWithCategoriesFromSortedProductsMediator();
+        // Prices are searched for in pence, as stored in the database.
+        showQueryResults(ProductQueryParameters.search(barcode, name, categoryId, Math.round(lowerPrice * 100),
+                Math.round(higherPrice * 100), naturalOrdering));
+    }
 
-        LiveData<List<ProductWithCategory>> searchedProducts = productRepository.searchProductsWithCategory(barcode, name, categoryId, lowerPrice, higherPrice);
+    public void searchProductsWithCategory(String barcode, String name, long categoryId, Price lowerPrice, Price higherPrice) {
+        showQueryResults(ProductQueryParameters.search(barcode, name, categoryId,
+                PriceTypeConverter.toPriceInt(lowerPrice), PriceTypeConverter.toPriceInt(higherPrice), naturalOrdering));
+    }
 
-        // Add the new unsorted list to the sorted list mediator
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(searchedProducts);
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        productSorter.cancel();
+        if (sortExecutor != null) {
+            sortExecutor.shutdown();
+        }
+        productTypeAheadSearch.cancel();
+        typeAheadExecutor.shutdown();
+        finishStockTake();
     }
 
-    public void searchProductsWithCategory(String barcode, String name, long categoryId, Price lowerPrice, Price higherPrice) {
-        // Remove the old unsorted list from the sorted list mediator
-        removeUnsortedProductsWithCategoriesFromSortedProductsMediator();
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
 
-        LiveData<List<ProductWithCategory>> searchedProducts = productRepository.searchProductsWithCategory(barcode, name, categoryId, lowerPrice, higherPrice);
+    /**
+     * Sets up the sorted and unsorted product lists to follow queryParameters, starting off with
+     * every product in the natural ordering.
+     */
+    private void setUpProductLists() {
+        // The unsorted list only changes when the products queried for do, not when they're reordered.
+        unsortedProductsWithCategories = Transformations.switchMap(
+                Transformations.distinctUntilChanged(Transformations.map(queryParameters,
+                        parameters -> parameters.withOrderBy(OrderByEnum.NO_ORDER))),
+                productRepository::getProductsWithCategory);
+
+        sortedProductsWithCategories = new MediatorLiveData<>();
+        sortedProductsWithCategories.addSource(
+                Transformations.switchMap(queryParameters, this::loadQueryResults),
+                this::onQueryResultsChanged);
 
-        // Add the new unsorted list to the sorted list mediator
-        addUnsortedProductsWithCategoriesToSortedProductsMediator(searchedProducts);
+        setQueryParameters(ProductQueryParameters.all(naturalOrdering));
     }
 
-    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+    private void setUpTypeAheadSearch() {
+        typeAheadExecutor = Executors.newSingleThreadExecutor();
+        productTypeAheadSearch = new ProductTypeAheadSearch(productRepository, new Handler(Looper.getMainLooper()),
+                typeAheadExecutor, ProductTypeAheadSearch.DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Returns the results of the query parameters describe. If they narrow the last query run by the
+     * database, e.g. by adding to the name searched for, adding a category or tightening the price
+     * range, and it found few enough products, its results are filtered in memory with the same
+     * predicate the database searches with. Otherwise, e.g. when a search is widened, the database
+     * runs the query.
+     */
+    private LiveData<List<ProductWithCategory>> loadQueryResults(ProductQueryParameters parameters) {
+        if (parameters.equals(databaseQueryParameters)) {
+            return databaseQueryResults;
+        }
+
+        List<ProductWithCategory> databaseResults = databaseQueryResults == null ? null : databaseQueryResults.getValue();
+        if (databaseResults != null && databaseResults.size() <= inMemoryRefineThreshold
+                && ProductSearchPredicate.canFilterResults(databaseQueryParameters, parameters)) {
+            // Filters the database results as they are now and whenever they change, so the refined
+            // results stay up to date without a query of their own.
+            ProductSearchPredicate predicate = ProductSearchPredicate.forParameters(parameters);
+            return Transformations.map(databaseQueryResults, productsWithCategories -> {
+                List<ProductWithCategory> refined = new ArrayList<>();
+                for (ProductWithCategory productWithCategory : productsWithCategories) {
+                    if (predicate.test(productWithCategory)) {
+                        refined.add(productWithCategory);
+                    }
+                }
+                return refined;
+            });
+        }
+
+        databaseQueryParameters = parameters;
+        databaseQueryResults = productRepository.getProductsWithCategory(parameters);
+        return databaseQueryResults;
+    }
+
+    /**
+     * Shows the results of the query parameters describe in the sorted list, which the database
+     * orders, unless the list already shows them in that order. Room keeps the results it shows up to
+     * date, so running the same query again would only repeat work.
+     */
+    private void showQueryResults(ProductQueryParameters parameters) {
+        if (parameters.equals(queryParameters.getValue()) && currentOrdering == parameters.getOrderBy()) {
+            return;
+        }
+
+        setQueryParameters(parameters);
+    }
+
+    private void setQueryParameters(ProductQueryParameters parameters) {
+        // Any sort of the old results is no longer wanted
+        productSorter.cancel();
+        currentOrdering = parameters.getOrderBy();
+        queryParameters.setValue(parameters);
+    }
 
-    private void addUnsortedProductsWithCategoriesToSortedProductsMediator(LiveData<List<ProductWithCategory>> unsortedProductsWithCategories) {
-        // Reset current sorted list ordering to the natural ordering
-        currentOrdering = naturalOrdering;
-
-        // Keep track of the new unsorted list source for the mediator so we can remove it later
-        this.unsortedProductsWithCategories = unsortedProductsWithCategories;
-
-        // Add the new unsorted list to the mediator and set up the sorting behaviour
-        sortedProductsWithCategories.addSource(this.unsortedProductsWithCategories, new Observer<List<ProductWithCategory>>() {
-            @Override
-            public void onChanged(List<ProductWithCategory> productWithCategories) {
-                // set sorted list as new mediator value
-                sortedProductsWithCategories.setValue(sortProducts(productWithCategories));
-            }
-        });
-    }
-
-    private void removeUnsortedProductsWithCategoriesFromSortedProductsMediator() {
-        sortedProductsWithCategories.removeSource(unsortedProductsWithCategories);
-    }
-
-    private List<ProductWithCategory> sortProducts(List<ProductWithCategory> productsWithCategories) {
-        switch(currentOrdering) {
-            case NAME_ASC:
-                //sort by name asc
-                Comparator<ProductWithCategory> byNameAsc =
-                        (ProductWithCategory product1, ProductWithCategory product2) -> product1.getProduct().getName().compareTo(product2.getProduct().getName());
-                productsWithCategories.sort(byNameAsc);
-                break;
-            case NAME_DESC:
-                Comparator<ProductWithCategory> byNameDesc =
-                        (ProductWithCategory product1, ProductWithCategory product2) -> product2.getProduct().getName().compareTo(product1.getProduct().getName());
-                productsWithCategories.sort(byNameDesc);
-                //sort by name desc
-                break;
-            case BARCODE_ASC:
-                //sort by barcode asc
-                Comparator<ProductWithCategory> byBarcodeAsc =
-                        (ProductWithCategory product1, ProductWithCategory product2) -> product1.getProduct().getBarcode().compareTo(product2.getProduct().getBarcode());
-                productsWithCategories.sort(byBarcodeAsc);
-                break;
-            case BARCODE_DESC:
-                //sort by barcode desc
-                Comparator<ProductWithCategory> byBarcodeDesc =
-                        (ProductWithCategory product1, ProductWithCategory product2) -> product2.getProduct().getBarcode().compareTo(product1.getProduct().getBarcode());
-                productsWithCategories.sort(byBarcodeDesc);
-                break;
-            case PRICE_ASC:
-                //sort by price asc
-                Comparator<ProductWithCategory> byPriceAsc =
-                        (ProductWithCategory product1, ProductWithCategory product2) -> product1.getProduct().getPrice().compareTo(product2.getProduct().getPrice());
-                productsWithCategories.sort(byPriceAsc);
-                break;
-            case PRICE_DESC:
-                //sort by price desc
-                Comparator<ProductWithCategory> byPriceDesc =
-                        (ProductWithCategory product1, ProductWithCategory product2) -> product2.getProduct().getPrice().compareTo(product1.getProduct().getPrice());
-                productsWithCategories.sort(byPriceDesc);
-                break;
-            default:
-                throw new IllegalArgumentException("Not a recognised enum.");
+    private void onQueryResultsChanged(List<ProductWithCategory> productsWithCategories) {
+        // The switchMap only passes on results of the current parameters, so they are in its order.
+        // Only sort the list if it was reordered in memory since they were set.
+        if (queryParameters.getValue().getOrderBy() == currentOrdering) {
+            productSorter.cancel();
+            sortedProductsWithCategories.setValue(Collections.unmodifiableList(productsWithCategories));
+        } else {
+            // The list was reordered in memory, so keep it in that order. Only the products
+            // which changed are re-sorted if there are few of them.
+            productSorter.update(productsWithCategories, currentOrdering, sortedProductsWithCategories::setValue);
         }
-        return productsWithCategories;
     }
 }
@@ -0,0 +1,116 @@
+package com.floatingpanda.productlist;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.floatingpanda.productlist.db.AppDatabase;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Runs the Room migrations against a JVM SQLite (through Robolectric), so a broken migration fails
+ * the unit tests rather than waiting for a device. Each step is run against a database created from
+ * the schema exported for the version it migrates from and validated against the schema exported for
+ * the version it migrates to. The fully migrated database is then opened with AppDatabase itself, so
+ * Room also checks it against the entities it was compiled with.
+ *
+ * The instrumented AppDatabaseMigrationTest checks what each migration does to the data.
+ */
+@RunWith(AndroidJUnit4.class)
+@Config(sdk = 28)
+public class AppDatabaseMigrationTest {
+    private static final String TEST_DB = "migration-test";
+    private static final int LATEST_VERSION = 7;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            AppDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void eachMigrationProducesTheSchemaExportedForItsVersion() throws IOException {
+        for (Migration migration : AppDatabase.MIGRATIONS) {
+            String name = TEST_DB + "-" + migration.startVersion;
+
+            SupportSQLiteDatabase database = helper.createDatabase(name, migration.startVersion);
+            insertCatalogue(database);
+            database.close();
+
+            database = helper.runMigrationsAndValidate(name, migration.endVersion, true, migration);
+
+            assertThat(count(database, "categories"), is(3));
+            assertThat(count(database, "products"), is(5));
+            database.close();
+        }
+    }
+
+    @Test
+    public void migrationsCoverEveryVersion() {
+        for (int i = 0; i < AppDatabase.MIGRATIONS.length; i++) {
+            assertThat(AppDatabase.MIGRATIONS[i].startVersion, is(i + 1));
+            assertThat(AppDatabase.MIGRATIONS[i].endVersion, is(i + 2));
+        }
+
+        assertThat(AppDatabase.MIGRATIONS[AppDatabase.MIGRATIONS.length - 1].endVersion, is(LATEST_VERSION));
+    }
+
+    @Test
+    public void migrateFromVersion1OpensWithAppDatabase() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 1);
+        insertCatalogue(database);
+        database.close();
+
+        helper.runMigrationsAndValidate(TEST_DB, LATEST_VERSION, true, AppDatabase.MIGRATIONS).close();
+
+        Context context = ApplicationProvider.getApplicationContext();
+        AppDatabase db = Room.databaseBuilder(context, AppDatabase.class, TEST_DB)
+                .addMigrations(AppDatabase.MIGRATIONS)
+                .addCallback(AppDatabase.CHANGE_LOG_CALLBACK)
+                .allowMainThreadQueries()
+                .build();
+        helper.closeWhenFinished(db);
+
+        // Opening the database checks the schema's identity hash and tables against the entities.
+        SupportSQLiteDatabase opened = db.getOpenHelper().getWritableDatabase();
+
+        assertThat(opened.getVersion(), is(LATEST_VERSION));
+        assertThat(count(opened, "categories"), is(3));
+        assertThat(count(opened, "products"), is(5));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // The catalogue in TestData, as it would have been stored by any version of the app.
+    private void insertCatalogue(SupportSQLiteDatabase db) {
+        db.execSQL("INSERT INTO categories (id, name) VALUES (1, 'Bathroom'), (2, 'Bedding'), (3, 'Car')");
+        db.execSQL("INSERT INTO products (id, name, barcode, price, category_id, notes) VALUES "
+                + "(4, 'Taps', '1234567890123', 599, 1, 'None'), "
+                + "(5, 'Sink', '3210987654321', 1099, 1, 'Notesssss'), "
+                + "(6, 'Pillows', '1234509876109', 1899, 2, 'Flippledee'), "
+                + "(7, 'Sweets', '0897621453857', 9, 0, 'Floopledoo'), "
+                + "(8, 'Something', '3210987654321', 2095, 0, 'Amazing')");
+    }
+
+    private int count(SupportSQLiteDatabase db, String table) {
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM " + table)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.repositories.BarcodeBloomFilter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BarcodeBloomFilterTest {
+    @Test
+    public void testCantRuleBarcodesOutUntilBuilt() {
+        BarcodeBloomFilter barcodeFilter = new BarcodeBloomFilter();
+
+        assertFalse(barcodeFilter.isReady());
+        assertTrue(barcodeFilter.mightContain("1234567890123"));
+        assertFalse(barcodeFilter.needsRebuild());
+
+        barcodeFilter.rebuild(0, barcodes -> {});
+
+        assertTrue(barcodeFilter.isReady());
+        assertFalse(barcodeFilter.mightContain("1234567890123"));
+        assertFalse(barcodeFilter.mightContain(null));
+    }
+
+    @Test
+    public void testNeverRulesOutBarcodesPutIntoIt() {
+        List<String> barcodes = createBarcodes(0, 10000);
+        BarcodeBloomFilter barcodeFilter = createFilter(barcodes);
+
+        // Put while being rebuilt
+        barcodeFilter.rebuild(barcodes.size(), consumer -> {
+            barcodes.forEach(consumer);
+            barcodeFilter.put("ABC-123");
+        });
+        barcodeFilter.put("0897621453857");
+
+        for (String barcode : barcodes) {
+            assertTrue(barcode, barcodeFilter.mightContain(barcode));
+        }
+        assertTrue(barcodeFilter.mightContain("ABC-123"));
+        assertTrue(barcodeFilter.mightContain("0897621453857"));
+    }
+
+    @Test
+    public void testFalsePositiveRateStaysNearTheTarget() {
+        BarcodeBloomFilter barcodeFilter = createFilter(createBarcodes(0, 10000));
+
+        int falsePositives = 0;
+        for (String barcode : createBarcodes(10000, 20000)) {
+            if (barcodeFilter.mightContain(barcode)) {
+                falsePositives++;
+            }
+        }
+
+        // Sized with room for as many barcodes again, so well under the target while half full
+        assertTrue(falsePositives / 10000.0 < BarcodeBloomFilter.TARGET_FALSE_POSITIVE_RATE);
+        assertTrue(barcodeFilter.getFalsePositiveRate() < BarcodeBloomFilter.TARGET_FALSE_POSITIVE_RATE);
+        assertTrue(barcodeFilter.getFillRatio() > 0 && barcodeFilter.getFillRatio() < 0.5);
+    }
+
+    @Test
+    public void testNeedsRebuildOnceFilledPastItsSize() {
+        List<String> barcodes = createBarcodes(0, 1000);
+        BarcodeBloomFilter barcodeFilter = createFilter(barcodes);
+
+        for (String barcode : createBarcodes(1000, 4000)) {
+            barcodeFilter.put(barcode);
+        }
+
+        assertTrue(barcodeFilter.getFalsePositiveRate() > 2 * BarcodeBloomFilter.TARGET_FALSE_POSITIVE_RATE);
+        assertTrue(barcodeFilter.needsRebuild());
+
+        List<String> allBarcodes = createBarcodes(0, 4000);
+        barcodeFilter.rebuild(allBarcodes.size(), allBarcodes::forEach);
+
+        assertFalse(barcodeFilter.needsRebuild());
+    }
+
+    @Test
+    public void testObservedFalsePositiveRate() {
+        BarcodeBloomFilter barcodeFilter = new BarcodeBloomFilter();
+
+        assertEquals(0, barcodeFilter.getObservedFalsePositiveRate(), 0);
+
+        barcodeFilter.recordPositive(true);
+        barcodeFilter.recordPositive(true);
+        barcodeFilter.recordPositive(true);
+        barcodeFilter.recordPositive(false);
+
+        assertEquals(0.25, barcodeFilter.getObservedFalsePositiveRate(), 0);
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private BarcodeBloomFilter createFilter(List<String> barcodes) {
+        BarcodeBloomFilter barcodeFilter = new BarcodeBloomFilter();
+        barcodeFilter.rebuild(barcodes.size(), barcodes::forEach);
+        return barcodeFilter;
+    }
+
+    // EAN-13 style barcodes numbered from start up to end
+    private List<String> createBarcodes(int start, int end) {
+        List<String> barcodes = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            barcodes.add(String.format("50%011d", i * 7919L));
+        }
+        return barcodes;
+    }
+}
@@ -0,0 +1,190 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.repositories.BarcodeIndex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BarcodeIndexTest {
+    @Test
+    public void testLookupsWaitForTheIndexToBeBuilt() {
+        BarcodeIndex barcodeIndex = new BarcodeIndex();
+        barcodeIndex.put(4, "1234567890123");
+
+        assertFalse(barcodeIndex.isReady());
+        assertNull(barcodeIndex.getProductIds("1234567890123"));
+
+        barcodeIndex.rebuild(entries -> entries.accept("1234567890123", 4));
+
+        assertTrue(barcodeIndex.isReady());
+        assertArrayEquals(new long[] {4}, barcodeIndex.getProductIds("1234567890123"));
+    }
+
+    @Test
+    public void testMatchesBarcodesExactly() {
+        BarcodeIndex barcodeIndex = createIndex(
+                "3210987654321", 5,
+                "3210987654321", 8,
+                "0897621453857", 7,
+                "ABC-123", 9,
+                null, 10);
+
+        assertArrayEquals(new long[] {5, 8}, getSortedIds(barcodeIndex, "3210987654321"));
+        assertArrayEquals(new long[] {7}, getSortedIds(barcodeIndex, "0897621453857"));
+        assertArrayEquals(new long[] {9}, getSortedIds(barcodeIndex, "ABC-123"));
+        // Leading zeros and case matter, as they do to the database
+        assertEquals(0, barcodeIndex.getProductIds("897621453857").length);
+        assertEquals(0, barcodeIndex.getProductIds("abc-123").length);
+        assertEquals(0, barcodeIndex.getProductIds("321098765432").length);
+        assertEquals(0, barcodeIndex.getProductIds(null).length);
+        assertEquals(5, barcodeIndex.size());
+    }
+
+    @Test
+    public void testKeepsInStepWithWrites() {
+        BarcodeIndex barcodeIndex = createIndex("1234567890123", 4, "3210987654321", 5);
+
+        barcodeIndex.put(6, "1234509876109");
+        barcodeIndex.update(5, "1234567890123");
+        barcodeIndex.update(99, "1234567890123");
+        barcodeIndex.remove(4);
+
+        assertArrayEquals(new long[] {5}, getSortedIds(barcodeIndex, "1234567890123"));
+        assertArrayEquals(new long[] {6}, getSortedIds(barcodeIndex, "1234509876109"));
+        assertEquals(0, barcodeIndex.getProductIds("3210987654321").length);
+
+        barcodeIndex.clear();
+
+        assertEquals(0, barcodeIndex.size());
+        assertEquals(0, barcodeIndex.getProductIds("1234509876109").length);
+    }
+
+    @Test
+    public void testKeepsWritesMadeWhileRebuilding() {
+        BarcodeIndex barcodeIndex = new BarcodeIndex();
+
+        barcodeIndex.rebuild(entries -> {
+            entries.accept("1234567890123", 4);
+            // Written after the loader read product 4, and before it read product 5
+            barcodeIndex.put(6, "1234509876109");
+            barcodeIndex.remove(5);
+            entries.accept("3210987654321", 5);
+        });
+
+        assertArrayEquals(new long[] {4}, getSortedIds(barcodeIndex, "1234567890123"));
+        assertArrayEquals(new long[] {6}, getSortedIds(barcodeIndex, "1234509876109"));
+        assertEquals(0, barcodeIndex.getProductIds("3210987654321").length);
+    }
+
+    @Test
+    public void testMatchesAMapThroughManyWrites() {
+        Random random = new Random(16);
+        BarcodeIndex barcodeIndex = createIndex();
+        Map<Long, String> barcodesById = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            long id = 1 + random.nextInt(2000);
+            if (random.nextInt(4) == 0) {
+                barcodeIndex.remove(id);
+                barcodesById.remove(id);
+            } else {
+                // Few enough barcodes that many products share them
+                String barcode = String.format("%013d", random.nextInt(500));
+                barcodeIndex.put(id, barcode);
+                barcodesById.put(id, barcode);
+            }
+        }
+
+        assertEquals(barcodesById.size(), barcodeIndex.size());
+        for (int i = 0; i < 500; i++) {
+            String barcode = String.format("%013d", i);
+            assertArrayEquals(barcode, getSortedIds(barcodesById, barcode), getSortedIds(barcodeIndex, barcode));
+        }
+    }
+
+    @Test
+    public void testReusesNumbersOfBarcodesNoProductHas() {
+        BarcodeIndex barcodeIndex = createIndex("ABC-1", 1, "ABC-2", 2, "ABC-1", 3);
+
+        barcodeIndex.remove(1);
+        barcodeIndex.remove(2);
+        // Can be given the number ABC-2 had, but not the one ABC-1 still has through product 3.
+        barcodeIndex.put(4, "ABC-4");
+
+        assertArrayEquals(new long[] {3}, getSortedIds(barcodeIndex, "ABC-1"));
+        assertEquals(0, barcodeIndex.getProductIds("ABC-2").length);
+        assertArrayEquals(new long[] {4}, getSortedIds(barcodeIndex, "ABC-4"));
+    }
+
+    @Test
+    public void testMatchesAMapThroughManyWritesOfBarcodesWhichCantBePacked() {
+        Random random = new Random(17);
+        BarcodeIndex barcodeIndex = createIndex();
+        Map<Long, String> barcodesById = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            long id = 1 + random.nextInt(2000);
+            if (random.nextInt(4) == 0) {
+                barcodeIndex.remove(id);
+                barcodesById.remove(id);
+            } else {
+                String barcode = "ABC-" + random.nextInt(500);
+                barcodeIndex.put(id, barcode);
+                barcodesById.put(id, barcode);
+            }
+        }
+
+        assertEquals(barcodesById.size(), barcodeIndex.size());
+        for (int i = 0; i < 500; i++) {
+            String barcode = "ABC-" + i;
+            assertArrayEquals(barcode, getSortedIds(barcodesById, barcode), getSortedIds(barcodeIndex, barcode));
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Builds an index from pairs of barcodes and ids.
+    private BarcodeIndex createIndex(Object... barcodesAndIds) {
+        BarcodeIndex barcodeIndex = new BarcodeIndex();
+        barcodeIndex.rebuild(entries -> {
+            for (int i = 0; i < barcodesAndIds.length; i += 2) {
+                entries.accept((String) barcodesAndIds[i], ((Number) barcodesAndIds[i + 1]).longValue());
+            }
+        });
+        return barcodeIndex;
+    }
+
+    private long[] getSortedIds(BarcodeIndex barcodeIndex, String barcode) {
+        long[] ids = barcodeIndex.getProductIds(barcode);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private long[] getSortedIds(Map<Long, String> barcodesById, String barcode) {
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : barcodesById.entrySet()) {
+            if (entry.getValue().equals(barcode)) {
+                ids.add(entry.getKey());
+            }
+        }
+
+        long[] sortedIds = new long[ids.size()];
+        for (int i = 0; i < sortedIds.length; i++) {
+            sortedIds[i] = ids.get(i);
+        }
+        Arrays.sort(sortedIds);
+        return sortedIds;
+    }
+}
@@ -0,0 +1,70 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.BarcodeTrigram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BarcodeTrigramTest {
+
+    @Test
+    public void trigramsOfBarcodeAreInOrder() {
+        List<String> trigrams = new ArrayList<>(BarcodeTrigram.trigramsOf("123456"));
+
+        assertEquals(Arrays.asList("123", "234", "345", "456"), trigrams);
+    }
+
+    @Test
+    public void trigramsOfBarcodeAreDistinct() {
+        List<String> trigrams = new ArrayList<>(BarcodeTrigram.trigramsOf("1111"));
+
+        assertEquals(Arrays.asList("111"), trigrams);
+    }
+
+    @Test
+    public void trigramsOfBarcodeAreUpperCased() {
+        List<String> trigrams = new ArrayList<>(BarcodeTrigram.trigramsOf("ab1c"));
+
+        assertEquals(Arrays.asList("AB1", "B1C"), trigrams);
+    }
+
+    @Test
+    public void onlyAsciiLettersAreUpperCasedAsSqliteDoes() {
+        List<String> trigrams = new ArrayList<>(BarcodeTrigram.trigramsOf("\u00e9ab\u00df"));
+
+        assertEquals(Arrays.asList("\u00e9AB", "AB\u00df"), trigrams);
+    }
+
+    @Test
+    public void trigramsAreThreeCharactersRatherThanThreeChars() {
+        // U+1F600 is one character but two chars, so this barcode has one trigram, as in SQLite
+        List<String> trigrams = new ArrayList<>(BarcodeTrigram.trigramsOf("1\uD83D\uDE002"));
+
+        assertEquals(Arrays.asList("1\uD83D\uDE002"), trigrams);
+    }
+
+    @Test
+    public void shortAndNullBarcodesHaveNoTrigrams() {
+        assertTrue(BarcodeTrigram.trigramsOf("12").isEmpty());
+        assertTrue(BarcodeTrigram.trigramsOf("").isEmpty());
+        assertTrue(BarcodeTrigram.trigramsOf(null).isEmpty());
+    }
+
+    @Test
+    public void forProductCreatesARowPerTrigram() {
+        List<BarcodeTrigram> barcodeTrigrams = BarcodeTrigram.forProduct(7, "08976");
+
+        assertEquals(3, barcodeTrigrams.size());
+        for (BarcodeTrigram barcodeTrigram : barcodeTrigrams) {
+            assertEquals(7, barcodeTrigram.getProductId());
+        }
+        assertEquals("089", barcodeTrigrams.get(0).getTrigram());
+        assertEquals("976", barcodeTrigrams.get(2).getTrigram());
+    }
+}
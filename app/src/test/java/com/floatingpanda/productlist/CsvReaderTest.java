@@ -0,0 +1,109 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.exportimport.CsvReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvReaderTest {
+    @Test
+    public void testReadsPlainAndQuotedFields() throws IOException {
+        List<List<String>> rows = readAll("name,notes\r\n"
+                + "Soap,\"Lavender, large\"\r\n"
+                + "\"Pillow \"\"soft\"\"\",\"Two\nlines\"\n"
+                + ",\n");
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("name", "notes"),
+                Arrays.asList("Soap", "Lavender, large"),
+                Arrays.asList("Pillow \"soft\"", "Two\nlines"),
+                Arrays.asList("", "")), rows);
+    }
+
+    @Test
+    public void testSkipsBlankLinesAndByteOrderMark() throws IOException {
+        List<List<String>> rows = readAll("\uFEFFname\n\n\r\nSoap\n\nTowel");
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("name"),
+                Arrays.asList("Soap"),
+                Arrays.asList("Towel")), rows);
+    }
+
+    @Test
+    public void testReadsCharactersSplitAcrossBuffers() throws IOException {
+        // Enough multi-byte characters that some must be split between reads of the channel
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            name.append(i % 2 == 0 ? '£' : '€');
+        }
+
+        CsvReader reader = createReader(name + "\n" + name + "\n");
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRow(fields));
+        assertEquals(name.toString(), fields.get(0));
+        assertTrue(reader.readRow(fields));
+        assertEquals(name.toString(), fields.get(0));
+        assertFalse(reader.readRow(fields));
+        assertEquals(2, reader.getRowCount());
+        assertEquals((name.toString().getBytes(StandardCharsets.UTF_8).length + 1) * 2, reader.getBytesRead());
+    }
+
+    @Test
+    public void testUnclosedQuoteIsAnError() throws IOException {
+        CsvReader reader = createReader("name\n\"Soap\nTowel\n");
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRow(fields));
+        try {
+            reader.readRow(fields);
+            fail("Expected an IOException for the unclosed quote.");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testOverlongFieldIsAnError() {
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i <= CsvReader.MAX_FIELD_LENGTH; i++) {
+            field.append('a');
+        }
+
+        try {
+            readAll(field.toString());
+            fail("Expected an IOException for the overlong field.");
+        } catch (IOException expected) {
+        }
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private CsvReader createReader(String csv) {
+        return new CsvReader(Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))),
+                StandardCharsets.UTF_8);
+    }
+
+    private List<List<String>> readAll(String csv) throws IOException {
+        CsvReader reader = createReader(csv);
+        List<List<String>> rows = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        while (reader.readRow(fields)) {
+            rows.add(new ArrayList<>(fields));
+        }
+
+        return rows;
+    }
+}
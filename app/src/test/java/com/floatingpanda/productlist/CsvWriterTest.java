@@ -0,0 +1,52 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.exportimport.CsvReader;
+import com.floatingpanda.productlist.exportimport.CsvWriter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvWriterTest {
+    @Test
+    public void testOnlyQuotesFieldsWhichNeedIt() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(out);
+
+        writer.writeRow("Soap", "Lavender, large", "Pillow \"soft\"", null, "");
+        writer.writeRow("Two\nlines");
+
+        assertEquals("Soap,\"Lavender, large\",\"Pillow \"\"soft\"\"\",,\r\n\"Two\nlines\"\r\n", out.toString());
+    }
+
+    @Test
+    public void testWrittenRowsReadBackTheSame() throws IOException {
+        List<String> row = Arrays.asList("\uFEFFSoap", "£5.99", "a,b", "\"", "\r\n", "");
+
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(out);
+        writer.writeRow(row.toArray(new String[0]));
+        writer.writeRow(row.toArray(new String[0]));
+
+        CsvReader reader = new CsvReader(Channels.newChannel(new ByteArrayInputStream(
+                out.toString().getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRow(fields));
+        assertEquals(row, fields);
+        assertTrue(reader.readRow(fields));
+        assertEquals(row, fields);
+        assertFalse(reader.readRow(fields));
+    }
+}
@@ -0,0 +1,201 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.sorting.IncrementalSortedList;
+import com.floatingpanda.productlist.sorting.ProductComparators;
+import com.floatingpanda.productlist.sorting.ProductSorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalSortedListTest {
+    private static final Executor DIRECT = Runnable::run;
+    private static final Comparator<ProductWithCategory> BY_BARCODE = ProductComparators.forOrdering(OrderByEnum.BARCODE_ASC);
+
+    @Test
+    public void applyChangesKeepsListSortedThroughAddsEditsAndDeletes() {
+        Random random = new Random(7);
+        List<ProductWithCategory> products = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            products.add(createProductWithCategory(id, randomBarcode(random)));
+        }
+
+        List<ProductWithCategory> sorted = new ArrayList<>(products);
+        sorted.sort(BY_BARCODE);
+        IncrementalSortedList sortedList = new IncrementalSortedList(sorted, BY_BARCODE);
+
+        long nextId = 201;
+        for (int round = 0; round < 100; round++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    products.add(random.nextInt(products.size() + 1), createProductWithCategory(nextId++, randomBarcode(random)));
+                    break;
+                case 1:
+                    int index = random.nextInt(products.size());
+                    long id = products.get(index).getProduct().getId();
+                    products.set(index, createProductWithCategory(id, randomBarcode(random)));
+                    break;
+                default:
+                    products.remove(random.nextInt(products.size()));
+                    break;
+            }
+
+            // Room emits a new list of new objects each time
+            List<ProductWithCategory> emitted = copy(products);
+
+            assertTrue(sortedList.applyChanges(emitted, 4));
+            assertSortedVersionOf(emitted, sortedList.snapshot());
+        }
+    }
+
+    @Test
+    public void applyChangesKeepsLongListsSortedAsChunksFillAndEmpty() {
+        Random random = new Random(11);
+        List<ProductWithCategory> products = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            products.add(createProductWithCategory(id, randomBarcode(random)));
+        }
+
+        List<ProductWithCategory> sorted = new ArrayList<>(products);
+        sorted.sort(BY_BARCODE);
+        IncrementalSortedList sortedList = new IncrementalSortedList(sorted, BY_BARCODE);
+
+        // Adds products to the same few places until they've grown past a chunk, then deletes them.
+        long nextId = 3001;
+        for (int round = 0; round < 40; round++) {
+            for (int i = 0; i < 20; i++) {
+                products.add(createProductWithCategory(nextId++, String.valueOf(10 + random.nextInt(2))));
+            }
+
+            List<ProductWithCategory> emitted = copy(products);
+            assertTrue(sortedList.applyChanges(emitted, 20));
+            assertSortedVersionOf(emitted, sortedList.snapshot());
+        }
+        for (int round = 0; round < 40; round++) {
+            for (int i = 0; i < 20; i++) {
+                products.remove(products.size() - 1);
+            }
+
+            List<ProductWithCategory> emitted = copy(products);
+            assertTrue(sortedList.applyChanges(emitted, 20));
+            assertSortedVersionOf(emitted, sortedList.snapshot());
+        }
+    }
+
+    @Test
+    public void snapshotIsUnchangedByLaterChanges() {
+        List<ProductWithCategory> products = new ArrayList<>(Arrays.asList(
+                createProductWithCategory(1, "3"), createProductWithCategory(2, "1"), createProductWithCategory(3, "2")));
+        List<ProductWithCategory> sorted = new ArrayList<>(products);
+        sorted.sort(BY_BARCODE);
+        IncrementalSortedList sortedList = new IncrementalSortedList(sorted, BY_BARCODE);
+
+        List<ProductWithCategory> snapshot = sortedList.snapshot();
+        products.remove(1);
+        products.add(createProductWithCategory(4, "0"));
+        assertTrue(sortedList.applyChanges(copy(products), 4));
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), getIds(snapshot));
+        assertEquals(Arrays.asList(4L, 3L, 1L), getIds(sortedList.snapshot()));
+    }
+
+    @Test
+    public void applyChangesSpotsNullBarcodesAndCategories() {
+        ProductWithCategory withBarcode = createProductWithCategory(1, "123");
+        IncrementalSortedList sortedList = new IncrementalSortedList(Arrays.asList(withBarcode), BY_BARCODE);
+
+        ProductWithCategory withoutBarcode = new ProductWithCategory(
+                new Product(1, "Product 1", null, new Price(1, 0), 0, "None"), null);
+
+        assertTrue(sortedList.applyChanges(Arrays.asList(withoutBarcode), 4));
+        assertNull(sortedList.snapshot().get(0).getProduct().getBarcode());
+    }
+
+    @Test
+    public void applyChangesRefusesTooManyChangesAndLeavesListAsItWas() {
+        List<ProductWithCategory> products = Arrays.asList(
+                createProductWithCategory(1, "3"), createProductWithCategory(2, "1"), createProductWithCategory(3, "2"));
+        List<ProductWithCategory> sorted = new ArrayList<>(products);
+        sorted.sort(BY_BARCODE);
+        IncrementalSortedList sortedList = new IncrementalSortedList(sorted, BY_BARCODE);
+
+        List<ProductWithCategory> changed = Arrays.asList(
+                createProductWithCategory(4, "5"), createProductWithCategory(5, "4"), createProductWithCategory(3, "2"));
+
+        assertFalse(sortedList.applyChanges(changed, 2));
+        assertEquals(Arrays.asList(2L, 3L, 1L), getIds(sortedList.snapshot()));
+    }
+
+    @Test
+    public void sorterUpdateAppliesChangesInTheOrderLastSorted() {
+        ProductSorter sorter = new ProductSorter(DIRECT, DIRECT);
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+
+        List<ProductWithCategory> products = new ArrayList<>(Arrays.asList(
+                createProductWithCategory(1, "3"), createProductWithCategory(2, "1"), createProductWithCategory(3, "2")));
+        sorter.sort(products, OrderByEnum.BARCODE_DESC, delivered::add);
+
+        products.add(createProductWithCategory(4, "25"));
+        sorter.update(copy(products), OrderByEnum.BARCODE_DESC, delivered::add);
+
+        assertEquals(Arrays.asList(1L, 4L, 3L, 2L), getIds(delivered.get(1)));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private void assertSortedVersionOf(List<ProductWithCategory> products, List<ProductWithCategory> sorted) {
+        assertEquals(products.size(), sorted.size());
+
+        List<Long> expectedIds = getIds(products);
+        List<Long> actualIds = getIds(sorted);
+        expectedIds.sort(null);
+        actualIds.sort(null);
+        assertEquals(expectedIds, actualIds);
+
+        for (int i = 1; i < sorted.size(); i++) {
+            assertTrue(BY_BARCODE.compare(sorted.get(i - 1), sorted.get(i)) <= 0);
+        }
+    }
+
+    private String randomBarcode(Random random) {
+        // Few enough barcodes that some products share them
+        return String.valueOf(random.nextInt(50));
+    }
+
+    private ProductWithCategory createProductWithCategory(long id, String barcode) {
+        return new ProductWithCategory(new Product(id, "Product " + id, barcode, new Price(1, 0), 1, "None"),
+                new Category(1, "Bathroom"));
+    }
+
+    private List<ProductWithCategory> copy(List<ProductWithCategory> productsWithCategories) {
+        List<ProductWithCategory> copies = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            Product product = productWithCategory.getProduct();
+            copies.add(createProductWithCategory(product.getId(), product.getBarcode()));
+        }
+        return copies;
+    }
+
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,157 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.sorting.NameSortKeyCache;
+import com.floatingpanda.productlist.sorting.ProductSorter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NameSortKeyCacheTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void keyIsCreatedOnceAndReused() {
+        NameSortKeyCache cache = new NameSortKeyCache(Locale.UK);
+        Product product = createProduct(1, "Sink");
+
+        byte[] key = cache.getKey(product);
+
+        assertSame(key, cache.getKey(product));
+        // An equal name in another String, as a product reloaded from the database has.
+        assertSame(key, cache.getKey(createProduct(1, new String("Sink"))));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void keyIsRecreatedWhenNameChanges() {
+        NameSortKeyCache cache = new NameSortKeyCache(Locale.UK);
+        byte[] oldKey = cache.getKey(createProduct(1, "Sink"));
+
+        byte[] newKey = cache.getKey(createProduct(1, "Basin"));
+
+        assertTrue(NameSortKeyCache.compareKeys(newKey, oldKey) < 0);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void invalidateRemovesKey() {
+        NameSortKeyCache cache = new NameSortKeyCache(Locale.UK);
+        cache.getKey(createProduct(1, "Sink"));
+        cache.getKey(createProduct(2, "Taps"));
+
+        cache.invalidate(1);
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void invalidateKeepsOtherKeysWhenTableGrows() {
+        NameSortKeyCache cache = new NameSortKeyCache(Locale.UK);
+        for (long id = 1; id <= 200; id++) {
+            cache.getKey(createProduct(id, "Product " + id));
+        }
+
+        for (long id = 2; id <= 200; id += 2) {
+            cache.invalidate(id);
+        }
+
+        assertEquals(100, cache.size());
+        for (long id = 1; id <= 200; id += 2) {
+            cache.getKey(createProduct(id, "Product " + id));
+        }
+        assertEquals(200, cache.getMisses());
+        assertEquals(100, cache.getHits());
+    }
+
+    @Test
+    public void sortingByNameFollowsLocalizedCollation() {
+        List<ProductWithCategory> products = Arrays.asList(
+                new ProductWithCategory(createProduct(4, "Fig rolls"), null),
+                new ProductWithCategory(createProduct(1, "fig rolls"), null),
+                new ProductWithCategory(createProduct(2, "Éclairs"), null),
+                new ProductWithCategory(createProduct(3, "eggs"), null));
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+
+        new ProductSorter(DIRECT, DIRECT, new NameSortKeyCache(Locale.UK))
+                .sort(products, OrderByEnum.NAME_ASC, delivered::add);
+
+        // Accented letters sort with unaccented ones, and names differing only in case by id.
+        assertEquals(Arrays.asList(2L, 3L, 1L, 4L), getIds(delivered.get(0)));
+    }
+
+    @Test
+    public void keysIgnoreCaseAndAccentsAsLocalizedCollationDoes() {
+        NameSortKeyCache cache = new NameSortKeyCache(Locale.UK);
+        byte[] plain = cache.getKey(createProduct(1, "Eclairs"));
+        byte[] accented = cache.getKey(createProduct(2, "éclairs"));
+        byte[] longer = cache.getKey(createProduct(3, "Eclairs box"));
+
+        assertEquals(0, NameSortKeyCache.compareKeys(plain, accented));
+        assertTrue(NameSortKeyCache.compareKeys(accented, longer) < 0);
+        assertTrue(NameSortKeyCache.compareKeys(longer, plain) > 0);
+    }
+
+    @Test
+    public void productsWithTheSameNameAreSortedById() {
+        List<ProductWithCategory> products = Arrays.asList(
+                new ProductWithCategory(createProduct(3, "Sink"), null),
+                new ProductWithCategory(createProduct(1, "Sink"), null),
+                new ProductWithCategory(createProduct(2, "Sink"), null));
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+        ProductSorter sorter = new ProductSorter(DIRECT, DIRECT, new NameSortKeyCache(Locale.UK));
+
+        sorter.sort(products, OrderByEnum.NAME_ASC, delivered::add);
+        sorter.sort(products, OrderByEnum.NAME_DESC, delivered::add);
+
+        // As ORDER BY products.name, products.id and its reverse put them.
+        assertEquals(Arrays.asList(1L, 2L, 3L), getIds(delivered.get(0)));
+        assertEquals(Arrays.asList(3L, 2L, 1L), getIds(delivered.get(1)));
+    }
+
+    @Test
+    public void resortingByNameReusesKeys() {
+        NameSortKeyCache cache = new NameSortKeyCache(Locale.UK);
+        ProductSorter sorter = new ProductSorter(DIRECT, DIRECT, cache);
+        List<ProductWithCategory> products = Arrays.asList(
+                new ProductWithCategory(createProduct(1, "Sink"), null),
+                new ProductWithCategory(createProduct(2, "Pillows"), null),
+                new ProductWithCategory(createProduct(3, "Taps"), null));
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+
+        sorter.sort(products, OrderByEnum.NAME_ASC, delivered::add);
+        sorter.sort(products, OrderByEnum.NAME_DESC, delivered::add);
+
+        assertEquals(Arrays.asList(2L, 1L, 3L), getIds(delivered.get(0)));
+        assertEquals(Arrays.asList(3L, 1L, 2L), getIds(delivered.get(1)));
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.getHits());
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private Product createProduct(long id, String name) {
+        return new Product(id, name, "1234567890123", new Price(1, 0), 0, "None");
+    }
+
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
+}
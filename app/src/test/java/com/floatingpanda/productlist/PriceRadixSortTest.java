@@ -0,0 +1,125 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.sorting.PriceRadixSort;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PriceRadixSortTest {
+    @Test
+    public void sortedOrderMatchesStableComparatorSortInBothDirections() {
+        Random random = new Random(42);
+
+        for (int bound : new int[] {10, 1000, 100000, Integer.MAX_VALUE}) {
+            int[] keys = new int[2000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextInt(bound);
+            }
+
+            assertArrayEquals(stableSortedOrder(keys, false), PriceRadixSort.sortedOrder(keys, false));
+            assertArrayEquals(stableSortedOrder(keys, true), PriceRadixSort.sortedOrder(keys, true));
+        }
+    }
+
+    @Test
+    public void sortedOrderHandlesNegativeAndExtremeKeys() {
+        int[] keys = {5, -3, Integer.MAX_VALUE, 0, Integer.MIN_VALUE, -3, 5};
+
+        assertArrayEquals(stableSortedOrder(keys, false), PriceRadixSort.sortedOrder(keys, false));
+        assertArrayEquals(stableSortedOrder(keys, true), PriceRadixSort.sortedOrder(keys, true));
+    }
+
+    @Test
+    public void sortedOrderOfNoKeysIsEmpty() {
+        assertEquals(0, PriceRadixSort.sortedOrder(new int[0], false).length);
+    }
+
+    @Test
+    public void sortedOrderBreaksTiesByIdsInBothDirections() {
+        Random random = new Random(7);
+        int[] keys = new int[2000];
+        long[] ids = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(20);
+            // Spread across every byte of the id, negative ones included.
+            ids[i] = i % 3 == 0 ? random.nextLong() : random.nextInt(100000);
+        }
+
+        assertArrayEquals(sortedOrderById(keys, ids, false), PriceRadixSort.sortedOrder(keys, ids, false));
+        assertArrayEquals(sortedOrderById(keys, ids, true), PriceRadixSort.sortedOrder(keys, ids, true));
+    }
+
+    @Test
+    public void sortPutsProductsWithTheSamePriceInIdOrder() {
+        List<ProductWithCategory> products = Arrays.asList(
+                createProductWithCategory(3, new Price(10, 99)),
+                createProductWithCategory(5, new Price(5, 99)),
+                createProductWithCategory(1, new Price(10, 99)),
+                createProductWithCategory(4, new Price(0, 9)),
+                createProductWithCategory(2, new Price(5, 99)));
+
+        // As ORDER BY products.price, products.id and its reverse put them.
+        assertEquals(Arrays.asList(4L, 2L, 5L, 1L, 3L), getIds(PriceRadixSort.sort(products, false)));
+        assertEquals(Arrays.asList(3L, 1L, 5L, 2L, 4L), getIds(PriceRadixSort.sort(products, true)));
+        // The list given isn't changed.
+        assertEquals(Arrays.asList(3L, 5L, 1L, 4L, 2L), getIds(products));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private int[] stableSortedOrder(int[] keys, boolean descending) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            order.add(i);
+        }
+
+        Comparator<Integer> byKey = (index1, index2) -> Integer.compare(keys[index1], keys[index2]);
+        order.sort(descending ? byKey.reversed() : byKey);
+
+        int[] orderArray = new int[order.size()];
+        for (int i = 0; i < orderArray.length; i++) {
+            orderArray[i] = order.get(i);
+        }
+        return orderArray;
+    }
+
+    private int[] sortedOrderById(int[] keys, long[] ids, boolean descending) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            order.add(i);
+        }
+
+        Comparator<Integer> byKey = Comparator.<Integer>comparingInt(index -> keys[index])
+                .thenComparingLong(index -> ids[index]);
+        order.sort(descending ? byKey.reversed() : byKey);
+
+        int[] orderArray = new int[order.size()];
+        for (int i = 0; i < orderArray.length; i++) {
+            orderArray[i] = order.get(i);
+        }
+        return orderArray;
+    }
+
+    private ProductWithCategory createProductWithCategory(long id, Price price) {
+        return new ProductWithCategory(new Product(id, "Product " + id, "1234567890123", price, 0, "None"), null);
+    }
+
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
+}
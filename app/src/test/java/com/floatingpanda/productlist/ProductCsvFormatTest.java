@@ -0,0 +1,38 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.exportimport.ProductCsvFormat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProductCsvFormatTest {
+    @Test
+    public void testParsePrice() {
+        assertEquals(599, ProductCsvFormat.parsePrice("5.99"));
+        assertEquals(590, ProductCsvFormat.parsePrice("5.9"));
+        assertEquals(500, ProductCsvFormat.parsePrice("5"));
+        assertEquals(500, ProductCsvFormat.parsePrice("5."));
+        assertEquals(5, ProductCsvFormat.parsePrice(".05"));
+        assertEquals(1250, ProductCsvFormat.parsePrice(" £12.50 "));
+    }
+
+    @Test
+    public void testParseInvalidPrice() {
+        assertEquals(-1, ProductCsvFormat.parsePrice(""));
+        assertEquals(-1, ProductCsvFormat.parsePrice("."));
+        assertEquals(-1, ProductCsvFormat.parsePrice("-5.99"));
+        assertEquals(-1, ProductCsvFormat.parsePrice("5.999"));
+        assertEquals(-1, ProductCsvFormat.parsePrice("5,99"));
+        assertEquals(-1, ProductCsvFormat.parsePrice("five"));
+        assertEquals(-1, ProductCsvFormat.parsePrice("123456789"));
+    }
+
+    @Test
+    public void testFormatPrice() {
+        assertEquals("5.99", ProductCsvFormat.formatPrice(599));
+        assertEquals("5.05", ProductCsvFormat.formatPrice(505));
+        assertEquals("0.00", ProductCsvFormat.formatPrice(0));
+        assertEquals(1234, ProductCsvFormat.parsePrice(ProductCsvFormat.formatPrice(1234)));
+    }
+}
@@ -0,0 +1,45 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProductQueryParametersTest {
+    @Test
+    public void parametersForTheSameQueryAreEqual() {
+        ProductQueryParameters parameters = ProductQueryParameters.search("123", "pil", 2, 100, 0, OrderByEnum.NAME_ASC);
+        ProductQueryParameters sameParameters = ProductQueryParameters.search("123", "pil", 2, 100, 0, OrderByEnum.NAME_ASC);
+
+        assertTrue(parameters.equals(sameParameters));
+        assertEquals(parameters.hashCode(), sameParameters.hashCode());
+    }
+
+    @Test
+    public void parametersForDifferentQueriesAreNotEqual() {
+        ProductQueryParameters parameters = ProductQueryParameters.search("123", null, 0, 0, 0, OrderByEnum.NAME_ASC);
+
+        assertFalse(parameters.equals(ProductQueryParameters.exactBarcode("123", OrderByEnum.NAME_ASC)));
+        assertFalse(parameters.equals(ProductQueryParameters.search("1234", null, 0, 0, 0, OrderByEnum.NAME_ASC)));
+        assertFalse(parameters.equals(ProductQueryParameters.search("123", "", 0, 0, 0, OrderByEnum.NAME_ASC)));
+        assertFalse(parameters.equals(ProductQueryParameters.search("123", null, 0, 0, 0, OrderByEnum.PRICE_ASC)));
+        assertFalse(ProductQueryParameters.category(1, OrderByEnum.NAME_ASC)
+                .equals(ProductQueryParameters.category(2, OrderByEnum.NAME_ASC)));
+    }
+
+    @Test
+    public void withOrderByOnlyChangesTheOrdering() {
+        ProductQueryParameters parameters = ProductQueryParameters.category(3, OrderByEnum.NAME_ASC);
+        ProductQueryParameters reordered = parameters.withOrderBy(OrderByEnum.PRICE_DESC);
+
+        assertEquals(OrderByEnum.PRICE_DESC, reordered.getOrderBy());
+        assertEquals(ProductQueryParameters.Type.CATEGORY, reordered.getType());
+        assertEquals(3, reordered.getCategoryId());
+        assertSame(parameters, parameters.withOrderBy(OrderByEnum.NAME_ASC));
+    }
+}
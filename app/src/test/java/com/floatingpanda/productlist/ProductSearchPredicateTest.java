@@ -0,0 +1,117 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.ProductQueryParameters;
+import com.floatingpanda.productlist.repositories.ProductSearchPredicate;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductSearchPredicateTest {
+    private static final ProductWithCategory PILLOW_COVERS = createProductWithCategory("Pillow covers (Crème)",
+            "1234509876109", new Price(18, 99), 2);
+
+    @Test
+    public void testMatchesNameWordsByPrefixIgnoringCaseAndAccents() {
+        assertTrue(new ProductSearchPredicate(null, "pil cov", 0, 0, 0).test(PILLOW_COVERS));
+        assertTrue(new ProductSearchPredicate(null, "COVERS pillow", 0, 0, 0).test(PILLOW_COVERS));
+        assertTrue(new ProductSearchPredicate(null, "creme", 0, 0, 0).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate(null, "llow", 0, 0, 0).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate(null, "pil sheets", 0, 0, 0).test(PILLOW_COVERS));
+    }
+
+    @Test
+    public void testMatchesNameWordsInNotesAsTheFullTextIndexDoes() {
+        // Pillow covers' notes are "None"
+        assertTrue(new ProductSearchPredicate(null, "non", 0, 0, 0).test(PILLOW_COVERS));
+        assertTrue(new ProductSearchPredicate(null, "pil none", 0, 0, 0).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate(null, "pil noted", 0, 0, 0).test(PILLOW_COVERS));
+
+        ProductWithCategory withoutNotes = new ProductWithCategory(
+                new Product(2, "Plunger", null, new Price(3, 50), 1, null), null);
+        assertTrue(new ProductSearchPredicate(null, "plu", 0, 0, 0).test(withoutNotes));
+        assertFalse(new ProductSearchPredicate(null, "non", 0, 0, 0).test(withoutNotes));
+    }
+
+    @Test
+    public void testMatchesPartialBarcodesCategoriesAndPrices() {
+        assertTrue(new ProductSearchPredicate("4509", null, 2, 1899, 1899).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate("4590", null, 0, 0, 0).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate(null, null, 1, 0, 0).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate(null, null, 0, 1900, 0).test(PILLOW_COVERS));
+        assertFalse(new ProductSearchPredicate(null, null, 0, 0, 1898).test(PILLOW_COVERS));
+        // Blank barcodes aren't searched for
+        assertTrue(new ProductSearchPredicate("  ", null, 0, 0, 0).test(PILLOW_COVERS));
+        assertNull(new ProductSearchPredicate("  ", null, 0, 0, 0).getBarcode());
+
+        ProductWithCategory withoutBarcode = createProductWithCategory("Plunger", null, new Price(3, 50), 1);
+        assertFalse(new ProductSearchPredicate("1", null, 0, 0, 0).test(withoutBarcode));
+    }
+
+    @Test
+    public void isNarrowingOfWhenFiltersAreAddedOrTightened() {
+        ProductSearchPredicate base = new ProductSearchPredicate("45", "pi", 0, 100, 2000);
+
+        assertTrue(new ProductSearchPredicate("4509", "pi", 0, 100, 2000).isNarrowingOf(base));
+        assertTrue(new ProductSearchPredicate("45", "pil cov", 0, 100, 2000).isNarrowingOf(base));
+        assertTrue(new ProductSearchPredicate("45", "cov pillow", 2, 100, 2000).isNarrowingOf(base));
+        assertTrue(new ProductSearchPredicate("45", "pi", 0, 500, 1000).isNarrowingOf(base));
+        assertTrue(base.isNarrowingOf(base));
+    }
+
+    @Test
+    public void isNotNarrowingOfWhenAnyFilterIsWidened() {
+        ProductSearchPredicate base = new ProductSearchPredicate("45", "pil", 2, 100, 2000);
+
+        assertFalse(new ProductSearchPredicate("4", "pil", 2, 100, 2000).isNarrowingOf(base));
+        assertFalse(new ProductSearchPredicate("45", "pi", 2, 100, 2000).isNarrowingOf(base));
+        assertFalse(new ProductSearchPredicate("45", "cov", 2, 100, 2000).isNarrowingOf(base));
+        assertFalse(new ProductSearchPredicate("45", "pil", 0, 100, 2000).isNarrowingOf(base));
+        assertFalse(new ProductSearchPredicate("45", "pil", 3, 100, 2000).isNarrowingOf(base));
+        assertFalse(new ProductSearchPredicate("45", "pil", 2, 50, 2000).isNarrowingOf(base));
+        assertFalse(new ProductSearchPredicate("45", "pil", 2, 100, 0).isNarrowingOf(base));
+    }
+
+    @Test
+    public void canFilterResultsNeedsTheSameOrderAndRanking() {
+        ProductQueryParameters base = ProductQueryParameters.search(null, "pil", 0, 0, 0, OrderByEnum.NAME_ASC);
+
+        assertTrue(ProductSearchPredicate.canFilterResults(base,
+                ProductQueryParameters.search(null, "pil cov", 2, 0, 0, OrderByEnum.NAME_ASC)));
+        assertTrue(ProductSearchPredicate.canFilterResults(ProductQueryParameters.all(OrderByEnum.NAME_ASC),
+                ProductQueryParameters.search(null, "pil", 0, 0, 0, OrderByEnum.NAME_ASC)));
+        assertFalse(ProductSearchPredicate.canFilterResults(base,
+                ProductQueryParameters.search(null, "pil", 0, 0, 0, OrderByEnum.PRICE_ASC)));
+        assertFalse(ProductSearchPredicate.canFilterResults(base,
+                ProductQueryParameters.category(2, OrderByEnum.NAME_ASC)));
+
+        // Unordered name searches are ranked by their first word
+        ProductQueryParameters rankedBase = base.withOrderBy(OrderByEnum.NO_ORDER);
+        assertTrue(ProductSearchPredicate.canFilterResults(rankedBase,
+                ProductQueryParameters.search(null, "pil cov", 0, 0, 0, OrderByEnum.NO_ORDER)));
+        assertFalse(ProductSearchPredicate.canFilterResults(rankedBase,
+                ProductQueryParameters.search(null, "pill", 0, 0, 0, OrderByEnum.NO_ORDER)));
+    }
+
+    @Test
+    public void tokeniseNameSplitsOnAnythingButLettersAndDigits() {
+        assertEquals(Arrays.asList("pil", "cov", "2"), ProductSearchPredicate.tokeniseName(" Pil-cov, 2 "));
+        assertTrue(ProductSearchPredicate.tokeniseName(null).isEmpty());
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    private static ProductWithCategory createProductWithCategory(String name, String barcode, Price price,
+                                                                 long categoryId) {
+        return new ProductWithCategory(new Product(1, name, barcode, price, categoryId, "None"), null);
+    }
+}
@@ -0,0 +1,160 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.Category;
+import com.floatingpanda.productlist.db.Price;
+import com.floatingpanda.productlist.db.Product;
+import com.floatingpanda.productlist.db.ProductWithCategory;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.sorting.ProductSorter;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ProductSorterTest {
+    private static final Category CATEGORY = new Category(1, "Bathroom");
+
+    private static final ProductWithCategory TAPS = new ProductWithCategory(
+            new Product(1, "Taps", "1234567890123", new Price(5, 99), 1, "None"), CATEGORY);
+    private static final ProductWithCategory SINK = new ProductWithCategory(
+            new Product(2, "Sink", "3210987654321", new Price(10, 99), 1, "None"), CATEGORY);
+    private static final ProductWithCategory PLUNGER = new ProductWithCategory(
+            new Product(3, "Plunger", null, new Price(3, 50), 1, "None"), CATEGORY);
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void sortDeliversSortedCopyAndLeavesListUnchanged() {
+        List<ProductWithCategory> products = new ArrayList<>(Arrays.asList(TAPS, SINK, PLUNGER));
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+
+        new ProductSorter(DIRECT, DIRECT).sort(products, OrderByEnum.NAME_ASC, delivered::add);
+
+        assertEquals(1, delivered.size());
+        assertEquals(getIds(Arrays.asList(PLUNGER, SINK, TAPS)), getIds(delivered.get(0)));
+        assertEquals(getIds(Arrays.asList(TAPS, SINK, PLUNGER)), getIds(products));
+    }
+
+    @Test
+    public void sortedListCannotBeModified() {
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+
+        new ProductSorter(DIRECT, DIRECT).sort(Arrays.asList(TAPS, SINK), OrderByEnum.PRICE_DESC, delivered::add);
+
+        try {
+            delivered.get(0).add(PLUNGER);
+            fail("Sorted list could be modified.");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void productsWithoutBarcodesSortFirstAscendingAndLastDescending() {
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+        ProductSorter sorter = new ProductSorter(DIRECT, DIRECT);
+
+        sorter.sort(Arrays.asList(TAPS, PLUNGER, SINK), OrderByEnum.BARCODE_ASC, delivered::add);
+        sorter.sort(Arrays.asList(TAPS, PLUNGER, SINK), OrderByEnum.BARCODE_DESC, delivered::add);
+
+        assertEquals(getIds(Arrays.asList(PLUNGER, TAPS, SINK)), getIds(delivered.get(0)));
+        assertEquals(getIds(Arrays.asList(SINK, TAPS, PLUNGER)), getIds(delivered.get(1)));
+    }
+
+    @Test
+    public void productsSortingEqualAreInIdOrderAsTheDatabasePutsThem() {
+        // Same barcode and price as SINK, given before it
+        ProductWithCategory sinkPlug = new ProductWithCategory(
+                new Product(4, "Sink plug", "3210987654321", new Price(10, 99), 1, "None"), CATEGORY);
+        List<ProductWithCategory> products = Arrays.asList(sinkPlug, TAPS, SINK);
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+        ProductSorter sorter = new ProductSorter(DIRECT, DIRECT);
+
+        sorter.sort(products, OrderByEnum.BARCODE_ASC, delivered::add);
+        sorter.sort(products, OrderByEnum.BARCODE_DESC, delivered::add);
+        sorter.sort(products, OrderByEnum.PRICE_ASC, delivered::add);
+        sorter.sort(products, OrderByEnum.PRICE_DESC, delivered::add);
+
+        // As ORDER BY ..., products.id and ORDER BY ... DESC, products.id DESC
+        assertEquals(Arrays.asList(1L, 2L, 4L), getIds(delivered.get(0)));
+        assertEquals(Arrays.asList(4L, 2L, 1L), getIds(delivered.get(1)));
+        assertEquals(Arrays.asList(1L, 2L, 4L), getIds(delivered.get(2)));
+        assertEquals(Arrays.asList(4L, 2L, 1L), getIds(delivered.get(3)));
+    }
+
+    @Test
+    public void newerSortCancelsOneNotYetRun() {
+        Queue<Runnable> sortQueue = new ArrayDeque<>();
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+        ProductSorter sorter = new ProductSorter(sortQueue::add, DIRECT);
+
+        sorter.sort(Arrays.asList(TAPS, SINK, PLUNGER), OrderByEnum.NAME_ASC, delivered::add);
+        sorter.sort(Arrays.asList(TAPS, SINK, PLUNGER), OrderByEnum.PRICE_ASC, delivered::add);
+        runAll(sortQueue);
+
+        assertEquals(1, delivered.size());
+        assertEquals(getIds(Arrays.asList(PLUNGER, TAPS, SINK)), getIds(delivered.get(0)));
+    }
+
+    @Test
+    public void newerSortDropsSortedListNotYetDelivered() {
+        Queue<Runnable> deliveryQueue = new ArrayDeque<>();
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+        ProductSorter sorter = new ProductSorter(DIRECT, deliveryQueue::add);
+
+        sorter.sort(Arrays.asList(TAPS, SINK, PLUNGER), OrderByEnum.NAME_ASC, delivered::add);
+        sorter.sort(Arrays.asList(TAPS, SINK, PLUNGER), OrderByEnum.NAME_DESC, delivered::add);
+        runAll(deliveryQueue);
+
+        assertEquals(1, delivered.size());
+        assertEquals(getIds(Arrays.asList(TAPS, SINK, PLUNGER)), getIds(delivered.get(0)));
+    }
+
+    @Test
+    public void cancelDropsSortInProgress() {
+        Queue<Runnable> sortQueue = new ArrayDeque<>();
+        List<ProductWithCategory> delivered = new ArrayList<>();
+        ProductSorter sorter = new ProductSorter(sortQueue::add, DIRECT);
+
+        sorter.sort(Arrays.asList(TAPS, SINK, PLUNGER), OrderByEnum.NAME_ASC, delivered::addAll);
+        sorter.cancel();
+        runAll(sortQueue);
+
+        assertEquals(0, delivered.size());
+    }
+
+    @Test
+    public void noOrderDeliversProductsInTheirOriginalOrder() {
+        List<List<ProductWithCategory>> delivered = new ArrayList<>();
+        List<ProductWithCategory> products = Arrays.asList(TAPS, SINK, PLUNGER);
+
+        new ProductSorter(DIRECT, DIRECT).sort(products, OrderByEnum.NO_ORDER, delivered::add);
+
+        assertEquals(getIds(products), getIds(delivered.get(0)));
+    }
+
+    // ------------------------------------ PRIVATE METHODS ------------------------------------ //
+
+    // Products are compared by id, as Product.equals() can't compare products without barcodes.
+    private List<Long> getIds(List<ProductWithCategory> productsWithCategories) {
+        List<Long> ids = new ArrayList<>();
+        for (ProductWithCategory productWithCategory : productsWithCategories) {
+            ids.add(productWithCategory.getProduct().getId());
+        }
+        return ids;
+    }
+
+    private void runAll(Queue<Runnable> queue) {
+        Runnable runnable;
+        while ((runnable = queue.poll()) != null) {
+            runnable.run();
+        }
+    }
+}
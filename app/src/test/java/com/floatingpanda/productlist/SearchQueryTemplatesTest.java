@@ -0,0 +1,84 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.db.ProductDao;
+import com.floatingpanda.productlist.other.OrderByEnum;
+import com.floatingpanda.productlist.repositories.SearchQueryTemplates;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SearchQueryTemplatesTest {
+    @Test
+    public void getTemplateBuildsEachShapeOnceAndCountsHitsAndMisses() {
+        SearchQueryTemplates templates = new SearchQueryTemplates();
+        int shape = SearchQueryTemplates.NAME | SearchQueryTemplates.CATEGORY;
+
+        String template = templates.getTemplate(shape, OrderByEnum.PRICE_ASC);
+
+        assertSame(template, templates.getTemplate(shape, OrderByEnum.PRICE_ASC));
+        assertSame(template, templates.getTemplate(shape, OrderByEnum.PRICE_ASC));
+        templates.getTemplate(shape, OrderByEnum.PRICE_DESC);
+        templates.getUnorderedTemplate(shape);
+
+        assertEquals(2, templates.getHits());
+        assertEquals(3, templates.getMisses());
+        assertEquals(0.4, templates.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void hitRateIsZeroBeforeAnyTemplateIsAskedFor() {
+        assertEquals(0, new SearchQueryTemplates().getHitRate(), 0);
+    }
+
+    @Test
+    public void templatesPutEveryFilterInBindingOrder() {
+        SearchQueryTemplates templates = new SearchQueryTemplates();
+        int everyFilter = SearchQueryTemplates.BARCODE | SearchQueryTemplates.BARCODE_TRIGRAMS
+                | SearchQueryTemplates.NAME | SearchQueryTemplates.CATEGORY
+                | SearchQueryTemplates.LOWER_PRICE | SearchQueryTemplates.HIGHER_PRICE;
+
+        String filters = ProductDao.PRODUCT_WITH_CATEGORY_QUERY
+                + " JOIN products_fts ON products.id = products_fts.docid"
+                + " WHERE products.id IN (SELECT product_id FROM barcode_trigrams"
+                + " WHERE trigram IN (?, ?, ?) GROUP BY product_id HAVING COUNT(*) = ?) AND"
+                + " products.barcode LIKE '%' || ? || '%' ESCAPE '\\'"
+                + " AND products_fts MATCH ? AND products.category_id = ?"
+                + " AND products.price >= ? AND products.price <= ?";
+
+        assertEquals(filters, templates.getUnorderedTemplate(everyFilter));
+        assertEquals(filters + " ORDER BY products.name DESC, products.id DESC",
+                templates.getTemplate(everyFilter, OrderByEnum.NAME_DESC));
+        assertEquals(filters + " ORDER BY CASE WHEN products.name LIKE ? || '%' THEN 0"
+                + " WHEN ' ' || products.name LIKE '% ' || ? || '%' THEN 1 ELSE 2 END,"
+                + " length(products.name)", templates.getTemplate(everyFilter, OrderByEnum.NO_ORDER));
+    }
+
+    @Test
+    public void templatesWithoutNameAreNotRanked() {
+        SearchQueryTemplates templates = new SearchQueryTemplates();
+
+        assertEquals(ProductDao.PRODUCT_WITH_CATEGORY_QUERY,
+                templates.getTemplate(0, OrderByEnum.NO_ORDER));
+        assertEquals(ProductDao.PRODUCT_WITH_CATEGORY_QUERY + " WHERE products.price <= ?",
+                templates.getTemplate(SearchQueryTemplates.HIGHER_PRICE, OrderByEnum.NO_ORDER));
+    }
+
+    @Test
+    public void getTemplateRejectsTrigramsWithoutBarcode() {
+        try {
+            new SearchQueryTemplates().getTemplate(SearchQueryTemplates.BARCODE_TRIGRAMS, OrderByEnum.NO_ORDER);
+            fail("Expected an IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void likeWildcardsAreEscaped() {
+        assertEquals("12\\%3\\_4\\\\5", SearchQueryTemplates.escapeLikeWildcards("12%3_4\\5"));
+        assertEquals("1234", SearchQueryTemplates.escapeLikeWildcards("1234"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.floatingpanda.productlist;
+
+import com.floatingpanda.productlist.exportimport.SnapshotCodec;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SnapshotCodecTest {
+    @Test
+    public void testVarintsRoundTrip() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, 999, Integer.MAX_VALUE, Long.MAX_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+
+        int expectedSize = 0;
+        for (long value : values) {
+            SnapshotCodec.putVarint(buffer, value);
+            expectedSize += SnapshotCodec.varintSize(value);
+        }
+        assertEquals(expectedSize, buffer.position());
+
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, SnapshotCodec.getVarint(buffer));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testSmallValuesTakeOneByte() {
+        assertEquals(1, SnapshotCodec.varintSize(0));
+        assertEquals(1, SnapshotCodec.varintSize(127));
+        assertEquals(2, SnapshotCodec.varintSize(128));
+        assertEquals(2, SnapshotCodec.varintSize(9999));
+        assertEquals(9, SnapshotCodec.varintSize(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testStringsRoundTrip() {
+        String[] strings = {"Push taps", "", null, "£5.99 – ünïcödé"};
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+
+        int expectedSize = 0;
+        for (String string : strings) {
+            byte[] bytes = SnapshotCodec.encodeString(string);
+            SnapshotCodec.putString(buffer, bytes);
+            expectedSize += SnapshotCodec.stringSize(bytes);
+        }
+        assertEquals(expectedSize, buffer.position());
+
+        buffer.flip();
+        assertEquals("Push taps", SnapshotCodec.getString(buffer));
+        assertEquals("", SnapshotCodec.getString(buffer));
+        assertNull(SnapshotCodec.getString(buffer));
+        assertEquals("£5.99 – ünïcödé", SnapshotCodec.getString(buffer));
+    }
+
+    @Test
+    public void testTruncatedStringIsAnError() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        // Says the string is 1000 bytes long
+        SnapshotCodec.putVarint(buffer, 1001);
+        buffer.put((byte) 'a');
+        buffer.flip();
+
+        try {
+            SnapshotCodec.getString(buffer);
+            fail("Expected a BufferUnderflowException for the truncated string.");
+        } catch (BufferUnderflowException expected) {
+        }
+    }
+
+    @Test
+    public void testNegativeVarintIsAnError() {
+        try {
+            SnapshotCodec.putVarint(ByteBuffer.allocate(16), -1);
+            fail("Expected an IllegalArgumentException for the negative varint.");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}